@@ -61,7 +61,8 @@ public class BlobImpl implements Blob {
             throw new IllegalArgumentException("bytes cannot be null");
         }
 
-        blobBuffer = new BlobBuffer(connection.getBufferDir(), connection.getLobBuffer());
+        blobBuffer = new BlobBuffer(connection.getBufferDir(), connection.getLobBuffer(),
+                connection.getLobPageSize());
         blobBuffer.setBuffer(bytes, false);
     }
 
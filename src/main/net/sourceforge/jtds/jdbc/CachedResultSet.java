@@ -24,7 +24,9 @@ import java.sql.SQLException;
 import java.sql.SQLWarning;
 import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 
 /**
  * A memory cached scrollable/updateable result set.
@@ -213,7 +215,7 @@ public class CachedResultSet extends JtdsResultSet {
 
         columns       = rs.getColumns();
         columnCount   = getColumnCount(columns);
-        rowData       = new ArrayList(INITIAL_ROW_COUNT);
+        rowData       = newRowData(INITIAL_ROW_COUNT);
         rowsInResult  = 0;
         pos           = POS_BEFORE_FIRST;
         tempResultSet = true;
@@ -254,6 +256,34 @@ public class CachedResultSet extends JtdsResultSet {
         procedureParams = null;
     }
 
+    /**
+     * Creates a read only result set over rows cached by
+     * {@link MetaDataCache}. The rows are copied, the column descriptors are
+     * shared with the cache.
+     *
+     * @param statement   the parent statement object
+     * @param columns     the column descriptor array
+     * @param columnCount the number of visible columns
+     * @param rows        the row data
+     * @throws SQLException if an error occurs
+     */
+    CachedResultSet(JtdsStatement statement, ColInfo columns[],
+            int columnCount, List rows) throws SQLException {
+        super(statement, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY, null);
+        this.columns     = columns;
+        this.columnCount = columnCount;
+        rowData          = new ArrayList(rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            rowData.add(copyRow((Object[]) rows.get(i)));
+        }
+        rowsInResult     = rowData.size();
+        pos              = POS_BEFORE_FIRST;
+        tempResultSet    = true;
+        cursorName       = null;
+        procName         = null;
+        procedureParams  = null;
+    }
+
    /**
     * <p> <b>Warning! Ensure the provided data matches the column layout of this
     * {@link ResultSet}. All kind of weird behavior and errors could be expected
@@ -424,7 +454,7 @@ public class CachedResultSet extends JtdsResultSet {
                 }
                 columns = cursorTds.getColumns();
                 columnCount = getColumnCount(columns);
-                rowData = new ArrayList(INITIAL_ROW_COUNT);
+                rowData = newRowData(INITIAL_ROW_COUNT);
                 //
                 // Load result set into buffer
                 //
@@ -461,7 +491,7 @@ public class CachedResultSet extends JtdsResultSet {
                 }
                 columns = cursorTds.getColumns();
                 columnCount = getColumnCount(columns);
-                rowData = new ArrayList(INITIAL_ROW_COUNT);
+                rowData = newRowData(INITIAL_ROW_COUNT);
                 //
                 // Load result set into buffer
                 //
@@ -683,7 +713,7 @@ public class CachedResultSet extends JtdsResultSet {
             return false;
         }
         pos = rowNum;
-        currentRow = (Object[])rowData.get(rowNum-1);
+        currentRow = getCachedRow(rowNum-1);
         rowDeleted = currentRow == null;
 
         if (resultSetType >= ResultSet.TYPE_SCROLL_SENSITIVE &&
@@ -698,19 +728,22 @@ public class CachedResultSet extends JtdsResultSet {
      * Closes the result set.
      */
     private void cursorClose() throws SQLException {
-        if (cursorName != null) {
-            statement.clearWarnings();
-            String sql;
-            if (isSybase) {
-                sql = "CLOSE " + cursorName +
-                      "\r\nDEALLOCATE CURSOR " + cursorName;
-            } else {
-                sql = "CLOSE " + cursorName +
-                      "\r\nDEALLOCATE " + cursorName;
+        try {
+            if (cursorName != null) {
+                statement.clearWarnings();
+                String sql;
+                if (isSybase) {
+                    sql = "CLOSE " + cursorName +
+                          "\r\nDEALLOCATE CURSOR " + cursorName;
+                } else {
+                    sql = "CLOSE " + cursorName +
+                          "\r\nDEALLOCATE " + cursorName;
+                }
+                cursorTds.submitSQL(sql);
             }
-            cursorTds.submitSQL(sql);
+        } finally {
+            releaseRowData();
         }
-        rowData = null;
     }
 
     /**
@@ -829,6 +862,8 @@ public class CachedResultSet extends JtdsResultSet {
      */
     ParamInfo[] buildWhereClause(StringBuilder sql, ArrayList params, boolean select)
             throws SQLException {
+        // the current row is about to be used or changed
+        readPendingColumns();
         //
         // Now construct where clause
         //
@@ -931,6 +966,7 @@ public class CachedResultSet extends JtdsResultSet {
         TdsCore tds = statement.getTds();
         tds.executeSQL(sql.toString(), null, parameters, false, 0,
                 statement.getMaxRows(), statement.getMaxFieldSize(), true);
+        boolean changed = false;
         if (!tds.isEndOfResponse()) {
             if (tds.getMoreResults() && tds.getNextRow()) {
                 // refresh the row data
@@ -938,7 +974,11 @@ public class CachedResultSet extends JtdsResultSet {
                 count = 0;
                 for (int i = 0; i < columns.length; i++) {
                     if (!columns[i].isKey) {
-                        currentRow[i] = col[count++];
+                        if (!isSameValue(currentRow[i], col[count])) {
+                            currentRow[i] = col[count];
+                            changed = true;
+                        }
+                        count++;
                     }
                 }
             } else {
@@ -952,9 +992,33 @@ public class CachedResultSet extends JtdsResultSet {
         if (currentRow == null) {
             rowData.set(pos-1, null);
             rowDeleted = true;
+        } else if (changed) {
+            // write back the refreshed copy
+            rowData.set(pos-1, currentRow);
         }
     }
 
+    /**
+     * Check whether a refreshed column value equals the cached one.
+     *
+     * @param cached the cached value
+     * @param value  the value read from the server
+     * @return <code>true</code> if the values are equal
+     */
+    private static boolean isSameValue(Object cached, Object value) {
+        if (cached == null || value == null) {
+            return cached == value;
+        }
+        if (cached instanceof byte[] && value instanceof byte[]) {
+            return Arrays.equals((byte[]) cached, (byte[]) value);
+        }
+        if (cached instanceof DateTime && value instanceof DateTime) {
+            return ((DateTime) cached).getPackedDate() == ((DateTime) value).getPackedDate()
+                    && ((DateTime) cached).getPackedTime() == ((DateTime) value).getPackedTime();
+        }
+        return cached.equals(value);
+    }
+
     /**
      * Refreshes the row by rereading the result set.
      * <p/>
@@ -1341,6 +1405,10 @@ public class CachedResultSet extends JtdsResultSet {
                  }
              }
          }
+         if (rowData instanceof RowStore) {
+             // the current row is a copy, write back the changes
+             rowData.set(pos-1, currentRow);
+         }
          //
          // Update state of cached row data
          //
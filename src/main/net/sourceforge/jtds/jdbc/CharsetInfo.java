@@ -17,6 +17,9 @@
 //
 package net.sourceforge.jtds.jdbc;
 
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
 import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.Properties;
@@ -211,6 +214,17 @@ public final class CharsetInfo {
     private final String charset;
     /** Indicates whether current charset is wide (ie multi-byte). */
     private final boolean wideChars;
+    /**
+     * The Java charset, resolved on first use. Written after the tables, so
+     * a non-<code>null</code> value guarantees the tables are visible.
+     */
+    private volatile Charset javaCharset;
+    /** Byte to char table, only for single byte charsets. */
+    private char[] decodeTable;
+    /** Char to byte table, only for single byte charsets. */
+    private byte[] encodeTable;
+    /** Per thread cached encoder. */
+    private final ThreadLocal<CharsetEncoder> encoder = new ThreadLocal<CharsetEncoder>();
 
     /**
      * Constructs a <code>CharsetInfo</code> object from a character set
@@ -239,6 +253,170 @@ public final class CharsetInfo {
         return wideChars;
     }
 
+    /**
+     * Retrieves the Java <code>Charset</code>, falling back to the platform
+     * default charset if the charset is not supported by the JVM.
+     */
+    Charset getJavaCharset() {
+        init();
+        return javaCharset;
+    }
+
+    /**
+     * Retrieves the table mapping each byte value to its character, or
+     * <code>null</code> if the charset is not a single byte charset.
+     */
+    char[] getDecodeTable() {
+        init();
+        return decodeTable;
+    }
+
+    /**
+     * Retrieves the table mapping each character to its byte value, or
+     * <code>null</code> if the charset is not a single byte charset.
+     * Characters that cannot be mapped are replaced the same way
+     * <code>String.getBytes</code> replaces them. Surrogates must not be
+     * looked up in this table, as a surrogate pair is replaced by a single
+     * byte.
+     */
+    byte[] getEncodeTable() {
+        init();
+        return encodeTable;
+    }
+
+    /**
+     * Retrieves an encoder for this charset that replaces malformed and
+     * unmappable input. The encoder is cached per thread and reset before
+     * being returned, so it must not be kept beyond a single encoding
+     * operation.
+     */
+    CharsetEncoder getEncoder() {
+        CharsetEncoder enc = encoder.get();
+
+        if (enc == null) {
+            enc = getJavaCharset().newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            encoder.set(enc);
+        }
+
+        return enc.reset();
+    }
+
+    /**
+     * Decodes a byte array in this charset.
+     *
+     * @param b   the bytes to decode
+     * @param off the offset of the first byte
+     * @param len the number of bytes to decode
+     * @return the decoded <code>String</code>
+     */
+    String decode(byte[] b, int off, int len) {
+        char[] table = getDecodeTable();
+
+        if (table == null) {
+            return new String(b, off, len, javaCharset);
+        }
+
+        char[] chars = new char[len];
+
+        for (int i = 0; i < len; i++) {
+            chars[i] = table[b[off + i] & 0xFF];
+        }
+
+        return new String(chars);
+    }
+
+    /**
+     * Encodes a <code>String</code> in this charset.
+     *
+     * @param s the <code>String</code> to encode
+     * @return the encoded bytes
+     */
+    byte[] encode(String s) {
+        byte[] table = getEncodeTable();
+
+        if (table != null) {
+            int len = s.length();
+            byte[] b = new byte[len];
+
+            for (int i = 0; i < len; i++) {
+                char c = s.charAt(i);
+
+                if (Character.isSurrogate(c)) {
+                    return s.getBytes(javaCharset);
+                }
+
+                b[i] = table[c];
+            }
+
+            return b;
+        }
+
+        return s.getBytes(javaCharset);
+    }
+
+    /**
+     * Resolves the Java charset and, for single byte charsets, builds the
+     * lookup tables. Not all charsets described as single byte in
+     * <code>Charsets.properties</code> are single byte in the JVM (or
+     * supported at all), so the tables are only built if every byte value
+     * decodes to exactly one character and back.
+     * <p/>
+     * Called for every string read or written, so the lock is only taken
+     * until the charset has been resolved.
+     */
+    private void init() {
+        if (javaCharset == null) {
+            synchronized (this) {
+                if (javaCharset == null) {
+                    resolve();
+                }
+            }
+        }
+    }
+
+    /**
+     * Resolves the Java charset and builds the lookup tables, must be called
+     * with the lock held.
+     */
+    private void resolve() {
+        Charset cs;
+
+        try {
+            cs = Charset.forName(charset);
+        } catch (IllegalArgumentException e) {
+            cs = Charset.defaultCharset();
+        }
+
+        if (!wideChars && cs.newEncoder().maxBytesPerChar() == 1.0f) {
+            byte[] bytes = new byte[256];
+
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = (byte) i;
+            }
+
+            String chars = new String(bytes, cs);
+
+            if (chars.length() == bytes.length) {
+                char[] all = new char[0x10000];
+
+                for (int i = 0; i < all.length; i++) {
+                    all[i] = Character.isSurrogate((char) i) ? '?' : (char) i;
+                }
+
+                byte[] encoded = new String(all).getBytes(cs);
+
+                if (encoded.length == all.length) {
+                    decodeTable = chars.toCharArray();
+                    encodeTable = encoded;
+                }
+            }
+        }
+
+        javaCharset = cs;
+    }
+
     public boolean equals(Object o) {
         if (this == o) {
             return true;
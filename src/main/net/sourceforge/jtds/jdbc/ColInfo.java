@@ -97,6 +97,11 @@ public class ColInfo implements Cloneable
     */
    boolean     isHidden;
 
+   /**
+    * Column values are sent as TDS 7.2 partially length-prefixed chunks
+    */
+   boolean     isPLP;
+
    /**
     * Database ID for UDT
     */
@@ -180,6 +185,7 @@ public class ColInfo implements Cloneable
           && isIdentity      == o.isIdentity
           && isKey           == o.isKey
           && isHidden        == o.isHidden
+          && isPLP           == o.isPLP
 
           // compare non-primitive fields
           && compare( realName   , o.realName    )
@@ -188,6 +188,26 @@ public class DateTime {
         return (time == TIME_NOT_USED) ? 0 : time;
     }
 
+    /**
+     * Retrieves the date component as stored, which allows the value to be
+     * recreated with {@link #DateTime(int, int)}.
+     *
+     * @return the date component or {@link #DATE_NOT_USED}
+     */
+    int getPackedDate() {
+        return date;
+    }
+
+    /**
+     * Retrieves the time component as stored, which allows the value to be
+     * recreated with {@link #DateTime(int, int)}.
+     *
+     * @return the time component or {@link #TIME_NOT_USED}
+     */
+    int getPackedTime() {
+        return time;
+    }
+
     /**
      * Converts a Julian datetime from the Sybase epoch of 1900-01-01 to the
      * equivalent unpacked year/month/day etc.
@@ -254,17 +274,19 @@ public class DateTime {
             minute = 0;
             second = 0;
         } else {
-            int hours = time / 1080000;
-            time = time - hours * 1080000;
-            int minutes = time / 18000;
-            time = time - (minutes * 18000);
-            int seconds = time / 300;
-            time = time - seconds * 300;
-            time = Math.round(time * 1000 / 300f);
+            // work on a copy, the packed time must stay intact
+            int ticks = time;
+            int hours = ticks / 1080000;
+            ticks = ticks - hours * 1080000;
+            int minutes = ticks / 18000;
+            ticks = ticks - (minutes * 18000);
+            int seconds = ticks / 300;
+            ticks = ticks - seconds * 300;
+            ticks = Math.round(ticks * 1000 / 300f);
             hour = (short)hours;
             minute = (short)minutes;
             second = (short)seconds;
-            millis = (short)time;
+            millis = (short)ticks;
         }
         unpacked = true;
     }
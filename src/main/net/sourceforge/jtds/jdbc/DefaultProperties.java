@@ -73,12 +73,16 @@ public final class DefaultProperties {
     public static final String DATABASE_NAME = "";
     /** Default <code>instance</code> property. */
     public static final String INSTANCE = "";
+    /** Default <code>discardLimit</code> property. */
+    public static final String DISCARD_LIMIT = "0";
     /** Default <code>domain</code> property. */
     public static final String DOMAIN = "";
     /** Default <code>lastUpdateCount</code> property. */
     public static final String LAST_UPDATE_COUNT = "true";
     /** Default <code>lobBufferSize</code> property. */
     public static final String LOB_BUFFER_SIZE = "32768";
+    /** Default <code>lobPageSize</code> property. */
+    public static final String LOB_PAGE_SIZE = "8192";
     /** Default <code>loginTimeout</code> property. */
     public static final String LOGIN_TIMEOUT = "0";
     /** Default <code>macAddress</code> property. */
@@ -97,6 +101,10 @@ public final class DefaultProperties {
     public static final String PACKET_SIZE_50 = "0";
     /** Default <code>packetSize</code> property for TDS 7.0 and TDS 8.0. */
     public static final String PACKET_SIZE_70_80 = "0"; // server sets packet size
+    /** Default <code>packRows</code> property. */
+    public static final String PACK_ROWS = "false";
+    /** Default <code>parallelDecode</code> property. */
+    public static final String PARALLEL_DECODE = "false";
     /** Default <code>password</code> property. */
     public static final String PASSWORD = "";
     /** Default <code>portNumber</code> property for SQL Server. */
@@ -105,12 +113,18 @@ public final class DefaultProperties {
     public static final String PORT_NUMBER_SYBASE = "7100";
     /** Default <code>language</code> property. */
     public static final String LANGUAGE = "";
+    /** Default <code>prefetch</code> property. */
+    public static final String PREFETCH = "0";
+    /** Default <code>prefetchBytes</code> property. */
+    public static final String PREFETCH_BYTES = "0";
     /** Default <code>prepareSql</code> property for SQL Server. */
     public static final String PREPARE_SQLSERVER = String.valueOf(TdsCore.PREPARE);
     /** Default <code>prepareSql</code> property for Sybase. */
     public static final String PREPARE_SYBASE = String.valueOf(TdsCore.TEMPORARY_STORED_PROCEDURES);
     /** Default <code>progName</code> property. */
     public static final String PROG_NAME = "jTDS";
+    /** Default <code>rowBuffer</code> property. */
+    public static final String ROW_BUFFER = "0";
     /** Default <code>tcpNoDelay</code> property. */
     public static final String TCP_NODELAY = "true";
     /** Default <code>tmpDir</code> property. */
@@ -127,6 +141,22 @@ public final class DefaultProperties {
     public static final String USENTLMV2 = "false";
     /** Default <code>useKerberos</code> property. */
     public static final String USEKERBEROS = "false";
+    /** Default <code>useOutputInserted</code> property. */
+    public static final String USEOUTPUTINSERTED = "false";
+    /** Default <code>describeParameters</code> property. */
+    public static final String DESCRIBE_PARAMETERS = "false";
+    /** Default <code>metadataCacheSize</code> property. */
+    public static final String METADATA_CACHE_SIZE = "500";
+    /** Default <code>metadataCacheTTL</code> property. */
+    public static final String METADATA_CACHE_TTL = "0";
+    /** Default <code>loadBalance</code> property. */
+    public static final String LOAD_BALANCE = "leastOutstanding";
+    /** Default <code>readOnly</code> property. */
+    public static final String READ_ONLY = "false";
+    /** Default <code>replicas</code> property. */
+    public static final String REPLICAS = "";
+    /** Default <code>validationInterval</code> property. */
+    public static final String VALIDATION_INTERVAL = "1000";
     /** Default <code>user</code> property. */
     public static final String USER = "";
     /** Default <code>wsid</code> property. */
@@ -232,6 +262,9 @@ public final class DefaultProperties {
         addDefaultPropertyIfNotSet(props, Driver.BATCHSIZE, Driver.SERVERTYPE, batchSizeDefaults);
         addDefaultPropertyIfNotSet(props, Driver.LASTUPDATECOUNT, LAST_UPDATE_COUNT);
         addDefaultPropertyIfNotSet(props, Driver.LOBBUFFER, LOB_BUFFER_SIZE);
+        addDefaultPropertyIfNotSet(props, Driver.LOBPAGESIZE, LOB_PAGE_SIZE);
+        addDefaultPropertyIfNotSet(props, Driver.ROWBUFFER, ROW_BUFFER);
+        addDefaultPropertyIfNotSet(props, Driver.PACKROWS, PACK_ROWS);
         addDefaultPropertyIfNotSet(props, Driver.LOGINTIMEOUT, LOGIN_TIMEOUT);
         addDefaultPropertyIfNotSet(props, Driver.SOTIMEOUT, SOCKET_TIMEOUT);
         addDefaultPropertyIfNotSet(props, Driver.SOKEEPALIVE, SOCKET_KEEPALIVE);
@@ -244,6 +277,10 @@ public final class DefaultProperties {
         addDefaultPropertyIfNotSet(props, Driver.CHARSET, CHARSET);
         addDefaultPropertyIfNotSet(props, Driver.LANGUAGE, LANGUAGE);
         addDefaultPropertyIfNotSet(props, Driver.PREPARESQL, Driver.SERVERTYPE, prepareSQLDefaults);
+        addDefaultPropertyIfNotSet(props, Driver.PREFETCH, PREFETCH);
+        addDefaultPropertyIfNotSet(props, Driver.PREFETCHBYTES, PREFETCH_BYTES);
+        addDefaultPropertyIfNotSet(props, Driver.PARALLELDECODE, PARALLEL_DECODE);
+        addDefaultPropertyIfNotSet(props, Driver.DISCARDLIMIT, DISCARD_LIMIT);
         addDefaultPropertyIfNotSet(props, Driver.SENDSTRINGPARAMETERSASUNICODE, USE_UNICODE);
         addDefaultPropertyIfNotSet(props, Driver.TCPNODELAY, TCP_NODELAY);
         addDefaultPropertyIfNotSet(props, Driver.XAEMULATION, XAEMULATION);
@@ -252,6 +289,14 @@ public final class DefaultProperties {
         addDefaultPropertyIfNotSet(props, Driver.USECURSORS, USECURSORS);
         addDefaultPropertyIfNotSet(props, Driver.USENTLMV2, USENTLMV2);
         addDefaultPropertyIfNotSet(props, Driver.USEKERBEROS, USEKERBEROS);
+        addDefaultPropertyIfNotSet(props, Driver.USEOUTPUTINSERTED, USEOUTPUTINSERTED);
+        addDefaultPropertyIfNotSet(props, Driver.DESCRIBEPARAMS, DESCRIBE_PARAMETERS);
+        addDefaultPropertyIfNotSet(props, Driver.METADATACACHESIZE, METADATA_CACHE_SIZE);
+        addDefaultPropertyIfNotSet(props, Driver.METADATACACHETTL, METADATA_CACHE_TTL);
+        addDefaultPropertyIfNotSet(props, Driver.LOADBALANCE, LOAD_BALANCE);
+        addDefaultPropertyIfNotSet(props, Driver.READONLY, READ_ONLY);
+        addDefaultPropertyIfNotSet(props, Driver.REPLICAS, REPLICAS);
+        addDefaultPropertyIfNotSet(props, Driver.VALIDATIONINTERVAL, VALIDATION_INTERVAL);
         addDefaultPropertyIfNotSet(props, Driver.BUFFERMAXMEMORY, BUFFER_MAX_MEMORY);
         addDefaultPropertyIfNotSet(props, Driver.BUFFERMINPACKETS, BUFFER_MIN_PACKETS);
         addDefaultPropertyIfNotSet(props, Driver.USELOBS, USELOBS);
@@ -394,8 +439,8 @@ public final class DefaultProperties {
             return new Integer(Driver.TDS70);
         } else if (DefaultProperties.TDS_VERSION_80.equals(tdsVersion)) {
             return new Integer(Driver.TDS80);
-//        } else if (DefaultProperties.TDS_VERSION_90.equals(tdsVersion)) {
-//            return new Integer(Driver.TDS90);
+        } else if (DefaultProperties.TDS_VERSION_90.equals(tdsVersion)) {
+            return new Integer(Driver.TDS90);
         }
         return null;
     }
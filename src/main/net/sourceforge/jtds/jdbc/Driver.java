@@ -86,21 +86,28 @@ public class Driver implements java.sql.Driver {
     public static final String CACHEMETA     = "prop.cachemetadata";
     public static final String CHARSET       = "prop.charset";
     public static final String DATABASENAME  = "prop.databasename";
+    public static final String DISCARDLIMIT  = "prop.discardlimit";
     public static final String DOMAIN        = "prop.domain";
     public static final String INSTANCE      = "prop.instance";
     public static final String LANGUAGE      = "prop.language";
     public static final String LASTUPDATECOUNT = "prop.lastupdatecount";
     public static final String LOBBUFFER     = "prop.lobbuffer";
+    public static final String LOBPAGESIZE   = "prop.lobpagesize";
     public static final String LOGFILE       = "prop.logfile";
     public static final String LOGINTIMEOUT  = "prop.logintimeout";
     public static final String MACADDRESS    = "prop.macaddress";
     public static final String MAXSTATEMENTS = "prop.maxstatements";
     public static final String NAMEDPIPE     = "prop.namedpipe";
     public static final String PACKETSIZE    = "prop.packetsize";
+    public static final String PACKROWS      = "prop.packrows";
+    public static final String PARALLELDECODE = "prop.paralleldecode";
     public static final String PASSWORD      = "prop.password";
     public static final String PORTNUMBER    = "prop.portnumber";
+    public static final String PREFETCH      = "prop.prefetch";
+    public static final String PREFETCHBYTES = "prop.prefetchbytes";
     public static final String PREPARESQL    = "prop.preparesql";
     public static final String PROGNAME      = "prop.progname";
+    public static final String ROWBUFFER     = "prop.rowbuffer";
     public static final String SERVERNAME    = "prop.servername";
     public static final String SERVERTYPE    = "prop.servertype";
     public static final String SOTIMEOUT     = "prop.sotimeout";
@@ -113,6 +120,14 @@ public class Driver implements java.sql.Driver {
     public static final String USEJCIFS      = "prop.usejcifs";
     public static final String USENTLMV2     = "prop.usentlmv2";
     public static final String USEKERBEROS   = "prop.usekerberos";
+    public static final String USEOUTPUTINSERTED = "prop.useoutputinserted";
+    public static final String DESCRIBEPARAMS  = "prop.describeparameters";
+    public static final String METADATACACHESIZE  = "prop.metadatacachesize";
+    public static final String METADATACACHETTL  = "prop.metadatacachettl";
+    public static final String LOADBALANCE   = "prop.loadbalance";
+    public static final String READONLY      = "prop.readonly";
+    public static final String REPLICAS      = "prop.replicas";
+    public static final String VALIDATIONINTERVAL  = "prop.validationinterval";
     public static final String USELOBS       = "prop.uselobs";
     public static final String USER          = "prop.user";
     public static final String SENDSTRINGPARAMETERSASUNICODE = "prop.useunicode";
@@ -175,13 +190,38 @@ public class Driver implements java.sql.Driver {
 
     public Connection connect(String url, Properties info)
         throws SQLException  {
+        return connect(url, info, null, null);
+    }
+
+    /**
+     * Attempts to make a database connection to the given URL, sharing the
+     * results of previous logins and metadata queries cached by a DataSource.
+     *
+     * @param url           the URL of the database to which to connect
+     * @param info          the connection properties
+     * @param cache         the login cache or <code>null</code>
+     * @param metaDataCache the metadata cache or <code>null</code>
+     * @return a connection to the URL or <code>null</code> if the URL is not
+     *         handled by this driver
+     * @throws SQLException if a database access error occurs
+     */
+    public Connection connect(String url, Properties info, LoginCache cache,
+                              MetaDataCache metaDataCache)
+        throws SQLException  {
         if (url == null || !url.toLowerCase().startsWith(driverPrefix)) {
             return null;
         }
 
         Properties props = setupConnectProperties(url, info);
 
-        return new JtdsConnection(url, props);
+        // Route connections with read-only intent to a read replica
+        String replicas = props.getProperty(Messages.get(REPLICAS));
+        if (replicas != null && replicas.trim().length() > 0
+                && "true".equalsIgnoreCase(props.getProperty(Messages.get(READONLY)))) {
+            return ReplicaBalancer.connect(url, props, cache, metaDataCache);
+        }
+
+        return new JtdsConnection(url, props, cache, metaDataCache);
     }
 
     public DriverPropertyInfo[] getPropertyInfo(final String url, final Properties props)
@@ -274,6 +314,9 @@ public class Driver implements java.sql.Driver {
         choicesMap.put(Messages.get(Driver.SENDSTRINGPARAMETERSASUNICODE), booleanChoices);
         choicesMap.put(Messages.get(Driver.USECURSORS), booleanChoices);
         choicesMap.put(Messages.get(Driver.USELOBS), booleanChoices);
+        choicesMap.put(Messages.get(Driver.USEOUTPUTINSERTED), booleanChoices);
+        choicesMap.put(Messages.get(Driver.DESCRIBEPARAMS), booleanChoices);
+        choicesMap.put(Messages.get(Driver.READONLY), booleanChoices);
         choicesMap.put(Messages.get(Driver.XAEMULATION), booleanChoices);
 
         final String[] prepareSqlChoices = new String[]{
@@ -295,6 +338,7 @@ public class Driver implements java.sql.Driver {
             DefaultProperties.TDS_VERSION_50,
             DefaultProperties.TDS_VERSION_70,
             DefaultProperties.TDS_VERSION_80,
+            DefaultProperties.TDS_VERSION_90,
         };
         choicesMap.put(Messages.get(Driver.TDS), tdsChoices);
 
@@ -0,0 +1,220 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+//
+package net.sourceforge.jtds.jdbc;
+
+import java.sql.SQLException;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import net.sourceforge.jtds.util.Logger;
+
+/**
+ * <p> Cache of the TCP ports named SQL Server instances are listening on, as
+ * resolved by querying the SQL Server Browser service via
+ * {@link MSSqlServerInfo}. </p>
+ *
+ * <p> A resolved port is kept for a limited time. Once half of that time has
+ * elapsed, the next lookup still returns the cached port but refreshes the
+ * entry in a background thread, so that connections to frequently used
+ * instances do not wait for the UDP round trip. Entries should be invalidated
+ * if connecting to the cached port fails, the instance may have been
+ * restarted with a different dynamic port. Failed lookups are not cached. </p>
+ */
+final class InstancePortCache
+{
+
+   /**
+    * time in milliseconds a resolved port is kept, 10 minutes
+    */
+   static final long                               DEFAULT_TTL = 10 * 60 * 1000;
+
+   /**
+    * the process-wide cache used by all connections
+    */
+   private static final InstancePortCache          _Instance   = new InstancePortCache( DEFAULT_TTL );
+
+   private final ConcurrentHashMap<String,Entry>   _Entries    = new ConcurrentHashMap<>();
+
+   private final long                              _TTL;
+
+   /**
+    * Creates a new cache.
+    *
+    * @param ttl
+    *    time in milliseconds a resolved port is kept
+    */
+   InstancePortCache( long ttl )
+   {
+      _TTL = ttl;
+   }
+
+   /**
+    * Returns the process-wide cache.
+    */
+   static InstancePortCache getInstance()
+   {
+      return _Instance;
+   }
+
+   /**
+    * <p> Returns the port the given instance is listening on, querying the
+    * SQL Server Browser service if the port is not cached or has expired. </p>
+    *
+    * @param host
+    *    the host name of the server
+    *
+    * @param browserPort
+    *    the UDP port of the SQL Server Browser service
+    *
+    * @param instance
+    *    the instance name
+    *
+    * @return
+    *    the port or -1 if the instance is unknown to the server
+    *
+    * @throws SQLException
+    *    if the SQL Server Browser service could not be queried
+    */
+   int getPort( String host, int browserPort, String instance )
+      throws SQLException
+   {
+      String key = key( host, browserPort, instance );
+      Entry entry = _Entries.get( key );
+
+      if( entry != null )
+      {
+         long age = System.currentTimeMillis() - entry._Resolved;
+
+         if( age < _TTL )
+         {
+            if( age >= _TTL / 2 )
+            {
+               refresh( key, entry, host, browserPort, instance );
+            }
+
+            return entry._Port;
+         }
+      }
+
+      return resolve( key, host, browserPort, instance );
+   }
+
+   /**
+    * <p> Removes a cached port, e.g. because connecting to it failed. </p>
+    *
+    * @param host
+    *    the host name of the server
+    *
+    * @param browserPort
+    *    the UDP port of the SQL Server Browser service
+    *
+    * @param instance
+    *    the instance name
+    */
+   void invalidate( String host, int browserPort, String instance )
+   {
+      if( _Entries.remove( key( host, browserPort, instance ) ) != null && Logger.isActive() )
+      {
+         Logger.println( "Invalidated cached port of instance " + instance + " on " + host );
+      }
+   }
+
+   /**
+    * Queries the SQL Server Browser service and updates the cache.
+    */
+   private int resolve( String key, String host, int browserPort, String instance )
+      throws SQLException
+   {
+      int port = new MSSqlServerInfo( host, browserPort ).getPortForInstance( instance );
+
+      if( port > 0 )
+      {
+         _Entries.put( key, new Entry( port ) );
+      }
+      else
+      {
+         _Entries.remove( key );
+      }
+
+      return port;
+   }
+
+   /**
+    * Starts a background refresh of an entry, unless one is already running.
+    */
+   private void refresh( final String key, final Entry entry, final String host, final int browserPort, final String instance )
+   {
+      if( ! entry._Refreshing.compareAndSet( false, true ) )
+      {
+         return;
+      }
+
+      Thread refresher = new Thread( "jTDS instance port refresh" )
+      {
+         public void run()
+         {
+            try
+            {
+               resolve( key, host, browserPort, instance );
+            }
+            catch( SQLException e )
+            {
+               // keep using the cached port until it expires
+               if( Logger.isActive() )
+               {
+                  Logger.logException( e );
+               }
+            }
+            finally
+            {
+               entry._Refreshing.set( false );
+            }
+         }
+      };
+
+      refresher.setDaemon( true );
+      refresher.start();
+   }
+
+   private static String key( String host, int browserPort, String instance )
+   {
+      // instance names are not case sensitive, see MSSqlServerInfo
+      return host.toLowerCase( Locale.ENGLISH ) + ':' + browserPort + '\\' + ( instance == null ? "" : instance.toUpperCase( Locale.ENGLISH ) );
+   }
+
+   /**
+    * A resolved port.
+    */
+   private static final class Entry
+   {
+
+      final int           _Port;
+
+      final long          _Resolved   = System.currentTimeMillis();
+
+      final AtomicBoolean _Refreshing = new AtomicBoolean();
+
+      Entry( int port )
+      {
+         _Port = port;
+      }
+
+   }
+
+}
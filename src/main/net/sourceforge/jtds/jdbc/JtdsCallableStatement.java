@@ -26,8 +26,10 @@ import java.sql.Array;
 import java.sql.Blob;
 import java.sql.CallableStatement;
 import java.sql.Clob;
+import java.sql.DatabaseMetaData;
 import java.sql.Date;
 import java.sql.NClob;
+import java.sql.ParameterMetaData;
 import java.sql.Ref;
 import java.sql.RowId;
 import java.sql.SQLException;
@@ -38,6 +40,8 @@ import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Map;
 
+import net.sourceforge.jtds.util.Logger;
+
 /**
  * jTDS implementation of the java.sql.CallableStatement interface.
  *<p>
@@ -55,6 +59,10 @@ import java.util.Map;
 public class JtdsCallableStatement extends JtdsPreparedStatement implements CallableStatement {
     /** Last parameter retrieved was null. */
     protected boolean paramWasNull;
+    /** Parameters declared by the procedure, <code>null</code> if not yet retrieved. */
+    private ParamInfo[] declaredParameters;
+    /** Set while retrieving declared parameters, which itself calls a procedure. */
+    private static final ThreadLocal<Boolean> loadingParameters = new ThreadLocal<Boolean>();
 
     /**
      * Construct a CallableStatement object.
@@ -139,6 +147,223 @@ public class JtdsCallableStatement extends JtdsPreparedStatement implements Call
         }
     }
 
+    /**
+     * Find the type declared by the procedure for a parameter.
+     */
+    @Override
+    ParamInfo getDescribedParameter(int index) throws SQLException {
+        return getDeclaredParameter(index, false);
+    }
+
+    /**
+     * Retrieve the parameter meta data. For SQL Server the types declared by
+     * the procedure are returned.
+     */
+    @Override
+    public ParameterMetaData getParameterMetaData() throws SQLException {
+        checkOpen();
+
+        ParamInfo[] described = new ParamInfo[parameters.length];
+        boolean found = false;
+
+        for (int i = 0; i < parameters.length; i++) {
+            ParamInfo declared = getDeclaredParameter(i, true);
+            if (declared == null) {
+                described[i] = parameters[i];
+            } else {
+                described[i] = (ParamInfo) declared.clone();
+                described[i].isSet = parameters[i].isSet;
+                described[i].isOutput = declared.isOutput || parameters[i].isOutput;
+                found = true;
+            }
+        }
+
+        if (!found) {
+            return super.getParameterMetaData();
+        }
+
+        return new ParameterMetaDataImpl(described, connection);
+    }
+
+    /**
+     * Find the declaration of a parameter. Named parameters are matched by
+     * name, others by position.
+     *
+     * @param index the zero based index of the parameter
+     * @param force retrieve the declared parameters even if metadata is not
+     *              cached
+     * @return the declared parameter or <code>null</code> if not known
+     */
+    private ParamInfo getDeclaredParameter(int index, boolean force)
+            throws SQLException {
+        if (declaredParameters == null) {
+            if (procName == null || procName.length() == 0
+                    || connection.getServerType() != Driver.SQLSERVER
+                    || (!force && connection.getMetaDataCache() == null)
+                    || loadingParameters.get() != null) {
+                // Retrieving the declared parameters costs a round trip for
+                // each statement unless the metadata cache is enabled
+                return null;
+            }
+
+            loadingParameters.set(Boolean.TRUE);
+            try {
+                declaredParameters = loadDeclaredParameters();
+            } catch (SQLException e) {
+                // Missing permissions etc., just use the types set
+                if (Logger.isActive()) {
+                    Logger.println("Parameters of " + procName + " unknown: " + e.getMessage());
+                }
+                declaredParameters = new ParamInfo[0];
+            } finally {
+                loadingParameters.remove();
+            }
+        }
+
+        ParamInfo pi = parameters[index];
+        int pos = index - (parameters.length > 0 && parameters[0].isRetVal ? 1 : 0);
+
+        for (int i = 0, p = 0; i < declaredParameters.length; i++) {
+            ParamInfo declared = declaredParameters[i];
+            if (pi.isRetVal || declared.isRetVal) {
+                if (pi.isRetVal && declared.isRetVal) {
+                    return declared;
+                }
+            } else if (pi.name != null) {
+                if (pi.name.equalsIgnoreCase(declared.name)) {
+                    return declared;
+                }
+            } else if (p++ == pos) {
+                return declared;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Retrieve the parameters declared by the procedure called. The
+     * procedure columns are obtained from the database meta data and
+     * therefore cached along with it.
+     *
+     * @return the declared parameters, an empty array if not available
+     */
+    private ParamInfo[] loadDeclaredParameters() throws SQLException {
+        String[] name = splitProcName(procName);
+
+        if (name == null) {
+            return new ParamInfo[0];
+        }
+
+        java.sql.ResultSet rs = connection.getMetaData().getProcedureColumns(
+                name[0], escapePattern(name[1]), escapePattern(name[2]), null);
+        ArrayList list = new ArrayList();
+        String schema = null;
+
+        try {
+            while (rs.next()) {
+                if (!name[2].equalsIgnoreCase(rs.getString(3))) {
+                    continue;
+                }
+                // Without a schema the name may be ambiguous
+                String procSchema = rs.getString(2);
+                if (schema == null) {
+                    schema = procSchema;
+                } else if (!schema.equalsIgnoreCase(procSchema)) {
+                    return new ParamInfo[0];
+                }
+
+                int mode = rs.getInt(5);
+                ParamInfo pi = new ParamInfo(rs.getString(4), -1,
+                        mode == DatabaseMetaData.procedureColumnReturn, false);
+                pi.jdbcType = rs.getInt(6);
+                pi.sqlType = rs.getString(7);
+                pi.precision = rs.getInt(8);
+                pi.scale = rs.getInt(10);
+                pi.isOutput = mode != DatabaseMetaData.procedureColumnIn;
+                pi.isUnicode = isCharacter(pi.jdbcType) && pi.sqlType != null
+                        && pi.sqlType.toLowerCase().startsWith("n");
+                list.add(pi);
+            }
+        } finally {
+            rs.close();
+        }
+
+        return (ParamInfo[]) list.toArray(new ParamInfo[list.size()]);
+    }
+
+    /**
+     * Split a procedure name into its catalog, schema and name, removing
+     * quotes and a procedure number.
+     *
+     * @param procName the procedure name as used in the call
+     * @return the catalog, schema (each may be <code>null</code>) and name or
+     *         <code>null</code> if the name refers to a linked server or a
+     *         temporary procedure
+     */
+    static String[] splitProcName(String procName) {
+        ArrayList parts = new ArrayList();
+        StringBuilder part = new StringBuilder();
+        char quote = 0;
+
+        for (int i = 0; i < procName.length(); i++) {
+            char c = procName.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    if (i + 1 < procName.length() && procName.charAt(i + 1) == quote) {
+                        part.append(c);
+                        i++;
+                    } else {
+                        quote = 0;
+                    }
+                } else {
+                    part.append(c);
+                }
+            } else if (c == '[') {
+                quote = ']';
+            } else if (c == '"') {
+                quote = '"';
+            } else if (c == '.') {
+                parts.add(part.length() == 0 ? null : part.toString());
+                part.setLength(0);
+            } else if (c == ';') {
+                // Procedure number, ignored
+                break;
+            } else {
+                part.append(c);
+            }
+        }
+        parts.add(part.toString());
+
+        if (parts.size() > 3 || part.length() == 0 || part.charAt(0) == '#') {
+            return null;
+        }
+
+        String[] name = new String[3];
+        for (int i = 0; i < parts.size(); i++) {
+            name[3 - parts.size() + i] = (String) parts.get(i);
+        }
+        return name;
+    }
+
+    /**
+     * Escape the search pattern characters in a name.
+     */
+    private static String escapePattern(String name) {
+        if (name == null) {
+            return null;
+        }
+        StringBuilder buf = new StringBuilder(name.length() + 4);
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '%' || c == '_' || c == '[' || c == '\\') {
+                buf.append('\\');
+            }
+            buf.append(c);
+        }
+        return buf.toString();
+    }
+
    /**
     * Execute the SQL batch on a MS server.
     *
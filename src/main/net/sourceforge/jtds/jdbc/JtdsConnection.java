@@ -25,11 +25,13 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.HashSet;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import net.sourceforge.jtds.jdbc.cache.*;
 import net.sourceforge.jtds.util.*;
@@ -87,6 +89,14 @@ public class JtdsConnection implements java.sql.Connection {
                                                          "SET IMPLICIT_TRANSACTIONS OFF\r\n" +
                                                          "SET QUOTED_IDENTIFIER ON\r\n"+
                                                          "SET TEXTSIZE 2147483647";
+    /**
+     * SQL Server session restore string, sent together with a session reset
+     * to restore the settings made by {@link #SQL_SERVER_INITIAL_SQL}. The
+     * text size is restored separately by the first statement executed.
+     */
+    static final String SQL_SERVER_RESET_SQL = "SET TRANSACTION ISOLATION LEVEL READ COMMITTED\r\n" +
+                                               "SET IMPLICIT_TRANSACTIONS OFF\r\n" +
+                                               "SET QUOTED_IDENTIFIER ON\r\n";
     /**
      * SQL Server custom transaction isolation level.
      */
@@ -160,8 +170,27 @@ public class JtdsConnection implements java.sql.Connection {
     private int transactionIsolation = java.sql.Connection.TRANSACTION_READ_COMMITTED;
     /** Default auto commit state. */
     private volatile boolean autoCommit = true;
+    /** The transaction isolation level in effect on the server. */
+    private int serverTransactionIsolation = java.sql.Connection.TRANSACTION_READ_COMMITTED;
+    /** The auto commit state in effect on the server. */
+    private boolean serverAutoCommit = true;
+    /**
+     * Guards the pending session state. Not the connection itself, because
+     * the state is taken by the protocol while holding the connection mutex.
+     */
+    private final Object sessionStateLock = new Object();
     /** Diagnostc messages for this connection. */
     private final SQLDiagnostic messages;
+    /** The read replica metrics if connected to a replica, else <code>null</code>. */
+    private ReplicaBalancer.Replica replica;
+    /** Login results shared with the other connections of a DataSource. */
+    private LoginCache loginCache;
+    /** Cached metadata results, possibly shared by a DataSource. */
+    private MetaDataCache metaDataCache;
+    /** Duration of the last round trip made by <code>isValid()</code>. */
+    private volatile long validationLatency;
+    /** True if the session has been reset but the server not yet told. */
+    private final AtomicBoolean resetPending = new AtomicBoolean();
     /** Connection's current rowcount limit. */
     private int rowCount;
     /** Connection's current maximum field size limit. */
@@ -180,10 +209,18 @@ public class JtdsConnection implements java.sql.Connection {
     private int prepareSql;
     /** The amount of LOB data to buffer in memory. */
     private long lobBuffer;
+    /** The page size of LOB data cached to disk. */
+    private int lobPageSize;
+    /** The amount of memory encoded cached rows may use before spilling to disk. */
+    private long rowBuffer;
+    /** Keep cached rows in a compact encoding. */
+    private boolean packRows;
     /** The maximum number of statements to keep open. */
     private int maxStatements;
     /** Statement cache.*/
     private StatementCache statementCache;
+    /** Parameter types inferred by the server, keyed by catalog and SQL. */
+    private Map<String,ParamInfo[]> describedParameters;
     /** Send parameters as unicode. */
     private boolean useUnicode = true;
     /** Use named pipe IPC instead of TCP/IP sockets. */
@@ -226,6 +263,14 @@ public class JtdsConnection implements java.sql.Connection {
     private int bufferMaxMemory;
     /** The minimum number of packets per statement to buffer to memory. */
     private int bufferMinPackets;
+    /** The number of response packets to read ahead in the background. */
+    private int prefetch;
+    /** The number of response bytes to read ahead in the background. */
+    private int prefetchBytes;
+    /** Decode the rows of large results on several threads. */
+    private boolean parallelDecode;
+    /** The number of unread rows to skip before cancelling discarded results. */
+    private int discardLimit;
     /** Map large types (IMAGE and TEXT/NTEXT) to LOBs by default. */
     private boolean useLOBs;
     /** A cached <code>TdsCore</code> instance to reuse on new statements. */
@@ -238,6 +283,18 @@ public class JtdsConnection implements java.sql.Connection {
     private boolean useNTLMv2 = false;
     /** Force Kerberos authentication */
     private boolean useKerberos = false;
+    /** Return generated keys via an <code>OUTPUT INSERTED</code> clause. */
+    private boolean useOutputInserted;
+    /** Use the parameter types inferred by the server. */
+    private boolean describeParameters;
+    /** Maximum number of cached metadata results. */
+    private int metadataCacheSize;
+    /** Time in seconds metadata results are cached. */
+    private int metadataCacheTTL;
+    /** True if connections are opened read-only. */
+    private boolean readOnlyIntent;
+    /** Time in ms after a server response during which <code>isValid()</code> does not contact the server. */
+    private int validationInterval;
 
     /** the number of currently open connections */
     private static int[] connections = new int[1];
@@ -272,6 +329,23 @@ public class JtdsConnection implements java.sql.Connection {
      */
     JtdsConnection(String url, Properties info)
             throws SQLException {
+        this(url, info, null, null);
+    }
+
+    /**
+     * Create a new database connection.
+     *
+     * @param url The connection URL starting jdbc:jtds:.
+     * @param info The additional connection properties.
+     * @param loginCache The login cache of the DataSource or <code>null</code>.
+     * @param metaDataCache The metadata cache of the DataSource or
+     *                      <code>null</code>.
+     * @throws SQLException
+     */
+    JtdsConnection(String url, Properties info, LoginCache loginCache,
+                   MetaDataCache metaDataCache)
+            throws SQLException {
+        this.loginCache = loginCache;
         synchronized( connections ) {
             connections[0] ++;
         }
@@ -280,16 +354,23 @@ public class JtdsConnection implements java.sql.Connection {
         // Extract properties into instance variables
         //
         unpackProperties(info);
+        // Connections not opened by a DataSource cache metadata on their own
+        if (metaDataCache == null && metadataCacheTTL > 0) {
+            metaDataCache = new MetaDataCache(metadataCacheTTL * 1000L, metadataCacheSize);
+        }
+        this.metaDataCache = metaDataCache;
         messages = new SQLDiagnostic(serverType);
         //
         // Get the instance port, if it is specified.
         // Named pipes use instance names differently.
         //
+        boolean browserPort = false;
+
         if (instanceName.length() > 0 && !namedPipe) {
             try {
-                final MSSqlServerInfo msInfo = new MSSqlServerInfo(serverName);
-
-                portNumber = msInfo.getPortForInstance(instanceName);
+                portNumber = InstancePortCache.getInstance().getPort(
+                        serverName, MSSqlServerInfo.BROWSER_PORT, instanceName);
+                browserPort = true;
             } catch (SQLException e) {
                // may already have a valid portNumber but Microsoft SQL Server Browser disabled
                if (portNumber <= 0) {
@@ -328,7 +409,16 @@ public class JtdsConnection implements java.sql.Connection {
                 socket = createNamedPipe(this);
             } else {
                 // Use plain TCP/IP socket
-                socket = new SharedSocket(this);
+                try {
+                    socket = new SharedSocket(this);
+                } catch (IOException e) {
+                    // The instance may be listening on another port by now
+                    if (browserPort) {
+                        InstancePortCache.getInstance().invalidate(
+                                serverName, MSSqlServerInfo.BROWSER_PORT, instanceName);
+                    }
+                    throw e;
+                }
             }
 
             if( macAddress.equals( DefaultProperties.MAC_ADDRESS ) )
@@ -387,6 +477,13 @@ public class JtdsConnection implements java.sql.Connection {
             //
             warn = messages.warnings;
 
+            // Local named pipes cannot be written while being read by
+            // another thread, which would block cancels
+            if (!namedPipe) {
+                socket.setPrefetch(prefetch);
+                socket.setPrefetchBytes(prefetchBytes);
+            }
+
             // Update the tdsVersion with the value in baseTds. baseTds sets
             // the TDS version for the socket and there are no other objects
             // with cached TDS versions at this point.
@@ -793,12 +890,158 @@ public class JtdsConnection implements java.sql.Connection {
         }
     }
 
+    /**
+     * Retrieve the parameter types the server infers for a prepared
+     * statement, using <code>sp_describe_undeclared_parameters</code>. The
+     * result is cached per catalog and statement, so the server is only asked
+     * once for each statement.
+     *
+     * @param sql the SQL statement with <code>?</code> parameter markers
+     * @param params the parameters of the statement
+     * @return the inferred parameters indexed like <code>params</code>, an
+     *         element is <code>null</code> if its type is unknown; or
+     *         <code>null</code> if parameters are not described
+     */
+    synchronized ParamInfo[] describeParameters(String sql, ParamInfo[] params) {
+        if (!describeParameters
+                || serverType != Driver.SQLSERVER
+                || databaseMajorVersion < 11
+                || params.length == 0
+                || closed) {
+            return null;
+        }
+
+        if (describedParameters == null) {
+            final int maxSize = maxStatements > 0 ? Math.min(maxStatements, 1000) : 100;
+            describedParameters = new LinkedHashMap<String,ParamInfo[]>(16, 0.75f, true) {
+                protected boolean removeEldestEntry(Map.Entry<String,ParamInfo[]> eldest) {
+                    return size() > maxSize;
+                }
+            };
+        }
+
+        String key;
+        try {
+            key = getCatalog() + '\0' + sql;
+        } catch (SQLException e) {
+            return null;
+        }
+
+        ParamInfo[] described = describedParameters.get(key);
+
+        if (described == null) {
+            described = new ParamInfo[params.length];
+
+            String tsql = Support.substituteParamMarkers(sql, params);
+            Statement stmt = null;
+            try {
+                stmt = createStatement();
+                ResultSet rs = stmt.executeQuery(
+                        "EXEC sp_describe_undeclared_parameters N'"
+                        + tsql.replace("'", "''") + '\'');
+
+                while (rs.next()) {
+                    String name = rs.getString(2);
+                    int index = Integer.parseInt(name.substring(2));
+                    if (index >= 0 && index < params.length) {
+                        described[index] = describeParameter(name,
+                                rs.getString(4), rs.getInt(5),
+                                rs.getInt(6), rs.getInt(7));
+                    }
+                }
+            } catch (SQLException e) {
+                // The types of some parameters cannot be inferred, keep the
+                // types derived from the values
+                if (Logger.isActive()) {
+                    Logger.println("Parameters of " + sql + " not described: " + e.getMessage());
+                }
+            } catch (NumberFormatException e) {
+                // Not one of our parameters
+            } finally {
+                if (stmt != null) {
+                    try {
+                        stmt.close();
+                    } catch (SQLException e) {
+                        // Ignore
+                    }
+                }
+            }
+
+            describedParameters.put(key, described);
+        }
+
+        return described;
+    }
+
+    /**
+     * Create a parameter descriptor from a type inferred by the server.
+     *
+     * @param name the parameter name
+     * @param typeName the SQL type name eg <code>varchar(50)</code>
+     * @param maxLength the maximum length in bytes, -1 for <code>max</code>
+     * @param precision the precision of numeric types
+     * @param scale the scale of numeric types
+     * @return the parameter descriptor
+     */
+    private static ParamInfo describeParameter(String name, String typeName,
+                                               int maxLength, int precision,
+                                               int scale) {
+        String baseName = typeName.toLowerCase();
+        int paren = baseName.indexOf('(');
+        if (paren > 0) {
+            baseName = baseName.substring(0, paren);
+        }
+
+        ParamInfo pi = new ParamInfo(name, -1, false, false);
+        pi.sqlType = typeName;
+        pi.precision = precision;
+        pi.scale = scale;
+
+        if ("char".equals(baseName) || "nchar".equals(baseName)) {
+            pi.jdbcType = Types.CHAR;
+        } else if ("varchar".equals(baseName) || "nvarchar".equals(baseName)) {
+            pi.jdbcType = Types.VARCHAR;
+        } else if ("text".equals(baseName) || "ntext".equals(baseName)) {
+            pi.jdbcType = Types.LONGVARCHAR;
+        } else if ("tinyint".equals(baseName)) {
+            pi.jdbcType = Types.TINYINT;
+        } else if ("smallint".equals(baseName)) {
+            pi.jdbcType = Types.SMALLINT;
+        } else if ("int".equals(baseName)) {
+            pi.jdbcType = Types.INTEGER;
+        } else if ("bigint".equals(baseName)) {
+            pi.jdbcType = Types.BIGINT;
+        } else if ("real".equals(baseName)) {
+            pi.jdbcType = Types.REAL;
+        } else if ("float".equals(baseName)) {
+            pi.jdbcType = Types.DOUBLE;
+        } else if ("decimal".equals(baseName)) {
+            pi.jdbcType = Types.DECIMAL;
+        } else if ("numeric".equals(baseName)) {
+            pi.jdbcType = Types.NUMERIC;
+        } else {
+            // Other types are sent as derived from the value
+            pi.jdbcType = Types.OTHER;
+        }
+
+        if (pi.jdbcType == Types.CHAR || pi.jdbcType == Types.VARCHAR) {
+            pi.isUnicode = baseName.charAt(0) == 'n';
+            if (maxLength > 0) {
+                pi.declaredLength = pi.isUnicode ? maxLength / 2 : maxLength;
+            }
+        } else if (pi.jdbcType == Types.LONGVARCHAR) {
+            pi.isUnicode = baseName.charAt(0) == 'n';
+        }
+
+        return pi;
+    }
+
     /**
      * Retrieves the maximum statement cache size.
      *
      * @return the maximum statement cache size
      */
-    int getMaxStatements() {
+    public int getMaxStatements() {
         return maxStatements;
     }
 
@@ -893,6 +1136,15 @@ public class JtdsConnection implements java.sql.Connection {
         return lobBuffer;
     }
 
+    /**
+     * Retrieves the page size of LOB data cached to disk.
+     *
+     * @return the page size in bytes, a power of 2
+     */
+    int getLobPageSize() {
+        return lobPageSize;
+    }
+
     /**
      * Retrieves the Prepared SQL method.
      *
@@ -963,6 +1215,95 @@ public class JtdsConnection implements java.sql.Connection {
       return useKerberos;
    }
 
+    /**
+     * Indicates whether generated keys should be returned by an
+     * <code>OUTPUT INSERTED</code> clause added to <code>INSERT</code>
+     * statements instead of a trailing <code>SELECT SCOPE_IDENTITY()</code>.
+     * The <code>OUTPUT</code> clause requires SQL Server 2005 or later, older
+     * servers and Sybase always use the <code>SELECT</code>.
+     * <p>
+     * The server rejects an <code>OUTPUT</code> clause without
+     * <code>INTO</code> for tables with enabled triggers (error 334), so the
+     * property must not be set for applications inserting into such tables.
+     * The clause also returns <code>INSERTED.$IDENTITY</code>, so inserts
+     * requesting generated keys fail for tables without an identity column,
+     * which return a <code>NULL</code> key with the <code>SELECT</code>.
+     *
+     * @return <code>true</code> if the <code>OUTPUT</code> clause should be
+     *         used, <code>false</code> otherwise
+     */
+    boolean getUseOutputInserted() {
+        return useOutputInserted
+                && serverType == Driver.SQLSERVER
+                && databaseMajorVersion >= 9;
+    }
+
+    /**
+     * Retrieves whether prepared statement parameters are typed as inferred
+     * by the server.
+     *
+     * @return <code>true</code> if parameters are described by the server
+     */
+    boolean getDescribeParameters() {
+        return describeParameters;
+    }
+
+    /**
+     * Retrieves the maximum number of cached metadata results.
+     *
+     * @return the maximum number of cached results
+     */
+    int getMetadataCacheSize() {
+        return metadataCacheSize;
+    }
+
+    /**
+     * Retrieves the time in seconds metadata results are cached.
+     *
+     * @return the time to live, 0 if metadata is not cached
+     */
+    int getMetadataCacheTTL() {
+        return metadataCacheTTL;
+    }
+
+    /**
+     * Sets the read replica metrics updated by this connection.
+     *
+     * @param replica the replica connected to
+     */
+    void setReplica(ReplicaBalancer.Replica replica) {
+        this.replica = replica;
+    }
+
+    /**
+     * Retrieves the read replica metrics updated by this connection.
+     *
+     * @return the replica or <code>null</code> if not connected to a replica
+     */
+    ReplicaBalancer.Replica getReplica() {
+        return replica;
+    }
+
+    /**
+     * Retrieves the login cache shared with the other connections opened by
+     * the same DataSource.
+     *
+     * @return the login cache or <code>null</code>
+     */
+    LoginCache getLoginCache() {
+        return loginCache;
+    }
+
+    /**
+     * Retrieves the cache used for metadata results.
+     *
+     * @return the metadata cache or <code>null</code> if metadata is not
+     *         cached
+     */
+    MetaDataCache getMetaDataCache() {
+        return metaDataCache;
+    }
+
     /**
      * Retrieves the application name for this connection.
      *
@@ -1008,6 +1349,66 @@ public class JtdsConnection implements java.sql.Connection {
         return bufferMinPackets;
     }
 
+    /**
+     * Retrieves the amount of memory the rows cached by a result set may use
+     * in a compact encoding before being written to disk.
+     *
+     * @return the number of bytes, 0 if cached rows are kept as objects
+     */
+    long getRowBuffer() {
+        return rowBuffer;
+    }
+
+    /**
+     * Retrieves whether the rows cached by a result set are kept in a compact
+     * encoding, even if not written to disk.
+     *
+     * @return <code>true</code> if cached rows are encoded
+     */
+    boolean getPackRows() {
+        return packRows;
+    }
+
+    /**
+     * Retrieves the number of response packets to read ahead in the
+     * background.
+     *
+     * @return the number of packets, 0 if prefetching is disabled
+     */
+    int getPrefetch() {
+        return prefetch;
+    }
+
+    /**
+     * Retrieves the number of response bytes to read ahead in the
+     * background.
+     *
+     * @return the number of bytes, 0 for no byte limit
+     */
+    int getPrefetchBytes() {
+        return prefetchBytes;
+    }
+
+    /**
+     * Retrieves whether the rows of large results are decoded on several
+     * threads.
+     *
+     * @return <code>true</code> if rows are decoded in parallel
+     */
+    boolean getParallelDecode() {
+        return parallelDecode;
+    }
+
+    /**
+     * Retrieves the number of unread rows skipped when a statement is closed
+     * or executed again before the rest of its results is cancelled.
+     *
+     * @return the number of rows, 0 if discarded results are never cancelled
+     */
+    int getDiscardLimit() {
+        return discardLimit;
+    }
+
     /**
      * Retrieves the database name for this connection.
      *
@@ -1207,6 +1608,13 @@ public class JtdsConnection implements java.sql.Connection {
         charsetSpecified = serverCharset.length() > 0;
         useNTLMv2 = parseBooleanProperty(info,Driver.USENTLMV2);
         useKerberos = parseBooleanProperty(info,Driver.USEKERBEROS);
+        useOutputInserted = parseBooleanProperty(info,Driver.USEOUTPUTINSERTED);
+        describeParameters = parseBooleanProperty(info,Driver.DESCRIBEPARAMS);
+        metadataCacheSize = parseIntegerProperty(info, Driver.METADATACACHESIZE);
+        metadataCacheTTL = parseIntegerProperty(info, Driver.METADATACACHETTL);
+        readOnlyIntent = parseBooleanProperty(info,Driver.READONLY);
+        readOnly = readOnlyIntent;
+        validationInterval = parseIntegerProperty(info, Driver.VALIDATIONINTERVAL);
 
         //note:mdb in certain cases (e.g. NTLMv2) the domain name must be
         //  all upper case for things to work.
@@ -1240,6 +1648,7 @@ public class JtdsConnection implements java.sql.Connection {
         socketTimeout = parseIntegerProperty(info, Driver.SOTIMEOUT);
         socketKeepAlive = parseBooleanProperty(info,Driver.SOKEEPALIVE);
         autoCommit = parseBooleanProperty(info,Driver.AUTOCOMMIT);
+        serverAutoCommit = autoCommit;
 
         String pid = info.getProperty(Messages.get(Driver.PROCESSID));
         if ("compute".equals(pid)) {
@@ -1254,6 +1663,21 @@ public class JtdsConnection implements java.sql.Connection {
 
         lobBuffer = parseLongProperty(info, Driver.LOBBUFFER);
 
+        lobPageSize = parseIntegerProperty(info, Driver.LOBPAGESIZE);
+        if (lobPageSize < 512 || lobPageSize > 1048576
+                || (lobPageSize & (lobPageSize - 1)) != 0) {
+            throw new SQLException(Messages.get("error.connection.badprop",
+                    Messages.get(Driver.LOBPAGESIZE)), "08001");
+        }
+
+        rowBuffer = parseLongProperty(info, Driver.ROWBUFFER);
+        if (rowBuffer < 0) {
+            throw new SQLException(Messages.get("error.connection.badprop",
+                    Messages.get(Driver.ROWBUFFER)), "08001");
+        }
+
+        packRows = parseBooleanProperty(info, Driver.PACKROWS);
+
         maxStatements = parseIntegerProperty(info, Driver.MAXSTATEMENTS);
 
         statementCache = new ProcedureCache(maxStatements);
@@ -1299,6 +1723,26 @@ public class JtdsConnection implements java.sql.Connection {
             throw new SQLException(Messages.get("error.connection.badprop",
                     Messages.get(Driver.BUFFERMINPACKETS)), "08001");
         }
+
+        prefetch = parseIntegerProperty(info, Driver.PREFETCH);
+        if (prefetch < 0) {
+            throw new SQLException(Messages.get("error.connection.badprop",
+                    Messages.get(Driver.PREFETCH)), "08001");
+        }
+
+        prefetchBytes = parseIntegerProperty(info, Driver.PREFETCHBYTES);
+        if (prefetchBytes < 0) {
+            throw new SQLException(Messages.get("error.connection.badprop",
+                    Messages.get(Driver.PREFETCHBYTES)), "08001");
+        }
+
+        parallelDecode = parseBooleanProperty(info, Driver.PARALLELDECODE);
+
+        discardLimit = parseIntegerProperty(info, Driver.DISCARDLIMIT);
+        if (discardLimit < 0) {
+            throw new SQLException(Messages.get("error.connection.badprop",
+                    Messages.get(Driver.DISCARDLIMIT)), "08001");
+        }
     }
 
     /**
@@ -2147,6 +2591,9 @@ public class JtdsConnection implements java.sql.Connection {
                 // Ignore
             } finally {
                 closed = true;
+                if (replica != null) {
+                    replica.disconnected();
+                }
                 synchronized( connections ) {
                     if (--connections[0] == 0) {
                         TimerThread.stopTimer();
@@ -2194,6 +2641,137 @@ public class JtdsConnection implements java.sql.Connection {
         clearSavepoints();
     }
 
+    /**
+     * Resets the session to its initial state before the connection is
+     * reused, e.g. by a connection pool. Open statements are kept, so that
+     * they may be pooled, but prepared statements are prepared again on their
+     * next execution. The cached session state (auto-commit mode, transaction
+     * isolation, row count and prepared statement handles) is reset
+     * immediately.
+     * <p>
+     * No request is sent to the server; instead the first packet of the next
+     * request has the TDS reset connection bit set, making the server execute
+     * <code>sp_reset_connection</code> before the request itself. This rolls
+     * back any pending transaction and drops temporary tables, procedures and
+     * prepared statements. The current database is updated from the
+     * environment change sent by the server in response.
+     *
+     * @return <code>false</code> if the server does not support session resets
+     *         or the connection is enlisted in an XA transaction; the session
+     *         has not been reset in that case
+     * @throws SQLException if the connection is closed
+     */
+    synchronized public boolean resetSession() throws SQLException {
+        checkOpen();
+
+        if (serverType != Driver.SQLSERVER || tdsVersion < Driver.TDS80
+                || xaTransaction) {
+            return false;
+        }
+
+        // Server side handles are dropped by the reset, so replace the cache
+        // and make open statements forget the handles they have been using
+        statementCache = new ProcedureCache(maxStatements);
+        procInTran.clear();
+        clearSavepoints();
+
+        synchronized (statements) {
+            for (int i = 0; i < statements.size(); i++) {
+                WeakReference wr = (WeakReference) statements.get(i);
+                Object stmt = wr == null ? null : wr.get();
+
+                if (stmt instanceof JtdsPreparedStatement) {
+                    ((JtdsPreparedStatement) stmt).handles = null;
+                }
+            }
+        }
+
+        // The settings the server will have after the reset and the session
+        // restore SQL has been executed
+        synchronized (sessionStateLock) {
+            autoCommit = serverAutoCommit = true;
+            transactionIsolation = serverTransactionIsolation =
+                    java.sql.Connection.TRANSACTION_READ_COMMITTED;
+        }
+        readOnly = readOnlyIntent;
+        rowCount = 0;
+        textSize = -1;
+
+        resetPending.set(true);
+        messages.clearWarnings();
+
+        return true;
+    }
+
+    /**
+     * Retrieves and clears the pending session reset flag. Called by the
+     * protocol before sending a request.
+     *
+     * @return <code>true</code> if the next request has to reset the session
+     */
+    boolean takeResetPending() {
+        return resetPending.getAndSet(false);
+    }
+
+    /**
+     * Retrieves and clears the session state changes made by
+     * {@link #setAutoCommit} and {@link #setTransactionIsolation} since the
+     * last request. Called by the protocol
+     * before sending a request, so that the changes don't cost a round trip
+     * of their own.
+     *
+     * @return the SQL to apply the changes or <code>null</code> if the
+     *         server state is up to date
+     */
+    String takeSessionState() {
+        synchronized (sessionStateLock) {
+            if (autoCommit == serverAutoCommit
+                    && transactionIsolation == serverTransactionIsolation) {
+                return null;
+            }
+
+            boolean sybase = serverType == Driver.SYBASE;
+            StringBuilder sql = new StringBuilder(100);
+
+            if (autoCommit != serverAutoCommit) {
+                if (sybase) {
+                    sql.append(autoCommit ? "SET CHAINED OFF\r\n" : "SET CHAINED ON\r\n");
+                } else {
+                    sql.append(autoCommit ? "SET IMPLICIT_TRANSACTIONS OFF\r\n"
+                                          : "SET IMPLICIT_TRANSACTIONS ON\r\n");
+                }
+            }
+
+            if (transactionIsolation != serverTransactionIsolation) {
+                sql.append("SET TRANSACTION ISOLATION LEVEL ");
+
+                switch (transactionIsolation) {
+                    case java.sql.Connection.TRANSACTION_READ_UNCOMMITTED:
+                        sql.append(sybase ? "0" : "READ UNCOMMITTED");
+                        break;
+                    case java.sql.Connection.TRANSACTION_READ_COMMITTED:
+                        sql.append(sybase ? "1" : "READ COMMITTED");
+                        break;
+                    case java.sql.Connection.TRANSACTION_REPEATABLE_READ:
+                        sql.append(sybase ? "2" : "REPEATABLE READ");
+                        break;
+                    case java.sql.Connection.TRANSACTION_SERIALIZABLE:
+                        sql.append(sybase ? "3" : "SERIALIZABLE");
+                        break;
+                    default:
+                        sql.append("SNAPSHOT");
+                }
+
+                sql.append("\r\n");
+            }
+
+            serverAutoCommit = autoCommit;
+            serverTransactionIsolation = transactionIsolation;
+
+            return sql.toString();
+        }
+    }
+
    public boolean getAutoCommit()
       throws SQLException
    {
@@ -2241,31 +2819,19 @@ public class JtdsConnection implements java.sql.Connection {
             return;
         }
 
-        String sql = "SET TRANSACTION ISOLATION LEVEL ";
-        boolean sybase = serverType == Driver.SYBASE;
-
         switch (level) {
             case java.sql.Connection.TRANSACTION_READ_UNCOMMITTED:
-                sql += (sybase) ? "0" : "READ UNCOMMITTED";
-                break;
             case java.sql.Connection.TRANSACTION_READ_COMMITTED:
-                sql += (sybase) ? "1" : "READ COMMITTED";
-                break;
             case java.sql.Connection.TRANSACTION_REPEATABLE_READ:
-                sql += (sybase) ? "2" : "REPEATABLE READ";
-                break;
             case java.sql.Connection.TRANSACTION_SERIALIZABLE:
-                sql += (sybase) ? "3" : "SERIALIZABLE";
                 break;
             case TRANSACTION_SNAPSHOT:
-                if (sybase) {
+                if (serverType == Driver.SYBASE) {
                     throw new SQLException(
                             Messages.get("error.generic.optvalue",
                                          "TRANSACTION_SNAPSHOT",
                                          "setTransactionIsolation"),
                             "HY024");
-                } else {
-                    sql += "SNAPSHOT";
                 }
                 break;
             case java.sql.Connection.TRANSACTION_NONE:
@@ -2282,8 +2848,11 @@ public class JtdsConnection implements java.sql.Connection {
                         "HY092");
         }
 
-        transactionIsolation = level;
-        baseTds.submitSQL(sql);
+        // Sent along with the next request, setting the level back before
+        // that doesn't cost anything
+        synchronized (sessionStateLock) {
+            transactionIsolation = level;
+        }
     }
 
     synchronized public void setAutoCommit(boolean autoCommit) throws SQLException {
@@ -2301,30 +2870,18 @@ public class JtdsConnection implements java.sql.Connection {
             return;
         }
 
-        StringBuilder sql = new StringBuilder(70);
-        //
         if (!this.autoCommit) {
             // If we're in manual commit mode the spec requires that we commit
-            // the transaction when setAutoCommit() is called
-            sql.append("IF @@TRANCOUNT > 0 COMMIT TRAN\r\n");
+            // the transaction when setAutoCommit() is called; done right away,
+            // so that the locks are released and a failure is reported here
+            baseTds.submitSQL("IF @@TRANCOUNT > 0 COMMIT TRAN");
         }
 
-        if (serverType == Driver.SYBASE) {
-            if (autoCommit) {
-                sql.append("SET CHAINED OFF");
-            } else {
-                sql.append("SET CHAINED ON");
-            }
-        } else {
-            if (autoCommit) {
-                sql.append("SET IMPLICIT_TRANSACTIONS OFF");
-            } else {
-                sql.append("SET IMPLICIT_TRANSACTIONS ON");
-            }
+        // The mode itself is sent along with the next request, switching back
+        // before that doesn't cost anything
+        synchronized (sessionStateLock) {
+            this.autoCommit = autoCommit;
         }
-
-        baseTds.submitSQL(sql.toString());
-        this.autoCommit = autoCommit;
     }
 
     public void setReadOnly(boolean readOnly) throws SQLException {
@@ -2355,6 +2912,8 @@ public class JtdsConnection implements java.sql.Connection {
                     "3D000");
         }
 
+        // Sent right away, so that an invalid database is reported by this
+        // call; pending auto commit and isolation changes are sent with it
         String sql = tdsVersion >= Driver.TDS70
                 ? ("use [" + catalog + ']') : "use " + catalog;
         baseTds.submitSQL(sql);
@@ -2862,8 +3421,52 @@ public class JtdsConnection implements java.sql.Connection {
      * @see java.sql.Connection#isValid(int)
      */
     public boolean isValid(int timeout) throws SQLException {
-	    // TODO Auto-generated method stub
-        throw new AbstractMethodError();
+        if (timeout < 0) {
+            throw new SQLException(
+                    Messages.get("error.generic.optltzero", "isValid"),
+                    "HY092");
+        }
+
+        if (closed) {
+            return false;
+        }
+
+        // A recent server response is as good as a round trip
+        if (validationInterval > 0 && System.currentTimeMillis()
+                - socket.getLastReceived() < validationInterval) {
+            return true;
+        }
+
+        long start = System.nanoTime();
+
+        try {
+            baseTds.ping(timeout);
+        } catch (SQLException e) {
+            if (Logger.isActive()) {
+                Logger.println("isValid() failed: " + e);
+            }
+            return false;
+        }
+
+        validationLatency = System.nanoTime() - start;
+
+        if (Logger.isActive()) {
+            Logger.println("isValid() round trip took "
+                    + validationLatency / 1000 + " us");
+        }
+
+        return true;
+    }
+
+    /**
+     * Retrieves the duration of the last server round trip made by
+     * {@link #isValid(int)}.
+     *
+     * @return the latency in nanoseconds or 0 if <code>isValid()</code> has
+     *         not contacted the server yet
+     */
+    public long getValidationLatency() {
+        return validationLatency;
     }
 
     /* (non-Javadoc)
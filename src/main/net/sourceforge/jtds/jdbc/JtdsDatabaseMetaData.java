@@ -19,6 +19,7 @@ package net.sourceforge.jtds.jdbc;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
@@ -179,6 +180,12 @@ public class JtdsDatabaseMetaData implements java.sql.DatabaseMetaData {
                                                    int scope,
                                                    boolean nullable)
     throws SQLException {
+        String cacheKey = cacheKey("getBestRowIdentifier", catalog, schema, table, scope, nullable);
+        java.sql.ResultSet cached = getCached(cacheKey);
+        if (cached != null) {
+            return cached;
+        }
+
         String colNames[] = {"SCOPE",           "COLUMN_NAME",
                              "DATA_TYPE",       "TYPE_NAME",
                              "COLUMN_SIZE",     "BUFFER_LENGTH",
@@ -219,7 +226,7 @@ public class JtdsDatabaseMetaData implements java.sql.DatabaseMetaData {
         // Do not close the statement, rsTmp is also built from it
         rsTmp.moveToCurrentRow();
         rsTmp.setConcurrency(ResultSet.CONCUR_READ_ONLY);
-        return rsTmp;
+        return cache(cacheKey, catalog, schema, table, rsTmp);
     }
 
     /**
@@ -305,6 +312,12 @@ public class JtdsDatabaseMetaData implements java.sql.DatabaseMetaData {
                                                   String table,
                                                   String columnNamePattern)
     throws SQLException {
+        String cacheKey = cacheKey("getColumnPrivileges", catalog, schema, table, columnNamePattern);
+        java.sql.ResultSet cached = getCached(cacheKey);
+        if (cached != null) {
+            return cached;
+        }
+
         String query = "sp_column_privileges ?, ?, ?, ?";
 
         CallableStatement s = connection.prepareCall(syscall(catalog, query));
@@ -321,7 +334,7 @@ public class JtdsDatabaseMetaData implements java.sql.DatabaseMetaData {
 
         upperCaseColumnNames(rs);
 
-        return rs;
+        return cache(cacheKey, catalog, schema, table, rs);
     }
 
     /**
@@ -384,6 +397,12 @@ public class JtdsDatabaseMetaData implements java.sql.DatabaseMetaData {
                                          String tableNamePattern,
                                          String columnNamePattern)
     throws SQLException {
+        String cacheKey = cacheKey("getColumns", catalog, schemaPattern, tableNamePattern, columnNamePattern);
+        java.sql.ResultSet cached = getCached(cacheKey);
+        if (cached != null) {
+            return cached;
+        }
+
         String colNames[] = {"TABLE_CAT",           "TABLE_SCHEM",
                              "TABLE_NAME",          "COLUMN_NAME",
                              "DATA_TYPE",           "TYPE_NAME",
@@ -488,7 +507,7 @@ public class JtdsDatabaseMetaData implements java.sql.DatabaseMetaData {
         rsTmp.moveToCurrentRow();
         rsTmp.setConcurrency(ResultSet.CONCUR_READ_ONLY);
 
-        return rsTmp;
+        return cache(cacheKey, catalog, schemaPattern, tableNamePattern, rsTmp);
     }
 
     /**
@@ -577,6 +596,12 @@ public class JtdsDatabaseMetaData implements java.sql.DatabaseMetaData {
                                                 String foreignSchema,
                                                 String foreignTable)
     throws SQLException {
+        String cacheKey = cacheKey("getCrossReference", primaryCatalog, primarySchema, primaryTable, foreignCatalog, foreignSchema, foreignTable);
+        java.sql.ResultSet cached = getCached(cacheKey);
+        if (cached != null) {
+            return cached;
+        }
+
         String colNames[] = {"PKTABLE_CAT",  "PKTABLE_SCHEM",
                              "PKTABLE_NAME", "PKCOLUMN_NAME",
                              "FKTABLE_CAT",  "FKTABLE_SCHEM",
@@ -628,7 +653,7 @@ public class JtdsDatabaseMetaData implements java.sql.DatabaseMetaData {
         rsTmp.moveToCurrentRow();
         rsTmp.setConcurrency(ResultSet.CONCUR_READ_ONLY);
 
-        return rsTmp;
+        return cache(cacheKey, null, null, null, rsTmp);
     }
 
     /**
@@ -947,6 +972,12 @@ public class JtdsDatabaseMetaData implements java.sql.DatabaseMetaData {
                                            boolean unique,
                                            boolean approximate)
     throws SQLException {
+        String cacheKey = cacheKey("getIndexInfo", catalog, schema, table, unique, approximate);
+        java.sql.ResultSet cached = getCached(cacheKey);
+        if (cached != null) {
+            return cached;
+        }
+
         String colNames[] = {"TABLE_CAT",       "TABLE_SCHEM",
                              "TABLE_NAME",      "NON_UNIQUE",
                              "INDEX_QUALIFIER", "INDEX_NAME",
@@ -986,7 +1017,7 @@ public class JtdsDatabaseMetaData implements java.sql.DatabaseMetaData {
         rsTmp.moveToCurrentRow();
         rsTmp.setConcurrency(ResultSet.CONCUR_READ_ONLY);
 
-        return rsTmp;
+        return cache(cacheKey, catalog, schema, table, rsTmp);
     }
 
     //----------------------------------------------------------------------
@@ -1284,6 +1315,12 @@ public class JtdsDatabaseMetaData implements java.sql.DatabaseMetaData {
                                              String schema,
                                              String table)
     throws SQLException {
+        String cacheKey = cacheKey("getPrimaryKeys", catalog, schema, table);
+        java.sql.ResultSet cached = getCached(cacheKey);
+        if (cached != null) {
+            return cached;
+        }
+
         String colNames[] = {"TABLE_CAT",    "TABLE_SCHEM",
                              "TABLE_NAME",   "COLUMN_NAME",
                              "KEY_SEQ",      "PK_NAME"};
@@ -1312,7 +1349,7 @@ public class JtdsDatabaseMetaData implements java.sql.DatabaseMetaData {
         rsTmp.moveToCurrentRow();
         rsTmp.setConcurrency(ResultSet.CONCUR_READ_ONLY);
 
-        return rsTmp;
+        return cache(cacheKey, catalog, schema, table, rsTmp);
     }
 
     /**
@@ -1380,6 +1417,12 @@ public class JtdsDatabaseMetaData implements java.sql.DatabaseMetaData {
                                                   String procedureNamePattern,
                                                   String columnNamePattern)
     throws SQLException {
+        String cacheKey = cacheKey("getProcedureColumns", catalog, schemaPattern, procedureNamePattern, columnNamePattern);
+        java.sql.ResultSet cached = getCached(cacheKey);
+        if (cached != null) {
+            return cached;
+        }
+
         String colNames[] = {"PROCEDURE_CAT",   "PROCEDURE_SCHEM",
                              "PROCEDURE_NAME",  "COLUMN_NAME",
                              "COLUMN_TYPE",     "DATA_TYPE",
@@ -1472,7 +1515,7 @@ public class JtdsDatabaseMetaData implements java.sql.DatabaseMetaData {
         rs.close();
         rsTmp.moveToCurrentRow();
         rsTmp.setConcurrency(ResultSet.CONCUR_READ_ONLY);
-        return rsTmp;
+        return cache(cacheKey, catalog, schemaPattern, procedureNamePattern, rsTmp);
     }
 
     /**
@@ -1515,6 +1558,12 @@ public class JtdsDatabaseMetaData implements java.sql.DatabaseMetaData {
                                             String schemaPattern,
                                             String procedureNamePattern)
     throws SQLException {
+        String cacheKey = cacheKey("getProcedures", catalog, schemaPattern, procedureNamePattern);
+        java.sql.ResultSet cached = getCached(cacheKey);
+        if (cached != null) {
+            return cached;
+        }
+
         String colNames[] = {"PROCEDURE_CAT",   "PROCEDURE_SCHEM",
                              "PROCEDURE_NAME",  "RESERVED_1",
                              "RESERVED_2",      "RESERVED_3",
@@ -1564,7 +1613,7 @@ public class JtdsDatabaseMetaData implements java.sql.DatabaseMetaData {
         rsTmp.moveToCurrentRow();
         rsTmp.setConcurrency(ResultSet.CONCUR_READ_ONLY);
         rs.close();
-        return rsTmp;
+        return cache(cacheKey, catalog, schemaPattern, procedureNamePattern, rsTmp);
     }
 
     /**
@@ -1731,6 +1780,12 @@ public class JtdsDatabaseMetaData implements java.sql.DatabaseMetaData {
                                                  String schemaPattern,
                                                  String tableNamePattern)
     throws SQLException {
+        String cacheKey = cacheKey("getTablePrivileges", catalog, schemaPattern, tableNamePattern);
+        java.sql.ResultSet cached = getCached(cacheKey);
+        if (cached != null) {
+            return cached;
+        }
+
         String query = "sp_table_privileges ?, ?, ?";
 
         CallableStatement s = connection.prepareCall(syscall(catalog, query));
@@ -1746,7 +1801,7 @@ public class JtdsDatabaseMetaData implements java.sql.DatabaseMetaData {
 
         upperCaseColumnNames(rs);
 
-        return rs;
+        return cache(cacheKey, catalog, schemaPattern, tableNamePattern, rs);
     }
 
     /**
@@ -1796,6 +1851,12 @@ public class JtdsDatabaseMetaData implements java.sql.DatabaseMetaData {
                                         String tableNamePattern,
                                         String types[])
     throws SQLException {
+        String cacheKey = cacheKey("getTables", catalog, schemaPattern, tableNamePattern, Arrays.toString(types));
+        java.sql.ResultSet cached = getCached(cacheKey);
+        if (cached != null) {
+            return cached;
+        }
+
         String colNames[] = {"TABLE_CAT",                   "TABLE_SCHEM",
                              "TABLE_NAME",                  "TABLE_TYPE",
                              "REMARKS",                     "TYPE_CAT",
@@ -1849,7 +1910,7 @@ public class JtdsDatabaseMetaData implements java.sql.DatabaseMetaData {
         rsTmp.moveToCurrentRow();
         rsTmp.setConcurrency(ResultSet.CONCUR_READ_ONLY);
         rs.close();
-        return rsTmp;
+        return cache(cacheKey, catalog, schemaPattern, tableNamePattern, rsTmp);
     }
 
     /**
@@ -1938,6 +1999,12 @@ public class JtdsDatabaseMetaData implements java.sql.DatabaseMetaData {
      * @throws SQLException if a database-access error occurs.
      */
     public java.sql.ResultSet getTypeInfo() throws SQLException {
+        String cacheKey = cacheKey("getTypeInfo");
+        java.sql.ResultSet cached = getCached(cacheKey);
+        if (cached != null) {
+            return cached;
+        }
+
         Statement s = connection.createStatement();
         JtdsResultSet rs;
 
@@ -1949,7 +2016,8 @@ public class JtdsDatabaseMetaData implements java.sql.DatabaseMetaData {
         }
 
         try {
-            return createTypeInfoResultSet(rs, connection.getUseLOBs());
+            return cache(cacheKey, null, null, null,
+                    createTypeInfoResultSet(rs, connection.getUseLOBs()));
         } finally {
             // CachedResultSet retains reference to same statement as rs, so don't close statement
             rs.close();
@@ -2095,6 +2163,12 @@ public class JtdsDatabaseMetaData implements java.sql.DatabaseMetaData {
                                                 String schema,
                                                 String table)
     throws SQLException {
+        String cacheKey = cacheKey("getVersionColumns", catalog, schema, table);
+        java.sql.ResultSet cached = getCached(cacheKey);
+        if (cached != null) {
+            return cached;
+        }
+
         String colNames[] = {"SCOPE", "COLUMN_NAME","DATA_TYPE",
                              "TYPE_NAME","COLUMN_SIZE",
                              "BUFFER_LENGTH","DECIMAL_DIGITS",
@@ -2132,7 +2206,7 @@ public class JtdsDatabaseMetaData implements java.sql.DatabaseMetaData {
         rsTmp.moveToCurrentRow();
         rsTmp.setConcurrency(ResultSet.CONCUR_READ_ONLY);
         rs.close();
-        return rsTmp;
+        return cache(cacheKey, catalog, schema, table, rsTmp);
     }
 
     /**
@@ -3454,6 +3528,65 @@ public class JtdsDatabaseMetaData implements java.sql.DatabaseMetaData {
         return buf.toString();
     }
 
+    /**
+     * Build the key a metadata result is cached with. Results depend on the
+     * user's permissions and, if no catalog is specified, on the current
+     * catalog.
+     *
+     * @param method the name of the metadata method
+     * @param args the arguments of the metadata method
+     * @return the cache key as a <code>String</code>
+     * @throws SQLException if the current catalog cannot be determined
+     */
+    private String cacheKey(String method, Object... args) throws SQLException {
+        if (connection.getMetaDataCache() == null) {
+            return null;
+        }
+        StringBuilder key = new StringBuilder(64);
+        key.append(connection.getUser()).append('\0');
+        key.append(connection.getCatalog()).append('\0');
+        key.append(method);
+        for (int i = 0; i < args.length; i++) {
+            key.append('\0').append(args[i]);
+        }
+        return key.toString();
+    }
+
+    /**
+     * Retrieve a copy of a cached metadata result.
+     *
+     * @param key the cache key or <code>null</code> if metadata is not cached
+     * @return the cached result or <code>null</code> if the result is not
+     *         cached
+     * @throws SQLException if an error occurs
+     */
+    private java.sql.ResultSet getCached(String key) throws SQLException {
+        if (key == null) {
+            return null;
+        }
+        return connection.getMetaDataCache().get(key, connection);
+    }
+
+    /**
+     * Cache a metadata result, if metadata is cached.
+     *
+     * @param key the cache key or <code>null</code> if metadata is not cached
+     * @param catalog the catalog described or <code>null</code>
+     * @param schema the schema (pattern) described or <code>null</code>
+     * @param object the object name (pattern) described or <code>null</code>
+     * @param rs the result to cache
+     * @return the result to return to the caller, a copy if it was cached
+     * @throws SQLException if an error occurs
+     */
+    private java.sql.ResultSet cache(String key, String catalog, String schema,
+                                     String object, JtdsResultSet rs)
+            throws SQLException {
+        if (key == null) {
+            return rs;
+        }
+        return connection.getMetaDataCache().put(key, catalog, schema, object, rs);
+    }
+
     /**
      * Format the supplied procedure call as a valid JDBC call escape.
      *
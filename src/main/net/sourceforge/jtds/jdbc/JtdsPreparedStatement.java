@@ -74,12 +74,16 @@ public class JtdsPreparedStatement extends JtdsStatement implements PreparedStat
     protected ParamInfo[] parameters;
     /** True to return generated keys. */
     private boolean returnKeys;
+    /** True if generated keys are returned by an <code>OUTPUT</code> clause. */
+    private boolean outputKeys;
     /** The cached parameter meta data. */
     protected ParamInfo[] paramMetaData;
     /** Used to format numeric values when scale is specified. */
     private final static NumberFormat f = NumberFormat.getInstance();
     /** Collection of handles used by this statement */
     Collection handles;
+    /** Parameter types inferred by the server, <code>null</code> if not yet retrieved. */
+    private ParamInfo[] describedParameters;
 
     /**
      * Construct a new preparedStatement object.
@@ -99,6 +103,9 @@ public class JtdsPreparedStatement extends JtdsStatement implements PreparedStat
         throws SQLException {
         super(connection, resultSetType, concurrency);
 
+        // prepared and callable statements are poolable by default
+        poolable = true;
+
         // returned by toString()
         originalSql = sql;
 
@@ -123,7 +130,14 @@ public class JtdsPreparedStatement extends JtdsStatement implements PreparedStat
         sqlWord = parsedSql[2];
 
         if (returnKeys /*&& "insert".equals(sqlWord) REVIEW: see JtdsStatement.executeImpl */) {
-            if (connection.getServerType() == Driver.SQLSERVER
+            String output = connection.getUseOutputInserted()
+                    ? addOutputClause(parsedSql[0], params) : null;
+
+            if (output != null) {
+                // all generated keys, even of batches, are returned by the INSERT
+                this.sql = output;
+                outputKeys = true;
+            } else if (connection.getServerType() == Driver.SQLSERVER
                     && connection.getDatabaseMajorVersion() >= 8) {
                 this.sql = parsedSql[0] + " SELECT SCOPE_IDENTITY() AS " + GENKEYCOL;
             } else {
@@ -484,7 +498,7 @@ public class JtdsPreparedStatement extends JtdsStatement implements PreparedStat
          // If the batch has been sent, process the results
          if( executeNow )
          {
-            sqlEx = tds.getBatchCounts( counts, sqlEx );
+            sqlEx = tds.getBatchCounts( counts, sqlEx, batchKeys );
 
             // If a serious error then we stop execution now as count is too small.
             if( sqlEx != null && counts.size() != i )
@@ -582,6 +596,15 @@ public class JtdsPreparedStatement extends JtdsStatement implements PreparedStat
       return sqlEx;
    }
 
+    /**
+     * Batches of <code>INSERT</code> statements return the generated keys of
+     * all rows if keys are retrieved by an <code>OUTPUT</code> clause.
+     */
+    @Override
+    protected boolean isBatchReturningKeys() {
+        return outputKeys;
+    }
+
     /**
      * Check the supplied index and return the selected parameter.
      *
@@ -709,6 +732,108 @@ public class JtdsPreparedStatement extends JtdsStatement implements PreparedStat
         pi.jdbcType = targetSqlType;
         pi.isSet = true;
         pi.isUnicode = connection.getUseUnicode();
+        pi.declaredLength = -1;
+
+        ParamInfo declared = getDescribedParameter(parameterIndex - 1);
+        if (declared != null) {
+            applyDeclaredType(pi, declared);
+        }
+    }
+
+    /**
+     * Find the type the server infers for a parameter, if the connection
+     * property <code>describeParameters</code> is set.
+     *
+     * @param index the zero based index of the parameter
+     * @return the described parameter or <code>null</code> if not known
+     */
+    ParamInfo getDescribedParameter(int index) throws SQLException {
+        if (describedParameters == null) {
+            if (procName == null) {
+                describedParameters = connection.describeParameters(sql, parameters);
+            }
+            if (describedParameters == null) {
+                describedParameters = new ParamInfo[0];
+            }
+        }
+
+        return index < describedParameters.length ? describedParameters[index] : null;
+    }
+
+    /**
+     * Apply the type declared by a procedure or inferred by the server to a
+     * parameter if the value set is of a compatible kind. Character
+     * parameters are sent as unicode strings only if declared as such and
+     * with the declared length, numeric parameters are converted to the
+     * declared type.
+     */
+    void applyDeclaredType(ParamInfo pi, ParamInfo declared)
+            throws SQLException {
+        if (isCharacter(declared.jdbcType)
+                && (pi.value == null || isCharacter(pi.jdbcType))) {
+            pi.isUnicode = declared.isUnicode;
+            pi.declaredLength = declared.declaredLength;
+            if (pi.value == null) {
+                pi.jdbcType = declared.jdbcType;
+            }
+        } else if (isNumeric(declared.jdbcType)
+                && (pi.value == null || isNumeric(pi.jdbcType))) {
+            pi.jdbcType = declared.jdbcType;
+
+            if (pi.value != null) {
+                pi.value = Support.convert(this, pi.value, declared.jdbcType, null);
+            }
+
+            if (declared.jdbcType == java.sql.Types.DECIMAL
+                    || declared.jdbcType == java.sql.Types.NUMERIC) {
+                pi.precision = connection.getMaxPrecision();
+                if (pi.value instanceof BigDecimal) {
+                    BigDecimal value = (BigDecimal) pi.value;
+                    // Extend to the declared scale, never round
+                    if (value.scale() < declared.scale) {
+                        pi.value = value = value.setScale(declared.scale);
+                    }
+                    pi.scale = value.scale();
+                } else {
+                    pi.scale = declared.scale;
+                }
+            } else {
+                pi.scale = 0;
+            }
+        }
+    }
+
+    static boolean isCharacter(int jdbcType) {
+        switch (jdbcType) {
+            case java.sql.Types.CHAR:
+            case java.sql.Types.VARCHAR:
+            case java.sql.Types.LONGVARCHAR:
+            case java.sql.Types.CLOB:
+            case java.sql.Types.NCHAR:
+            case java.sql.Types.NVARCHAR:
+            case java.sql.Types.LONGNVARCHAR:
+            case java.sql.Types.NCLOB:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    static boolean isNumeric(int jdbcType) {
+        switch (jdbcType) {
+            case java.sql.Types.TINYINT:
+            case java.sql.Types.SMALLINT:
+            case java.sql.Types.INTEGER:
+            case java.sql.Types.BIGINT:
+            case java.sql.Types.REAL:
+            case java.sql.Types.FLOAT:
+            case java.sql.Types.DOUBLE:
+            case java.sql.Types.DECIMAL:
+            case java.sql.Types.NUMERIC:
+                return true;
+            default:
+                return false;
+        }
     }
 
     /**
@@ -809,6 +934,22 @@ public class JtdsPreparedStatement extends JtdsStatement implements PreparedStat
         }
     }
 
+    /**
+     * Prepares this statement for being handed out again by a statement pool,
+     * additionally clearing all parameter values.
+     *
+     * @throws SQLException if the statement is closed or an error occurs
+     */
+    @Override
+    public void recycle() throws SQLException {
+        super.recycle();
+        poolable = true;
+
+        for (int i = 0; i < parameters.length; i++) {
+            parameters[i].clearInValue();
+        }
+    }
+
     @Override
     public boolean execute() throws SQLException {
         checkOpen();
@@ -1240,8 +1381,15 @@ public class JtdsPreparedStatement extends JtdsStatement implements PreparedStat
     @Override
     public void setAsciiStream(int parameterIndex, InputStream x)
             throws SQLException {
-        // TODO Auto-generated method stub
-        throw new AbstractMethodError();
+        if (x == null) {
+            setParameter(parameterIndex, null, java.sql.Types.LONGVARCHAR, 0, 0);
+        } else {
+            try {
+                setCharacterStream(parameterIndex, new InputStreamReader(x, "US-ASCII"));
+            } catch (UnsupportedEncodingException e) {
+                // Should never happen!
+            }
+        }
     }
 
     /* (non-Javadoc)
@@ -1260,8 +1408,14 @@ public class JtdsPreparedStatement extends JtdsStatement implements PreparedStat
     @Override
     public void setBinaryStream(int parameterIndex, InputStream x)
             throws SQLException {
-        // TODO Auto-generated method stub
-        throw new AbstractMethodError();
+        checkOpen();
+
+        if (x == null) {
+            setBytes(parameterIndex, null);
+        } else {
+            // The length is unknown, TDS 7.2 sends the stream in chunks
+            setParameter(parameterIndex, x, java.sql.Types.LONGVARBINARY, 0, -1);
+        }
     }
 
     /* (non-Javadoc)
@@ -1280,8 +1434,7 @@ public class JtdsPreparedStatement extends JtdsStatement implements PreparedStat
     @Override
     public void setBlob(int parameterIndex, InputStream inputStream)
             throws SQLException {
-        // TODO Auto-generated method stub
-        throw new AbstractMethodError();
+        setBinaryStream(parameterIndex, inputStream);
     }
 
     /* (non-Javadoc)
@@ -1300,8 +1453,12 @@ public class JtdsPreparedStatement extends JtdsStatement implements PreparedStat
     @Override
     public void setCharacterStream(int parameterIndex, Reader reader)
             throws SQLException {
-        // TODO Auto-generated method stub
-        throw new AbstractMethodError();
+        if (reader == null) {
+            setParameter(parameterIndex, null, java.sql.Types.LONGVARCHAR, 0, 0);
+        } else {
+            // The length is unknown, TDS 7.2 sends the stream in chunks
+            setParameter(parameterIndex, reader, java.sql.Types.LONGVARCHAR, 0, -1);
+        }
     }
 
     /* (non-Javadoc)
@@ -1319,8 +1476,7 @@ public class JtdsPreparedStatement extends JtdsStatement implements PreparedStat
      */
     @Override
     public void setClob(int parameterIndex, Reader reader) throws SQLException {
-        // TODO Auto-generated method stub
-        throw new AbstractMethodError();
+        setCharacterStream(parameterIndex, reader);
     }
 
     /* (non-Javadoc)
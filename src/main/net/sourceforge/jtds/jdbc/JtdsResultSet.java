@@ -44,6 +44,7 @@ import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -93,7 +94,7 @@ public class JtdsResultSet implements ResultSet {
     /** The current result set row. */
     protected Object[] currentRow;
     /** Cached row data for forward only result set. */
-    protected ArrayList rowData;
+    protected List rowData;
     /** Index of current row in rowData. */
     protected int rowPtr;
     /** True if last column retrieved was null. */
@@ -285,6 +286,20 @@ public class JtdsResultSet implements ResultSet {
             throw new SQLException(Messages.get("error.resultset.norow"), "24000");
         }
 
+        TdsCore tds = statement.getTds();
+
+        if (currentRow == tds.getRowData()) {
+            if (tds.isStreamed(index - 1)) {
+                throw new SQLException(Messages.get("error.resultset.streamread",
+                                                          Integer.toString(index)),
+                                                           "24000");
+            }
+
+            tds.readPendingColumns(index, true);
+        } else if (rowData instanceof RowStore) {
+            ((RowStore) rowData).readPending(currentRow, index - 1);
+        }
+
         Object data = currentRow[index - 1];
 
         wasNull = data == null;
@@ -292,6 +307,33 @@ public class JtdsResultSet implements ResultSet {
         return data;
     }
 
+    /**
+     * Check whether the value of a column of the current row has not been
+     * read from the server response yet, so that it can be streamed directly
+     * from the response. The values of preceding columns are read.
+     *
+     * @param index the column index (1 based)
+     * @return <code>true</code> if the value is still in the server response
+     * @throws SQLException if the result set is closed or an I/O error occurs
+     */
+    private boolean isPending(int index) throws SQLException {
+        checkOpen();
+
+        if (currentRow == null || index < 1 || index > columnCount) {
+            return false;
+        }
+
+        TdsCore tds = statement.getTds();
+
+        if (currentRow != tds.getRowData()) {
+            return false;
+        }
+
+        tds.readPendingColumns(index - 1, true);
+
+        return tds.getPendingColumn() == index - 1;
+    }
+
     /**
      * Check that this connection is still open.
      *
@@ -384,19 +426,84 @@ public class JtdsResultSet implements ResultSet {
      * Retrieve the current row data.
      * @return The current row data as an <code>Object[]</code>.
      */
-    protected Object[] getCurrentRow()
+    protected Object[] getCurrentRow() throws SQLException
     {
+        readPendingColumns();
         return currentRow;
     }
 
+    /**
+     * Read the columns of the current row left in the server response or not
+     * decoded from the cached rows yet, so that the row is complete.
+     *
+     * @throws SQLException if an I/O or protocol error occurs
+     */
+    protected void readPendingColumns() throws SQLException {
+        if (currentRow != null && statement != null
+                && currentRow == statement.getTds().getRowData()) {
+            statement.getTds().readPendingColumns(true);
+        } else if (rowData instanceof RowStore) {
+            ((RowStore) rowData).readPending(currentRow);
+        }
+    }
+
+    /**
+     * Create the list used to cache result set rows. If the
+     * <code>packRows</code> or <code>rowBuffer</code> property is set rows
+     * are kept in a compact encoding, with <code>rowBuffer</code> they are
+     * written to disk once the buffer is full.
+     *
+     * @param capacity the initial capacity of the list
+     * @return the new, empty list
+     * @throws SQLException if the connection is not available
+     */
+    protected List newRowData(int capacity) throws SQLException {
+        JtdsConnection connection = (JtdsConnection) statement.getConnection();
+        long rowBuffer = connection.getRowBuffer();
+
+        if (rowBuffer > 0 || connection.getPackRows()) {
+            return new RowStore(rowBuffer > 0 ? rowBuffer : Long.MAX_VALUE,
+                                connection.getBufferDir());
+        }
+
+        return new ArrayList(capacity);
+    }
+
+    /**
+     * Retrieve a cached row. The values of a row kept in a compact encoding
+     * are only decoded when retrieved by {@link #getColumn(int)} or when the
+     * row is completed by {@link #readPendingColumns()}.
+     *
+     * @param index the index of the row in <code>rowData</code> (0 based)
+     * @return the row as an <code>Object</code> array
+     */
+    protected Object[] getCachedRow(int index) {
+        if (rowData instanceof RowStore) {
+            return ((RowStore) rowData).getPending(index);
+        }
+
+        return (Object[]) rowData.get(index);
+    }
+
+    /**
+     * Release the cached result set rows, deleting any buffer file.
+     */
+    protected void releaseRowData() {
+        if (rowData instanceof RowStore) {
+            ((RowStore) rowData).close();
+        }
+        rowData = null;
+    }
+
     /**
      * Cache the remaining results to free up connection.
      * @throws SQLException
      */
     protected void cacheResultSetRows() throws SQLException {
         if (rowData == null) {
-            rowData = new ArrayList(INITIAL_ROW_COUNT);
+            rowData = newRowData(INITIAL_ROW_COUNT);
         }
+        readPendingColumns();
         if (currentRow != null) {
             // Need to create local copy of currentRow
             // as this is currently a reference to the
@@ -500,9 +607,13 @@ public class JtdsResultSet implements ResultSet {
                    // Skip to end of result set
                    // Could send cancel but this is safer as
                    // cancel could kill other statements in a batch.
+                   if (rowData == null && pos != POS_AFTER_LAST) {
+                       statement.getTds().skipRows();
+                   }
                    while (next());
                 }
             } finally {
+                releaseRowData();
                 closed = true;
                 statement = null;
             }
@@ -595,11 +706,15 @@ public class JtdsResultSet implements ResultSet {
                 // The rest of the result rows have been cached so
                 // return the next row from the buffer.
                 if (rowPtr < rowData.size()) {
-                    currentRow = (Object[])rowData.get(rowPtr);
+                    currentRow = getCachedRow(rowPtr);
                     // This is a forward only result set so null out the buffer ref
                     // to allow for garbage collection (we can never access the row
-                    // again once we have moved on).
-                    rowData.set(rowPtr++, null);
+                    // again once we have moved on). Not for a RowStore, where
+                    // this would decode the whole pending row and free nothing.
+                    if (!(rowData instanceof RowStore)) {
+                        rowData.set(rowPtr, null);
+                    }
+                    rowPtr++;
                     pos++;
                     rowsInResult = pos;
                 } else {
@@ -607,8 +722,11 @@ public class JtdsResultSet implements ResultSet {
                     currentRow = null;
                 }
             } else {
-                // Need to read from server response
-                if (!statement.getTds().getNextRow()) {
+                // Need to read from server response, large text and image
+                // values of read only rows are streamed on demand
+                if (!statement.getTds().getNextRow(
+                        resultSetType == ResultSet.TYPE_FORWARD_ONLY
+                        && concurrency == ResultSet.CONCUR_READ_ONLY)) {
                     statement.cacheResults();
                     pos = POS_AFTER_LAST;
                     currentRow = null;
@@ -794,6 +912,15 @@ public class JtdsResultSet implements ResultSet {
     }
 
     public InputStream getBinaryStream(int columnIndex) throws SQLException {
+        if (isPending(columnIndex)) {
+            InputStream stream = statement.getTds().getBinaryStream(columnIndex - 1);
+
+            if (stream != null) {
+                wasNull = false;
+                return stream;
+            }
+        }
+
         Blob blob = getBlob(columnIndex);
 
         if (blob == null) {
@@ -838,6 +965,15 @@ public class JtdsResultSet implements ResultSet {
     }
 
     public Reader getCharacterStream(int columnIndex) throws SQLException {
+        if (isPending(columnIndex)) {
+            Reader reader = statement.getTds().getCharacterStream(columnIndex - 1);
+
+            if (reader != null) {
+                wasNull = false;
+                return reader;
+            }
+        }
+
         Clob clob = getClob(columnIndex);
 
         if (clob == null) {
@@ -71,6 +71,12 @@ public class JtdsStatement implements java.sql.Statement
     */
    static final String GENKEYCOL = "_JTDS_GENE_R_ATED_KEYS_";
 
+   /**
+    * <code>OUTPUT</code> clause added to <code>INSERT</code> statements to
+    * retrieve the generated keys of all inserted rows (SQL Server 2005+).
+    */
+   static final String GENKEYOUTPUT = "OUTPUT INSERTED.$IDENTITY AS " + GENKEYCOL + " ";
+
     /*
      * Constants used for backwards compatibility with JDK 1.3
      */
@@ -113,12 +119,19 @@ public class JtdsStatement implements java.sql.Statement
     protected int maxRows;
     /** True if SQL statements should be preprocessed. */
     protected boolean escapeProcessing = true;
+    /** True if the statement may be kept in a statement pool when closed. */
+    protected boolean poolable;
     /** SQL Diagnostic exceptions and warnings. */
     protected final SQLDiagnostic messages;
     /** Batched SQL Statement array. */
     protected ArrayList batchValues;
     /** Dummy result set for getGeneratedKeys. */
     protected CachedResultSet genKeyResultSet;
+    /**
+     * Generated key rows collected while executing a batch or
+     * <code>null</code> if the batch doesn't return generated keys.
+     */
+    protected ArrayList batchKeys;
     /**
      * List of queued results (update counts, possibly followed by a
      * <code>ResultSet</code>).
@@ -391,7 +404,7 @@ public class JtdsStatement implements java.sql.Statement
          // If the batch has been sent, process the results
          if( executeNow )
          {
-            sqlEx = tds.getBatchCounts( counts, sqlEx );
+            sqlEx = tds.getBatchCounts( counts, sqlEx, batchKeys );
 
             // If a serious error then we stop execution now as count
             // is too small.
@@ -736,6 +749,35 @@ public class JtdsStatement implements java.sql.Statement
         processResults(false);
     }
 
+   /**
+    * Prepares this statement for being handed out again by a statement pool.
+    * Pending results are discarded, batched commands are cleared and all
+    * settings changed through the JDBC API are restored to their defaults.
+    *
+    * @throws SQLException
+    *    if the statement is closed or an error occurs
+    */
+   public void recycle()
+      throws SQLException
+   {
+      checkOpen();
+      reset();
+
+      if( batchValues != null )
+      {
+         batchValues.clear();
+      }
+
+      queryTimeout     = 0;
+      fetchDirection   = ResultSet.FETCH_FORWARD;
+      fetchSize        = DEFAULT_FETCH_SIZE;
+      cursorName       = null;
+      maxFieldSize     = 0;
+      maxRows          = 0;
+      escapeProcessing = true;
+      poolable         = false;
+   }
+
    /**
     * Resets the <code>Statement</code>, by cleaning up all queued and
     * unprocessed results. Called by all execute methods and {@link #close()}
@@ -750,9 +792,9 @@ public class JtdsStatement implements java.sql.Statement
       resultQueue.clear();
       genKeyResultSet = null;
 
-      // consume all response tokens
-      // REVIEW: shouldn't we issue a cancel first to stop the server from sending more data?
-      tds.clearResponseQueue();
+      // consume all response tokens, large unread results are cancelled if
+      // enabled by the discardLimit property
+      tds.clearResponseQueue( true );
 
       // don't throw old exceptions, they belong to a previous execution
       messages.clearWarnings();
@@ -831,7 +873,12 @@ public class JtdsStatement implements java.sql.Statement
         }
 
         if (returnKeys) {
-            if (connection.getServerType() == Driver.SQLSERVER
+            String output = connection.getUseOutputInserted()
+                    ? addOutputClause(sql, null) : null;
+
+            if (output != null) {
+                sql = output;
+            } else if (connection.getServerType() == Driver.SQLSERVER
                     && connection.getDatabaseMajorVersion() >= 8) {
                 sql += " SELECT SCOPE_IDENTITY() AS " + GENKEYCOL;
             } else {
@@ -843,6 +890,47 @@ public class JtdsStatement implements java.sql.Statement
                 !update && useCursor(returnKeys, sqlWord));
     }
 
+    /**
+     * Adds an <code>OUTPUT INSERTED</code> clause returning the generated keys
+     * to an SQL <code>INSERT</code> statement. The marker positions of all
+     * parameters following the clause are adjusted accordingly.
+     *
+     * @param sql    the processed SQL statement
+     * @param params the statement's <code>ParamInfo</code> objects or
+     *               <code>null</code>
+     * @return the rewritten SQL or <code>null</code> if the statement isn't an
+     *         <code>INSERT</code> the clause could be added to
+     */
+    static String addOutputClause(String sql, ArrayList params) {
+        int pos = SQLParser.findOutputClausePosition(sql);
+
+        if (pos < 0) {
+            return null;
+        }
+
+        if (params != null) {
+            for (int i = 0; i < params.size(); i++) {
+                ParamInfo pi = (ParamInfo) params.get(i);
+
+                if (pi.markerPos >= pos) {
+                    pi.markerPos += GENKEYOUTPUT.length();
+                }
+            }
+        }
+
+        return sql.substring(0, pos) + GENKEYOUTPUT + sql.substring(pos);
+    }
+
+    /**
+     * Determines whether the current batch returns generated keys.
+     *
+     * @return <code>true</code> if the generated keys of the batch should be
+     *         collected, <code>false</code> otherwise
+     */
+    protected boolean isBatchReturningKeys() {
+        return false;
+    }
+
     /**
      * Determines whether a cursor should be used based on the requested result
      * set type and concurrency, whether a cursor name has been set, the
@@ -1071,6 +1159,7 @@ public class JtdsStatement implements java.sql.Statement
         executeSize = (executeSize == 0) ? Integer.MAX_VALUE : executeSize;
         SQLException sqlEx;
         ArrayList counts = new ArrayList(size);
+        batchKeys = isBatchReturningKeys() ? new ArrayList(size) : null;
 
         try {
             // Lock the connection, making sure the batch executes atomically. This is especially important in the
@@ -1085,6 +1174,18 @@ public class JtdsStatement implements java.sql.Statement
                 }
             }
 
+            // Make the generated keys of all batch rows available
+            if (batchKeys != null && !batchKeys.isEmpty()) {
+                ColInfo[] columns = tds.getColumns();
+                columns[0].name = "ID";
+
+                genKeyResultSet = new CachedResultSet(this, columns, (Object[]) batchKeys.get(0));
+
+                for (int i = 1; i < batchKeys.size(); i++) {
+                    genKeyResultSet.addRow((Object[]) batchKeys.get(i));
+                }
+            }
+
             // Ensure array is the same size as the original statement list
             int updateCounts[] = new int[size];
             // Copy the update counts into the int array
@@ -1124,6 +1225,7 @@ public class JtdsStatement implements java.sql.Statement
             throw new BatchUpdateException(ex.getMessage(), ex.getSQLState(),
                     ex.getErrorCode(), new int[0]);
         } finally {
+            batchKeys = null;
             clearBatch();
         }
     }
@@ -1475,16 +1577,18 @@ public class JtdsStatement implements java.sql.Statement
      * @see java.sql.Statement#isPoolable()
      */
     public boolean isPoolable() throws SQLException {
-        // TODO Auto-generated method stub
-        throw new AbstractMethodError();
+        checkOpen();
+
+        return poolable;
     }
 
     /* (non-Javadoc)
      * @see java.sql.Statement#setPoolable(boolean)
      */
     public void setPoolable(boolean poolable) throws SQLException {
-        // TODO Auto-generated method stub
-        throw new AbstractMethodError();
+        checkOpen();
+
+        this.poolable = poolable;
     }
 
     /* (non-Javadoc)
@@ -0,0 +1,163 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+//
+package net.sourceforge.jtds.jdbc;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+
+/**
+ * <p> Cache of login results shared by the connections opened through one
+ * DataSource, so that reconnecting only repeats the work that differs
+ * between sessions. </p>
+ *
+ * <p> The cache keeps the NTLM and NTLMv2 password hashes, so that they
+ * are not recomputed for every login. The hashes and the copy of the password
+ * needed to validate them are only held in private arrays that are
+ * overwritten when the cache is cleared. </p>
+ *
+ * <p> The prelogin exchange is not cached, every login negotiates the
+ * encryption anew, so a server that starts to enforce encryption is never
+ * sent a plaintext login. </p>
+ */
+public final class LoginCache
+{
+
+   private final HashMap<String,Credentials>  _Credentials = new HashMap<>();
+
+   /**
+    * Creates a new, empty cache.
+    */
+   public LoginCache()
+   {
+   }
+
+   /**
+    * Returns the NTLM hash of the given password.
+    */
+   byte[] getNtHash( String domain, String user, String password )
+      throws UnsupportedEncodingException
+   {
+      Credentials credentials = getCredentials( domain, user, password );
+
+      synchronized( credentials )
+      {
+         if( credentials._NtHash == null )
+         {
+            credentials._NtHash = NtlmAuth.ntHash( password );
+         }
+
+         return credentials._NtHash.clone();
+      }
+   }
+
+   /**
+    * Returns the NTLMv2 hash of the given credentials.
+    */
+   byte[] getNtlmv2Hash( String domain, String user, String password )
+      throws UnsupportedEncodingException
+   {
+      Credentials credentials = getCredentials( domain, user, password );
+
+      synchronized( credentials )
+      {
+         if( credentials._Ntv2Hash == null )
+         {
+            credentials._Ntv2Hash = NtlmAuth.ntv2Hash( domain, user, password );
+         }
+
+         return credentials._Ntv2Hash.clone();
+      }
+   }
+
+   /**
+    * Removes all cached entries, overwriting the cached password hashes.
+    */
+   public synchronized void clear()
+   {
+      for( Iterator<Credentials> it = _Credentials.values().iterator(); it.hasNext(); )
+      {
+         it.next().clear();
+      }
+
+      _Credentials.clear();
+   }
+
+   /**
+    * Returns the cache entry for the given user, replacing an existing entry
+    * if the password has changed.
+    */
+   private synchronized Credentials getCredentials( String domain, String user, String password )
+   {
+      String key = domain + '\\' + user;
+      Credentials credentials = _Credentials.get( key );
+      char[] chars = password.toCharArray();
+
+      if( credentials == null || ! Arrays.equals( credentials._Password, chars ) )
+      {
+         if( credentials != null )
+         {
+            credentials.clear();
+         }
+
+         credentials = new Credentials( chars.clone() );
+         _Credentials.put( key, credentials );
+      }
+
+      Arrays.fill( chars, '\0' );
+      return credentials;
+   }
+
+   /**
+    * The password hashes cached for one user.
+    */
+   private static final class Credentials
+   {
+
+      private final char[] _Password;
+
+      private byte[]       _NtHash;
+
+      private byte[]       _Ntv2Hash;
+
+      Credentials( char[] password )
+      {
+         _Password = password;
+      }
+
+      synchronized void clear()
+      {
+         Arrays.fill( _Password, '\0' );
+
+         if( _NtHash != null )
+         {
+            Arrays.fill( _NtHash, (byte) 0 );
+            _NtHash = null;
+         }
+
+         if( _Ntv2Hash != null )
+         {
+            Arrays.fill( _Ntv2Hash, (byte) 0 );
+            _Ntv2Hash = null;
+         }
+      }
+
+   }
+
+}
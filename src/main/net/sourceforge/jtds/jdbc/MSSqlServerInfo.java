@@ -51,17 +51,31 @@ import net.sourceforge.jtds.util.Logger;
  * @version $Id: MSSqlServerInfo.java,v 1.8.2.1 2009-07-30 10:50:05 ickzon Exp $
  */
 public class MSSqlServerInfo {
+    /** The UDP port of the SQL Server Browser service. */
+    static final int BROWSER_PORT = 1434;
+
     private final int numRetries = 3;
     private final int timeout = 2000;
     private String[] serverInfoStrings;
 
     public MSSqlServerInfo(String host) throws SQLException {
+        this(host, BROWSER_PORT);
+    }
+
+    /**
+     * Queries the SQL Server Browser service listening on the given port.
+     *
+     * @param host the host name of the server
+     * @param port the UDP port of the SQL Server Browser service
+     * @throws SQLException if the server does not respond
+     */
+    MSSqlServerInfo(String host, int port) throws SQLException {
         DatagramSocket socket = null;
         try {
             InetAddress addr = InetAddress.getByName(host);
             socket = new DatagramSocket();
             byte[] msg = new byte[] {0x02};
-            DatagramPacket requestp = new DatagramPacket(msg, msg.length, addr, 1434);
+            DatagramPacket requestp = new DatagramPacket(msg, msg.length, addr, port);
 
             socket.setSoTimeout(timeout);
 
@@ -0,0 +1,266 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+//
+package net.sourceforge.jtds.jdbc;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p> Cache of the results returned by {@link JtdsDatabaseMetaData}, shared
+ * by the connections opened through one DataSource. </p>
+ *
+ * <p> Results are cached per user, current catalog, method and arguments and
+ * kept for a limited time. If the cache is full, the least recently used
+ * result is removed. Each lookup returns a new, read-only
+ * {@link CachedResultSet} over the cached rows, so callers may scroll and
+ * close it independently. </p>
+ *
+ * <p> The cache does not notice schema changes. Applications changing the
+ * schema of objects whose metadata may have been cached should call
+ * {@link #invalidate(String, String, String)} afterwards. </p>
+ */
+public final class MetaDataCache
+{
+
+   private final LinkedHashMap<String,CachedResult> _Entries;
+
+   private final long                        _TTL;
+
+   private long                              _Hits;
+
+   private long                              _Misses;
+
+   /**
+    * Creates a new, empty cache.
+    *
+    * @param ttl
+    *    time in milliseconds a result is kept
+    *
+    * @param maxSize
+    *    maximum number of cached results
+    */
+   public MetaDataCache( long ttl, final int maxSize )
+   {
+      _TTL = ttl;
+      _Entries = new LinkedHashMap<String,CachedResult>( 16, 0.75f, true )
+      {
+         @Override
+         protected boolean removeEldestEntry( Map.Entry<String,CachedResult> eldest )
+         {
+            return size() > maxSize;
+         }
+      };
+   }
+
+   /**
+    * Returns a copy of a cached result.
+    *
+    * @param key
+    *    the cache key, see {@link JtdsDatabaseMetaData}
+    *
+    * @param connection
+    *    the connection to create the statement the returned result set
+    *    belongs to on, only if the result is cached
+    *
+    * @return
+    *    a new result set over the cached rows or <code>null</code> if the
+    *    result is not cached or has expired
+    */
+   CachedResultSet get( String key, JtdsConnection connection )
+      throws SQLException
+   {
+      CachedResult entry;
+
+      synchronized( this )
+      {
+         entry = _Entries.get( key );
+
+         if( entry != null && System.currentTimeMillis() - entry._Created > _TTL )
+         {
+            _Entries.remove( key );
+            entry = null;
+         }
+
+         if( entry == null )
+         {
+            _Misses ++;
+            return null;
+         }
+
+         _Hits ++;
+      }
+
+      JtdsStatement statement = (JtdsStatement) connection.createStatement();
+      return new CachedResultSet( statement, entry._Columns, entry._ColumnCount, entry._Rows );
+   }
+
+   /**
+    * Reads the given result completely and caches its rows.
+    *
+    * @param key
+    *    the cache key, see {@link JtdsDatabaseMetaData}
+    *
+    * @param catalog
+    *    the catalog the result describes or <code>null</code> if it is not
+    *    specific to a catalog
+    *
+    * @param schema
+    *    the schema (pattern) the result describes, or <code>null</code>
+    *
+    * @param object
+    *    the object name (pattern) the result describes, or <code>null</code>
+    *
+    * @param rs
+    *    the result to cache, it's closed by this method
+    *
+    * @return
+    *    a new result set over the cached rows, replacing the given one
+    */
+   CachedResultSet put( String key, String catalog, String schema, String object, JtdsResultSet rs )
+      throws SQLException
+   {
+      JtdsStatement statement = (JtdsStatement) rs.getStatement();
+      ColInfo[] columns = rs.getColumns();
+      List<Object[]> rows = new ArrayList<>();
+
+      while( rs.next() )
+      {
+         Object[] row = rs.getCurrentRow();
+         Object[] copy = new Object[columns.length];
+         System.arraycopy( row, 0, copy, 0, row.length );
+         rows.add( copy );
+      }
+
+      int columnCount = rs.columnCount;
+      rs.close();
+
+      CachedResult entry = new CachedResult( catalog, schema, object, columns, columnCount, rows );
+
+      synchronized( this )
+      {
+         _Entries.put( key, entry );
+      }
+
+      return new CachedResultSet( statement, columns, columnCount, rows );
+   }
+
+   /**
+    * Removes the cached results describing the given objects. A
+    * <code>null</code> argument matches any value; cached results for search
+    * patterns are removed if the pattern may match the given name.
+    *
+    * @param catalog
+    *    the catalog name or <code>null</code>
+    *
+    * @param schema
+    *    the schema name or <code>null</code>
+    *
+    * @param object
+    *    the table, view or procedure name or <code>null</code>
+    */
+   public synchronized void invalidate( String catalog, String schema, String object )
+   {
+      for( Iterator<CachedResult> it = _Entries.values().iterator(); it.hasNext(); )
+      {
+         CachedResult entry = it.next();
+
+         if( matches( entry._Catalog, catalog ) && matches( entry._Schema, schema ) && matches( entry._Object, object ) )
+         {
+            it.remove();
+         }
+      }
+   }
+
+   /**
+    * Removes all cached results.
+    */
+   public synchronized void clear()
+   {
+      _Entries.clear();
+   }
+
+   /**
+    * Returns the number of cached results.
+    */
+   public synchronized int size()
+   {
+      return _Entries.size();
+   }
+
+   /**
+    * Returns the number of lookups answered from the cache.
+    */
+   public synchronized long getHitCount()
+   {
+      return _Hits;
+   }
+
+   /**
+    * Returns the number of lookups that had to query the server.
+    */
+   public synchronized long getMissCount()
+   {
+      return _Misses;
+   }
+
+   /**
+    * Checks if a cached name or search pattern may describe the given name.
+    * Patterns are not evaluated, any pattern containing a wildcard matches.
+    */
+   private static boolean matches( String cached, String name )
+   {
+      return name == null || cached == null || cached.equalsIgnoreCase( name ) || cached.indexOf( '%' ) >= 0 || cached.indexOf( '_' ) >= 0;
+   }
+
+   /**
+    * A cached result.
+    */
+   private static final class CachedResult
+   {
+
+      private final String         _Catalog;
+
+      private final String         _Schema;
+
+      private final String         _Object;
+
+      private final ColInfo[]      _Columns;
+
+      private final int            _ColumnCount;
+
+      private final List<Object[]> _Rows;
+
+      private final long           _Created = System.currentTimeMillis();
+
+      CachedResult( String catalog, String schema, String object, ColInfo[] columns, int columnCount, List<Object[]> rows )
+      {
+         _Catalog = catalog;
+         _Schema = schema;
+         _Object = object;
+         _Columns = columns;
+         _ColumnCount = columnCount;
+         _Rows = rows;
+      }
+
+   }
+
+}
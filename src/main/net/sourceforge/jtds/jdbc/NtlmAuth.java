@@ -45,6 +45,14 @@ public class NtlmAuth {
         return encryptNonce(ntHash(password), nonce);
     }
 
+    /**
+     * Answers the NTLM challenge using a precomputed hash, see
+     * {@link #ntHash(String)}.
+     */
+    static byte[] answerNtChallenge(byte[] ntHash, byte[] nonce) {
+        return encryptNonce(ntHash, nonce);
+    }
+
     public static byte[] answerLmChallenge(String pwd, byte[] nonce)
         throws UnsupportedEncodingException {
         byte[] password = convertPassword(pwd);
@@ -84,6 +92,17 @@ public class NtlmAuth {
         return lmv2Response(hash,blob,nonce);
     }
 
+    /**
+     * Answers the NTLMv2 challenge using a precomputed hash, see
+     * {@link #ntv2Hash(String, String, String)}.
+     */
+    static byte[] answerNtlmv2Challenge(
+            byte[] ntv2Hash, byte[] nonce, byte[] targetInfo, byte[] clientNonce) {
+        byte[] blob = createBlob(targetInfo, clientNonce,
+                createTimestamp(System.currentTimeMillis()));
+        return lmv2Response(ntv2Hash, blob, nonce);
+    }
+
     public static byte[] answerNtlmv2Challenge(
             String domain, String user, String password, byte[] nonce,
             byte[] targetInfo,
@@ -103,12 +122,24 @@ public class NtlmAuth {
         return lmv2Response(hash, clientNonce, nonce);
     }
 
+    /**
+     * Answers the LMv2 challenge using a precomputed hash, see
+     * {@link #ntv2Hash(String, String, String)}.
+     */
+    static byte[] answerLmv2Challenge(byte[] ntv2Hash, byte[] nonce, byte[] clientNonce) {
+        return lmv2Response(ntv2Hash, clientNonce, nonce);
+    }
+
 
     //-------------------------------------------------------------------------
     // LMv2/NTLMv2 impl helpers
     //-------------------------------------------------------------------------
 
-    private static byte[] ntv2Hash(String domain, String user, String password)
+    /**
+     * Creates the NTLMv2 hash of the user's credentials. It only depends on
+     * the credentials and may be reused for subsequent logins.
+     */
+    static byte[] ntv2Hash(String domain, String user, String password)
         throws UnsupportedEncodingException {
         byte[] hash = ntHash(password);
         String identity = user.toUpperCase() + domain.toUpperCase();
@@ -294,7 +325,7 @@ public class NtlmAuth {
      * Creates the md4 hash of the unicode password. This is used as the DES
      * key when encrypting the nonce for NTLM challenge-response
      */
-    private static byte[] ntHash(String password)
+    static byte[] ntHash(String password)
             throws UnsupportedEncodingException {
         byte[] key = new byte[21];
         Arrays.fill(key, (byte)0);
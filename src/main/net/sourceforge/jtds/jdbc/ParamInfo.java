@@ -18,6 +18,7 @@
 package net.sourceforge.jtds.jdbc;
 
 import java.sql.SQLException;
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
@@ -56,8 +57,10 @@ class ParamInfo implements Cloneable {
     int precision = -1;
     /** Parameter decimal scale */
     int scale = -1;
-    /** Length of InputStream */
+    /** Length of InputStream, -1 if the length of a stream is unknown */
     int length = -1;
+    /** Declared length of a character parameter, -1 to size it by the value */
+    int declaredLength = -1;
     /** Parameter is an output parameter */
     boolean isOutput;
     /** Parameter is used as  SP return value */
@@ -74,6 +77,10 @@ class ParamInfo implements Cloneable {
     boolean isSetOut;
     /** OUT Parameter value. */
     Object outValue;
+    /** Serialized TDS TYPE_INFO reused while the type does not change. */
+    byte[] typeInfo;
+    /** Key of the type {@link #typeInfo} was serialized for. */
+    int typeInfoKey;
 
     /**
      * Construct a parameter with parameter marker offset.
@@ -212,6 +219,7 @@ class ParamInfo implements Cloneable {
 
         if (value instanceof Reader) {
             value = loadFromReader((Reader)value, length);
+            length = ((String) value).length();
             return (String)value;
         }
 
@@ -230,6 +238,7 @@ class ParamInfo implements Cloneable {
 
         if (value instanceof InputStream) {
             value = loadFromStream((InputStream) value, length);
+            length = ((byte[]) value).length;
 
             return (byte[]) value;
         }
@@ -251,12 +260,22 @@ class ParamInfo implements Cloneable {
      * Load a byte array from an InputStream
      *
      * @param in The InputStream to read from.
-     * @param length The length of the stream.
+     * @param length The length of the stream or -1 to read it to the end.
      * @return The data as a <code>byte[]</code>.
      * @throws IOException
      */
     private static byte[] loadFromStream(InputStream in, int length)
         throws IOException {
+        if (length < 0) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[1024];
+            int res;
+            while ((res = in.read(buf)) != -1) {
+                out.write(buf, 0, res);
+            }
+            return out.toByteArray();
+        }
+
         byte[] buf = new byte[length];
 
         int pos = 0, res;
@@ -280,12 +299,22 @@ class ParamInfo implements Cloneable {
      * Create a String from a Reader stream.
      *
      * @param in The Reader object with the data.
-     * @param length Number of characters to read.
+     * @param length Number of characters to read or -1 to read to the end.
      * @return The data as a <code>String</code>.
      * @throws IOException
      */
     private static String loadFromReader(Reader in, int length)
         throws IOException {
+        if (length < 0) {
+            StringBuilder out = new StringBuilder();
+            char[] buf = new char[1024];
+            int res;
+            while ((res = in.read(buf)) != -1) {
+                out.append(buf, 0, res);
+            }
+            return out.toString();
+        }
+
         char[] buf = new char[length];
 
         int pos = 0, res;
@@ -0,0 +1,458 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+//
+package net.sourceforge.jtds.jdbc;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.sourceforge.jtds.util.Logger;
+
+/**
+ * <p> Routes connections opened with read-only intent to the read replicas
+ * given by the <code>replicas</code> connection property, while all other
+ * connections keep using the primary server. </p>
+ *
+ * <p> Replicas are chosen based on metrics collected for each replica by all
+ * connections of the process: the number of requests waiting for a response,
+ * the number of open connections and the average response latency. With the
+ * <code>leastOutstanding</code> strategy the replica with the fewest pending
+ * requests per weight is tried first, with the <code>weighted</code> strategy
+ * a replica is picked at random, its chance given by its weight divided by
+ * its latency. If connecting to a replica fails the next one is tried and the
+ * failed replica is avoided for {@link #FAILURE_BACKOFF} milliseconds; if no
+ * replica can be reached the primary server is used. </p>
+ */
+final class ReplicaBalancer
+{
+
+   /**
+    * strategy preferring the replica with the fewest pending requests
+    */
+   static final String                                    LEAST_OUTSTANDING = "leastOutstanding";
+
+   /**
+    * strategy picking a replica at random according to weight and latency
+    */
+   static final String                                    WEIGHTED          = "weighted";
+
+   /**
+    * time in milliseconds a replica is avoided after a failed connect
+    */
+   static final long                                      FAILURE_BACKOFF   = 30000;
+
+   /**
+    * metrics of all replicas used by this process, by host and port
+    */
+   private static final ConcurrentHashMap<String,Replica> _Replicas         = new ConcurrentHashMap<>();
+
+   private static final Random                            _Random           = new Random();
+
+   private ReplicaBalancer()
+   {
+      // no instances
+   }
+
+   /**
+    * <p> Opens a connection with read-only intent to one of the replicas or,
+    * if none can be reached, to the primary server. </p>
+    *
+    * @param url
+    *    the connection URL
+    *
+    * @param props
+    *    the connection properties, including defaults
+    *
+    * @param cache
+    *    the login cache of the DataSource or <code>null</code>
+    *
+    * @param metaDataCache
+    *    the metadata cache of the DataSource or <code>null</code>
+    *
+    * @return
+    *    a new connection
+    *
+    * @throws SQLException
+    *    if neither a replica nor the primary server could be connected to
+    */
+   static JtdsConnection connect( String url, Properties props, LoginCache cache, MetaDataCache metaDataCache )
+      throws SQLException
+   {
+      String strategy = props.getProperty( Messages.get( Driver.LOADBALANCE ) );
+
+      if( ! LEAST_OUTSTANDING.equalsIgnoreCase( strategy ) && ! WEIGHTED.equalsIgnoreCase( strategy ) )
+      {
+         throw new SQLException( Messages.get( "error.generic.badoption", strategy, Messages.get( Driver.LOADBALANCE ) ), "08001" );
+      }
+
+      int port = Integer.parseInt( props.getProperty( Messages.get( Driver.PORTNUMBER ), DefaultProperties.PORT_NUMBER_SQLSERVER ) );
+      List<Replica> candidates = order( parse( props.getProperty( Messages.get( Driver.REPLICAS ) ), port ), WEIGHTED.equalsIgnoreCase( strategy ), _Random );
+
+      for( int i = 0; i < candidates.size(); i ++ )
+      {
+         Replica replica = candidates.get( i );
+         Properties replicaProps = (Properties) props.clone();
+         replicaProps.setProperty( Messages.get( Driver.SERVERNAME ), replica._Host );
+         replicaProps.setProperty( Messages.get( Driver.PORTNUMBER ), String.valueOf( replica._Port ) );
+         // replicas are addressed by port, never by instance name
+         replicaProps.setProperty( Messages.get( Driver.INSTANCE ), "" );
+
+         long start = System.nanoTime();
+
+         try
+         {
+            JtdsConnection connection = new JtdsConnection( url, replicaProps, cache, metaDataCache );
+            replica.connected( System.nanoTime() - start );
+            connection.setReplica( replica );
+            return connection;
+         }
+         catch( SQLException e )
+         {
+            String state = e.getSQLState();
+
+            // only connection failures make the next replica being tried
+            if( state == null || ! ( state.startsWith( "08" ) || state.startsWith( "HYT" ) ) )
+            {
+               throw e;
+            }
+
+            replica.failed();
+
+            if( Logger.isActive() )
+            {
+               Logger.println( "Connecting to replica " + replica + " failed: " + e.getMessage() );
+            }
+         }
+      }
+
+      return new JtdsConnection( url, props, cache, metaDataCache );
+   }
+
+   /**
+    * <p> Parses a replica list of the form
+    * <code>host[:port][*weight],...</code>. </p>
+    *
+    * @param replicas
+    *    the replica list
+    *
+    * @param defaultPort
+    *    port used for replicas not specifying one
+    *
+    * @return
+    *    the replicas, shared with all other users of the same host and port
+    *
+    * @throws SQLException
+    *    if the list is malformed
+    */
+   static List<Replica> parse( String replicas, int defaultPort )
+      throws SQLException
+   {
+      List<Replica> result = new ArrayList<>();
+
+      try
+      {
+         String[] entries = replicas.split( "," );
+
+         for( int i = 0; i < entries.length; i ++ )
+         {
+            String entry = entries[i].trim();
+
+            if( entry.isEmpty() )
+            {
+               continue;
+            }
+
+            int weight = 1;
+            int star = entry.indexOf( '*' );
+
+            if( star >= 0 )
+            {
+               weight = Integer.parseInt( entry.substring( star + 1 ).trim() );
+               entry = entry.substring( 0, star ).trim();
+            }
+
+            String host = entry;
+            int port = defaultPort;
+            // skip an IPv6 literal in brackets when looking for the port
+            int colon = entry.indexOf( ':', entry.startsWith( "[" ) ? entry.indexOf( ']' ) : 0 );
+
+            if( colon >= 0 )
+            {
+               host = entry.substring( 0, colon );
+               port = Integer.parseInt( entry.substring( colon + 1 ).trim() );
+            }
+
+            if( host.startsWith( "[" ) && host.endsWith( "]" ) )
+            {
+               host = host.substring( 1, host.length() - 1 );
+            }
+
+            if( host.isEmpty() || weight <= 0 || port <= 0 )
+            {
+               throw new NumberFormatException( entry );
+            }
+
+            result.add( getReplica( host, port, weight ) );
+         }
+      }
+      catch( RuntimeException e )
+      {
+         throw new SQLException( Messages.get( "error.connection.badprop", Messages.get( Driver.REPLICAS ) ), "08001" );
+      }
+
+      return result;
+   }
+
+   /**
+    * <p> Orders the replicas in which connecting should be attempted. Replicas
+    * that failed recently come last. </p>
+    *
+    * @param replicas
+    *    the replicas
+    *
+    * @param weighted
+    *    <code>true</code> for weighted random selection, <code>false</code>
+    *    for least outstanding requests
+    *
+    * @param random
+    *    random number generator for weighted selection
+    *
+    * @return
+    *    a new list containing the ordered replicas
+    */
+   static List<Replica> order( List<Replica> replicas, boolean weighted, Random random )
+   {
+      long now = System.currentTimeMillis();
+      List<Replica> available = new ArrayList<>();
+      List<Replica> failed = new ArrayList<>();
+
+      for( int i = 0; i < replicas.size(); i ++ )
+      {
+         Replica replica = replicas.get( i );
+         ( now - replica._FailedAt < FAILURE_BACKOFF ? failed : available ).add( replica );
+      }
+
+      List<Replica> result = new ArrayList<>( replicas.size() );
+
+      if( weighted )
+      {
+         // weighted random selection without replacement
+         while( ! available.isEmpty() )
+         {
+            double total = 0;
+
+            for( int i = 0; i < available.size(); i ++ )
+            {
+               total += available.get( i ).getEffectiveWeight();
+            }
+
+            double pick = random.nextDouble() * total;
+            int i = 0;
+
+            while( i < available.size() - 1 && ( pick -= available.get( i ).getEffectiveWeight() ) >= 0 )
+            {
+               i ++;
+            }
+
+            result.add( available.remove( i ) );
+         }
+      }
+      else
+      {
+         Collections.sort( available, new Comparator<Replica>()
+         {
+            public int compare( Replica a, Replica b )
+            {
+               int c = Double.compare( a.getLoad(), b.getLoad() );
+               return c != 0 ? c : Long.compare( a.getLatency(), b.getLatency() );
+            }
+         } );
+
+         result.addAll( available );
+      }
+
+      result.addAll( failed );
+      return result;
+   }
+
+   /**
+    * Returns the shared metrics of a replica.
+    */
+   private static Replica getReplica( String host, int port, int weight )
+   {
+      String key = host.toLowerCase( Locale.ENGLISH ) + ':' + port;
+      Replica replica = _Replicas.get( key );
+
+      if( replica == null )
+      {
+         Replica created = new Replica( host, port );
+         replica = _Replicas.putIfAbsent( key, created );
+         replica = replica == null ? created : replica;
+      }
+
+      // the most recent configuration wins
+      replica._Weight = weight;
+      return replica;
+   }
+
+   /**
+    * Metrics of a read replica, shared by all connections to it.
+    */
+   static final class Replica
+   {
+
+      /**
+       * smoothing factor of the latency average, the weight of a new sample
+       */
+      private static final double ALPHA        = 0.2;
+
+      final String                _Host;
+
+      final int                   _Port;
+
+      volatile int                _Weight      = 1;
+
+      private final AtomicInteger _Outstanding = new AtomicInteger();
+
+      private final AtomicInteger _Connections = new AtomicInteger();
+
+      /**
+       * exponentially weighted moving average of the latency in nanoseconds,
+       * 0 if unknown
+       */
+      private volatile long       _Latency;
+
+      private volatile long       _FailedAt;
+
+      Replica( String host, int port )
+      {
+         _Host = host;
+         _Port = port;
+      }
+
+      /**
+       * Records a request sent to the replica.
+       */
+      void requestStarted()
+      {
+         _Outstanding.incrementAndGet();
+      }
+
+      /**
+       * Records the response to a request having started to arrive.
+       *
+       * @param latency
+       *    time in nanoseconds between sending the request and the response
+       */
+      void requestCompleted( long latency )
+      {
+         _Outstanding.decrementAndGet();
+         sample( latency );
+      }
+
+      /**
+       * Records a connection opened to the replica.
+       */
+      void connected( long latency )
+      {
+         _Connections.incrementAndGet();
+         _FailedAt = 0;
+         sample( latency );
+      }
+
+      /**
+       * Records a connection to the replica having been closed.
+       */
+      void disconnected()
+      {
+         _Connections.decrementAndGet();
+      }
+
+      /**
+       * Records a failed connect.
+       */
+      void failed()
+      {
+         _FailedAt = System.currentTimeMillis();
+      }
+
+      /**
+       * Returns the number of requests waiting for a response.
+       */
+      int getOutstandingRequests()
+      {
+         return _Outstanding.get();
+      }
+
+      /**
+       * Returns the number of open connections.
+       */
+      int getConnections()
+      {
+         return _Connections.get();
+      }
+
+      /**
+       * Returns the average latency in nanoseconds or 0 if unknown.
+       */
+      long getLatency()
+      {
+         return _Latency;
+      }
+
+      /**
+       * Returns the load relative to the weight, used for least outstanding
+       * requests balancing. Open connections only break ties between
+       * replicas with the same number of pending requests.
+       */
+      double getLoad()
+      {
+         return ( _Outstanding.get() + _Connections.get() / 1000.0 ) / _Weight;
+      }
+
+      /**
+       * Returns the weight divided by the latency in milliseconds, used for
+       * weighted balancing.
+       */
+      double getEffectiveWeight()
+      {
+         return _Weight / ( 1 + _Latency / 1000000.0 );
+      }
+
+      private void sample( long latency )
+      {
+         long current = _Latency;
+         // races only lose a sample
+         _Latency = current == 0 ? latency : (long) ( current + ALPHA * ( latency - current ) );
+      }
+
+      public String toString()
+      {
+         return _Host + ':' + _Port;
+      }
+
+   }
+
+}
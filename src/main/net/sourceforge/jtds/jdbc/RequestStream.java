@@ -18,11 +18,14 @@
 package net.sourceforge.jtds.jdbc;
 
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
 import java.io.InputStream;
 import java.io.Reader;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
 
 import net.sourceforge.jtds.jdbc.SharedSocket.VirtualSocket;
 import net.sourceforge.jtds.util.*;
@@ -57,6 +60,17 @@ public class RequestStream {
     private final int bufferSize;
     /** The maximum decimal precision. */
     private final int maxPrecision;
+    /** True if the next packet has to carry the reset connection status. */
+    private boolean resetConnection;
+    /** True if the last packet sent did not complete the request. */
+    private boolean inRequest;
+
+    /** Total length of a TDS 7.2 partially length-prefixed value of unknown length. */
+    private static final long PLP_UNKNOWN_LEN = 0xFFFFFFFFFFFFFFFEL;
+    /** Number of characters read from a Reader parameter at a time. */
+    private static final int CHAR_CHUNK_SIZE = 8192;
+    /** Space left in a packet below which encoded output is spilled. */
+    private static final int ENCODE_SPILL_SIZE = 16;
 
     /**
      * Construct a RequestStream object.
@@ -142,11 +156,44 @@ public class RequestStream {
 
     /**
      * Set the current output packet type.
+     * <p>
+     * With TDS 7.2 SQL batch, RPC and transaction manager requests start
+     * with the ALL_HEADERS block carrying the current transaction descriptor,
+     * which is written here if no request is pending yet.
      *
      * @param pktType The packet type eg TdsCore.QUERY_PKT.
+     * @throws IOException
      */
-    void setPacketType(byte pktType) {
+    void setPacketType(byte pktType) throws IOException {
         this.pktType = pktType;
+
+        if (getTdsVersion() >= Driver.TDS90 && !isRequestPending()
+                && (pktType == TdsCore.QUERY_PKT || pktType == TdsCore.RPC_PKT
+                    || pktType == TdsCore.MSDTC_PKT)) {
+            write(22); // Total length of ALL_HEADERS
+            write(18); // Header length
+            write((short) 2); // Transaction descriptor header
+            write(socket.getTransactionDescriptor());
+            write(1); // Outstanding request count
+        }
+    }
+
+    /**
+     * Sets the reset connection status bit on the first packet of the next
+     * request, making the server reset the session before executing it.
+     *
+     * @param reset <code>true</code> to reset the session
+     */
+    void setResetConnection(boolean reset) {
+        this.resetConnection = reset;
+    }
+
+    /**
+     * Returns whether a request has been started but not been sent
+     * completely yet.
+     */
+    boolean isRequestPending() {
+        return inRequest || bufferPtr > TdsCore.PKT_HDR_LEN;
     }
 
     /**
@@ -363,43 +410,68 @@ public class RequestStream {
      * @throws IOException
      */
     void writeAscii(String s) throws IOException {
-        String charsetName = socket.getCharset();
+        CharsetInfo info = socket.getCharsetInfo();
 
-        if (charsetName != null) {
-            try {
-                write(s.getBytes(charsetName));
-            } catch (UnsupportedEncodingException e) {
-                write(s.getBytes());
-            }
-        } else {
+        if (info == null) {
             write(s.getBytes());
+            return;
+        }
+
+        byte[] table = info.getEncodeTable();
+
+        if (table == null) {
+            write(info.encode(s));
+            return;
+        }
+
+        // Single byte charset, translate straight into the packet buffer
+        int len = s.length();
+
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+
+            if (Character.isSurrogate(c)) {
+                write(info.encode(s.substring(i)));
+                return;
+            }
+
+            if (bufferPtr == buffer.length) {
+                putPacket(0);
+            }
+
+            buffer[bufferPtr++] = table[c];
         }
     }
 
     /**
      * Copy the contents of an InputStream to the server.
+     * <p>
+     * The data is read straight into the network packet buffer, without
+     * going through an intermediate array.
      *
      * @param in The InputStream to read.
      * @param length The length of the stream.
      * @throws IOException
      */
     void writeStreamBytes(InputStream in, int length) throws IOException {
-        byte buffer[] = new byte[1024];
-
         while (length > 0) {
-            int res = in.read(buffer);
+            if (bufferPtr == buffer.length) {
+                putPacket(0);
+            }
+
+            int res = in.read(buffer, bufferPtr, Math.min(length, buffer.length - bufferPtr));
 
             if (res < 0) {
                 throw new java.io.IOException(
                         "Data in stream less than specified by length");
             }
 
-            write(buffer, 0, res);
+            bufferPtr += res;
             length -= res;
         }
 
         // XXX Not sure that this is actually an error
-        if (length < 0 || in.read() >= 0) {
+        if (in.read() >= 0) {
             throw new java.io.IOException(
                     "More data in stream than specified by length");
         }
@@ -413,28 +485,22 @@ public class RequestStream {
      * @throws IOException
      */
     void writeReaderChars(Reader in, int length) throws IOException {
-        char cbuffer[] = new char[512];
-        byte bbuffer[] = new byte[1024];
+        char cbuffer[] = new char[Math.min(length, CHAR_CHUNK_SIZE)];
 
         while (length > 0) {
-            int res = in.read(cbuffer);
+            int res = in.read(cbuffer, 0, Math.min(length, cbuffer.length));
 
             if (res < 0) {
                 throw new java.io.IOException(
                         "Data in stream less than specified by length");
             }
 
-            for (int i = 0, j = -1; i < res; i++) {
-                bbuffer[++j] = (byte) cbuffer[i];
-                bbuffer[++j] = (byte) (cbuffer[i] >> 8);
-            }
-
-            write(bbuffer, 0, res * 2);
+            write(cbuffer, 0, res);
             length -= res;
         }
 
         // XXX Not sure that this is actually an error
-        if (length < 0 || in.read() >= 0) {
+        if (in.read() >= 0) {
             throw new java.io.IOException(
                     "More data in stream than specified by length");
         }
@@ -450,22 +516,217 @@ public class RequestStream {
      * @throws IOException
      */
     void writeReaderBytes(Reader in, int length) throws IOException {
-        char buffer[] = new char[1024];
+        CharsetEncoder encoder = socket.getCharsetInfo().getEncoder();
+        CharBuffer cbuffer = CharBuffer.allocate(Math.min(length, CHAR_CHUNK_SIZE));
+
+        int carry = 0;
 
         for (int i = 0; i < length;) {
-            int result = in.read(buffer);
+            int result = in.read(cbuffer.array(), carry,
+                                 Math.min(length - i, cbuffer.capacity() - carry));
 
             if (result == -1) {
                 throw new java.io.IOException(
                         "Data in stream less than specified by length");
-            } else if (i + result > length) {
-                throw new java.io.IOException(
-                        "More data in stream than specified by length");
             }
 
-            write(Support.encodeString(socket.getCharset(), new String(buffer, 0, result)));
+            cbuffer.clear();
+            cbuffer.limit(carry + result);
+            encode(encoder, cbuffer, false);
+            // Keep an unencoded trailing high surrogate for the next pass
+            cbuffer.compact();
+            carry = cbuffer.position();
             i += result;
         }
+
+        cbuffer.flip();
+        encode(encoder, cbuffer, true);
+
+        if (in.read() >= 0) {
+            throw new java.io.IOException(
+                    "More data in stream than specified by length");
+        }
+    }
+
+    /**
+     * Copy the contents of an InputStream to the server as a TDS 7.2
+     * partially length-prefixed value of unknown length.
+     * <p>
+     * The data is read straight into the network packet buffer, each chunk
+     * filling the remainder of the current packet.
+     *
+     * @param in The InputStream with the data.
+     * @throws IOException
+     */
+    void writePLP(InputStream in) throws IOException {
+        byte[] scratch = null;
+
+        write(PLP_UNKNOWN_LEN);
+
+        while (true) {
+            if (bufferPtr == buffer.length) {
+                putPacket(0);
+            }
+
+            int res;
+
+            if (buffer.length - bufferPtr < 5) {
+                // No room for a chunk header and data, let the chunk span
+                // the packet boundary rather than sending a short packet
+                if (scratch == null) {
+                    scratch = new byte[bufferSize];
+                }
+
+                res = in.read(scratch);
+
+                if (res > 0) {
+                    write(res);
+                    write(scratch, 0, res);
+                }
+            } else {
+                res = in.read(buffer, bufferPtr + 4, buffer.length - bufferPtr - 4);
+
+                if (res > 0) {
+                    write(res);
+                    bufferPtr += res;
+                }
+            }
+
+            if (res < 0) {
+                break;
+            }
+        }
+
+        write(0); // Terminator chunk
+    }
+
+    /**
+     * Copy the contents of a Reader to the server as a TDS 7.2 partially
+     * length-prefixed value of unknown length.
+     * <p>
+     * Each chunk of characters is encoded in a single pass, either straight
+     * into the packet buffer (UTF-16LE) or by a <code>CharsetEncoder</code>.
+     *
+     * @param in      The Reader with the data.
+     * @param charset the charset to encode the data in or <code>null</code>
+     *                for UTF-16LE
+     * @throws IOException
+     */
+    void writePLP(Reader in, CharsetInfo charset) throws IOException {
+        CharBuffer cbuffer = CharBuffer.allocate(CHAR_CHUNK_SIZE);
+        CharsetEncoder encoder = null;
+        ByteBuffer bbuffer = null;
+        int carry = 0;
+        int res;
+
+        if (charset != null) {
+            encoder = charset.getEncoder();
+            bbuffer = ByteBuffer.allocate(
+                    (int) Math.ceil(CHAR_CHUNK_SIZE * encoder.maxBytesPerChar()) + 16);
+        }
+
+        write(PLP_UNKNOWN_LEN);
+
+        while ((res = in.read(cbuffer.array(), carry, cbuffer.capacity() - carry)) >= 0) {
+            if (encoder == null) {
+                if (res > 0) {
+                    write(res * 2);
+                    write(cbuffer.array(), 0, res);
+                }
+            } else {
+                cbuffer.clear();
+                cbuffer.limit(carry + res);
+                bbuffer.clear();
+                encoder.encode(cbuffer, bbuffer, false);
+                writePLPChunk(bbuffer);
+                // Keep an unencoded trailing high surrogate for the next chunk
+                cbuffer.compact();
+                carry = cbuffer.position();
+            }
+        }
+
+        if (encoder != null) {
+            cbuffer.flip();
+            bbuffer.clear();
+            encoder.encode(cbuffer, bbuffer, true);
+            encoder.flush(bbuffer);
+            writePLPChunk(bbuffer);
+        }
+
+        write(0); // Terminator chunk
+    }
+
+    /**
+     * Write a byte array to the server as a TDS 7.2 partially length-prefixed
+     * value consisting of a single chunk.
+     *
+     * @param b The byte array to write.
+     * @throws IOException
+     */
+    void writePLP(byte[] b) throws IOException {
+        write((long) b.length);
+
+        if (b.length > 0) {
+            write(b.length);
+            write(b);
+        }
+
+        write(0); // Terminator chunk
+    }
+
+    /**
+     * Write the encoded bytes in a buffer as a single PLP chunk, if any.
+     *
+     * @param bb the buffer holding the encoded bytes
+     * @throws IOException
+     */
+    private void writePLPChunk(ByteBuffer bb) throws IOException {
+        if (bb.position() > 0) {
+            write(bb.position());
+            write(bb.array(), 0, bb.position());
+        }
+    }
+
+    /**
+     * Encode characters straight into the packet buffer, sending packets as
+     * they fill up. Near the end of a packet the output goes through a small
+     * spill buffer, so that a multi-byte sequence can straddle the packet
+     * boundary without a short packet being sent.
+     *
+     * @param encoder    the encoder to use
+     * @param in         the characters to encode
+     * @param endOfInput <code>true</code> if no more input follows, in which
+     *                   case the encoder is also flushed
+     * @throws IOException
+     */
+    private void encode(CharsetEncoder encoder, CharBuffer in, boolean endOfInput)
+            throws IOException {
+        boolean flush = false;
+
+        while (true) {
+            int available = buffer.length - bufferPtr;
+            boolean spill = available < ENCODE_SPILL_SIZE;
+            ByteBuffer out = spill ? ByteBuffer.allocate(ENCODE_SPILL_SIZE)
+                                   : ByteBuffer.wrap(buffer, bufferPtr, available);
+            CoderResult cr = flush ? encoder.flush(out)
+                                   : encoder.encode(in, out, endOfInput);
+
+            if (spill) {
+                write(out.array(), 0, out.position());
+            } else {
+                bufferPtr = out.position();
+            }
+
+            if (cr.isError()) {
+                cr.throwException();
+            } else if (cr.isUnderflow()) {
+                if (!endOfInput || flush) {
+                    return;
+                }
+
+                flush = true;
+            }
+        }
     }
 
     /**
@@ -556,6 +817,12 @@ public class RequestStream {
 
         buffer[0] = pktType;
         buffer[1] = (byte) last; // last segment indicator
+        if (resetConnection && !inRequest) {
+            // only valid in the first packet of a request
+            buffer[1] |= TdsCore.STATUS_RESETCONNECTION;
+            resetConnection = false;
+        }
+        inRequest = last == 0;
         buffer[2] = (byte) (bufferPtr >> 8);
         buffer[3] = (byte) bufferPtr;
         buffer[4] = 0;
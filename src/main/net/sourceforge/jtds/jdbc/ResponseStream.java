@@ -19,8 +19,8 @@ package net.sourceforge.jtds.jdbc;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.math.BigDecimal;
-import java.io.UnsupportedEncodingException;
 
 import net.sourceforge.jtds.jdbc.SharedSocket.VirtualSocket;
 import net.sourceforge.jtds.util.*;
@@ -79,6 +79,24 @@ public class ResponseStream {
        bufferPtr = bufferSize;
     }
 
+    /**
+     * Constructs a <code>ResponseStream</code> reading data already copied
+     * from the server response, such as a block of rows being decoded on
+     * another thread. Reading beyond the data fails with an
+     * <code>IOException</code>.
+     *
+     * @param socket the shared socket the data was read from
+     * @param data   the data to read
+     * @param len    the number of bytes of data
+     */
+    ResponseStream(SharedSocket socket, byte[] data, int len) {
+        _VirtualSocket = null;
+        this.socket = socket;
+        buffer = data;
+        bufferLen = len;
+        bufferPtr = 0;
+    }
+
    /**
     * Retrieves the {@link VirtualSocket} used by this stream id.
     *
@@ -295,16 +313,28 @@ public class ResponseStream {
      * @throws IOException if an I/O error occurs
      */
     String readString(int len, CharsetInfo info) throws IOException {
-        String charsetName = info.getCharset();
+        char[] table = info.getDecodeTable();
+
+        if (table != null) {
+            // Single byte charset, translate straight from the packet buffer
+            char[] chars = (len > charBuffer.length) ? new char[len] : charBuffer;
+
+            for (int i = 0; i < len; i++) {
+                if (bufferPtr >= bufferLen) {
+                    getPacket();
+                }
+
+                chars[i] = table[buffer[bufferPtr++] & 0xFF];
+            }
+
+            return new String(chars, 0, len);
+        }
+
         byte[] bytes = (len > byteBuffer.length) ? new byte[len] : byteBuffer;
 
         read(bytes, 0, len);
 
-        try {
-            return new String(bytes, 0, len, charsetName);
-        } catch (UnsupportedEncodingException e) {
-            return new String(bytes, 0, len);
-        }
+        return info.decode(bytes, 0, len);
     }
 
     /**
@@ -463,6 +493,49 @@ public class ResponseStream {
         return new TdsInputStream(this, len);
     }
 
+    /**
+     * Creates an <code>InputStream</code> over a TDS 7.2 partially
+     * length-prefixed value, following the total length already read by the
+     * caller. The chunk headers are removed; the stream ends after the
+     * terminating chunk has been read.
+     *
+     * @return the <code>InputStream</code> built over the server response
+     */
+    InputStream getPLPInputStream() {
+        return new PLPInputStream(this);
+    }
+
+    /**
+     * Copies a TDS 7.2 partially length-prefixed value, following the total
+     * length already read by the caller, to an <code>OutputStream</code>.
+     * Each chunk is written straight from the network packet buffers.
+     *
+     * @param out the <code>OutputStream</code> to write the value to
+     * @return the number of bytes copied as a <code>long</code>
+     * @throws IOException if an I/O error occurs
+     */
+    long copyPLP(OutputStream out) throws IOException {
+        long total = 0;
+        int chunkLen;
+
+        while ((chunkLen = readInt()) != 0) {
+            total += chunkLen;
+
+            while (chunkLen > 0) {
+                if (bufferPtr >= bufferLen) {
+                    getPacket();
+                }
+
+                int bc = Math.min(bufferLen - bufferPtr, chunkLen);
+                out.write(buffer, bufferPtr, bc);
+                bufferPtr += bc;
+                chunkLen -= bc;
+            }
+        }
+
+        return total;
+    }
+
     /**
      * Read the next TDS packet from the network.
      *
@@ -474,6 +547,10 @@ public class ResponseStream {
                 throw new IOException("ResponseStream is closed");
             }
 
+            if (_VirtualSocket == null) {
+                throw new IOException("Unexpected end of data");
+            }
+
             buffer = socket.getNetPacket(_VirtualSocket, buffer);
             bufferLen = ((buffer[2] & 0xFF) << 8) | (buffer[3] & 0xFF);
             bufferPtr = TdsCore.PKT_HDR_LEN;
@@ -484,6 +561,61 @@ public class ResponseStream {
         }
     }
 
+    /**
+     * Inner class implementing an <code>InputStream</code> over a TDS 7.2
+     * partially length-prefixed value in the server response.
+     */
+    private static class PLPInputStream extends InputStream {
+        /** The underlying <code>ResponseStream</code>. */
+        ResponseStream tds;
+        /** Bytes left in the current chunk, -1 after the last chunk. */
+        int chunkLen;
+
+        /**
+         * Creates a <code>PLPInputStream</code> instance.
+         *
+         * @param tds the underlying <code>ResponseStream</code>
+         */
+        public PLPInputStream(ResponseStream tds) {
+            this.tds = tds;
+        }
+
+        public int read() throws IOException {
+            if (!nextChunk()) {
+                return -1;
+            }
+            chunkLen--;
+            return tds.read();
+        }
+
+        public int read(byte[] bytes, int offset, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!nextChunk()) {
+                return -1;
+            }
+            int bc = tds.read(bytes, offset, Math.min(chunkLen, len));
+            chunkLen -= bc;
+            return bc;
+        }
+
+        /**
+         * Reads the next chunk header if the current chunk is exhausted.
+         *
+         * @return <code>false</code> if the end of the value was reached
+         */
+        private boolean nextChunk() throws IOException {
+            if (chunkLen == 0) {
+                chunkLen = tds.readInt();
+                if (chunkLen == 0) {
+                    chunkLen = -1;
+                }
+            }
+            return chunkLen > 0;
+        }
+    }
+
     /**
      * Simple inner class implementing an <code>InputStream</code> over the
      * server response.
@@ -521,5 +653,15 @@ public class ResponseStream {
                 return bc;
             }
         }
+
+        public long skip(long n) throws IOException {
+            if (maxLen < 1 || n <= 0) {
+                return 0;
+            }
+            int bc = (int) Math.min(maxLen, n);
+            tds.skip(bc);
+            maxLen -= bc;
+            return bc;
+        }
     }
 }
@@ -0,0 +1,400 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+//
+package net.sourceforge.jtds.jdbc;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * <p> Decodes a run of consecutive row tokens in parallel (experimental).
+ * </p>
+ *
+ * <p> The thread reading the results splits the server response into blocks
+ * of rows. It only reads the length of each column value, which is much
+ * cheaper than decoding it, and copies the raw row data. The blocks are
+ * decoded by {@link TdsData#readData(JtdsConnection, ResponseStream, ColInfo)}
+ * on a shared {@link ForkJoinPool}, and the rows are returned in server
+ * order. Scanning stops at the first token that is not a row, which is left
+ * in the response. </p>
+ *
+ * <p> Only results whose columns all have values of known size can be
+ * decoded this way, see {@link #isScannable(ColInfo[], int)}. Text, image
+ * and TDS 7.2 (max) values have to be read from the server response
+ * directly. </p>
+ */
+final class RowPipeline
+{
+
+   /**
+    * maximum number of rows per block
+    */
+   private static final int   BLOCK_ROWS  = 128;
+
+   /**
+    * number of bytes after which a block is closed, even if not full
+    */
+   private static final int   BLOCK_BYTES = 64 * 1024;
+
+   /**
+    * the pool shared by all pipelines, created on first use
+    */
+   private static ForkJoinPool _Pool;
+
+   private final JtdsConnection _Connection;
+
+   private final SharedSocket   _Socket;
+
+   private final ResponseStream _In;
+
+   private final ColInfo[]      _Columns;
+
+   /**
+    * scan sizes of the columns, see {@link TdsData#getScanSize(ColInfo, int)}
+    */
+   private final int[]          _Sizes;
+
+   /**
+    * maximum number of blocks scanned ahead of the consumer
+    */
+   private final int            _Depth;
+
+   /**
+    * blocks being decoded, in server order
+    */
+   private final LinkedList<Future<Object[][]>> _Blocks = new LinkedList<Future<Object[][]>>();
+
+   /**
+    * rows of the block currently returned
+    */
+   private Object[][]           _Rows;
+
+   /**
+    * index of the next row in {@link #_Rows} to return
+    */
+   private int                  _Next;
+
+   /**
+    * set once the first token not being a row has been seen
+    */
+   private boolean              _EndOfRows;
+
+   /**
+    * Creates a pipeline decoding the rows following in the server response.
+    *
+    * @param connection
+    *    the connection the rows are read for
+    *
+    * @param socket
+    *    the shared socket the response is read from
+    *
+    * @param in
+    *    the server response, positioned at a row token
+    *
+    * @param columns
+    *    descriptors of the columns of the rows, all scannable
+    */
+   RowPipeline( JtdsConnection connection, SharedSocket socket, ResponseStream in, ColInfo[] columns )
+   {
+      _Connection = connection;
+      _Socket     = socket;
+      _In         = in;
+      _Columns    = columns;
+      _Sizes      = new int[columns.length];
+
+      for( int i = 0; i < columns.length; i ++ )
+      {
+         _Sizes[i] = TdsData.getScanSize( columns[i], in.getTdsVersion() );
+      }
+
+      _Depth = 2 * getPool().getParallelism();
+   }
+
+   /**
+    * Checks whether the rows of a result can be split without decoding them.
+    *
+    * @param columns
+    *    descriptors of the columns of the result
+    *
+    * @param tdsVersion
+    *    the TDS version of the connection
+    *
+    * @return
+    *    {@code true} if the size of all column values can be found cheaply
+    */
+   static boolean isScannable( ColInfo[] columns, int tdsVersion )
+   {
+      if( columns == null || columns.length == 0 )
+         return false;
+
+      for( int i = 0; i < columns.length; i ++ )
+      {
+         if( TdsData.getScanSize( columns[i], tdsVersion ) == 0 )
+            return false;
+      }
+
+      return true;
+   }
+
+   /**
+    * Returns the next row of the run.
+    *
+    * @return
+    *    the column values of the next row or {@code null} if there are no more
+    *    rows in the run, the server response is then positioned at the token
+    *    following the last row
+    *
+    * @throws IOException
+    *    if an I/O error occurs
+    *
+    * @throws ProtocolException
+    *    if the row data is invalid
+    */
+   Object[] next()
+      throws IOException, ProtocolException
+   {
+      if( _Rows != null && _Next < _Rows.length )
+         return _Rows[_Next ++];
+
+      _Rows = null;
+
+      // keep the pool busy before waiting for the next block
+      while( ! _EndOfRows && _Blocks.size() < _Depth )
+      {
+         scanBlock();
+      }
+
+      if( _Blocks.isEmpty() )
+         return null;
+
+      _Rows = await( _Blocks.removeFirst() );
+      _Next = 1;
+      return _Rows[0];
+   }
+
+   /**
+    * Checks whether rows already read from the server response are waiting to
+    * be returned by {@link #next()}.
+    *
+    * @return
+    *    {@code true} if there are buffered rows
+    */
+   boolean hasBufferedRows()
+   {
+      return _Rows != null && _Next < _Rows.length || ! _Blocks.isEmpty();
+   }
+
+   /**
+    * Discards all buffered rows, cancelling blocks not decoded yet. The
+    * server response is left positioned at the token following the rows
+    * scanned so far.
+    */
+   void cancel()
+   {
+      for( Future<Object[][]> block : _Blocks )
+      {
+         block.cancel( false );
+      }
+
+      _Blocks.clear();
+      _Rows = null;
+   }
+
+   /**
+    * Copies the next block of rows from the server response and submits it
+    * for decoding.
+    */
+   private void scanBlock()
+      throws IOException, ProtocolException
+   {
+      byte[] data = new byte[4096];
+      int    len  = 0;
+      int    rows = 0;
+
+      while( rows < BLOCK_ROWS && len < BLOCK_BYTES )
+      {
+         if( (byte) _In.peek() != TdsCore.TDS_ROW_TOKEN )
+         {
+            _EndOfRows = true;
+            break;
+         }
+
+         // token
+         data = ensure( data, len, 1 );
+         data[len ++] = (byte) _In.read();
+
+         for( int i = 0; i < _Sizes.length; i ++ )
+         {
+            int size = _Sizes[i];
+            int prefix = - size;
+
+            if( size < 0 )
+            {
+               // read and copy the length of the value
+               data = ensure( data, len, prefix );
+               _In.read( data, len, prefix );
+
+               switch( prefix )
+               {
+                  case 1 : size = data[len] & 0xFF;
+                           break;
+                  case 2 : size = (short) ( data[len] & 0xFF | ( data[len + 1] & 0xFF ) << 8 );
+                           break;
+                  default: size = data[len] & 0xFF | ( data[len + 1] & 0xFF ) << 8 | ( data[len + 2] & 0xFF ) << 16 | ( data[len + 3] & 0xFF ) << 24;
+                           break;
+               }
+
+               len += prefix;
+
+               if( size < 0 )
+               {
+                  // null value
+                  continue;
+               }
+            }
+
+            data = ensure( data, len, size );
+            _In.read( data, len, size );
+            len += size;
+         }
+
+         rows ++;
+      }
+
+      if( rows > 0 )
+      {
+         _Blocks.addLast( getPool().submit( new Decoder( data, len, rows ) ) );
+      }
+   }
+
+   /**
+    * Waits for a block to be decoded.
+    */
+   private static Object[][] await( Future<Object[][]> block )
+      throws IOException, ProtocolException
+   {
+      try
+      {
+         return block.get();
+      }
+      catch( InterruptedException e )
+      {
+         Thread.currentThread().interrupt();
+         throw (IOException) new InterruptedIOException( "Interrupted while decoding rows" ).initCause( e );
+      }
+      catch( ExecutionException e )
+      {
+         Throwable cause = e.getCause();
+
+         // the pool wraps checked exceptions of a task, possibly repeatedly
+         while( cause instanceof RuntimeException && ( cause.getCause() instanceof IOException || cause.getCause() instanceof ProtocolException || cause.getCause() instanceof RuntimeException ) )
+         {
+            cause = cause.getCause();
+         }
+
+         if( cause instanceof IOException )
+            throw (IOException) cause;
+         if( cause instanceof ProtocolException )
+            throw (ProtocolException) cause;
+         if( cause instanceof RuntimeException )
+            throw (RuntimeException) cause;
+         if( cause instanceof Error )
+            throw (Error) cause;
+
+         throw (IOException) new IOException( String.valueOf( cause ) ).initCause( cause );
+      }
+   }
+
+   /**
+    * Grows a block buffer to hold at least {@code count} more bytes.
+    */
+   private static byte[] ensure( byte[] data, int len, int count )
+   {
+      if( len + count <= data.length )
+         return data;
+
+      byte[] tmp = new byte[Math.max( data.length * 2, len + count )];
+      System.arraycopy( data, 0, tmp, 0, len );
+      return tmp;
+   }
+
+   /**
+    * Returns the pool shared by all pipelines.
+    */
+   private static synchronized ForkJoinPool getPool()
+   {
+      if( _Pool == null )
+      {
+         // worker threads are daemon threads and end when idle
+         _Pool = new ForkJoinPool( Runtime.getRuntime().availableProcessors() );
+      }
+
+      return _Pool;
+   }
+
+   /**
+    * Decodes one block of rows.
+    */
+   private final class Decoder implements Callable<Object[][]>
+   {
+
+      private final byte[] _Data;
+
+      private final int    _Length;
+
+      private final int    _Count;
+
+      Decoder( byte[] data, int length, int count )
+      {
+         _Data   = data;
+         _Length = length;
+         _Count  = count;
+      }
+
+      @Override
+      public Object[][] call()
+         throws IOException, ProtocolException
+      {
+         ResponseStream in = new ResponseStream( _Socket, _Data, _Length );
+         Object[][] rows = new Object[_Count][];
+
+         for( int r = 0; r < _Count; r ++ )
+         {
+            // skip the row token
+            in.read();
+
+            Object[] row = new Object[_Columns.length];
+
+            for( int i = 0; i < row.length; i ++ )
+            {
+               row[i] = TdsData.readData( _Connection, in, _Columns[i] );
+            }
+
+            rows[r] = row;
+         }
+
+         return rows;
+      }
+
+   }
+
+}
@@ -0,0 +1,1077 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+//
+package net.sourceforge.jtds.jdbc;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.sql.Date;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+import net.sourceforge.jtds.util.Logger;
+
+/**
+ * <p> Stores the rows cached by a result set in a compact binary encoding.
+ * </p>
+ *
+ * <p> Rows are encoded when added and packed into byte slabs, an index of the
+ * row offsets provides random access for scrollable result sets. Encoded rows
+ * are kept in memory up to a given amount; further rows are written to a
+ * temporary file in the buffer directory, which is read and written at
+ * explicit positions. The file is deleted by {@link #close()} when the
+ * result set is closed. </p>
+ *
+ * <p> Numbers, strings, binary values and date/time values are encoded,
+ * other values, e.g. <code>Blob</code>s and <code>Clob</code>s, are kept as
+ * objects referenced from the encoding. A replaced row is overwritten if
+ * its new encoding fits, otherwise the new encoding is appended; object
+ * references of replaced and removed rows are reused. If the file cannot be
+ * written, further rows are kept in memory. </p>
+ *
+ * <p> {@link #get(int)} decodes a row into a new array. A row retrieved by
+ * {@link #getPending(int)} instead is decoded column by column as its values
+ * are requested by {@link #readPending(Object[], int)}, similar to the
+ * pending columns of a row read from the server response. Only the row last
+ * retrieved this way is pending. </p>
+ *
+ * <p> Since retrieved rows are copies, changes to a row only take effect
+ * when it is written back with {@link #set(int, Object[])}. </p>
+ */
+final class RowStore extends AbstractList<Object[]> implements RandomAccess
+{
+
+   /**
+    * maximum size of a slab, unless holding a single larger row
+    */
+   private static final int SLAB_SIZE = 1 << 20;
+
+   private static final int T_NULL      = 0;
+   private static final int T_INT       = 1;
+   private static final int T_LONG      = 2;
+   private static final int T_FLOAT     = 3;
+   private static final int T_DOUBLE    = 4;
+   private static final int T_TRUE      = 5;
+   private static final int T_FALSE     = 6;
+   private static final int T_STRING8   = 7;
+   private static final int T_STRING16  = 8;
+   private static final int T_BYTES     = 9;
+   private static final int T_DECIMAL   = 10;
+   private static final int T_DATETIME  = 11;
+   private static final int T_TIMESTAMP = 12;
+   private static final int T_DATE      = 13;
+   private static final int T_TIME      = 14;
+   private static final int T_UNIQUE    = 15;
+   private static final int T_OBJECT    = 16;
+
+   /**
+    * amount of memory encoded rows may use before being written to disk
+    */
+   private final long      _Memory;
+
+   /**
+    * directory to create the file in
+    */
+   private final File      _Dir;
+
+   /**
+    * offsets of the rows, slab index and position within the slab for rows
+    * in memory, negative ({@code -pos - 1}) for rows in the file
+    */
+   private long[]          _Offsets = new long[64];
+
+   /**
+    * lengths of the encoded rows, -1 for {@code null} rows
+    */
+   private int[]           _Lengths = new int[64];
+
+   private int             _Size;
+
+   /**
+    * slabs holding the rows kept in memory, never moved or overwritten
+    */
+   private final ArrayList<byte[]> _Slabs = new ArrayList<byte[]>();
+
+   /**
+    * number of bytes used in the last slab
+    */
+   private int             _SlabLength;
+
+   /**
+    * size of the next slab, doubling up to {@link #SLAB_SIZE}
+    */
+   private int             _SlabSize = 4096;
+
+   /**
+    * number of bytes of encoded rows kept in memory
+    */
+   private long            _HeapLength;
+
+   private File            _File;
+
+   private RandomAccessFile _Raf;
+
+   private FileChannel     _Channel;
+
+   private long            _FileLength;
+
+   /**
+    * set if the file cannot be used, rows are kept in memory then
+    */
+   private boolean         _NoFile;
+
+   /**
+    * values kept as objects, referenced by index from the encoding
+    */
+   private final ArrayList<Object> _Objects = new ArrayList<Object>();
+
+   /**
+    * indexes of unused entries in {@link #_Objects}
+    */
+   private int[]           _FreeObjects = new int[16];
+
+   private int             _FreeCount;
+
+   /**
+    * buffer rows are encoded into
+    */
+   private byte[]          _Out     = new byte[256];
+
+   /**
+    * number of bytes encoded into {@link #_Out}
+    */
+   private int             _OutLength;
+
+   /**
+    * buffer rows read from the file are copied into
+    */
+   private byte[]          _In      = new byte[256];
+
+   /**
+    * encoded data values are currently decoded from
+    */
+   private byte[]          _Src;
+
+   /**
+    * current position in {@link #_Src}
+    */
+   private int             _Pos;
+
+   /**
+    * the row returned by {@link #getPending(int)}, if not complete yet
+    */
+   private Object[]        _Pending;
+
+   /**
+    * encoded data of the pending row
+    */
+   private byte[]          _PendingSrc;
+
+   /**
+    * positions of the pending row's values in {@link #_PendingSrc}, -1 for
+    * values already decoded
+    */
+   private int[]           _PendingColumns;
+
+   /**
+    * Creates a new, empty row store.
+    *
+    * @param memory
+    *    the number of bytes of encoded rows kept in memory
+    *
+    * @param dir
+    *    the directory to write further rows to
+    */
+   RowStore( long memory, File dir )
+   {
+      _Memory = memory;
+      _Dir    = dir;
+   }
+
+   @Override
+   public int size()
+   {
+      return _Size;
+   }
+
+   @Override
+   public Object[] get( int index )
+   {
+      checkIndex( index, _Size );
+
+      if( ! locate( index ) )
+         return null;
+
+      Object[] row = new Object[readInt()];
+
+      for( int i = 0; i < row.length; i ++ )
+      {
+         row[i] = readValue();
+      }
+
+      return row;
+   }
+
+   /**
+    * Retrieves a row without decoding its values, which are decoded by
+    * {@link #readPending(Object[], int)} when needed. The values of a row
+    * previously retrieved this way that have not been read are lost.
+    *
+    * @param index
+    *    the index of the row
+    *
+    * @return
+    *    an array of the row's size with all values {@code null}, or
+    *    {@code null} for a {@code null} row
+    */
+   Object[] getPending( int index )
+   {
+      checkIndex( index, _Size );
+
+      _Pending = null;
+
+      if( ! locate( index ) )
+         return null;
+
+      int count = readInt();
+
+      if( _PendingColumns == null || _PendingColumns.length != count )
+      {
+         _PendingColumns = new int[count];
+      }
+
+      for( int i = 0; i < count; i ++ )
+      {
+         _PendingColumns[i] = _Pos;
+         skipValue();
+      }
+
+      _Pending = new Object[count];
+      _PendingSrc = _Src;
+      return _Pending;
+   }
+
+   /**
+    * Decodes a value of a row retrieved by {@link #getPending(int)}, if not
+    * decoded yet.
+    *
+    * @param row
+    *    the row, nothing is done if this is not the pending row
+    *
+    * @param column
+    *    the index of the column (0 based)
+    */
+   void readPending( Object[] row, int column )
+   {
+      if( row != _Pending || row == null || column >= row.length || _PendingColumns[column] < 0 )
+         return;
+
+      _Src = _PendingSrc;
+      _Pos = _PendingColumns[column];
+      row[column] = readValue();
+      _PendingColumns[column] = -1;
+   }
+
+   /**
+    * Decodes all values of a row retrieved by {@link #getPending(int)} not
+    * decoded yet, so that the row is complete.
+    *
+    * @param row
+    *    the row, nothing is done if this is not the pending row
+    */
+   void readPending( Object[] row )
+   {
+      if( row != _Pending || row == null )
+         return;
+
+      for( int i = 0; i < row.length; i ++ )
+      {
+         readPending( row, i );
+      }
+
+      _Pending = null;
+   }
+
+   /**
+    * Replaces a row.
+    *
+    * @return
+    *    always {@code null}, the previous row is not decoded
+    */
+   @Override
+   public Object[] set( int index, Object[] row )
+   {
+      checkIndex( index, _Size );
+
+      // the pending row may refer to the values about to be replaced
+      readPending( _Pending );
+      releaseObjects( index );
+
+      if( row == null )
+      {
+         _Lengths[index] = -1;
+      }
+      else
+      {
+         encode( row );
+
+         if( _Lengths[index] >= _OutLength )
+         {
+            overwrite( _Offsets[index] );
+         }
+         else
+         {
+            _Offsets[index] = store();
+         }
+
+         _Lengths[index] = _OutLength;
+      }
+
+      return null;
+   }
+
+   @Override
+   public void add( int index, Object[] row )
+   {
+      checkIndex( index, _Size + 1 );
+
+      long offset = 0;
+      int length = -1;
+
+      if( row != null )
+      {
+         encode( row );
+         offset = store();
+         length = _OutLength;
+      }
+
+      if( _Size == _Offsets.length )
+      {
+         _Offsets = Arrays.copyOf( _Offsets, _Size * 2 );
+         _Lengths = Arrays.copyOf( _Lengths, _Size * 2 );
+      }
+
+      System.arraycopy( _Offsets, index, _Offsets, index + 1, _Size - index );
+      System.arraycopy( _Lengths, index, _Lengths, index + 1, _Size - index );
+      _Offsets[index] = offset;
+      _Lengths[index] = length;
+      _Size ++;
+      modCount ++;
+   }
+
+   /**
+    * Removes a row.
+    *
+    * @return
+    *    always {@code null}, the removed row is not decoded
+    */
+   @Override
+   public Object[] remove( int index )
+   {
+      checkIndex( index, _Size );
+
+      readPending( _Pending );
+      releaseObjects( index );
+
+      System.arraycopy( _Offsets, index + 1, _Offsets, index, _Size - index - 1 );
+      System.arraycopy( _Lengths, index + 1, _Lengths, index, _Size - index - 1 );
+      _Size --;
+      modCount ++;
+      return null;
+   }
+
+   /**
+    * Retrieves the number of bytes of encoded rows kept in memory.
+    *
+    * @return
+    *    the size of the encoded rows, not including unused slab space
+    */
+   long getHeapLength()
+   {
+      return _HeapLength;
+   }
+
+   /**
+    * Retrieves the number of bytes written to disk.
+    *
+    * @return
+    *    the size of the file
+    */
+   long getFileLength()
+   {
+      return _FileLength;
+   }
+
+   /**
+    * Removes all rows and deletes the file. The store can be used again
+    * afterwards.
+    */
+   void close()
+   {
+      _Size = 0;
+      _Slabs.clear();
+      _SlabLength = 0;
+      _HeapLength = 0;
+      _Objects.clear();
+      _FreeCount = 0;
+      _FileLength = 0;
+      _Pending = null;
+      _PendingSrc = null;
+      _Src = null;
+      modCount ++;
+
+      if( _File != null )
+      {
+         try
+         {
+            if( _Raf != null )
+            {
+               _Raf.close();
+            }
+         }
+         catch( IOException e )
+         {
+            // ignore, the file is deleted anyway
+         }
+
+         // no deleteOnExit(), memory leak, see http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=6664633
+         _File.delete();
+         _File = null;
+         _Raf = null;
+         _Channel = null;
+      }
+   }
+
+   private static void checkIndex( int index, int size )
+   {
+      if( index < 0 || index >= size )
+         throw new IndexOutOfBoundsException( "Index: " + index + ", Size: " + size );
+   }
+
+   /**
+    * Stores the row encoded in {@link #_Out}.
+    *
+    * @return
+    *    the offset of the row
+    */
+   private long store()
+   {
+      if( ! _NoFile && ( _Channel != null || _HeapLength + _OutLength > _Memory ) )
+      {
+         try
+         {
+            if( _Channel == null )
+            {
+               _File = File.createTempFile( "jtds", ".tmp", _Dir );
+               _Raf = new RandomAccessFile( _File, "rw" );
+               _Channel = _Raf.getChannel();
+            }
+
+            long pos = _FileLength;
+            transfer( pos, _Out, _OutLength, true );
+            _FileLength += _OutLength;
+            return - pos - 1;
+         }
+         catch( IOException e )
+         {
+            Logger.logException( e );
+            discardFile();
+         }
+         catch( SecurityException e )
+         {
+            // not allowed to use a file, so carry on in memory
+            discardFile();
+         }
+      }
+
+      byte[] slab = _Slabs.isEmpty() ? null : _Slabs.get( _Slabs.size() - 1 );
+
+      if( slab == null || _SlabLength + _OutLength > slab.length )
+      {
+         slab = new byte[Math.max( _OutLength, _SlabSize )];
+         _SlabSize = Math.min( _SlabSize * 2, SLAB_SIZE );
+         _SlabLength = 0;
+         _Slabs.add( slab );
+      }
+
+      System.arraycopy( _Out, 0, slab, _SlabLength, _OutLength );
+      long offset = (long) ( _Slabs.size() - 1 ) << 32 | _SlabLength;
+      _SlabLength += _OutLength;
+      _HeapLength += _OutLength;
+      return offset;
+   }
+
+   /**
+    * Keeps further rows in memory after the file could not be used. A file
+    * already holding rows is kept.
+    */
+   private void discardFile()
+   {
+      _NoFile = true;
+
+      if( _Channel == null && _File != null )
+      {
+         _File.delete();
+         _File = null;
+      }
+   }
+
+   /**
+    * Replaces a stored row by the shorter or equally long row encoded in
+    * {@link #_Out}.
+    */
+   private void overwrite( long offset )
+   {
+      if( offset >= 0 )
+      {
+         System.arraycopy( _Out, 0, _Slabs.get( (int) ( offset >>> 32 ) ), (int) offset, _OutLength );
+         return;
+      }
+
+      try
+      {
+         transfer( - offset - 1, _Out, _OutLength, true );
+      }
+      catch( IOException e )
+      {
+         throw new IllegalStateException( "Cannot write the row buffer file", e );
+      }
+   }
+
+   /**
+    * Releases the values of a row kept as objects, so that their entries in
+    * {@link #_Objects} can be reused.
+    */
+   private void releaseObjects( int index )
+   {
+      if( ! locate( index ) )
+         return;
+
+      for( int count = readInt(); count > 0; count -- )
+      {
+         if( _Src[_Pos] != T_OBJECT )
+         {
+            skipValue();
+            continue;
+         }
+
+         _Pos ++;
+         int slot = readInt();
+         _Objects.set( slot, null );
+
+         if( _FreeCount == _FreeObjects.length )
+         {
+            _FreeObjects = Arrays.copyOf( _FreeObjects, _FreeCount * 2 );
+         }
+
+         _FreeObjects[_FreeCount ++] = slot;
+      }
+   }
+
+   /**
+    * Prepares decoding a row, rows in the file are copied into {@link #_In}.
+    *
+    * @return
+    *    {@code false} for a {@code null} row
+    */
+   private boolean locate( int index )
+   {
+      long offset = _Offsets[index];
+      int length = _Lengths[index];
+
+      if( length < 0 )
+         return false;
+
+      if( offset >= 0 )
+      {
+         _Src = _Slabs.get( (int) ( offset >>> 32 ) );
+         _Pos = (int) offset;
+         return true;
+      }
+
+      if( _Pending != null && _PendingSrc == _In )
+      {
+         // the pending row is about to be overwritten
+         readPending( _Pending );
+      }
+
+      if( _In.length < length )
+      {
+         _In = new byte[Math.max( _In.length * 2, length )];
+      }
+
+      try
+      {
+         transfer( - offset - 1, _In, length, false );
+      }
+      catch( IOException e )
+      {
+         throw new IllegalStateException( "Cannot read the row buffer file", e );
+      }
+
+      _Src = _In;
+      _Pos = 0;
+      return true;
+   }
+
+   /**
+    * Copies bytes between a buffer and the file at the given position,
+    * without moving the file pointer. Nothing is mapped into memory, so the
+    * file can be deleted on all platforms once closed.
+    */
+   private void transfer( long pos, byte[] buf, int length, boolean write )
+      throws IOException
+   {
+      ByteBuffer buffer = ByteBuffer.wrap( buf, 0, length );
+
+      while( buffer.hasRemaining() )
+      {
+         int count = write ? _Channel.write( buffer, pos ) : _Channel.read( buffer, pos );
+
+         if( count < 0 )
+            throw new EOFException( "Unexpected end of the row buffer file" );
+
+         pos += count;
+      }
+   }
+
+   /**
+    * Encodes a row into {@link #_Out}.
+    */
+   private void encode( Object[] row )
+   {
+      if( row == _Pending )
+      {
+         // values not decoded yet would be lost
+         readPending( row );
+      }
+
+      _OutLength = 0;
+      writeInt( row.length );
+
+      for( int i = 0; i < row.length; i ++ )
+      {
+         Object value = row[i];
+         Class<?> type = value == null ? null : value.getClass();
+
+         if( value == null )
+         {
+            writeByte( T_NULL );
+         }
+         else if( type == Integer.class )
+         {
+            writeByte( T_INT );
+            writeLong( ( (Integer) value ).intValue() );
+         }
+         else if( type == Long.class )
+         {
+            writeByte( T_LONG );
+            writeLong( ( (Long) value ).longValue() );
+         }
+         else if( type == Float.class )
+         {
+            writeByte( T_FLOAT );
+            writeFixed( Float.floatToRawIntBits( ( (Float) value ).floatValue() ), 4 );
+         }
+         else if( type == Double.class )
+         {
+            writeByte( T_DOUBLE );
+            writeFixed( Double.doubleToRawLongBits( ( (Double) value ).doubleValue() ), 8 );
+         }
+         else if( type == Boolean.class )
+         {
+            writeByte( ( (Boolean) value ).booleanValue() ? T_TRUE : T_FALSE );
+         }
+         else if( type == String.class )
+         {
+            writeString( (String) value );
+         }
+         else if( type == byte[].class )
+         {
+            writeByte( T_BYTES );
+            writeBytes( (byte[]) value );
+         }
+         else if( type == BigDecimal.class )
+         {
+            BigDecimal decimal = (BigDecimal) value;
+            writeByte( T_DECIMAL );
+            writeLong( decimal.scale() );
+            writeBytes( decimal.unscaledValue().toByteArray() );
+         }
+         else if( type == DateTime.class )
+         {
+            DateTime datetime = (DateTime) value;
+            writeByte( T_DATETIME );
+            writeLong( datetime.getPackedDate() );
+            writeLong( datetime.getPackedTime() );
+         }
+         else if( type == Timestamp.class )
+         {
+            Timestamp timestamp = (Timestamp) value;
+            writeByte( T_TIMESTAMP );
+            writeLong( timestamp.getTime() );
+            writeLong( timestamp.getNanos() );
+         }
+         else if( type == Date.class )
+         {
+            writeByte( T_DATE );
+            writeLong( ( (Date) value ).getTime() );
+         }
+         else if( type == Time.class )
+         {
+            writeByte( T_TIME );
+            writeLong( ( (Time) value ).getTime() );
+         }
+         else if( type == UniqueIdentifier.class )
+         {
+            writeByte( T_UNIQUE );
+            writeBytes( ( (UniqueIdentifier) value ).getBytes() );
+         }
+         else
+         {
+            int slot;
+
+            if( _FreeCount > 0 )
+            {
+               slot = _FreeObjects[-- _FreeCount];
+               _Objects.set( slot, value );
+            }
+            else
+            {
+               slot = _Objects.size();
+               _Objects.add( value );
+            }
+
+            writeByte( T_OBJECT );
+            writeInt( slot );
+         }
+      }
+   }
+
+   /**
+    * Decodes the value at the current position.
+    */
+   private Object readValue()
+   {
+      switch( _Src[_Pos ++] )
+      {
+         case T_NULL:
+            return null;
+
+         case T_INT:
+            return Integer.valueOf( (int) readLong() );
+
+         case T_LONG:
+            return Long.valueOf( readLong() );
+
+         case T_FLOAT:
+            return Float.valueOf( Float.intBitsToFloat( (int) readFixed( 4 ) ) );
+
+         case T_DOUBLE:
+            return Double.valueOf( Double.longBitsToDouble( readFixed( 8 ) ) );
+
+         case T_TRUE:
+            return Boolean.TRUE;
+
+         case T_FALSE:
+            return Boolean.FALSE;
+
+         case T_STRING8:
+         {
+            char[] chars = new char[readInt()];
+
+            for( int c = 0; c < chars.length; c ++ )
+            {
+               chars[c] = (char) ( _Src[_Pos ++] & 0xFF );
+            }
+
+            return new String( chars );
+         }
+
+         case T_STRING16:
+         {
+            char[] chars = new char[readInt()];
+
+            for( int c = 0; c < chars.length; c ++ )
+            {
+               chars[c] = (char) ( _Src[_Pos ++] & 0xFF | ( _Src[_Pos ++] & 0xFF ) << 8 );
+            }
+
+            return new String( chars );
+         }
+
+         case T_BYTES:
+            return readBytes();
+
+         case T_DECIMAL:
+         {
+            int scale = (int) readLong();
+            return new BigDecimal( new BigInteger( readBytes() ), scale );
+         }
+
+         case T_DATETIME:
+         {
+            int date = (int) readLong();
+            return new DateTime( date, (int) readLong() );
+         }
+
+         case T_TIMESTAMP:
+         {
+            Timestamp timestamp = new Timestamp( readLong() );
+            timestamp.setNanos( (int) readLong() );
+            return timestamp;
+         }
+
+         case T_DATE:
+            return new Date( readLong() );
+
+         case T_TIME:
+            return new Time( readLong() );
+
+         case T_UNIQUE:
+            return new UniqueIdentifier( readBytes() );
+
+         case T_OBJECT:
+            return _Objects.get( readInt() );
+
+         default:
+            throw new IllegalStateException( "Invalid row encoding" );
+      }
+   }
+
+   /**
+    * Skips the value at the current position without decoding it.
+    */
+   private void skipValue()
+   {
+      int length;
+
+      switch( _Src[_Pos ++] )
+      {
+         case T_NULL:
+         case T_TRUE:
+         case T_FALSE:
+            break;
+
+         case T_INT:
+         case T_LONG:
+         case T_DATE:
+         case T_TIME:
+         case T_OBJECT:
+            readLong();
+            break;
+
+         case T_DATETIME:
+         case T_TIMESTAMP:
+            readLong();
+            readLong();
+            break;
+
+         case T_FLOAT:
+            _Pos += 4;
+            break;
+
+         case T_DOUBLE:
+            _Pos += 8;
+            break;
+
+         case T_STRING16:
+            length = readInt();
+            _Pos += 2 * length;
+            break;
+
+         case T_DECIMAL:
+            readLong();
+            length = readInt();
+            _Pos += length;
+            break;
+
+         case T_STRING8:
+         case T_BYTES:
+         case T_UNIQUE:
+            // the length has to be read before the position is updated
+            length = readInt();
+            _Pos += length;
+            break;
+
+         default:
+            throw new IllegalStateException( "Invalid row encoding" );
+      }
+   }
+
+   private void ensure( int count )
+   {
+      if( _OutLength + count > _Out.length )
+      {
+         _Out = Arrays.copyOf( _Out, Math.max( _Out.length * 2, _OutLength + count ) );
+      }
+   }
+
+   private void writeByte( int value )
+   {
+      ensure( 1 );
+      _Out[_OutLength ++] = (byte) value;
+   }
+
+   /**
+    * Writes a non-negative value as a variable length integer.
+    */
+   private void writeInt( int value )
+   {
+      ensure( 5 );
+
+      while( ( value & ~0x7F ) != 0 )
+      {
+         _Out[_OutLength ++] = (byte) ( value & 0x7F | 0x80 );
+         value >>>= 7;
+      }
+
+      _Out[_OutLength ++] = (byte) value;
+   }
+
+   /**
+    * Writes a signed value as a zigzag encoded variable length integer.
+    */
+   private void writeLong( long value )
+   {
+      ensure( 10 );
+      value = value << 1 ^ value >> 63;
+
+      while( ( value & ~0x7FL ) != 0 )
+      {
+         _Out[_OutLength ++] = (byte) ( value & 0x7F | 0x80 );
+         value >>>= 7;
+      }
+
+      _Out[_OutLength ++] = (byte) value;
+   }
+
+   private void writeFixed( long value, int size )
+   {
+      ensure( size );
+
+      for( int i = 0; i < size; i ++ )
+      {
+         _Out[_OutLength ++] = (byte) value;
+         value >>= 8;
+      }
+   }
+
+   private void writeBytes( byte[] value )
+   {
+      writeInt( value.length );
+      ensure( value.length );
+      System.arraycopy( value, 0, _Out, _OutLength, value.length );
+      _OutLength += value.length;
+   }
+
+   /**
+    * Writes a string with one byte per character if possible.
+    */
+   private void writeString( String value )
+   {
+      int start = _OutLength;
+      int length = value.length();
+
+      writeByte( T_STRING8 );
+      writeInt( length );
+      ensure( length );
+
+      for( int i = 0; i < length; i ++ )
+      {
+         char c = value.charAt( i );
+
+         if( c > 0xFF )
+         {
+            _OutLength = start;
+            writeByte( T_STRING16 );
+            writeInt( length );
+            ensure( length * 2 );
+
+            for( int j = 0; j < length; j ++ )
+            {
+               c = value.charAt( j );
+               _Out[_OutLength ++] = (byte) c;
+               _Out[_OutLength ++] = (byte) ( c >> 8 );
+            }
+
+            return;
+         }
+
+         _Out[_OutLength ++] = (byte) c;
+      }
+   }
+
+   private int readInt()
+   {
+      int value = 0;
+
+      for( int shift = 0; ; shift += 7 )
+      {
+         int b = _Src[_Pos ++];
+         value |= ( b & 0x7F ) << shift;
+
+         if( b >= 0 )
+            return value;
+      }
+   }
+
+   private long readLong()
+   {
+      long value = 0;
+
+      for( int shift = 0; ; shift += 7 )
+      {
+         long b = _Src[_Pos ++];
+         value |= ( b & 0x7F ) << shift;
+
+         if( b >= 0 )
+            return value >>> 1 ^ - ( value & 1 );
+      }
+   }
+
+   private long readFixed( int size )
+   {
+      long value = 0;
+
+      for( int i = 0; i < size; i ++ )
+      {
+         value |= ( _Src[_Pos ++] & 0xFFL ) << ( i * 8 );
+      }
+
+      return value;
+   }
+
+   private byte[] readBytes()
+   {
+      byte[] value = new byte[readInt()];
+      System.arraycopy( _Src, _Pos, value, 0, value.length );
+      _Pos += value.length;
+      return value;
+   }
+
+}
@@ -184,6 +184,132 @@ class SQLParser {
       return ret;
    }
 
+   /**
+    * <p> Determine the position at which an <code>OUTPUT</code> clause can be
+    * inserted into an (already parsed) SQL <code>INSERT</code> statement. </p>
+    *
+    * <p> The <code>OUTPUT</code> clause of an <code>INSERT</code> has to be
+    * placed behind the optional column list, right in front of the first
+    * <code>VALUES</code>, <code>SELECT</code>, <code>DEFAULT VALUES</code> or
+    * <code>EXEC</code> keyword found outside of parentheses, string literals,
+    * quoted identifiers and comments. </p>
+    *
+    * @param sql
+    *    the processed SQL statement
+    *
+    * @return
+    *    the insert position or <code>-1</code> if the statement isn't an
+    *    <code>INSERT</code> or already contains an <code>OUTPUT</code> clause
+    */
+   static int findOutputClausePosition( String sql )
+   {
+      int len   = sql.length();
+      int depth = 0;
+      boolean insert = false;
+
+      for( int i = 0; i < len; i ++ )
+      {
+         char c = sql.charAt( i );
+
+         switch( c )
+         {
+            case '\'':
+            case '"' :
+            case '[' : char end = c == '[' ? ']' : c;
+
+                       // skip string literal or quoted identifier, doubled terminators are escapes
+                       for( ;; )
+                       {
+                          i = sql.indexOf( end, i + 1 );
+
+                          if( i < 0 )
+                             return -1;
+
+                          if( i + 1 < len && sql.charAt( i + 1 ) == end )
+                             i ++;
+                          else
+                             break;
+                       }
+                       break;
+
+            case '-' : if( i + 1 < len && sql.charAt( i + 1 ) == '-' )
+                       {
+                          while( i < len && sql.charAt( i ) != '\n' && sql.charAt( i ) != '\r' )
+                             i ++;
+                       }
+                       break;
+
+            case '/' : if( i + 1 < len && sql.charAt( i + 1 ) == '*' )
+                       {
+                          int block = 1;
+
+                          for( i += 2; i + 1 < len && block > 0; i ++ )
+                          {
+                             if( sql.charAt( i ) == '/' && sql.charAt( i + 1 ) == '*' )
+                             {
+                                block ++;
+                                i ++;
+                             }
+                             else if( sql.charAt( i ) == '*' && sql.charAt( i + 1 ) == '/' )
+                             {
+                                block --;
+                                i ++;
+                             }
+                          }
+
+                          if( block > 0 )
+                             return -1;
+
+                          i --;
+                       }
+                       break;
+
+            case '(' : depth ++;
+                       break;
+
+            case ')' : depth --;
+                       break;
+
+            case ';' : if( depth == 0 )
+                          return -1;
+                       break;
+
+            default  : if( isIdentifier( c ) )
+                       {
+                          int start = i;
+
+                          while( i + 1 < len && isIdentifier( sql.charAt( i + 1 ) ) )
+                             i ++;
+
+                          if( depth > 0 )
+                             break;
+
+                          String word = sql.substring( start, i + 1 ).toLowerCase();
+
+                          if( ! insert )
+                          {
+                             // the first keyword has to be INSERT
+                             if( ! "insert".equals( word ) )
+                                return -1;
+
+                             insert = true;
+                          }
+                          else if( "output".equals( word ) )
+                          {
+                             return -1;
+                          }
+                          else if( "values".equals( word ) || "select".equals( word ) || "default".equals( word ) || "exec".equals( word ) || "execute".equals( word ) )
+                          {
+                             return start;
+                          }
+                       }
+                       break;
+         }
+      }
+
+      return -1;
+   }
+
     // --------------------------- Private Methods --------------------------------
 
     /** Lookup table to test if character is part of an identifier. */
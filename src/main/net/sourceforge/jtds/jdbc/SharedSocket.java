@@ -23,16 +23,23 @@ import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
-import java.net.InetSocketAddress;
+import java.net.InetAddress;
 import java.net.NetworkInterface;
 import java.net.Socket;
 import java.net.SocketException;
 import java.net.UnknownHostException;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.net.SocketFactory;
@@ -109,6 +116,185 @@ class SharedSocket {
         }
     }
 
+    /**
+     * Reads the remaining packets of a response on a background thread into
+     * a bounded queue, so that network reads overlap with the processing of
+     * the packets already received. While a prefetcher is active it is the
+     * only reader of the network connection.
+     */
+    private final class Prefetcher implements Runnable {
+        /** The virtual socket owning the response. */
+        final VirtualSocket vsock;
+        /** The maximum number of packets to queue. */
+        private final int maxPackets;
+        /** The maximum number of bytes to queue, 0 for no limit. */
+        private final int maxBytes;
+        /** The number of bytes of the queued packets. */
+        private int queuedBytes;
+        /** Packets read but not yet consumed. */
+        private final LinkedList<byte[]> queue = new LinkedList<byte[]>();
+        /** Consumed packet buffers available for reuse. */
+        private final LinkedList<byte[]> free = new LinkedList<byte[]>();
+        /** The error that ended the prefetch, if any. */
+        private IOException error;
+        /** True if the prefetch has been asked to stop. */
+        private boolean stopped;
+        /** True if another stream has taken over reading the response. */
+        private boolean handedOver;
+        /** True once reading ahead has finished. */
+        private boolean done;
+
+        /**
+         * Creates a prefetcher and starts reading on a pooled thread.
+         *
+         * @param vsock      the virtual socket owning the response
+         * @param maxPackets the maximum number of packets to queue
+         * @param maxBytes   the maximum number of bytes to queue, 0 for no
+         *                   limit
+         */
+        Prefetcher(VirtualSocket vsock, int maxPackets, int maxBytes) {
+            this.vsock = vsock;
+            this.maxPackets = maxPackets;
+            this.maxBytes = maxBytes;
+
+            getPrefetchPool().execute(this);
+        }
+
+        public void run() {
+            try {
+                while (true) {
+                    byte[] buffer;
+
+                    synchronized (this) {
+                        while (isFull() && !stopped) {
+                            wait();
+                        }
+
+                        if (stopped) {
+                            return;
+                        }
+
+                        buffer = free.poll();
+                    }
+
+                    buffer = readPacket(buffer);
+
+                    synchronized (this) {
+                        queue.addLast(buffer);
+                        queuedBytes += getPktLen(buffer);
+                        notifyAll();
+                    }
+
+                    if (buffer[1] != 0) {
+                        // Last packet of the response
+                        return;
+                    }
+                }
+            } catch (IOException e) {
+                synchronized (this) {
+                    error = e;
+                }
+            } catch (InterruptedException e) {
+                synchronized (this) {
+                    error = new InterruptedIOException("Packet prefetch interrupted");
+                }
+            } finally {
+                synchronized (this) {
+                    done = true;
+                    notifyAll();
+                }
+            }
+        }
+
+        /**
+         * Checks whether the queue has reached its packet or byte limit.
+         */
+        private boolean isFull() {
+            return queue.size() >= maxPackets
+                    || maxBytes > 0 && queuedBytes >= maxBytes;
+        }
+
+        /**
+         * Retrieves the next packet, waiting for it to be read if necessary.
+         * Called without holding the socket lock, so that other streams are
+         * not blocked while the packet is read from the network.
+         *
+         * @param buffer a consumed packet buffer to reuse or <code>null</code>
+         * @return the next packet of the response or <code>null</code> if
+         *         another stream has taken over reading the response, the
+         *         remaining packets are in the owner's input queue then
+         * @throws IOException if reading the packet failed
+         */
+        synchronized byte[] take(byte[] buffer) throws IOException {
+            if (buffer != null && free.size() < Math.min(maxPackets, 8)) {
+                free.addLast(buffer);
+            }
+
+            while (queue.isEmpty()) {
+                if (handedOver) {
+                    return null;
+                }
+
+                if (done || stopped) {
+                    throw error != null ? error
+                            : new IOException("Stream " + vsock.id + " packet prefetch stopped");
+                }
+
+                waitForThread();
+            }
+
+            notifyAll();
+
+            byte[] packet = queue.removeFirst();
+            queuedBytes -= getPktLen(packet);
+            return packet;
+        }
+
+        /**
+         * Stops the prefetch, waiting for a packet read in progress to
+         * complete.
+         *
+         * @return the packets read but not consumed
+         * @throws IOException if reading a packet failed
+         */
+        synchronized LinkedList<byte[]> stop() throws IOException {
+            handedOver = true;
+            cancel();
+
+            while (!done) {
+                waitForThread();
+            }
+
+            if (error != null) {
+                throw error;
+            }
+
+            LinkedList<byte[]> pkts = new LinkedList<byte[]>(queue);
+            queue.clear();
+            queuedBytes = 0;
+            return pkts;
+        }
+
+        /**
+         * Asks the prefetch thread to stop, without waiting for it.
+         */
+        synchronized void cancel() {
+            stopped = true;
+            notifyAll();
+        }
+
+        /**
+         * Waits for the prefetch thread to make progress.
+         */
+        private void waitForThread() throws IOException {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("Interrupted waiting for packet prefetch");
+            }
+        }
+    }
+
     /**
      * The shared network socket.
      */
@@ -145,6 +331,11 @@ class SharedSocket {
      * Buffer for packet header.
      */
     private final byte hdrBuf[] = new byte[TDS_HDR_LEN];
+    /**
+     * Buffer for packet headers read from a disk queue, separate from
+     * {@link #hdrBuf} as the prefetch thread may be reading the network.
+     */
+    private final byte queueHdrBuf[] = new byte[TDS_HDR_LEN];
     /**
      * The directory to buffer data to.
      */
@@ -181,6 +372,10 @@ class SharedSocket {
      * Tds protocol version
      */
     private int tdsVersion;
+    /**
+     * Descriptor of the current transaction (TDS 7.2).
+     */
+    private final byte transactionDescriptor[] = new byte[8];
     /**
      * The servertype one of Driver.SQLSERVER or Driver.SYBASE
      */
@@ -193,6 +388,26 @@ class SharedSocket {
      * Count of packets received.
      */
     private int packetCount;
+    /**
+     * The number of response packets to read ahead, 0 for no limit.
+     */
+    private int prefetch;
+    /**
+     * The number of response bytes to read ahead, 0 for no limit.
+     */
+    private int prefetchBytes;
+    /**
+     * The active packet prefetcher, if any.
+     */
+    private volatile Prefetcher prefetcher;
+    /**
+     * The threads reading ahead for all sockets, created on first use.
+     */
+    private static ExecutorService prefetchPool;
+    /**
+     * Time in milliseconds the last packet has been received.
+     */
+    private volatile long lastReceived;
     /**
      * The server host name.
      */
@@ -213,7 +428,7 @@ class SharedSocket {
     /**
      * Buffer for TDS_DONE packets
      */
-    private final byte doneBuffer[] = new byte[TDS_DONE_LEN];
+    private final byte doneBuffer[] = new byte[TDS72_DONE_LEN];
     /**
      * How much of the doneBuffer has been filled with data, <TDS_DONE_LEN IFF partial packet read.
      */
@@ -226,6 +441,10 @@ class SharedSocket {
      * Length of a TDS_DONE token.
      */
     private static final int TDS_DONE_LEN  = 9;
+    /**
+     * Length of a TDS 7.2 TDS_DONE token, with an 8 byte row count.
+     */
+    private static final int TDS72_DONE_LEN = 13;
     /**
      * Length of TDS packet header.
      */
@@ -257,7 +476,9 @@ class SharedSocket {
     }
 
    /**
-    * Creates a {@link Socket} connection.
+    * Creates a {@link Socket} connection. If the host name resolves to more
+    * than one address, the addresses are tried in parallel and the first
+    * connection established is used, see {@link SocketConnector}.
     *
     * @param connection
     *    the connection object
@@ -275,18 +496,8 @@ class SharedSocket {
       final String bindAddress = connection.getBindAddress();
       final int loginTimeout = connection.getLoginTimeout();
 
-      Socket socket = new Socket();
-      InetSocketAddress address = new InetSocketAddress( host, port );
-
-      // call Socket.bind(SocketAddress) if bindAddress parameter is set
-      if( bindAddress != null && ! bindAddress.isEmpty() )
-      {
-         socket.bind( new InetSocketAddress( bindAddress, 0 ) );
-      }
-
       // establish connection
-      socket.connect( address, loginTimeout * 1000 );
-      return socket;
+      return SocketConnector.connect( InetAddress.getAllByName( host ), port, bindAddress, loginTimeout * 1000 );
    }
 
    String getMAC()
@@ -426,6 +637,31 @@ class SharedSocket {
         return tdsVersion;
     }
 
+    /**
+     * Retrieve the descriptor of the transaction active on this connection,
+     * sent with every TDS 7.2 request.
+     *
+     * @return the 8 byte transaction descriptor, all zero if no transaction
+     *         is active
+     */
+    byte[] getTransactionDescriptor() {
+        return transactionDescriptor;
+    }
+
+    /**
+     * Set the descriptor of the transaction active on this connection.
+     *
+     * @param descriptor the 8 byte transaction descriptor or
+     *                   <code>null</code> if the transaction has ended
+     */
+    void setTransactionDescriptor(byte[] descriptor) {
+        if (descriptor == null) {
+            Arrays.fill(transactionDescriptor, (byte) 0);
+        } else {
+            System.arraycopy(descriptor, 0, transactionDescriptor, 0, transactionDescriptor.length);
+        }
+    }
+
     /**
      * Set the TDS version field.
      *
@@ -472,6 +708,67 @@ class SharedSocket {
         return SharedSocket.minMemPkts;
     }
 
+    /**
+     * Set the number of response packets to read ahead on a background
+     * thread once a response spans more than one packet.
+     *
+     * @param prefetch the number of packets, 0 to disable prefetch
+     */
+    void setPrefetch(int prefetch) {
+        this.prefetch = prefetch;
+    }
+
+    /**
+     * Set the number of response bytes to read ahead on a background thread
+     * once a response spans more than one packet. At least one packet is
+     * read ahead, regardless of its size.
+     *
+     * @param prefetchBytes the number of bytes, 0 for no limit
+     */
+    void setPrefetchBytes(int prefetchBytes) {
+        this.prefetchBytes = prefetchBytes;
+    }
+
+    /**
+     * Returns the pool of prefetch threads shared by all sockets. A thread
+     * blocks in network reads for the whole response, so the pool grows with
+     * the number of responses read ahead at the same time; threads idle for
+     * a minute end.
+     */
+    private static synchronized ExecutorService getPrefetchPool() {
+        if (prefetchPool == null) {
+            prefetchPool = new ThreadPoolExecutor(0, Integer.MAX_VALUE,
+                    60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+                    new ThreadFactory() {
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, "jTDS packet prefetch");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+        }
+
+        return prefetchPool;
+    }
+
+    /**
+     * Stop the active prefetcher and take over reading its response.
+     *
+     * @param keep <code>true</code> to keep the packets already read in the
+     *             owner's input queue, <code>false</code> to discard them
+     * @throws IOException if the prefetcher failed to read a packet
+     */
+    private void stopPrefetch(boolean keep) throws IOException {
+        Prefetcher p = prefetcher;
+        prefetcher = null;
+
+        LinkedList<byte[]> pkts = p.stop();
+
+        while (keep && !pkts.isEmpty()) {
+            enqueueInput(p.vsock, pkts.removeFirst());
+        }
+    }
+
     /**
      * Get the connected status of this socket.
      *
@@ -547,6 +844,13 @@ class SharedSocket {
          Logger.println( "TdsSocket: Max buffer memory used = " + (peakMemUsage / 1024) + "KB" );
       }
 
+      // stop reading ahead, the prefetch thread fails once the socket is closed
+      Prefetcher p = prefetcher;
+      if( p != null )
+      {
+         p.cancel();
+      }
+
       // see if any temporary files need deleting
       for( VirtualSocket vsock : _VirtualSockets.values() )
       {
@@ -613,6 +917,22 @@ class SharedSocket {
       // unregister virtual socket
       _VirtualSockets.remove( vsock.id );
 
+      synchronized( _VirtualSockets )
+      {
+         Prefetcher p = prefetcher;
+         if( p != null && p.vsock == vsock )
+         {
+            try
+            {
+               stopPrefetch( false );
+            }
+            catch( IOException ioe )
+            {
+               // ignore errors
+            }
+         }
+      }
+
       if( vsock.diskQueue != null )
       {
          try
@@ -659,6 +979,14 @@ class SharedSocket {
                 dequeueInput(vsock);
             }
 
+            if (prefetcher != null) {
+                //
+                // Take over reading the response from the prefetch thread,
+                // keeping what has been read if it's another stream's data
+                //
+                stopPrefetch(prefetcher.vsock != vsock);
+            }
+
             if (responseOwner != null) {
                 //
                 // Complex case there is another stream's data in the network pipe
@@ -712,6 +1040,43 @@ class SharedSocket {
      *    if an I/O error occurs
      */
     byte[] getNetPacket(VirtualSocket vsock, byte buffer[]) throws IOException {
+        Prefetcher p;
+
+        while ((p = prefetcher) != null && p.vsock == vsock) {
+            // Data being read ahead on the prefetch thread, wait for it
+            // without blocking the other streams
+            byte[] packet;
+
+            try {
+                packet = p.take(buffer);
+            } catch (IOException e) {
+                synchronized (_VirtualSockets) {
+                    if (prefetcher == p) {
+                        prefetcher = null;
+                    }
+                }
+                throw e;
+            }
+
+            if (packet == null) {
+                // Another stream has taken over, the remaining packets have
+                // been moved to the input queue
+                buffer = null;
+                continue;
+            }
+
+            if (packet[1] != 0) {
+                // Last packet, the prefetch is complete
+                synchronized (_VirtualSockets) {
+                    if (prefetcher == p) {
+                        prefetcher = null;
+                    }
+                }
+            }
+
+            return packet;
+        }
+
         synchronized (_VirtualSockets) {
 
             // Return any cached input
@@ -719,6 +1084,12 @@ class SharedSocket {
                 return dequeueInput(vsock);
             }
 
+            // Another stream's data being read ahead
+            p = prefetcher;
+            if (p != null) {
+                throw new IOException("Stream " + vsock.id + " is trying to read data that belongs to stream " + p.vsock.id);
+            }
+
             // Nothing cached see if we are expecting network data
             if (responseOwner == null)
                 throw new IOException( "Stream " + vsock.id + " attempting to read when no request has been sent" );
@@ -728,7 +1099,15 @@ class SharedSocket {
                 throw new IOException("Stream " + vsock.id + " is trying to read data that belongs to stream " + responseOwner.id );
 
             // Simple case we are reading our input directly from the server
-            return readPacket(buffer);
+            buffer = readPacket(buffer);
+
+            if (buffer[1] == 0 && (prefetch > 0 || prefetchBytes > 0)) {
+                // The response spans more packets, read them in the background
+                prefetcher = new Prefetcher(vsock,
+                        prefetch > 0 ? prefetch : Integer.MAX_VALUE, prefetchBytes);
+            }
+
+            return buffer;
         }
     }
 
@@ -804,12 +1183,12 @@ class SharedSocket {
                 vsock.diskQueue.seek(0L);
             }
 
-            vsock.diskQueue.readFully(hdrBuf, 0, TDS_HDR_LEN);
+            vsock.diskQueue.readFully(queueHdrBuf, 0, TDS_HDR_LEN);
 
-            int len = getPktLen(hdrBuf);
+            int len = getPktLen(queueHdrBuf);
 
             buffer = new byte[len];
-            System.arraycopy(hdrBuf, 0, buffer, 0, TDS_HDR_LEN);
+            System.arraycopy(queueHdrBuf, 0, buffer, 0, TDS_HDR_LEN);
             vsock.diskQueue.readFully(buffer, TDS_HDR_LEN, len - TDS_HDR_LEN);
             vsock.pktsOnDisk--;
 
@@ -887,6 +1266,8 @@ class SharedSocket {
             throw new IOException("DB server closed connection.");
         }
 
+        lastReceived = System.currentTimeMillis();
+
         //
         // SQL Server 2000 < SP3 does not set the last packet
         // flag in the NT challenge packet.
@@ -911,14 +1292,15 @@ class SharedSocket {
                 // Reassembly might be required if packet is too short and TDS_DONE record was split
                 // over multiple packets.
                 //
-                int frag = Math.min(TDS_DONE_LEN, len - TDS_HDR_LEN);
-                int keep = TDS_DONE_LEN - frag;
+                int doneLen = (tdsVersion >= Driver.TDS90) ? TDS72_DONE_LEN : TDS_DONE_LEN;
+                int frag = Math.min(doneLen, len - TDS_HDR_LEN);
+                int keep = doneLen - frag;
                 System.arraycopy(doneBuffer, frag, doneBuffer, 0, keep); // original portion to keep
                 System.arraycopy(buffer, len - frag, doneBuffer, keep, frag); // new fragment tail
-                doneBufferFrag = Math.min(TDS_DONE_LEN, doneBufferFrag + frag);
+                doneBufferFrag = Math.min(doneLen, doneBufferFrag + frag);
                 //
                 // If doneBuffer has not yet been fully filled then this cannot be the last packet.
-                if (doneBufferFrag < TDS_DONE_LEN) {
+                if (doneBufferFrag < doneLen) {
                    buffer[1] = 0;
                 }
                 //
@@ -966,6 +1348,16 @@ class SharedSocket {
         return hi | lo;
     }
 
+    /**
+     * Retrieves the time the last packet has been received from the server.
+     *
+     * @return the time in milliseconds as returned by
+     *         <code>System.currentTimeMillis()</code>
+     */
+    long getLastReceived() {
+        return lastReceived;
+    }
+
     /**
      * Set the socket timeout.
      *
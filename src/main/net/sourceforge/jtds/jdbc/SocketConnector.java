@@ -0,0 +1,343 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+//
+package net.sourceforge.jtds.jdbc;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.sourceforge.jtds.util.Logger;
+
+/**
+ * <p> Opens a TCP connection to a server whose host name resolves to several
+ * addresses, e.g. an availability group listener spanning multiple subnets.
+ * </p>
+ *
+ * <p> Connection attempts are staggered: the first address is tried
+ * immediately and each further address is tried as soon as the previous
+ * attempt failed or after {@link #STAGGER_DELAY} milliseconds, whichever
+ * happens first. The first connection established wins, connections
+ * established by the remaining attempts are closed. </p>
+ *
+ * <p> Addresses that failed recently are tried last, the history is shared
+ * by all connections and forgotten after {@link #FAILURE_MEMORY}
+ * milliseconds or on the next successful connect. </p>
+ */
+final class SocketConnector
+{
+
+   /**
+    * delay in milliseconds before starting the next connection attempt while
+    * the previous one is still pending
+    */
+   static final int                                         STAGGER_DELAY  = 250;
+
+   /**
+    * time in milliseconds a failed connection attempt is remembered
+    */
+   static final long                                        FAILURE_MEMORY = 5 * 60 * 1000;
+
+   /**
+    * time of the last failed connection attempt by address
+    */
+   private static final ConcurrentHashMap<InetAddress,Long> _Failures      = new ConcurrentHashMap<>();
+
+   private final InetAddress[] _Addresses;
+
+   private final int           _Port;
+
+   private final String        _BindAddress;
+
+   private final int           _Timeout;
+
+   private Socket              _Socket;
+
+   private IOException         _Error;
+
+   private int                 _Failed;
+
+   private boolean             _Done;
+
+   /**
+    * Creates a connector.
+    */
+   private SocketConnector( InetAddress[] addresses, int port, String bindAddress, int timeout )
+   {
+      _Addresses   = addresses;
+      _Port        = port;
+      _BindAddress = bindAddress;
+      _Timeout     = timeout;
+   }
+
+   /**
+    * <p> Connects to the first reachable address. </p>
+    *
+    * @param addresses
+    *    the addresses of the server
+    *
+    * @param port
+    *    the port to connect to
+    *
+    * @param bindAddress
+    *    local address to bind the socket to or <code>null</code>
+    *
+    * @param timeout
+    *    connect timeout in milliseconds or 0 to use the system default
+    *
+    * @return
+    *    a connected socket
+    *
+    * @throws IOException
+    *    if no address could be connected to within the timeout
+    */
+   static Socket connect( InetAddress[] addresses, int port, String bindAddress, int timeout )
+      throws IOException
+   {
+      if( addresses.length == 1 )
+      {
+         return open( addresses[0], port, bindAddress, timeout );
+      }
+
+      return new SocketConnector( order( addresses ), port, bindAddress, timeout ).connect();
+   }
+
+   /**
+    * <p> Orders addresses for connecting, keeping the resolver order except
+    * for moving addresses that failed recently to the end, least recently
+    * failed first. </p>
+    *
+    * @param addresses
+    *    the addresses of the server
+    *
+    * @return
+    *    a new array containing the ordered addresses
+    */
+   static InetAddress[] order( InetAddress[] addresses )
+   {
+      final long now = System.currentTimeMillis();
+      final long[] failed = new long[addresses.length];
+      Integer[] index = new Integer[addresses.length];
+
+      for( int i = 0; i < addresses.length; i ++ )
+      {
+         Long time = _Failures.get( addresses[i] );
+
+         if( time != null && now - time.longValue() >= FAILURE_MEMORY )
+         {
+            _Failures.remove( addresses[i], time );
+            time = null;
+         }
+
+         failed[i] = time == null ? 0 : time.longValue();
+         index[i] = Integer.valueOf( i );
+      }
+
+      // stable sort, addresses without failures keep their relative order
+      Arrays.sort( index, new Comparator<Integer>()
+      {
+         public int compare( Integer a, Integer b )
+         {
+            long fa = failed[a.intValue()];
+            long fb = failed[b.intValue()];
+            return fa < fb ? -1 : fa == fb ? 0 : 1;
+         }
+      } );
+
+      InetAddress[] ordered = new InetAddress[addresses.length];
+
+      for( int i = 0; i < index.length; i ++ )
+      {
+         ordered[i] = addresses[index[i].intValue()];
+      }
+
+      return ordered;
+   }
+
+   /**
+    * Records the outcome of a connection attempt in the failure history.
+    */
+   static void record( InetAddress address, boolean success )
+   {
+      if( success )
+      {
+         _Failures.remove( address );
+      }
+      else
+      {
+         _Failures.put( address, Long.valueOf( System.currentTimeMillis() ) );
+      }
+   }
+
+   /**
+    * Opens a socket to a single address.
+    */
+   private static Socket open( InetAddress address, int port, String bindAddress, int timeout )
+      throws IOException
+   {
+      Socket socket = new Socket();
+
+      try
+      {
+         // call Socket.bind(SocketAddress) if bindAddress parameter is set
+         if( bindAddress != null && ! bindAddress.isEmpty() )
+         {
+            socket.bind( new InetSocketAddress( bindAddress, 0 ) );
+         }
+
+         socket.connect( new InetSocketAddress( address, port ), timeout );
+         return socket;
+      }
+      catch( IOException e )
+      {
+         socket.close();
+         throw e;
+      }
+   }
+
+   /**
+    * Runs the staggered connection attempts and waits for the winner.
+    */
+   private synchronized Socket connect()
+      throws IOException
+   {
+      long deadline = _Timeout > 0 ? System.currentTimeMillis() + _Timeout : 0;
+      long next = 0;
+      int started = 0;
+
+      try
+      {
+         while( _Socket == null && _Failed < _Addresses.length )
+         {
+            long now = System.currentTimeMillis();
+
+            if( deadline > 0 && now >= deadline )
+            {
+               break;
+            }
+
+            // start the next attempt if due or if all previous ones failed
+            if( started < _Addresses.length && ( now >= next || _Failed == started ) )
+            {
+               start( _Addresses[started ++] );
+               next = now + STAGGER_DELAY;
+               continue;
+            }
+
+            long wait = started < _Addresses.length ? next - now : 0;
+
+            if( deadline > 0 )
+            {
+               wait = wait == 0 ? deadline - now : Math.min( wait, deadline - now );
+            }
+
+            wait( wait );
+         }
+      }
+      catch( InterruptedException e )
+      {
+         throw new InterruptedIOException( "connect interrupted" );
+      }
+      finally
+      {
+         // connections established from now on are closed by their threads
+         _Done = true;
+      }
+
+      if( _Socket != null )
+      {
+         return _Socket;
+      }
+
+      if( _Error != null && _Failed == _Addresses.length )
+      {
+         throw _Error;
+      }
+
+      throw new SocketTimeoutException( "connect timed out" );
+   }
+
+   /**
+    * Starts a connection attempt in a separate thread.
+    */
+   private void start( final InetAddress address )
+   {
+      Thread attempt = new Thread( "jTDS connect " + address.getHostAddress() )
+      {
+         public void run()
+         {
+            Socket socket = null;
+            IOException error = null;
+
+            try
+            {
+               socket = open( address, _Port, _BindAddress, _Timeout );
+            }
+            catch( IOException e )
+            {
+               error = e;
+            }
+
+            record( address, socket != null );
+
+            synchronized( SocketConnector.this )
+            {
+               if( socket != null && _Socket == null && ! _Done )
+               {
+                  _Socket = socket;
+                  socket = null;
+               }
+               else if( error != null )
+               {
+                  _Error = error;
+                  _Failed ++;
+               }
+
+               SocketConnector.this.notifyAll();
+            }
+
+            if( socket != null )
+            {
+               // another address won or the caller gave up
+               try
+               {
+                  socket.close();
+               }
+               catch( IOException e )
+               {
+                  // ignore
+               }
+            }
+
+            if( error != null && Logger.isActive() )
+            {
+               Logger.println( "Connecting to " + address + " failed: " + error );
+            }
+         }
+      };
+
+      attempt.setDaemon( true );
+      attempt.start();
+   }
+
+}
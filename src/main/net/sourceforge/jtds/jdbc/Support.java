@@ -73,6 +73,10 @@ public class Support {
     private static final Double DOUBLE_ONE = new Double(1.0);
     private static final BigDecimal BIG_DECIMAL_ZERO = new BigDecimal(0.0);
     private static final BigDecimal BIG_DECIMAL_ONE = new BigDecimal(1.0);
+    /** Scales decimal parameters are declared with, see {@link #bucketScale}. */
+    private static final int[] SCALE_BUCKETS = {0, 2, 4, 6, TdsData.DEFAULT_SCALE};
+    /** Smallest length variable length parameters are declared with. */
+    private static final int MIN_LENGTH_BUCKET = 512;
     private static final java.sql.Date DATE_ZERO = new java.sql.Date(0);
     private static final java.sql.Time TIME_ZERO = new java.sql.Time(0);
     private static final BigInteger MIN_VALUE_LONG_BI = new BigInteger(String.valueOf(Long.MIN_VALUE));
@@ -1053,6 +1057,49 @@ public class Support {
         return key.toString();
     }
 
+    /**
+     * Returns the scale to declare a decimal parameter with. Only a small set
+     * of scales is used, so that the same statement executed with different
+     * values shares one declaration, one prepared handle and one server plan.
+     * The value's scale may only be increased, which does not change the
+     * value, and only if its integer digits still fit.
+     *
+     * @param value        the parameter value
+     * @param maxPrecision the precision decimals are declared with
+     * @return the bucketed scale or the value's own scale if no bucket fits
+     */
+    static int bucketScale(BigDecimal value, int maxPrecision) {
+        int scale = value.scale();
+        int intDigits = value.precision() - scale;
+
+        for (int i = 0; i < SCALE_BUCKETS.length; i++) {
+            int bucket = SCALE_BUCKETS[i];
+            if (bucket >= scale && intDigits <= maxPrecision - bucket) {
+                return bucket;
+            }
+        }
+
+        return scale;
+    }
+
+    /**
+     * Returns the length to declare a variable length parameter with, the
+     * smallest power of two not less than the actual length.
+     *
+     * @param length the actual length
+     * @param max    the maximum declarable length
+     * @return the bucketed length, at most <code>max</code>
+     */
+    static int bucketLength(int length, int max) {
+        int bucket = MIN_LENGTH_BUCKET;
+
+        while (bucket < length && bucket < max) {
+            bucket <<= 1;
+        }
+
+        return Math.min(Math.max(bucket, length), max);
+    }
+
     /**
      * Constructs a parameter definition string for use with
      * sp_executesql, sp_prepare, sp_prepexec, sp_cursoropen,
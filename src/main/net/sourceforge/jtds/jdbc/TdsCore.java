@@ -18,6 +18,9 @@
 package net.sourceforge.jtds.jdbc;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.sql.ResultSetMetaData;
@@ -188,6 +191,8 @@ public class TdsCore {
     public static final byte CANCEL_PKT = 6;
     /** TDS MSDTC packet. */
     public static final byte MSDTC_PKT = 14;
+    /** Packet status: reset the session before executing the request. */
+    static final byte STATUS_RESETCONNECTION = 0x08;
     /** TDS 5.0 Query packet. */
     public static final byte SYBQUERY_PKT = 15;
     /** TDS 7.0 Login packet. */
@@ -251,7 +256,7 @@ public class TdsCore {
     /** TDS control token. */
     private static final byte TDS_CONTROL_TOKEN     = (byte) 174;  // 0xAE
     /** TDS Result set data row token. */
-    private static final byte TDS_ROW_TOKEN         = (byte) 209;  // 0xD1
+    static final byte TDS_ROW_TOKEN                 = (byte) 209;  // 0xD1
     /** TDS Computed result set data row token. (TDS_ALTROW) */
     private static final byte TDS_ALTROW            = (byte) 211;  // 0xD3
     /** TDS 5.0 parameter value token. */
@@ -294,6 +299,20 @@ public class TdsCore {
     private static final byte TDS_ENV_LCID          = (byte) 5;
     /** Environment change: TDS 8 collation changed. */
     private static final byte TDS_ENV_SQLCOLLATION  = (byte) 7; // TDS8 Collation
+    /** Environment change: TDS 7.2 transaction started. */
+    private static final byte TDS_ENV_BEGINTRAN     = (byte) 8;
+    /** Environment change: TDS 7.2 transaction committed. */
+    private static final byte TDS_ENV_COMMITTRAN    = (byte) 9;
+    /** Environment change: TDS 7.2 transaction rolled back. */
+    private static final byte TDS_ENV_ROLLBACKTRAN  = (byte) 10;
+    /** Environment change: TDS 7.2 DTC transaction enlisted. */
+    private static final byte TDS_ENV_ENLISTDTC     = (byte) 11;
+    /** Environment change: TDS 7.2 DTC transaction defected. */
+    private static final byte TDS_ENV_DEFECTTRAN    = (byte) 12;
+    /** Environment change: TDS 7.2 transaction ended. */
+    private static final byte TDS_ENV_ENDTRAN       = (byte) 17;
+    /** Environment change: session reset completed. */
+    private static final byte TDS_ENV_RESETACK      = (byte) 18;
 
     //
     // Static variables used only for performance
@@ -352,6 +371,8 @@ public class TdsCore {
     private final static int ASYNC_CANCEL = 0;
     /** Cancel has been generated by a query timeout. */
     private final static int TIMEOUT_CANCEL = 1;
+    /** Cancel has been generated by discarding unread results. */
+    private final static int DISCARD_CANCEL = 2;
 
     /** Map of system stored procedures that have shortcuts in TDS8. */
     private static HashMap tds8SpNames = new HashMap();
@@ -408,6 +429,24 @@ public class TdsCore {
     private Object[] rowData;
     /** The array of computed column data objects in the current row. */
     private Object[] computedRowData;
+    /** The index of the first column of the current row not read yet or -1. */
+    private int pendingColumn = -1;
+    /** The length of the text or image value of the pending column. */
+    private int pendingLength;
+    /** The stream over the value of the pending column. */
+    private InputStream pendingStream;
+    /** Flags of the columns of the current row read as a stream or null. */
+    private boolean[] streamedColumns;
+    /** True if large text and image values should be left in the response. */
+    private boolean streamLobs;
+    /** True if rows are skipped without decoding their values. */
+    private boolean discardRows;
+    /** The rows of the current result being decoded in parallel or null. */
+    private RowPipeline rowPipeline;
+    /** The columns last checked for parallel row decoding. */
+    private ColInfo[] pipelineColumns;
+    /** True if the rows of {@link #pipelineColumns} can be decoded in parallel. */
+    private boolean pipelineScannable;
     /** The array of table names associated with this result. */
     private TableMetaData[] tables;
     /** The descriptor object for the current TDS token. */
@@ -552,6 +591,7 @@ public class TdsCore {
      * <li>2 = No certificate no encryption possible.
      * <li>3 = Server requests force encryption.
      * </ol>
+     *
      * @param instance The server instance name.
      * @param ssl The SSL URL property value.
      * @throws IOException
@@ -764,9 +804,55 @@ public class TdsCore {
      * @throws SQLException if an error occurs
      */
     void clearResponseQueue() throws SQLException {
+        clearResponseQueue(false);
+    }
+
+    /**
+     * Empty the server response queue. Rows are skipped without decoding
+     * their values.
+     * <p>
+     * If <code>cancel</code> is <code>true</code>, the results are of no
+     * further interest, e.g. because the statement is closed. Once the
+     * number of rows given by the <code>discardLimit</code> connection
+     * property has been skipped, the rest of the response is assumed to be
+     * large and a cancel is sent, if the server is still sending it. This
+     * also aborts the execution of any statements left in a batch.
+     *
+     * @param cancel <code>true</code> to cancel large unread results
+     * @throws SQLException if an error occurs
+     */
+    void clearResponseQueue(boolean cancel) throws SQLException {
         checkOpen();
-        while (!endOfResponse) {
-            nextToken();
+        int limit = cancel ? connection.getDiscardLimit() : 0;
+        int skipped = 0;
+        discardRows = true;
+        try {
+            while (!endOfResponse) {
+                nextToken();
+                if (currentToken.token == TDS_ROW_TOKEN && ++skipped == limit) {
+                    cancel(DISCARD_CANCEL);
+                }
+            }
+        } finally {
+            discardRows = false;
+        }
+    }
+
+    /**
+     * Skip the rows left in the current result set without decoding their
+     * values.
+     *
+     * @throws SQLException if an I/O or protocol error occurs; server errors
+     *                      are queued up and not thrown
+     */
+    void skipRows() throws SQLException {
+        discardRows = true;
+        try {
+            while (getNextRow()) {
+                // Skip row
+            }
+        } finally {
+            discardRows = false;
         }
     }
 
@@ -798,11 +884,44 @@ public class TdsCore {
      *                      are queued up and not thrown
      */
     boolean getNextRow() throws SQLException {
+        return getNextRow(false);
+    }
+
+    /**
+     * Retrieve the next data row from the result set.
+     * <p>
+     * If <code>streamLobs</code> is <code>true</code>, reading the row stops
+     * at the first text or image value larger than the <code>lobBuffer</code>
+     * connection property. The value can then be read directly from the
+     * server response using {@link #getBinaryStream(int)} or
+     * {@link #getCharacterStream(int)}; the remaining columns are read by
+     * {@link #readPendingColumns(boolean)}. A value still pending when this
+     * method is called again is discarded.
+     *
+     * @param streamLobs <code>true</code> to leave large text and image values
+     *                   in the server response
+     * @return <code>false</code> if at the end of results, <code>true</code>
+     *         otherwise
+     * @throws SQLException if an I/O or protocol error occurs; server errors
+     *                      are queued up and not thrown
+     */
+    boolean getNextRow(boolean streamLobs) throws SQLException {
         if (endOfResponse || endOfResults) {
             return false;
         }
         checkOpen();
-        nextToken();
+        readPendingColumns(false);
+        streamedColumns = null;
+        if (!discardRows && (rowPipeline != null || connection.getParallelDecode())
+                && nextPipelinedRow()) {
+            return true;
+        }
+        this.streamLobs = streamLobs;
+        try {
+            nextToken();
+        } finally {
+            this.streamLobs = false;
+        }
 
         // Will either be first or next data row or end.
         while (!currentToken.isRowData() && !currentToken.isEndToken()) {
@@ -828,6 +947,10 @@ public class TdsCore {
       throws SQLException
    {
       checkOpen();
+      readPendingColumns( true );
+
+      if( rowPipeline != null && rowPipeline.hasBufferedRows() )
+         return true;
 
       try
       {
@@ -901,6 +1024,15 @@ public class TdsCore {
      * @param timeout true if this is a query timeout cancel
      */
     void cancel(boolean timeout) {
+        cancel(timeout ? TIMEOUT_CANCEL : ASYNC_CANCEL);
+    }
+
+    /**
+     * Send (only) one cancel packet to the server.
+     *
+     * @param reason the reason of the cancel, reported when it is acknowledged
+     */
+    private void cancel(int reason) {
         Semaphore mutex = null;
         try {
             mutex = connection.getMutex();
@@ -910,7 +1042,7 @@ public class TdsCore {
                 }
                 // If a cancel request was sent, reset the end of response flag
                 if (cancelPending) {
-                    cancelMonitor[0] = timeout ? TIMEOUT_CANCEL : ASYNC_CANCEL;
+                    cancelMonitor[0] = reason;
                     endOfResponse = false;
                 }
             }
@@ -950,6 +1082,29 @@ public class TdsCore {
       messages.checkErrors();
    }
 
+   /**
+    * <p> Sends a minimal SQL batch to the server and waits for the response,
+    * used to check whether the connection is still alive. If the server does
+    * not respond within the timeout the request is cancelled. </p>
+    *
+    * @param timeOut
+    *    timeout in seconds or 0 to wait without timeout
+    *
+    * @throws SQLException
+    *    if the request timed out, failed or an error is returned by the server
+    */
+   void ping( int timeOut )
+      throws SQLException
+   {
+      checkOpen();
+      messages.clearWarnings();
+
+      executeSQL( "SELECT 1", null, null, false, timeOut, -1, -1, true );
+      clearResponseQueue();
+
+      messages.checkErrors();
+   }
+
     /**
      * Notifies the <code>TdsCore</code> that a batch is starting. This is so
      * that it knows to use <code>sp_executesql</code> for parameterized
@@ -1080,6 +1235,7 @@ public class TdsCore {
                     case Driver.TDS70:
                     case Driver.TDS80:
                     case Driver.TDS81:
+                    case Driver.TDS90:
                         executeSQL70(sql, procName, parameters, noMetaData, sendNow);
                         break;
                     default:
@@ -1306,6 +1462,9 @@ public class TdsCore {
         try {
             mutex = connection.getMutex();
 
+            // The procedure is created in the database selected last
+            setRowCountAndTextSize(-1, -1);
+
             out.setPacketType(SYBQUERY_PKT);
             out.write(TDS5_DYNAMIC_TOKEN);
 
@@ -1415,6 +1574,9 @@ public class TdsCore {
         try {
             mutex = connection.getMutex();
 
+            // Apply pending session state changes before enlisting
+            setRowCountAndTextSize(-1, -1);
+
             out.setPacketType(MSDTC_PKT);
             out.write((short)type);
             switch (type) {
@@ -1481,6 +1643,25 @@ public class TdsCore {
      *         if the connection is closed
      */
     SQLException getBatchCounts(ArrayList counts, SQLException sqlEx) throws SQLException {
+        return getBatchCounts(counts, sqlEx, null);
+    }
+
+    /**
+     * Obtain the counts from a batch of SQL updates, collecting the rows of
+     * any generated keys result sets returned by an <code>OUTPUT</code>
+     * clause.
+     *
+     * @param counts the <code>ArrayList</code> containing the update counts
+     * @param sqlEx  any previous <code>SQLException</code>(s) encountered
+     * @param keys   the <code>ArrayList</code> receiving a copy of each
+     *               generated key row or <code>null</code> if the batch must
+     *               not return any result sets
+     * @return updated <code>SQLException</code> or <code>null</code> if no
+     *         error has yet occurred
+     * @throws SQLException
+     *         if the connection is closed
+     */
+    SQLException getBatchCounts(ArrayList counts, SQLException sqlEx, ArrayList keys) throws SQLException {
         Integer lastCount = JtdsStatement.SUCCESS_NO_INFO;
 
         try {
@@ -1488,6 +1669,15 @@ public class TdsCore {
             while (!endOfResponse) {
                 nextToken();
                 if (currentToken.isResultSet()) {
+                    if (keys != null
+                            && columns.length == 1
+                            && JtdsStatement.GENKEYCOL.equals(columns[0].name)) {
+                        // generated keys returned by an OUTPUT clause
+                        if (currentToken.isRowData()) {
+                            keys.add(rowData.clone());
+                        }
+                        continue;
+                    }
                     // Serious error, statement must not return a result set
                     throw new SQLException(
                             Messages.get("error.statement.batchnocount"),
@@ -1987,8 +2177,11 @@ public class TdsCore {
           }
        }
 
+        // TDS 7.2 adds the change password and long SSPI length fields
+        final short headerSize = (short) (tdsVersion >= Driver.TDS90 ? 94 : 86);
+
         //mdb:begin-change
-        short packSize = (short) (86 + 2 *
+        short packSize = (short) (headerSize + 2 *
                 (wsid.length() +
                 appName.length() +
                 serverName.length() +
@@ -2017,10 +2210,9 @@ public class TdsCore {
         if (tdsVersion == Driver.TDS70) {
             // SQL Server 7
             out.write(0x70000000);
-//        } else
-//        if (tdsVersion == Driver.TDS90) {
-//            // SQL Server 2005
-//            out.write(0x72090002);
+        } else if (tdsVersion == Driver.TDS90) {
+            // SQL Server 2005
+            out.write(0x72090002);
         } else {
             // SQL Server 2000
             out.write(0x71000001);
@@ -2052,7 +2244,7 @@ public class TdsCore {
         out.write(empty, 0, 4); // Collation
 
         // Pack up value lengths, positions.
-        short curPos = 86;
+        short curPos = headerSize;
 
         // Hostname
         out.write(curPos);
@@ -2117,6 +2309,12 @@ public class TdsCore {
         //"next position" (same as total packet size)
         out.write((int)packSize);
 
+        if (tdsVersion >= Driver.TDS90) {
+            // No password change, SSPI length fits into the short above
+            out.write((int)packSize);
+            out.write(0);
+        }
+
         out.write(wsid);
 
         // Pack up the login values.
@@ -2265,15 +2463,30 @@ public class TdsCore {
                 byte[] clientNonce = new byte[8];
                 (new Random()).nextBytes(clientNonce);
 
-                lmAnswer = NtlmAuth.answerLmv2Challenge(domain, user, password, nonce, clientNonce);
-                ntAnswer = NtlmAuth.answerNtlmv2Challenge(
-                        domain, user, password, nonce, ntlmTarget, clientNonce);
+                LoginCache cache = connection.getLoginCache();
+                if (cache != null) {
+                    byte[] hash = cache.getNtlmv2Hash(domain, user, password);
+                    lmAnswer = NtlmAuth.answerLmv2Challenge(hash, nonce, clientNonce);
+                    ntAnswer = NtlmAuth.answerNtlmv2Challenge(hash, nonce, ntlmTarget, clientNonce);
+                    Arrays.fill(hash, (byte) 0);
+                } else {
+                    lmAnswer = NtlmAuth.answerLmv2Challenge(domain, user, password, nonce, clientNonce);
+                    ntAnswer = NtlmAuth.answerNtlmv2Challenge(
+                            domain, user, password, nonce, ntlmTarget, clientNonce);
+                }
             }
             else
             {
                 //LM/NTLM (v1)
+                LoginCache cache = connection.getLoginCache();
                 lmAnswer = NtlmAuth.answerLmChallenge(password, nonce);
-                ntAnswer = NtlmAuth.answerNtChallenge(password, nonce);
+                if (cache != null) {
+                    byte[] hash = cache.getNtHash(domain, user, password);
+                    ntAnswer = NtlmAuth.answerNtChallenge(hash, nonce);
+                    Arrays.fill(hash, (byte) 0);
+                } else {
+                    ntAnswer = NtlmAuth.answerNtChallenge(password, nonce);
+                }
             }
 
             final byte[] header = {0x4e, 0x54, 0x4c, 0x4d, 0x53, 0x53, 0x50, 0x00};
@@ -2342,6 +2555,14 @@ public class TdsCore {
       throws SQLException
    {
       checkOpen();
+      readPendingColumns( ! discardRows );
+
+      // rows not returned yet are discarded with the rest of the result
+      if( rowPipeline != null )
+      {
+         rowPipeline.cancel();
+         rowPipeline = null;
+      }
 
       if( endOfResponse )
       {
@@ -2440,7 +2661,14 @@ public class TdsCore {
                tdsControlToken();
                break;
             case TDS_ROW_TOKEN:
-               tdsRowToken();
+               if( discardRows )
+               {
+                  tdsSkipRowToken();
+               }
+               else
+               {
+                  tdsRowToken();
+               }
                break;
             case TDS_ALTROW:
                tdsAltRowToken();
@@ -2685,7 +2913,8 @@ public class TdsCore {
         for (int i = 0; i < colCnt; i++) {
             ColInfo col = new ColInfo();
 
-            col.userType = in.readShort();
+            // TDS 7.2 extends the user type to 4 bytes
+            col.userType = (tdsVersion >= Driver.TDS90) ? in.readInt() : in.readShort();
 
             int flags = in.readShort();
 
@@ -3030,7 +3259,8 @@ public class TdsCore {
         // may not be the same as the parameter definition
         /* int inputTdsType = */ in.read();
         // Not sure what these bytes are (they always seem to be zero).
-        in.skip(3);
+        // TDS 7.2 extends the user type to 4 bytes.
+        in.skip((tdsVersion >= Driver.TDS90) ? 5 : 3);
 
         ColInfo col = new ColInfo();
         TdsData.readType(in, col);
@@ -3199,6 +3429,58 @@ public class TdsCore {
 //      in.read( new byte[fmtLen] );
    }
 
+    /**
+     * Return the next row of a run of rows decoded in parallel, starting a
+     * new run if the server response is positioned at a row of a result that
+     * can be decoded this way.
+     *
+     * @return <code>true</code> if a row was returned, <code>false</code> if
+     *         the next token has to be read from the server response
+     * @throws SQLException if an I/O or protocol error occurs
+     */
+    private boolean nextPipelinedRow() throws SQLException {
+        try {
+            if (rowPipeline == null) {
+                if (computedColumns != null) {
+                    return false;
+                }
+
+                if (columns != pipelineColumns) {
+                    pipelineColumns = columns;
+                    pipelineScannable = RowPipeline.isScannable(columns, in.getTdsVersion());
+                }
+
+                if (!pipelineScannable || (byte) in.peek() != TDS_ROW_TOKEN) {
+                    return false;
+                }
+
+                rowPipeline = new RowPipeline(connection, socket, in, columns);
+            }
+
+            Object[] row = rowPipeline.next();
+
+            if (row == null) {
+                rowPipeline = null;
+                return false;
+            }
+
+            System.arraycopy(row, 0, rowData, 0, row.length);
+            currentToken.token = TDS_ROW_TOKEN;
+            endOfResults = false;
+            return true;
+        } catch (IOException ioe) {
+            rowPipeline = null;
+            connection.setClosed();
+            throw Support.linkException(new SQLException(Messages.get(
+                    "error.generic.ioerror", ioe.getMessage()), "08S01"), ioe);
+        } catch (ProtocolException pe) {
+            rowPipeline = null;
+            connection.setClosed();
+            throw Support.linkException(new SQLException(Messages.get(
+                    "error.generic.tdserror", pe.getMessage()), "08S01"), pe);
+        }
+    }
+
     /**
      * Process a row data token.
      *
@@ -3206,13 +3488,191 @@ public class TdsCore {
      * @throws ProtocolException
      */
     private void tdsRowToken() throws IOException, ProtocolException {
+        streamedColumns = null;
+        readColumns(0, streamLobs);
+        endOfResults = false;
+    }
+
+    /**
+     * Skip a row data token without decoding the column values.
+     *
+     * @throws IOException
+     * @throws ProtocolException
+     */
+    private void tdsSkipRowToken() throws IOException, ProtocolException {
+        streamedColumns = null;
         for (int i = 0; i < columns.length; i++) {
-            rowData[i] =  TdsData.readData(connection, in, columns[i]);
+            TdsData.skipData(connection, in, columns[i]);
         }
-
         endOfResults = false;
     }
 
+    /**
+     * Read the columns of the current row, starting with the given column.
+     *
+     * @param first      the index of the first column to read
+     * @param streamLobs <code>true</code> to stop at the first text or image
+     *                   value larger than the <code>lobBuffer</code>
+     *                   connection property
+     * @throws IOException
+     * @throws ProtocolException
+     */
+    private void readColumns(int first, boolean streamLobs)
+            throws IOException, ProtocolException {
+        for (int i = first; i < columns.length; i++) {
+            if (streamLobs && TdsData.isLob(columns[i])) {
+                int len = TdsData.readLobLength(in);
+
+                if (len > connection.getLobBuffer()) {
+                    rowData[i] = null;
+                    pendingColumn = i;
+                    pendingLength = len;
+                    pendingStream = in.getInputStream(len);
+                    return;
+                }
+
+                rowData[i] = len < 0 ? null : TdsData.readLob(connection, in, columns[i], len);
+            } else {
+                rowData[i] = TdsData.readData(connection, in, columns[i]);
+            }
+        }
+    }
+
+    /**
+     * Read all columns of the current row left in the server response by
+     * {@link #getNextRow(boolean)}.
+     *
+     * @param keep <code>true</code> to keep the values of pending columns
+     * @throws SQLException if an I/O or protocol error occurs
+     * @see #readPendingColumns(int, boolean)
+     */
+    void readPendingColumns(boolean keep) throws SQLException {
+        readPendingColumns(Integer.MAX_VALUE, keep);
+    }
+
+    /**
+     * Read the columns of the current row left in the server response by
+     * {@link #getNextRow(boolean)}, up to the given column. Large text or
+     * image values of later columns are left in the response.
+     * <p>
+     * If <code>keep</code> is <code>true</code>, a text or image value not
+     * read as a stream yet is stored in a <code>Blob</code> or
+     * <code>Clob</code>. Otherwise, as well as for a value already returned
+     * as a stream, the unread part of the value is skipped.
+     *
+     * @param column the index of the first column that may stay pending
+     * @param keep   <code>true</code> to keep the values of pending columns
+     * @throws SQLException if an I/O or protocol error occurs
+     */
+    void readPendingColumns(int column, boolean keep) throws SQLException {
+        try {
+            while (pendingColumn >= 0 && pendingColumn < column) {
+                int pending = pendingColumn;
+                InputStream stream = pendingStream;
+                pendingColumn = -1;
+                pendingStream = null;
+
+                if (keep && !isStreamed(pending)) {
+                    rowData[pending] = TdsData.readLob(connection, in, columns[pending], pendingLength);
+                } else {
+                    stream.skip(pendingLength);
+                }
+
+                readColumns(pending + 1, true);
+            }
+        } catch (IOException ioe) {
+            connection.setClosed();
+            throw Support.linkException(
+                    new SQLException(Messages.get("error.generic.ioerror", ioe.getMessage()), "08S01"), ioe);
+        } catch (ProtocolException pe) {
+            connection.setClosed();
+            throw Support.linkException(
+                    new SQLException(Messages.get("error.generic.tdserror", pe.getMessage()), "08S01"), pe);
+        }
+    }
+
+    /**
+     * Retrieve the index of the first column of the current row left in the
+     * server response by {@link #getNextRow(boolean)}.
+     *
+     * @return the column index or -1 if the row has been read completely
+     */
+    int getPendingColumn() {
+        return pendingColumn;
+    }
+
+    /**
+     * Check whether the value of a column of the current row has been read
+     * as a stream.
+     *
+     * @param column the column index
+     * @return <code>true</code> if the value has been returned as a stream
+     */
+    boolean isStreamed(int column) {
+        return streamedColumns != null && streamedColumns[column];
+    }
+
+    /**
+     * Mark the value of a column of the current row as read as a stream.
+     *
+     * @param column the column index
+     */
+    private void setStreamed(int column) {
+        if (streamedColumns == null) {
+            streamedColumns = new boolean[columns.length];
+        }
+        streamedColumns[column] = true;
+    }
+
+    /**
+     * Retrieve a stream reading the pending image value directly from the
+     * server response. The stream ends once the value has been read or the
+     * row has been read completely.
+     *
+     * @param column the column index
+     * @return the stream or <code>null</code> if the value of the column is
+     *         not pending or not an image value
+     */
+    InputStream getBinaryStream(int column) {
+        int jdbcType = column == pendingColumn ? columns[column].jdbcType : Types.NULL;
+
+        if (isStreamed(column)
+                || (jdbcType != Types.BLOB && jdbcType != Types.LONGVARBINARY)) {
+            return null;
+        }
+
+        setStreamed(column);
+        return pendingStream;
+    }
+
+    /**
+     * Retrieve a <code>Reader</code> decoding the pending text value directly
+     * from the server response. The <code>Reader</code> ends once the value
+     * has been read or the row has been read completely.
+     *
+     * @param column the column index
+     * @return the <code>Reader</code> or <code>null</code> if the value of
+     *         the column is not pending or not a text value
+     * @throws SQLException if the character set is not supported
+     */
+    Reader getCharacterStream(int column) throws SQLException {
+        if (column != pendingColumn || isStreamed(column)) {
+            return null;
+        }
+
+        try {
+            Reader reader = TdsData.getLobReader(connection, pendingStream, columns[column]);
+
+            if (reader != null) {
+                setStreamed(column);
+            }
+
+            return reader;
+        } catch (UnsupportedEncodingException e) {
+            throw new SQLException(Messages.get("error.charset.nomapping", e.getMessage()), "2C000");
+        }
+    }
+
     /**
      * Process TDS 5.0 Params Token.
      * Stored procedure output parameters or data returned in parameter format
@@ -3428,6 +3888,35 @@ public class TdsCore {
                     break;
                 }
 
+            case TDS_ENV_BEGINTRAN:
+            case TDS_ENV_ENLISTDTC:
+                {
+                    // The new transaction descriptor has to be sent with
+                    // every following request
+                    int clen = in.read();
+                    byte descriptor[] = new byte[clen];
+                    in.read(descriptor);
+                    socket.setTransactionDescriptor((clen == 8) ? descriptor : null);
+                    in.skip(len - 2 - clen);
+                    break;
+                }
+
+            case TDS_ENV_COMMITTRAN:
+            case TDS_ENV_ROLLBACKTRAN:
+            case TDS_ENV_DEFECTTRAN:
+            case TDS_ENV_ENDTRAN:
+                    socket.setTransactionDescriptor(null);
+                    in.skip(len - 1);
+                    break;
+
+            case TDS_ENV_RESETACK:
+                    // The database change (if any) has been sent separately
+                    in.skip(len - 1);
+                    if (Logger.isActive()) {
+                        Logger.println("Session reset");
+                    }
+                    break;
+
             default:
                 {
                     if (Logger.isActive()) {
@@ -3683,6 +4172,11 @@ public class TdsCore {
         in.skip(1);
         currentToken.updateCount = in.readInt();
 
+        if (tdsVersion >= Driver.TDS90) {
+            // TDS 7.2 sends an 8 byte row count, skip the high part
+            in.skip(4);
+        }
+
         if (!endOfResults) {
             // This will eliminate the select row count for sybase
             currentToken.status &= ~DONE_ROW_COUNT;
@@ -4099,7 +4593,10 @@ public class TdsCore {
 
     /**
      * Sets the server row count (to limit the number of rows in a result set)
-     * and text size (to limit the size of returned TEXT/NTEXT fields).
+     * and text size (to limit the size of returned TEXT/NTEXT fields). Session
+     * state changes still pending on the connection (a session reset, auto
+     * commit mode, transaction isolation level and current database) are
+     * sent in the same batch.
      *
      * @param rowCount the number of rows to return or 0 for no limit or -1 to
      *                 leave as is
@@ -4109,13 +4606,23 @@ public class TdsCore {
      */
     private void setRowCountAndTextSize(int rowCount, int textSize)
             throws SQLException {
+        // A pending session reset is sent along with the session restore SQL
+        boolean reset = connection.takeResetPending();
+        // Never interrupt a request being built by several calls
+        String session = out.isRequestPending() ? null : connection.takeSessionState();
         boolean newRowCount =
                 rowCount >= 0 && rowCount != connection.getRowCount();
         boolean newTextSize =
                 textSize >= 0 && textSize != connection.getTextSize();
-        if (newRowCount || newTextSize) {
+        if (reset || session != null || newRowCount || newTextSize) {
             try {
                 StringBuilder query = new StringBuilder(64);
+                if (reset) {
+                    query.append(JtdsConnection.SQL_SERVER_RESET_SQL);
+                }
+                if (session != null) {
+                    query.append(session);
+                }
                 if (newRowCount) {
                     query.append("SET ROWCOUNT ").append(rowCount);
                 }
@@ -4124,6 +4631,7 @@ public class TdsCore {
                             .append(textSize == 0 ? 2147483647 : textSize);
                 }
                 out.setPacketType(QUERY_PKT);
+                out.setResetConnection(reset);
                 out.write(query.toString());
                 out.flush();
                 endOfResponse = false;
@@ -4132,8 +4640,12 @@ public class TdsCore {
                 clearResponseQueue();
                 messages.checkErrors();
                 // Update the values stored in the Connection
-                connection.setRowCount(rowCount);
-                connection.setTextSize(textSize);
+                if (newRowCount) {
+                    connection.setRowCount(rowCount);
+                }
+                if (newTextSize) {
+                    connection.setTextSize(textSize);
+                }
             } catch (IOException ioe) {
                 throw new SQLException(
                             Messages.get("error.generic.ioerror",
@@ -4149,6 +4661,13 @@ public class TdsCore {
      */
     private void wait(int timeOut) throws IOException, SQLException {
         Object timer = null;
+        // response latency feeds the read replica balancer
+        ReplicaBalancer.Replica replica = connection.getReplica();
+        long start = 0;
+        if (replica != null) {
+            replica.requestStarted();
+            start = System.nanoTime();
+        }
         try {
             if (timeOut > 0) {
                 // Start a query timeout timer
@@ -4161,6 +4680,9 @@ public class TdsCore {
             }
             in.peek();
         } finally {
+            if (replica != null) {
+                replica.requestCompleted(System.nanoTime() - start);
+            }
             if (timer != null) {
                 if (!TimerThread.getInstance().cancelTimer(timer)) {
                     throw new SQLTimeoutException(
@@ -158,8 +158,8 @@ public class TdsData {
     private static final int SYBVARIANT            = 98; // 0x62              (MS: SQL_VARIANT)
     private static final int SYBSINT8              = 191;// 0xBF SYBASE 15
 
-    // SQL Server user defined data type
-    // private static final int UDT                   = 240;
+    // SQL Server CLR user defined data type
+    private static final int UDT                   = 240;
 
     // XML data type introduced in SQL Server 2005
     private static final int XML                   = 241;
@@ -209,6 +209,13 @@ public class TdsData {
     private static final int MS_LONGVAR_MAX        = 8000;
     private static final int SYB_CHUNK_SIZE        = 8192;
 
+    /*
+     * Constants for TDS 7.2 partially length-prefixed values
+     */
+    private static final int PLP_MAX               = 0xFFFF;
+    private static final long PLP_NULL             = 0xFFFFFFFFFFFFFFFFL;
+    private static final long PLP_UNKNOWN_LEN      = 0xFFFFFFFFFFFFFFFEL;
+
     /**
      * Array of TDS data type descriptors.
      */
@@ -271,8 +278,9 @@ public class TdsData {
       types[SYBUNIQUE]       = new TypeInfo( "uniqueidentifier" , -1, 36,   36, false, false, Types.CHAR      );
       types[SYBVARIANT]      = new TypeInfo( "sql_variant"      , -5,  0, 8000, false, false, Types.VARCHAR   );
       types[SYBSINT8]        = new TypeInfo( "bigint"           ,  8, 19,   20, true , false, Types.BIGINT    );
-      // XML data type introduced in SQL Server 2005
+      // XML and CLR user defined data types introduced in SQL Server 2005
       types[XML]             = new TypeInfo( "xml"              , -4, -1,   -1, false, true , Types.SQLXML    );
+      types[UDT]             = new TypeInfo( "udt"              , -2, -1,   -1, false, false, Types.VARBINARY );
       // time and date data types introduced in SQL Server 2008
       types[DATEN]           = new TypeInfo( "date"             ,  3, 10,   10, false, false, Types.DATE      );
       types[TIMEN]           = new TypeInfo( "time"             , -1, -1,   -1, false, false, Types.TIME      );
@@ -359,6 +367,8 @@ public class TdsData {
      * <li> [int1 type] [int1 buffersize] [int1 precision] [int1 scale] - eg decimal.
      * </ol>
      * For TDS 8 large character types include a 5 byte collation field after the buffer size.
+     * With TDS 7.2 the (max) types have a buffer size of 0xFFFF and, like the xml
+     * and CLR user defined types, are sent as partially length-prefixed values.
      *
      * @param in The server response stream.
      * @param ci The ColInfo column descriptor object.
@@ -369,10 +379,12 @@ public class TdsData {
     static int readType(ResponseStream in, ColInfo ci)
             throws IOException, ProtocolException {
         int tdsVersion = in.getTdsVersion();
+        boolean isTds72 = tdsVersion >= Driver.TDS90;
         boolean isTds8 = tdsVersion >= Driver.TDS80;
         boolean isTds7 = tdsVersion >= Driver.TDS70;
         boolean isTds5 = tdsVersion == Driver.TDS50;
         boolean isTds42 = tdsVersion == Driver.TDS42;
+        String udtName = null;
         int bytesRead = 1;
         // Get the TDS data type code
         int type = in.read();
@@ -387,7 +399,38 @@ public class TdsData {
         ci.bufferSize  = types[type].size;
 
         // Now get the buffersize if required
-        if (ci.bufferSize == -5) {
+        if (type == XML) {
+            // TDS 7.2 xml, optionally bound to an xml schema collection
+            ci.bufferSize = Integer.MAX_VALUE;
+            ci.isPLP = true;
+            bytesRead += 1;
+
+            if (in.read() == 1) {
+                int dbLen = in.read();
+                in.readString(dbLen);
+                int ownerLen = in.read();
+                in.readString(ownerLen);
+                int collectionLen = in.readShort();
+                in.readString(collectionLen);
+                bytesRead += 4 + 2 * (dbLen + ownerLen + collectionLen);
+            }
+        } else if (type == UDT) {
+            // TDS 7.2 CLR user defined type
+            ci.bufferSize = in.readShort();
+            if (ci.bufferSize == -1) {
+                ci.bufferSize = Integer.MAX_VALUE;
+            }
+            ci.isPLP = true;
+            int dbLen = in.read();
+            in.readString(dbLen);
+            int schemaLen = in.read();
+            in.readString(schemaLen);
+            int nameLen = in.read();
+            udtName = in.readString(nameLen);
+            int assemblyLen = in.readShort();
+            in.readString(assemblyLen);
+            bytesRead += 7 + 2 * (dbLen + schemaLen + nameLen + assemblyLen);
+        } else if (ci.bufferSize == -5) {
             // sql_variant
             // Sybase long binary
             ci.bufferSize = in.readInt();
@@ -400,10 +443,28 @@ public class TdsData {
                 bytesRead += getCollation(in, ci);
             }
 
-            int lenName = in.readShort();
+            if (isTds72) {
+                // TDS 7.2 supplies the table name as up to four parts
+                int parts = in.read();
+                StringBuilder name = new StringBuilder();
+                bytesRead += 5;
+
+                for (int i = 0; i < parts; i++) {
+                    int lenName = in.readShort();
+                    if (i > 0) {
+                        name.append('.');
+                    }
+                    name.append(in.readString(lenName));
+                    bytesRead += 2 + lenName * 2;
+                }
+
+                ci.tableName = name.toString();
+            } else {
+                int lenName = in.readShort();
 
-            ci.tableName = in.readString(lenName);
-            bytesRead += 6 + ((in.getTdsVersion() >= Driver.TDS70) ? lenName * 2 : lenName);
+                ci.tableName = in.readString(lenName);
+                bytesRead += 6 + ((in.getTdsVersion() >= Driver.TDS70) ? lenName * 2 : lenName);
+            }
         } else if (ci.bufferSize == -2) {
             // longvarchar longvarbinary
             if (isTds5 && ci.tdsType == XSYBCHAR) {
@@ -412,6 +473,12 @@ public class TdsData {
             } else {
                 ci.bufferSize = in.readShort();
                 bytesRead += 2;
+
+                if (isTds72 && (ci.bufferSize & 0xFFFF) == PLP_MAX) {
+                    // varchar(max), nvarchar(max) or varbinary(max)
+                    ci.bufferSize = Integer.MAX_VALUE;
+                    ci.isPLP = true;
+                }
             }
 
             if (isTds8) {
@@ -545,7 +612,21 @@ public class TdsData {
             case XSYBBINARY:
             case XSYBVARBINARY:
                 ci.precision   = ci.bufferSize;
-                ci.displaySize = ci.precision * 2;
+                ci.displaySize = ci.isPLP ? Integer.MAX_VALUE : ci.precision * 2;
+                break;
+
+            // CLR types are returned as binaries named after the type
+            case UDT:
+                ci.precision   = ci.bufferSize;
+                ci.displaySize = (ci.precision == Integer.MAX_VALUE) ? Integer.MAX_VALUE : ci.precision * 2;
+                ci.sqlType     = udtName;
+                break;
+
+            // xml is sent in UTF-16, like nvarchar(max)
+            case XML:
+                ci.precision   = Integer.MAX_VALUE / 2;
+                ci.displaySize = Integer.MAX_VALUE / 2;
+                ci.jdbcType    = Types.CLOB;
                 break;
 
             // SQL Server unicode text can only display half as many chars
@@ -579,6 +660,11 @@ public class TdsData {
                 break;
         }
 
+        // TDS 7.2 (max) types are returned as LOBs
+        if (ci.isPLP && type != UDT) {
+            ci.jdbcType = (type == XSYBVARBINARY) ? Types.BLOB : Types.CLOB;
+        }
+
         // For numeric types add 'identity' for auto inc data type
         if (ci.isIdentity) {
             ci.sqlType += " identity";
@@ -689,6 +775,11 @@ public class TdsData {
             throws IOException, ProtocolException {
         int len;
 
+        if (ci.isPLP) {
+            // TDS 7.2 (max), xml and CLR user defined types
+            return readPLPData(connection, in, ci);
+        }
+
         switch (ci.tdsType) {
             case SYBINTN:
                 switch (in.read()) {
@@ -748,167 +839,13 @@ public class TdsData {
                 return in.readUnsignedLong();
 
             case SYBIMAGE:
-                len = in.read();
-
-                if (len > 0) {
-                    in.skip(24); // Skip textptr and timestamp
-                    int dataLen = in.readInt();
-                    BlobImpl blob;
-                    if (dataLen == 0 && in.getTdsVersion() <= Driver.TDS50) {
-                        // Length of zero may indicate an initialized image
-                        // column that has been updated to null.
-                        break;
-                    }
-                    if (dataLen <= connection.getLobBuffer()) {
-                        //
-                        // OK Small enough to load into memory
-                        //
-                        byte[] data = new byte[dataLen];
-                        in.read(data);
-                        blob = new BlobImpl(connection, data);
-                    } else {
-                        // Too big, need to write straight to disk
-                        try {
-                            blob = new BlobImpl(connection);
-                            OutputStream out = blob.setBinaryStream(1);
-                            byte[] buffer = new byte[1024];
-                            int result;
-                            while ((result = in.read(buffer, 0,
-                                             Math.min(dataLen, buffer.length)))
-                                             != -1 && dataLen != 0) {
-                                out.write(buffer, 0, result);
-                                dataLen -= result;
-                            }
-                            out.close();
-                        } catch (SQLException e) {
-                            // Transform setBinaryStream SQLException
-                            throw new IOException(e.getMessage());
-                        }
-                    }
-                    return blob;
-                }
-
-                break;
-
             case SYBTEXT:
-                len = in.read();
-
-                if (len > 0) {
-                    String charset;
-                    if (ci.charsetInfo != null) {
-                        charset = ci.charsetInfo.getCharset();
-                    } else {
-                        charset = connection.getCharset();
-                    }
-                    in.skip(24); // Skip textptr and timestamp
-                    int dataLen = in.readInt();
-                    if (dataLen == 0 && in.getTdsVersion() <= Driver.TDS50) {
-                        // Length of zero may indicate an initialized text
-                        // column that has been updated to null.
-                        break;
-                    }
-                    ClobImpl clob = new ClobImpl(connection);
-                    BlobBuffer blobBuffer = clob.getBlobBuffer();
-                    if (dataLen <= connection.getLobBuffer()) {
-                        //
-                        // OK Small enough to load into memory
-                        //
-                        BufferedReader rdr =
-                            new BufferedReader(
-                                 new InputStreamReader(in.getInputStream(dataLen),
-                                                                         charset),
-                                                                         1024);
-                        byte[] data = new byte[dataLen * 2];
-                        int p = 0;
-                        int c;
-                        while ((c = rdr.read()) >= 0) {
-                            data[p++] = (byte)c;
-                            data[p++] = (byte)(c >> 8);
-                        }
-                        rdr.close();
-                        blobBuffer.setBuffer(data, false);
-                        if (p == 2 && data[0] == 0x20 && data[1] == 0
-                            && in.getTdsVersion() < Driver.TDS70) {
-                            // Single space with Sybase equates to empty string
-                            p = 0;
-                        }
-                        // Explicitly set length as multi byte character sets
-                        // may not fill array completely.
-                        blobBuffer.setLength(p);
-                    } else {
-                        // Too big, need to write straight to disk
-                        BufferedReader rdr =
-                            new BufferedReader(
-                                 new InputStreamReader(in.getInputStream(dataLen),
-                                                                         charset),
-                                                                         1024);
-                        try {
-                            OutputStream out = blobBuffer.setBinaryStream(1, false);
-                            int c;
-                            while ((c = rdr.read()) >= 0) {
-                                out.write(c);
-                                out.write(c >> 8);
-                            }
-                            out.close();
-                            rdr.close();
-                        } catch (SQLException e) {
-                            // Turn back into an IOException
-                            throw new IOException(e.getMessage());
-                        }
-                    }
-                    return clob;
-                }
-
-                break;
-
             case SYBUNITEXT: // ASE 15+ unicode text type
             case SYBNTEXT:
-                len = in.read();
+                len = readLobLength(in);
 
-                if (len > 0) {
-                    in.skip(24); // Skip textptr and timestamp
-                    int dataLen = in.readInt();
-                    if (dataLen == 0 && in.getTdsVersion() <= Driver.TDS50) {
-                        // Length of zero may indicate an initialized unitext
-                        // column that has been updated to null.
-                        break;
-                    }
-                    ClobImpl clob = new ClobImpl(connection);
-                    BlobBuffer blobBuffer = clob.getBlobBuffer();
-                    if (dataLen <= connection.getLobBuffer()) {
-                        //
-                        // OK Small enough to load into memory
-                        //
-                        byte[] data = new byte[dataLen];
-                        in.read(data);
-                        blobBuffer.setBuffer(data, false);
-                        if (dataLen == 2 && data[0] == 0x20 && data[1] == 0
-                                && in.getTdsVersion() == Driver.TDS50) {
-                                // Single space with Sybase equates to empty string
-                                dataLen = 0;
-                            }
-                            // Explicitly set length as multi byte character sets
-                            // may not fill array completely.
-                            blobBuffer.setLength(dataLen);
-                    } else {
-                        // Too big, need to write straight to disk
-                        try {
-                            OutputStream out = blobBuffer.setBinaryStream(1, false);
-                            byte[] buffer = new byte[1024];
-                            int result;
-                            while ((result = in.read(buffer, 0,
-                                             Math.min(dataLen, buffer.length)))
-                                             != -1 && dataLen != 0) {
-                                out.write(buffer, 0, result);
-                                dataLen -= result;
-                            }
-                            out.close();
-                        } catch (SQLException e) {
-                            // Transform setBinaryStream SQLException
-                            throw new IOException(e.getMessage());
-                        }
-                    }
-                    return clob;
+                if (len >= 0) {
+                    return readLob(connection, in, ci, len);
                 }
 
                 break;
@@ -1144,140 +1081,648 @@ public class TdsData {
     }
 
     /**
-     * Retrieve the signed status of the column.
+     * Skip a TDS data item in the Response Stream without decoding it.
+     * <p> Only the length of the value is read, the value itself is skipped.
+     * Values of types not known to {@link #getScanSize(ColInfo, int)} are
+     * read and dropped.
      *
-     * @param ci the column meta data
-     * @return <code>true</code> if the column is a signed numeric.
+     * @param connection the connection the value is read for
+     * @param in         the server response stream
+     * @param ci         the column descriptor
+     * @throws IOException
+     * @throws ProtocolException
      */
-    static boolean isSigned(ColInfo ci) {
-        int type = ci.tdsType;
+    static void skipData(JtdsConnection connection, ResponseStream in, ColInfo ci)
+            throws IOException, ProtocolException {
+        int len;
 
-        if (type < 0 || type > 255 || types[type] == null) {
-            throw new IllegalArgumentException("TDS data type " + type
-                    + " invalid");
+        if (ci.isPLP) {
+            if (in.readLong() != PLP_NULL) {
+                while ((len = in.readInt()) != 0) {
+                    in.skip(len);
+                }
+            }
+
+            return;
         }
-        if (type == TdsData.SYBINTN && ci.bufferSize == 1) {
-            type = TdsData.SYBINT1; // Tiny int is not signed!
+
+        if (isLob(ci)) {
+            len = readLobLength(in);
+
+            if (len > 0) {
+                in.skip(len);
+            }
+
+            return;
+        }
+
+        switch (len = getScanSize(ci, in.getTdsVersion())) {
+            case 0:
+                readData(connection, in, ci);
+                break;
+
+            case -1:
+                in.skip(in.read());
+                break;
+
+            case -2:
+                len = in.readShort();
+
+                if (len > 0) {
+                    in.skip(len);
+                }
+
+                break;
+
+            case -4:
+                len = in.readInt();
+
+                if (len > 0) {
+                    in.skip(len);
+                }
+
+                break;
+
+            default:
+                in.skip(len);
         }
-        return types[type].isSigned;
     }
 
     /**
-     * Retrieve the collation status of the column.
-     * <p/>
-     * TDS 8.0 character columns include collation information.
+     * Read the text pointer and length preceding a text, ntext, unitext or
+     * image value.
      *
-     * @param ci the column meta data
-     * @return <code>true</code> if the column requires collation data.
+     * @param in the server response stream
+     * @return the length of the value in bytes or -1 if the value is null
+     * @throws IOException if an I/O error occurs
      */
-    static boolean isCollation(ColInfo ci) {
-        int type = ci.tdsType;
+    static int readLobLength(ResponseStream in) throws IOException {
+        if (in.read() > 0) {
+            in.skip(24); // Skip textptr and timestamp
+            int dataLen = in.readInt();
+
+            if (dataLen == 0 && in.getTdsVersion() <= Driver.TDS50) {
+                // Length of zero may indicate an initialized text or image
+                // column that has been updated to null.
+                return -1;
+            }
 
-        if (type < 0 || type > 255 || types[type] == null) {
-            throw new IllegalArgumentException("TDS data type " + type
-                    + " invalid");
+            return dataLen;
         }
 
-        return types[type].isCollation;
+        return -1;
     }
 
     /**
-     * Retrieve the currency status of the column.
+     * Read a text, ntext, unitext or image value following its length.
+     * Values larger than the <code>lobBuffer</code> connection property are
+     * written to disk.
      *
-     * @param ci The column meta data.
-     * @return <code>boolean</code> true if the column is a currency type.
+     * @param connection the connection the value is read for
+     * @param in         the server response stream
+     * @param ci         the column descriptor
+     * @param dataLen    the length of the value in bytes
+     * @return the value as a <code>BlobImpl</code> or <code>ClobImpl</code>
+     * @throws IOException if an I/O error occurs
      */
-    static boolean isCurrency(ColInfo ci) {
-        int type = ci.tdsType;
+    static Object readLob(JtdsConnection connection, ResponseStream in, ColInfo ci, int dataLen)
+            throws IOException {
+        switch (ci.tdsType) {
+            case SYBIMAGE: {
+                BlobImpl blob;
+                if (dataLen <= connection.getLobBuffer()) {
+                    //
+                    // OK Small enough to load into memory
+                    //
+                    byte[] data = new byte[dataLen];
+                    in.read(data);
+                    blob = new BlobImpl(connection, data);
+                } else {
+                    // Too big, need to write straight to disk
+                    try {
+                        blob = new BlobImpl(connection);
+                        OutputStream out = blob.setBinaryStream(1);
+                        byte[] buffer = new byte[1024];
+                        int result;
+                        while ((result = in.read(buffer, 0,
+                                         Math.min(dataLen, buffer.length)))
+                                         != -1 && dataLen != 0) {
+                            out.write(buffer, 0, result);
+                            dataLen -= result;
+                        }
+                        out.close();
+                    } catch (SQLException e) {
+                        // Transform setBinaryStream SQLException
+                        throw new IOException(e.getMessage());
+                    }
+                }
+                return blob;
+            }
 
-        if (type < 0 || type > 255 || types[type] == null) {
-            throw new IllegalArgumentException("TDS data type " + type
-                    + " invalid");
-        }
+            case SYBTEXT: {
+                String charset;
+                if (ci.charsetInfo != null) {
+                    charset = ci.charsetInfo.getCharset();
+                } else {
+                    charset = connection.getCharset();
+                }
+                ClobImpl clob = new ClobImpl(connection);
+                BlobBuffer blobBuffer = clob.getBlobBuffer();
+                if (dataLen <= connection.getLobBuffer()) {
+                    //
+                    // OK Small enough to load into memory
+                    //
+                    BufferedReader rdr =
+                        new BufferedReader(
+                             new InputStreamReader(in.getInputStream(dataLen),
+                                                                     charset),
+                                                                     1024);
+                    byte[] data = new byte[dataLen * 2];
+                    int p = 0;
+                    int c;
+                    while ((c = rdr.read()) >= 0) {
+                        data[p++] = (byte)c;
+                        data[p++] = (byte)(c >> 8);
+                    }
+                    rdr.close();
+                    blobBuffer.setBuffer(data, false);
+                    if (p == 2 && data[0] == 0x20 && data[1] == 0
+                        && in.getTdsVersion() < Driver.TDS70) {
+                        // Single space with Sybase equates to empty string
+                        p = 0;
+                    }
+                    // Explicitly set length as multi byte character sets
+                    // may not fill array completely.
+                    blobBuffer.setLength(p);
+                } else {
+                    // Too big, need to write straight to disk
+                    BufferedReader rdr =
+                        new BufferedReader(
+                             new InputStreamReader(in.getInputStream(dataLen),
+                                                                     charset),
+                                                                     1024);
+                    try {
+                        OutputStream out = blobBuffer.setBinaryStream(1, false);
+                        int c;
+                        while ((c = rdr.read()) >= 0) {
+                            out.write(c);
+                            out.write(c >> 8);
+                        }
+                        out.close();
+                        rdr.close();
+                    } catch (SQLException e) {
+                        // Turn back into an IOException
+                        throw new IOException(e.getMessage());
+                    }
+                }
+                return clob;
+            }
 
-        return type == SYBMONEY || type == SYBMONEY4 || type == SYBMONEYN;
+            default: {
+                ClobImpl clob = new ClobImpl(connection);
+                BlobBuffer blobBuffer = clob.getBlobBuffer();
+                if (dataLen <= connection.getLobBuffer()) {
+                    //
+                    // OK Small enough to load into memory
+                    //
+                    byte[] data = new byte[dataLen];
+                    in.read(data);
+                    blobBuffer.setBuffer(data, false);
+                    if (dataLen == 2 && data[0] == 0x20 && data[1] == 0
+                            && in.getTdsVersion() == Driver.TDS50) {
+                        // Single space with Sybase equates to empty string
+                        dataLen = 0;
+                    }
+                    // Explicitly set length as multi byte character sets
+                    // may not fill array completely.
+                    blobBuffer.setLength(dataLen);
+                } else {
+                    // Too big, need to write straight to disk
+                    try {
+                        OutputStream out = blobBuffer.setBinaryStream(1, false);
+                        byte[] buffer = new byte[1024];
+                        int result;
+                        while ((result = in.read(buffer, 0,
+                                         Math.min(dataLen, buffer.length)))
+                                         != -1 && dataLen != 0) {
+                            out.write(buffer, 0, result);
+                            dataLen -= result;
+                        }
+                        out.close();
+                    } catch (SQLException e) {
+                        // Transform setBinaryStream SQLException
+                        throw new IOException(e.getMessage());
+                    }
+                }
+                return clob;
+            }
+        }
     }
 
     /**
-     * Retrieve the searchable status of the column.
+     * Creates a <code>Reader</code> decoding a text, ntext or unitext value
+     * read from the given stream.
      *
-     * @param ci the column meta data
-     * @return <code>true</code> if the column is not a text or image type.
+     * @param connection the connection the value is read for
+     * @param in         a stream over the encoded value
+     * @param ci         the column descriptor
+     * @return the <code>Reader</code> or <code>null</code> if the column is
+     *         an image column
+     * @throws UnsupportedEncodingException if the charset is not supported
      */
-    static boolean isSearchable(ColInfo ci) {
-        int type = ci.tdsType;
+    static Reader getLobReader(JtdsConnection connection, InputStream in, ColInfo ci)
+            throws UnsupportedEncodingException {
+        switch (ci.tdsType) {
+            case SYBTEXT:
+                return new InputStreamReader(in, ci.charsetInfo != null
+                        ? ci.charsetInfo.getCharset() : connection.getCharset());
 
-        if (type < 0 || type > 255 || types[type] == null) {
-            throw new IllegalArgumentException("TDS data type " + type
-                    + " invalid");
+            case SYBUNITEXT:
+            case SYBNTEXT:
+                return new InputStreamReader(in, "UTF-16LE");
         }
 
-        return types[type].size != -4;
+        return null;
     }
 
     /**
-     * Determines whether the column is Unicode encoded.
+     * Checks whether the values of a column are text, ntext, unitext or
+     * image values preceded by a text pointer.
      *
-     * @param ci the column meta data
-     * @return <code>true</code> if the column is Unicode encoded
+     * @param ci the column descriptor
+     * @return <code>true</code> if the column holds text or image values
      */
-    static boolean isUnicode(ColInfo ci) {
-        int type = ci.tdsType;
-
-        if (type < 0 || type > 255 || types[type] == null) {
-            throw new IllegalArgumentException("TDS data type " + type
-                    + " invalid");
-        }
-
-        switch (type) {
-            case SYBNVARCHAR:
+    static boolean isLob(ColInfo ci) {
+        switch (ci.tdsType) {
+            case SYBIMAGE:
+            case SYBTEXT:
+            case SYBUNITEXT:
             case SYBNTEXT:
-            case XSYBNCHAR:
-            case XSYBNVARCHAR:
-            case XSYBCHAR:     // Not always
-            case SYBVARIANT:   // Not always
-                return true;
-
-            default:
-                return false;
+                return !ci.isPLP;
         }
+
+        return false;
     }
 
     /**
-     * Fill in the TDS native type code and all other fields for a
-     * <code>ColInfo</code> instance with the JDBC type set.
+     * Retrieves the layout of the values of a column in a row, which allows
+     * rows to be split without decoding their values.
      *
-     * @param ci the <code>ColInfo</code> instance
+     * @param ci         the column descriptor
+     * @param tdsVersion the TDS version of the connection
+     * @return the size of fixed length values, the negated size of the
+     *         length preceding variable length values (-1, -2 or -4) or 0 if
+     *         the size of the values cannot be found cheaply
      */
-    static void fillInType(ColInfo ci)
-            throws SQLException {
-        switch (ci.jdbcType) {
-            case Types.VARCHAR:
-                ci.tdsType = SYBVARCHAR;
-                ci.bufferSize = MS_LONGVAR_MAX;
-                ci.displaySize = MS_LONGVAR_MAX;
-                ci.precision = MS_LONGVAR_MAX;
-                break;
-            case Types.INTEGER:
-                ci.tdsType = SYBINT4;
-                ci.bufferSize = 4;
-                ci.displaySize = 11;
-                ci.precision = 10;
-                break;
-            case Types.SMALLINT:
-                ci.tdsType = SYBINT2;
-                ci.bufferSize = 2;
-                ci.displaySize = 6;
-                ci.precision = 5;
-                break;
-            case Types.BIT:
-                ci.tdsType = SYBBIT;
-                ci.bufferSize = 1;
-                ci.displaySize = 1;
-                ci.precision = 1;
-                break;
-            default:
-                throw new SQLException(Messages.get(
+    static int getScanSize(ColInfo ci, int tdsVersion) {
+        if (ci.isPLP) {
+            return 0;
+        }
+
+        switch (ci.tdsType) {
+            case SYBINT1:
+            case SYBBIT:
+                return 1;
+
+            case SYBINT2:
+            case SYBUINT2:
+                return 2;
+
+            case SYBINT4:
+            case SYBUINT4:
+            case SYBREAL:
+            case SYBMONEY4:
+            case SYBDATETIME4:
+            case SYBDATE:
+            case SYBTIME:
+                return 4;
+
+            case SYBINT8:
+            case SYBSINT8:
+            case SYBUINT8:
+            case SYBFLT8:
+            case SYBMONEY:
+            case SYBDATETIME:
+                return 8;
+
+            case SYBINTN:
+            case SYBUINTN:
+            case SYBCHAR:
+            case SYBVARCHAR:
+            case SYBNVARCHAR:
+            case SYBBINARY:
+            case SYBVARBINARY:
+            case SYBMONEYN:
+            case SYBDATETIMN:
+            case SYBDATEN:
+            case SYBTIMEN:
+            case SYBBITN:
+            case SYBFLTN:
+            case SYBUNIQUE:
+            case SYBNUMERIC:
+            case SYBDECIMAL:
+                return -1;
+
+            case XSYBCHAR:
+            case XSYBVARCHAR:
+                // Sybase wide table strings have a 4 byte length
+                return tdsVersion == Driver.TDS50 ? -4 : -2;
+
+            case XSYBNCHAR:
+            case XSYBNVARCHAR:
+            case XSYBBINARY:
+            case XSYBVARBINARY:
+                return -2;
+
+            case SYBLONGBINARY:
+            case SYBVARIANT:
+                return -4;
+        }
+
+        // Text and image values and types not decoded by readData()
+        return 0;
+    }
+
+    /**
+     * Read a TDS 7.2 partially length-prefixed data item from the Response
+     * Stream.
+     * <p>
+     * The value is sent as a sequence of chunks. Values of known length that
+     * do not exceed the connection's LOB buffer size are read into memory;
+     * other values are passed on chunk by chunk into the (disk based) buffer
+     * of the returned <code>Blob</code> or <code>Clob</code>.
+     *
+     * @param connection the connection the value is read for
+     * @param in The server ResponseStream.
+     * @param ci The ColInfo column descriptor object.
+     * @return the value as a <code>BlobImpl</code>, <code>ClobImpl</code> or
+     *         <code>byte[]</code> (CLR types) or <code>null</code>
+     * @throws IOException
+     * @throws ProtocolException
+     */
+    private static Object readPLPData(JtdsConnection connection, ResponseStream in, ColInfo ci)
+            throws IOException, ProtocolException {
+        long dataLen = in.readLong();
+
+        if (dataLen == PLP_NULL) {
+            return null;
+        }
+
+        boolean inMemory = dataLen != PLP_UNKNOWN_LEN
+                && dataLen <= connection.getLobBuffer();
+
+        try {
+            switch (ci.tdsType) {
+                case UDT:
+                    {
+                        ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+                                inMemory ? (int) dataLen : 1024);
+                        in.copyPLP(bytes);
+                        return bytes.toByteArray();
+                    }
+
+                case XSYBVARBINARY:
+                    {
+                        if (inMemory) {
+                            return new BlobImpl(connection,
+                                    readPLPBytes(in, (int) dataLen));
+                        }
+
+                        BlobImpl blob = new BlobImpl(connection);
+                        OutputStream out = blob.setBinaryStream(1);
+                        in.copyPLP(out);
+                        out.close();
+                        return blob;
+                    }
+
+                case XSYBVARCHAR:
+                    {
+                        String charset;
+                        if (ci.charsetInfo != null) {
+                            charset = ci.charsetInfo.getCharset();
+                        } else {
+                            charset = connection.getCharset();
+                        }
+                        ClobImpl clob = new ClobImpl(connection);
+                        BlobBuffer blobBuffer = clob.getBlobBuffer();
+                        Reader rdr = new InputStreamReader(in.getPLPInputStream(), charset);
+                        char[] chars = new char[1024];
+                        int count;
+
+                        if (inMemory) {
+                            byte[] data = new byte[(int) dataLen * 2];
+                            int p = 0;
+                            while ((count = rdr.read(chars)) >= 0) {
+                                for (int i = 0; i < count; i++) {
+                                    data[p++] = (byte) chars[i];
+                                    data[p++] = (byte) (chars[i] >> 8);
+                                }
+                            }
+                            blobBuffer.setBuffer(data, false);
+                            // Explicitly set length as multi byte character sets
+                            // may not fill array completely.
+                            blobBuffer.setLength(p);
+                        } else {
+                            OutputStream out = blobBuffer.setBinaryStream(1, false);
+                            byte[] data = new byte[chars.length * 2];
+                            while ((count = rdr.read(chars)) >= 0) {
+                                for (int i = 0; i < count; i++) {
+                                    data[i * 2] = (byte) chars[i];
+                                    data[i * 2 + 1] = (byte) (chars[i] >> 8);
+                                }
+                                out.write(data, 0, count * 2);
+                            }
+                            out.close();
+                        }
+                        rdr.close();
+                        return clob;
+                    }
+
+                default:
+                    {
+                        // nvarchar(max) and xml, UTF-16 encoded already
+                        ClobImpl clob = new ClobImpl(connection);
+                        BlobBuffer blobBuffer = clob.getBlobBuffer();
+
+                        if (inMemory) {
+                            blobBuffer.setBuffer(readPLPBytes(in, (int) dataLen), false);
+                            blobBuffer.setLength(dataLen);
+                        } else {
+                            OutputStream out = blobBuffer.setBinaryStream(1, false);
+                            in.copyPLP(out);
+                            out.close();
+                        }
+                        return clob;
+                    }
+            }
+        } catch (SQLException e) {
+            // Transform setBinaryStream SQLException
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    /**
+     * Read the chunks of a TDS 7.2 partially length-prefixed value of known
+     * length into a byte array.
+     *
+     * @param in      The server ResponseStream.
+     * @param dataLen the total length of the value
+     * @return the value as a <code>byte[]</code>
+     * @throws IOException
+     * @throws ProtocolException if the chunks exceed the total length
+     */
+    private static byte[] readPLPBytes(ResponseStream in, int dataLen)
+            throws IOException, ProtocolException {
+        byte[] data = new byte[dataLen];
+        int offset = 0;
+        int chunkLen;
+
+        while ((chunkLen = in.readInt()) != 0) {
+            if (chunkLen < 0 || chunkLen > dataLen - offset) {
+                throw new ProtocolException("Invalid PLP chunk length " + chunkLen);
+            }
+            in.read(data, offset, chunkLen);
+            offset += chunkLen;
+        }
+
+        return data;
+    }
+
+    /**
+     * Retrieve the signed status of the column.
+     *
+     * @param ci the column meta data
+     * @return <code>true</code> if the column is a signed numeric.
+     */
+    static boolean isSigned(ColInfo ci) {
+        int type = ci.tdsType;
+
+        if (type < 0 || type > 255 || types[type] == null) {
+            throw new IllegalArgumentException("TDS data type " + type
+                    + " invalid");
+        }
+        if (type == TdsData.SYBINTN && ci.bufferSize == 1) {
+            type = TdsData.SYBINT1; // Tiny int is not signed!
+        }
+        return types[type].isSigned;
+    }
+
+    /**
+     * Retrieve the collation status of the column.
+     * <p/>
+     * TDS 8.0 character columns include collation information.
+     *
+     * @param ci the column meta data
+     * @return <code>true</code> if the column requires collation data.
+     */
+    static boolean isCollation(ColInfo ci) {
+        int type = ci.tdsType;
+
+        if (type < 0 || type > 255 || types[type] == null) {
+            throw new IllegalArgumentException("TDS data type " + type
+                    + " invalid");
+        }
+
+        return types[type].isCollation;
+    }
+
+    /**
+     * Retrieve the currency status of the column.
+     *
+     * @param ci The column meta data.
+     * @return <code>boolean</code> true if the column is a currency type.
+     */
+    static boolean isCurrency(ColInfo ci) {
+        int type = ci.tdsType;
+
+        if (type < 0 || type > 255 || types[type] == null) {
+            throw new IllegalArgumentException("TDS data type " + type
+                    + " invalid");
+        }
+
+        return type == SYBMONEY || type == SYBMONEY4 || type == SYBMONEYN;
+    }
+
+    /**
+     * Retrieve the searchable status of the column.
+     *
+     * @param ci the column meta data
+     * @return <code>true</code> if the column is not a text or image type.
+     */
+    static boolean isSearchable(ColInfo ci) {
+        int type = ci.tdsType;
+
+        if (type < 0 || type > 255 || types[type] == null) {
+            throw new IllegalArgumentException("TDS data type " + type
+                    + " invalid");
+        }
+
+        return types[type].size != -4;
+    }
+
+    /**
+     * Determines whether the column is Unicode encoded.
+     *
+     * @param ci the column meta data
+     * @return <code>true</code> if the column is Unicode encoded
+     */
+    static boolean isUnicode(ColInfo ci) {
+        int type = ci.tdsType;
+
+        if (type < 0 || type > 255 || types[type] == null) {
+            throw new IllegalArgumentException("TDS data type " + type
+                    + " invalid");
+        }
+
+        switch (type) {
+            case SYBNVARCHAR:
+            case SYBNTEXT:
+            case XSYBNCHAR:
+            case XSYBNVARCHAR:
+            case XSYBCHAR:     // Not always
+            case SYBVARIANT:   // Not always
+                return true;
+
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Fill in the TDS native type code and all other fields for a
+     * <code>ColInfo</code> instance with the JDBC type set.
+     *
+     * @param ci the <code>ColInfo</code> instance
+     */
+    static void fillInType(ColInfo ci)
+            throws SQLException {
+        switch (ci.jdbcType) {
+            case Types.VARCHAR:
+                ci.tdsType = SYBVARCHAR;
+                ci.bufferSize = MS_LONGVAR_MAX;
+                ci.displaySize = MS_LONGVAR_MAX;
+                ci.precision = MS_LONGVAR_MAX;
+                break;
+            case Types.INTEGER:
+                ci.tdsType = SYBINT4;
+                ci.bufferSize = 4;
+                ci.displaySize = 11;
+                ci.precision = 10;
+                break;
+            case Types.SMALLINT:
+                ci.tdsType = SYBINT2;
+                ci.bufferSize = 2;
+                ci.displaySize = 6;
+                ci.precision = 5;
+                break;
+            case Types.BIT:
+                ci.tdsType = SYBBIT;
+                ci.bufferSize = 1;
+                ci.displaySize = 1;
+                ci.precision = 1;
+                break;
+            default:
+                throw new SQLException(Messages.get(
                         "error.baddatatype",
                         Integer.toString(ci.jdbcType)), "HY000");
         }
@@ -1295,11 +1740,26 @@ public class TdsData {
             throws SQLException {
         int len;
         int jdbcType = pi.jdbcType;
+        boolean isTds72 = connection.getTdsVersion() >= Driver.TDS90;
 
         if (jdbcType == Types.OTHER) {
             jdbcType = Support.getJdbcType(pi.value);
         }
 
+        if (pi.value != null && pi.length < 0 && !isTds72) {
+            // Streams of unknown length can only be sent chunked by TDS 7.2
+            try {
+                if (pi.value instanceof Reader) {
+                    pi.getString(connection.getCharset());
+                } else if (pi.value instanceof InputStream) {
+                    pi.getBytes(connection.getCharset());
+                }
+            } catch (IOException e) {
+                throw new SQLException(
+                        Messages.get("error.generic.ioerror", e.getMessage()), "HY000");
+            }
+        }
+
         switch (jdbcType) {
             case Types.CHAR:
             case Types.VARCHAR:
@@ -1342,7 +1802,7 @@ public class TdsData {
                                     pi.sqlType = "unitext";
                                     pi.tdsType = SYBLONGDATA;
                                 } else {
-                                    pi.sqlType = "univarchar("+pi.length+')';
+                                    pi.sqlType = "univarchar(" + Support.bucketLength(pi.length, SYB_LONGVAR_MAX / 2) + ')';
                                     pi.tdsType = SYBLONGBINARY;
                                 }
                                 break;
@@ -1380,7 +1840,7 @@ public class TdsData {
                                 // Use Sybase 12.5+ long varchar type which
                                 // is limited to 16384 bytes.
                                 pi.tdsType = XSYBCHAR;
-                                pi.sqlType = "varchar(" + len + ')';
+                                pi.sqlType = "varchar(" + Support.bucketLength(len, SYB_LONGVAR_MAX) + ')';
                             }
                         } else {
                             pi.tdsType = SYBTEXT;
@@ -1388,23 +1848,48 @@ public class TdsData {
                         }
                     }
                 } else {
-                    if (pi.isUnicode && len <= MS_LONGVAR_MAX / 2) {
+                    // TDS 7.2 sends long values and LOB output parameters as (max) types
+                    boolean isMax = isTds72 && (len < 0 || pi.isOutput
+                            && (jdbcType == Types.LONGVARCHAR || jdbcType == Types.CLOB));
+
+                    if (isMax) {
+                        pi.tdsType = pi.isUnicode ? XSYBNVARCHAR : XSYBVARCHAR;
+                        pi.sqlType = pi.isUnicode ? "nvarchar(max)" : "varchar(max)";
+                    } else if (pi.isUnicode && len <= MS_LONGVAR_MAX / 2) {
                         pi.tdsType = XSYBNVARCHAR;
-                        pi.sqlType = "nvarchar(4000)";
+                        if (pi.declaredLength > 0 && len <= pi.declaredLength) {
+                            // Match the declared type to avoid a conversion
+                            pi.sqlType = "nvarchar(" + pi.declaredLength + ')';
+                        } else {
+                            pi.sqlType = "nvarchar(4000)";
+                        }
                     } else if (!pi.isUnicode && len <= MS_LONGVAR_MAX) {
                         CharsetInfo csi = connection.getCharsetInfo();
                         try {
                             if (len > 0 && csi.isWideChars() && pi.getBytes(csi.getCharset()).length > MS_LONGVAR_MAX) {
-                                pi.tdsType = SYBTEXT;
-                                pi.sqlType = "text";
-                            } else {
+                                if (isTds72) {
+                                    pi.tdsType = XSYBVARCHAR;
+                                    pi.sqlType = "varchar(max)";
+                                } else {
+                                    pi.tdsType = SYBTEXT;
+                                    pi.sqlType = "text";
+                                }
+                            } else {
                                 pi.tdsType = XSYBVARCHAR;
-                                pi.sqlType = "varchar(8000)";
+                                if (pi.declaredLength > 0 && len <= pi.declaredLength && !csi.isWideChars()) {
+                                    // Match the declared type to avoid a conversion
+                                    pi.sqlType = "varchar(" + pi.declaredLength + ')';
+                                } else {
+                                    pi.sqlType = "varchar(8000)";
+                                }
                             }
                         } catch (IOException e) {
                             throw new SQLException(
                                     Messages.get("error.generic.ioerror", e.getMessage()), "HY000");
                         }
+                    } else if (isTds72) {
+                        pi.tdsType = pi.isUnicode ? XSYBNVARCHAR : XSYBVARCHAR;
+                        pi.sqlType = pi.isUnicode ? "nvarchar(max)" : "varchar(max)";
                     } else {
                         if (pi.isOutput) {
                             throw new SQLException(
@@ -1498,7 +1983,7 @@ public class TdsData {
                             } else {
                                 // Sybase long binary that can be used as a SP parameter
                                 pi.tdsType = SYBLONGBINARY;
-                                pi.sqlType = "varbinary(" + len + ")";
+                                pi.sqlType = "varbinary(" + Support.bucketLength(len, SYB_LONGVAR_MAX) + ")";
                             }
                         } else {
                             // Sybase < 12.5 or SQL Server 6.5
@@ -1507,7 +1992,14 @@ public class TdsData {
                         }
                     }
                 } else {
-                    if (len <= MS_LONGVAR_MAX) {
+                    // TDS 7.2 sends long values and LOB output parameters as varbinary(max)
+                    boolean isMax = isTds72 && (len < 0 || len > MS_LONGVAR_MAX || pi.isOutput
+                            && (jdbcType == Types.LONGVARBINARY || jdbcType == Types.BLOB));
+
+                    if (isMax) {
+                        pi.tdsType = XSYBVARBINARY;
+                        pi.sqlType = "varbinary(max)";
+                    } else if (len <= MS_LONGVAR_MAX) {
                         pi.tdsType = XSYBVARBINARY;
                         pi.sqlType = "varbinary(8000)";
                     } else {
@@ -1543,7 +2035,12 @@ public class TdsData {
                 int prec = connection.getMaxPrecision();
                 int scale = DEFAULT_SCALE;
                 if (pi.value instanceof BigDecimal) {
-                    scale = ((BigDecimal)pi.value).scale();
+                    BigDecimal value = (BigDecimal) pi.value;
+                    // Declare one of a few scales, extending the value
+                    scale = Support.bucketScale(value, prec);
+                    if (scale != value.scale()) {
+                        pi.value = value.setScale(scale);
+                    }
                 } else if (pi.scale >= 0 && pi.scale <= prec) {
                     scale = pi.scale;
                 }
@@ -2103,6 +2600,26 @@ public class TdsData {
             pi.charsetInfo = charsetInfo;
         }
 
+        if (isPLP(pi)) {
+            writePLPParam(out, pi);
+            return;
+        }
+
+        int key = getTypeInfoKey(out, pi);
+
+        if (key != 0) {
+            // The TYPE_INFO does not depend on the value, so it's serialized
+            // once and reused by subsequent executions of the statement
+            if (pi.typeInfo == null || pi.typeInfoKey != key) {
+                pi.typeInfo = getTypeInfo(out, pi, isTds8);
+                pi.typeInfoKey = key;
+            }
+
+            out.write(pi.typeInfo);
+            writeParamValue(out, pi);
+            return;
+        }
+
         switch (pi.tdsType) {
 
             case XSYBVARCHAR:
@@ -2188,24 +2705,6 @@ public class TdsData {
 
                 break;
 
-            case XSYBNVARCHAR:
-                out.write((byte) pi.tdsType);
-                out.write((short) MS_LONGVAR_MAX);
-
-                if (isTds8) {
-                    putCollation(out, pi);
-                }
-
-                if (pi.value == null) {
-                    out.write((short) 0xFFFF);
-                } else {
-                    tmp = pi.getString(pi.charsetInfo.getCharset());
-                    out.write((short) (tmp.length() * 2));
-                    out.write(tmp);
-                }
-
-                break;
-
             case SYBTEXT:
                 if (pi.value == null) {
                     len = 0;
@@ -2317,20 +2816,6 @@ public class TdsData {
 
                 break;
 
-            case XSYBVARBINARY:
-                out.write((byte) pi.tdsType);
-                out.write((short) MS_LONGVAR_MAX);
-
-                if (pi.value == null) {
-                    out.write((short)0xFFFF);
-                } else {
-                    buf = pi.getBytes(pi.charsetInfo.getCharset());
-                    out.write((short) buf.length);
-                    out.write(buf);
-                }
-
-                break;
-
             case SYBVARBINARY:
                 out.write((byte) pi.tdsType);
                 out.write((byte) VAR_MAX);
@@ -2384,50 +2869,6 @@ public class TdsData {
 
                 break;
 
-            case SYBINTN:
-                out.write((byte) pi.tdsType);
-
-                if (pi.value == null) {
-                    out.write(("bigint".equals(pi.sqlType))? (byte)8: (byte)4);
-                    out.write((byte) 0);
-                } else {
-                    if ("bigint".equals(pi.sqlType)) {
-                        out.write((byte) 8);
-                        out.write((byte) 8);
-                        out.write(((Number) pi.value).longValue());
-                    } else {
-                        out.write((byte) 4);
-                        out.write((byte) 4);
-                        out.write(((Number) pi.value).intValue());
-                    }
-                }
-
-                break;
-
-            case SYBFLTN:
-                out.write((byte) pi.tdsType);
-                if (pi.value instanceof Float) {
-                    out.write((byte) 4);
-                    out.write((byte) 4);
-                    out.write(((Number) pi.value).floatValue());
-                } else {
-                    out.write((byte) 8);
-                    if (pi.value == null) {
-                        out.write((byte) 0);
-                    } else {
-                        out.write((byte) 8);
-                        out.write(((Number) pi.value).doubleValue());
-                    }
-                }
-
-                break;
-
-            case SYBDATETIMN:
-                out.write((byte) SYBDATETIMN);
-                out.write((byte) 8);
-                putDateTimeValue(out, (DateTime) pi.value);
-                break;
-
             case SYBBIT:
                 out.write((byte) pi.tdsType);
 
@@ -2439,52 +2880,6 @@ public class TdsData {
 
                 break;
 
-            case SYBBITN:
-                out.write((byte) SYBBITN);
-                out.write((byte) 1);
-
-                if (pi.value == null) {
-                    out.write((byte) 0);
-                } else {
-                    out.write((byte) 1);
-                    out.write((byte) (((Boolean) pi.value).booleanValue() ? 1 : 0));
-                }
-
-                break;
-
-            case SYBNUMERIC:
-            case SYBDECIMAL:
-                out.write((byte) pi.tdsType);
-                BigDecimal value = null;
-                int prec = out.getMaxPrecision();
-                int scale;
-
-                if (pi.value == null) {
-                    if (pi.jdbcType == Types.BIGINT) {
-                        scale = 0;
-                    } else {
-                        if (pi.scale >= 0 && pi.scale <= prec) {
-                            scale = pi.scale;
-                        } else {
-                            scale = DEFAULT_SCALE;
-                        }
-                    }
-                } else {
-                    if (pi.value instanceof Long) {
-                        value = new BigDecimal(((Long) pi.value).toString());
-                        scale = 0;
-                    } else {
-                        value = (BigDecimal) pi.value;
-                        scale = value.scale();
-                    }
-                }
-
-                out.write(out.getMaxDecimalBytes());
-                out.write((byte) prec);
-                out.write((byte) scale);
-                out.write(value);
-                break;
-
             case XML:
                 len = pi.length;
                 out.write( (byte) pi.tdsType );
@@ -2534,6 +2929,308 @@ public class TdsData {
                         + Integer.toHexString(pi.tdsType));
         }
     }
+
+    /**
+     * Determines whether a parameter is sent as a TDS 7.2 (max) type.
+     *
+     * @param pi the parameter descriptor
+     * @return <code>true</code> if the value is sent partially
+     *         length-prefixed
+     */
+    private static boolean isPLP(ParamInfo pi) {
+        switch (pi.tdsType) {
+            case XSYBVARCHAR:
+            case XSYBNVARCHAR:
+            case XSYBVARBINARY:
+                return pi.sqlType != null && pi.sqlType.endsWith("(max)");
+
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Write a TDS 7.2 (max) parameter to the server request stream.
+     * <p>
+     * Stream values are sent in chunks as they are read, without knowing
+     * their total length in advance.
+     *
+     * @param out the server request stream
+     * @param pi  the parameter descriptor
+     * @throws IOException
+     */
+    private static void writePLPParam(RequestStream out, ParamInfo pi)
+            throws IOException {
+        out.write((byte) pi.tdsType);
+        out.write((short) PLP_MAX);
+
+        if (types[pi.tdsType].isCollation) {
+            putCollation(out, pi);
+        }
+
+        if (pi.value == null) {
+            out.write(PLP_NULL);
+            return;
+        }
+
+        String charset = pi.charsetInfo.getCharset();
+
+        switch (pi.tdsType) {
+            case XSYBNVARCHAR:
+                if (pi.value instanceof Reader) {
+                    out.writePLP((Reader) pi.value, null);
+                } else if (pi.value instanceof InputStream) {
+                    out.writePLP(new InputStreamReader((InputStream) pi.value, charset), null);
+                } else {
+                    String tmp = pi.getString(charset);
+                    out.write((long) tmp.length() * 2);
+
+                    if (tmp.length() > 0) {
+                        out.write(tmp.length() * 2);
+                        out.write(tmp);
+                    }
+
+                    out.write(0); // Terminator chunk
+                }
+
+                break;
+
+            case XSYBVARCHAR:
+                if (pi.value instanceof Reader) {
+                    out.writePLP((Reader) pi.value, pi.charsetInfo);
+                } else if (pi.value instanceof InputStream) {
+                    // Already encoded in the server charset
+                    out.writePLP((InputStream) pi.value);
+                } else {
+                    out.writePLP(pi.getBytes(charset));
+                }
+
+                break;
+
+            default: // XSYBVARBINARY
+                if (pi.value instanceof InputStream) {
+                    out.writePLP((InputStream) pi.value);
+                } else {
+                    out.writePLP(pi.getBytes(charset));
+                }
+        }
+    }
+
+    /**
+     * Returns a key identifying the TYPE_INFO written for a parameter if it
+     * does not depend on the parameter value.
+     *
+     * @param out the server request stream
+     * @param pi  the parameter descriptor
+     * @return the key or 0 if the TYPE_INFO must be written along with the
+     *         value
+     */
+    private static int getTypeInfoKey(RequestStream out, ParamInfo pi) {
+        int variant;
+
+        if (isPLP(pi)) {
+            // (max) values are written by writePLPParam
+            return 0;
+        }
+
+        switch (pi.tdsType) {
+            case XSYBVARCHAR:
+                // Longer values are sent as TEXT
+                if (pi.value != null && (!(pi.value instanceof String)
+                        || pi.length > MS_LONGVAR_MAX
+                        || pi.charsetInfo.isWideChars())) {
+                    return 0;
+                }
+                variant = 0;
+                break;
+
+            case XSYBNVARCHAR:
+            case XSYBVARBINARY:
+            case SYBDATETIMN:
+            case SYBBITN:
+                variant = 0;
+                break;
+
+            case SYBINTN:
+                variant = "bigint".equals(pi.sqlType) ? 8 : 4;
+                break;
+
+            case SYBFLTN:
+                variant = pi.value instanceof Float ? 4 : 8;
+                break;
+
+            case SYBNUMERIC:
+            case SYBDECIMAL:
+                variant = getDecimalScale(out, pi) + 1;
+                break;
+
+            default:
+                return 0;
+        }
+
+        return variant << 8 | pi.tdsType;
+    }
+
+    /**
+     * Serializes the TYPE_INFO of a parameter.
+     *
+     * @param out    the server request stream
+     * @param pi     the parameter descriptor
+     * @param isTds8 <code>true</code> to include the collation
+     * @return the TYPE_INFO bytes
+     */
+    private static byte[] getTypeInfo(RequestStream out, ParamInfo pi, boolean isTds8) {
+        byte[] info;
+
+        switch (pi.tdsType) {
+            case XSYBVARCHAR:
+            case XSYBNVARCHAR:
+            case XSYBVARBINARY:
+                boolean collate = isTds8 && types[pi.tdsType].isCollation;
+                info = new byte[collate ? 8 : 3];
+                info[1] = (byte) MS_LONGVAR_MAX;
+                info[2] = (byte) (MS_LONGVAR_MAX >> 8);
+                if (collate && pi.collation != null) {
+                    System.arraycopy(pi.collation, 0, info, 3, 5);
+                }
+                break;
+
+            case SYBINTN:
+            case SYBFLTN:
+                info = new byte[] {0, (byte) (getTypeInfoKey(out, pi) >> 8)};
+                break;
+
+            case SYBDATETIMN:
+                info = new byte[] {0, 8};
+                break;
+
+            case SYBBITN:
+                info = new byte[] {0, 1};
+                break;
+
+            default: // SYBNUMERIC, SYBDECIMAL
+                info = new byte[] {0, out.getMaxDecimalBytes(),
+                        (byte) out.getMaxPrecision(),
+                        (byte) getDecimalScale(out, pi)};
+        }
+
+        info[0] = (byte) pi.tdsType;
+        return info;
+    }
+
+    /**
+     * Writes the value of a parameter following its TYPE_INFO, see
+     * {@link #getTypeInfo}.
+     *
+     * @param out the server request stream
+     * @param pi  the parameter descriptor
+     */
+    private static void writeParamValue(RequestStream out, ParamInfo pi)
+            throws IOException {
+        byte[] buf;
+
+        switch (pi.tdsType) {
+            case XSYBVARCHAR:
+                if (pi.value == null) {
+                    out.write((short) 0xFFFF);
+                } else {
+                    buf = pi.getBytes(pi.charsetInfo.getCharset());
+                    out.write((short) buf.length);
+                    out.write(buf);
+                }
+
+                break;
+
+            case XSYBNVARCHAR:
+                if (pi.value == null) {
+                    out.write((short) 0xFFFF);
+                } else {
+                    String tmp = pi.getString(pi.charsetInfo.getCharset());
+                    out.write((short) (tmp.length() * 2));
+                    out.write(tmp);
+                }
+
+                break;
+
+            case XSYBVARBINARY:
+                if (pi.value == null) {
+                    out.write((short) 0xFFFF);
+                } else {
+                    buf = pi.getBytes(pi.charsetInfo.getCharset());
+                    out.write((short) buf.length);
+                    out.write(buf);
+                }
+
+                break;
+
+            case SYBINTN:
+                if (pi.value == null) {
+                    out.write((byte) 0);
+                } else if ("bigint".equals(pi.sqlType)) {
+                    out.write((byte) 8);
+                    out.write(((Number) pi.value).longValue());
+                } else {
+                    out.write((byte) 4);
+                    out.write(((Number) pi.value).intValue());
+                }
+
+                break;
+
+            case SYBFLTN:
+                if (pi.value instanceof Float) {
+                    out.write((byte) 4);
+                    out.write(((Number) pi.value).floatValue());
+                } else if (pi.value == null) {
+                    out.write((byte) 0);
+                } else {
+                    out.write((byte) 8);
+                    out.write(((Number) pi.value).doubleValue());
+                }
+
+                break;
+
+            case SYBDATETIMN:
+                putDateTimeValue(out, (DateTime) pi.value);
+                break;
+
+            case SYBBITN:
+                if (pi.value == null) {
+                    out.write((byte) 0);
+                } else {
+                    out.write((byte) 1);
+                    out.write((byte) (((Boolean) pi.value).booleanValue() ? 1 : 0));
+                }
+
+                break;
+
+            default: // SYBNUMERIC, SYBDECIMAL
+                if (pi.value instanceof Long) {
+                    out.write(new BigDecimal(((Long) pi.value).toString()));
+                } else {
+                    out.write((BigDecimal) pi.value);
+                }
+        }
+    }
+
+    /**
+     * Returns the scale a decimal parameter is sent with.
+     *
+     * @param out the server request stream
+     * @param pi  the parameter descriptor
+     * @return the scale
+     */
+    private static int getDecimalScale(RequestStream out, ParamInfo pi) {
+        if (pi.value == null) {
+            if (pi.jdbcType == Types.BIGINT) {
+                return 0;
+            }
+            int prec = out.getMaxPrecision();
+            return (pi.scale >= 0 && pi.scale <= prec) ? pi.scale : DEFAULT_SCALE;
+        }
+
+        return (pi.value instanceof Long) ? 0 : ((BigDecimal) pi.value).scale();
+    }
+
 //
 // ---------------------- Private methods from here -----------------------
 //
@@ -2825,7 +3522,9 @@ public class TdsData {
      *         <code>Driver.TDS<i>XX</i></code> values)
      */
     public static int getTdsVersion(int rawTdsVersion) {
-        if (rawTdsVersion >= 0x71000001) {
+        if (rawTdsVersion >= 0x72000000) {
+            return Driver.TDS90;
+        } else if (rawTdsVersion >= 0x71000001) {
             return Driver.TDS81;
         } else if (rawTdsVersion >= 0x07010000) {
             return Driver.TDS80;
@@ -0,0 +1,735 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+//
+package net.sourceforge.jtds.jdbcx;
+
+import java.lang.ref.WeakReference;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import javax.sql.ConnectionEvent;
+import javax.sql.ConnectionEventListener;
+
+import net.sourceforge.jtds.jdbc.JtdsConnection;
+import net.sourceforge.jtds.jdbc.Messages;
+import net.sourceforge.jtds.util.Logger;
+
+/**
+ * Connection pool backing a {@link JtdsPoolingDataSource}.
+ *
+ * <p> Borrowing and returning connections is lock-free: every pooled
+ * connection carries an atomic state that is switched between idle and in use
+ * by compare-and-set. A thread first tries to reacquire the connection it used
+ * last (thread affinity), then scans the queue of idle connections and finally
+ * opens a new connection if the pool has not reached its maximum size. Only
+ * threads that have to wait for a connection to be returned are parked.
+ *
+ * <p> A background thread closes connections that have been idle for longer
+ * than the configured maximum idle time, while keeping at least the minimum
+ * number of connections open.
+ */
+final class ConnectionPool
+{
+
+   /**
+    * state of a pooled connection available for borrowing
+    */
+   private static final int                        IDLE      = 0;
+
+   /**
+    * state of a pooled connection handed out to a client
+    */
+   private static final int                        IN_USE    = 1;
+
+   /**
+    * state of a pooled connection that has been closed
+    */
+   private static final int                        REMOVED   = -1;
+
+   /**
+    * timeout in seconds for validating a connection on borrow
+    */
+   private static final int                        VALIDATION_TIMEOUT = 5;
+
+   /**
+    * the data source used for opening physical connections
+    */
+   private final JtdsPoolingDataSource             _DataSource;
+
+   private final int                               _MinSize;
+
+   private final int                               _MaxSize;
+
+   /**
+    * maximum idle time in milliseconds, 0 disables idle eviction
+    */
+   private final long                              _MaxIdle;
+
+   /**
+    * maximum time to wait for a connection in milliseconds, 0 waits forever
+    */
+   private final long                              _MaxWait;
+
+   /**
+    * all connections currently owned by the pool
+    */
+   private final Set<Entry>                        _Entries  = Collections.newSetFromMap( new ConcurrentHashMap<Entry,Boolean>() );
+
+   /**
+    * idle connections, may also contain stale references to connections
+    * that have been reacquired by thread affinity in the meantime
+    */
+   private final ConcurrentLinkedQueue<Entry>      _Idle     = new ConcurrentLinkedQueue<>();
+
+   /**
+    * threads waiting for a connection to be returned
+    */
+   private final ConcurrentLinkedQueue<Thread>     _Waiters  = new ConcurrentLinkedQueue<>();
+
+   /**
+    * the connection last borrowed by the current thread
+    */
+   private final ThreadLocal<WeakReference<Entry>> _Affinity = new ThreadLocal<>();
+
+   /**
+    * number of physical connections, including connections being opened
+    */
+   private final AtomicInteger                     _Size     = new AtomicInteger();
+
+   private final AtomicLong                        _Borrowed = new AtomicLong();
+   private final AtomicLong                        _WaitTime = new AtomicLong();
+   private final AtomicLong                        _MaxWaitTime = new AtomicLong();
+   private final AtomicLong                        _Timeouts = new AtomicLong();
+   private final AtomicLong                        _Created  = new AtomicLong();
+   private final AtomicLong                        _Closed   = new AtomicLong();
+
+   private final Thread                            _Evictor;
+
+   private volatile boolean                        _Shutdown;
+
+   /**
+    * Creates a new connection pool and opens the minimum number of
+    * connections in parallel.
+    *
+    * @throws SQLException
+    *    if none of the initial connections could be opened
+    */
+   ConnectionPool( JtdsPoolingDataSource ds, int minSize, int maxSize, int maxIdleTime, int maxWait )
+      throws SQLException
+   {
+      _DataSource = ds;
+      _MaxSize    = Math.max( 1, maxSize );
+      _MinSize    = Math.max( 0, Math.min( minSize, _MaxSize ) );
+      _MaxIdle    = Math.max( 0, maxIdleTime ) * 1000L;
+      _MaxWait    = Math.max( 0, maxWait );
+
+      warmUp();
+
+      if( _MaxIdle > 0 )
+      {
+         _Evictor = new Thread( "jTDS pool evictor" )
+         {
+            public void run()
+            {
+               evict();
+            }
+         };
+
+         _Evictor.setDaemon( true );
+         _Evictor.start();
+      }
+      else
+      {
+         _Evictor = null;
+      }
+   }
+
+   /**
+    * Borrows a connection from the pool.
+    *
+    * @return
+    *    a logical connection that returns the physical connection to the pool
+    *    when being closed
+    *
+    * @throws SQLException
+    *    if the pool has been closed, no connection became available within the
+    *    maximum wait time or a new connection could not be opened
+    */
+   Connection borrow()
+      throws SQLException
+   {
+      long start = System.nanoTime();
+      Entry entry;
+
+      while( true )
+      {
+         entry = acquire();
+
+         if( entry == null )
+         {
+            entry = await( start );
+         }
+
+         if( entry.isUsable() )
+         {
+            break;
+         }
+
+         destroy( entry );
+      }
+
+      long wait = System.nanoTime() - start;
+      _Borrowed.incrementAndGet();
+      _WaitTime.addAndGet( wait );
+
+      long max;
+      while( wait > ( max = _MaxWaitTime.get() ) && ! _MaxWaitTime.compareAndSet( max, wait ) );
+
+      WeakReference<Entry> last = _Affinity.get();
+      if( last == null || last.get() != entry )
+      {
+         _Affinity.set( new WeakReference<>( entry ) );
+      }
+
+      return entry._Pooled.getConnection();
+   }
+
+   /**
+    * Closes all idle connections and marks the pool closed. Connections in use
+    * are closed when they are returned.
+    */
+   void close()
+   {
+      _Shutdown = true;
+
+      if( _Evictor != null )
+      {
+         _Evictor.interrupt();
+      }
+
+      Iterator<Entry> it = _Entries.iterator();
+
+      while( it.hasNext() )
+      {
+         Entry entry = it.next();
+
+         if( entry._State.compareAndSet( IDLE, IN_USE ) )
+         {
+            destroy( entry );
+         }
+      }
+
+      Iterator<Thread> waiters = _Waiters.iterator();
+
+      while( waiters.hasNext() )
+      {
+         LockSupport.unpark( waiters.next() );
+      }
+   }
+
+   /**
+    * Tries to acquire a connection without waiting.
+    *
+    * @return
+    *    the acquired connection or <code>null</code> if the pool is exhausted
+    */
+   private Entry acquire()
+      throws SQLException
+   {
+      if( _Shutdown )
+      {
+         throw new SQLException( Messages.get( "error.jdbcx.poolclosed" ), "08003" );
+      }
+
+      // fast path, reuse the connection last used by this thread
+      WeakReference<Entry> last = _Affinity.get();
+      Entry entry = last == null ? null : last.get();
+
+      if( entry != null && entry._State.compareAndSet( IDLE, IN_USE ) )
+      {
+         return entry;
+      }
+
+      while( ( entry = _Idle.poll() ) != null )
+      {
+         entry._Queued.set( false );
+
+         if( entry._State.compareAndSet( IDLE, IN_USE ) )
+         {
+            return entry;
+         }
+      }
+
+      return grow( IN_USE );
+   }
+
+   /**
+    * Waits for a connection to be returned to the pool.
+    */
+   private Entry await( long start )
+      throws SQLException
+   {
+      long deadline = start + _MaxWait * 1000000L;
+      Thread thread = Thread.currentThread();
+
+      _Waiters.add( thread );
+
+      try
+      {
+         while( true )
+         {
+            // retry after registering, a connection may have been returned
+            Entry entry = acquire();
+
+            if( entry != null )
+            {
+               return entry;
+            }
+
+            if( _MaxWait > 0 )
+            {
+               long remaining = deadline - System.nanoTime();
+
+               if( remaining <= 0 )
+               {
+                  _Timeouts.incrementAndGet();
+                  throw new SQLException( Messages.get( "error.jdbcx.pooltimeout", String.valueOf( _MaxWait ) ), "08001" );
+               }
+
+               LockSupport.parkNanos( this, remaining );
+            }
+            else
+            {
+               LockSupport.park( this );
+            }
+         }
+      }
+      finally
+      {
+         _Waiters.remove( thread );
+
+         // pass on a wake up this thread might have consumed
+         if( ! _Idle.isEmpty() )
+         {
+            signal();
+         }
+      }
+   }
+
+   /**
+    * Opens a new connection if the pool has not reached its maximum size.
+    *
+    * @param state
+    *    initial state of the new connection
+    *
+    * @return
+    *    the new connection or <code>null</code> if the pool is at its maximum
+    *    size
+    */
+   private Entry grow( int state )
+      throws SQLException
+   {
+      int size;
+
+      do
+      {
+         size = _Size.get();
+
+         if( size >= _MaxSize )
+         {
+            return null;
+         }
+      }
+      while( ! _Size.compareAndSet( size, size + 1 ) );
+
+      try
+      {
+         Entry entry = new Entry( _DataSource.createPooledConnection(), state );
+         _Entries.add( entry );
+         _Created.incrementAndGet();
+
+         if( state == IDLE )
+         {
+            offer( entry );
+         }
+
+         return entry;
+      }
+      catch( SQLException e )
+      {
+         _Size.decrementAndGet();
+         signal();
+         throw e;
+      }
+   }
+
+   /**
+    * Opens the minimum number of connections in parallel.
+    */
+   private void warmUp()
+      throws SQLException
+   {
+      if( _MinSize == 0 )
+      {
+         return;
+      }
+
+      final SQLException[] errors = new SQLException[_MinSize];
+      Thread[] threads = new Thread[_MinSize];
+
+      for( int i = 0; i < _MinSize; i ++ )
+      {
+         final int index = i;
+
+         threads[i] = new Thread( "jTDS pool warm-up " + i )
+         {
+            public void run()
+            {
+               try
+               {
+                  grow( IDLE );
+               }
+               catch( SQLException e )
+               {
+                  errors[index] = e;
+               }
+            }
+         };
+
+         threads[i].setDaemon( true );
+         threads[i].start();
+      }
+
+      SQLException error = null;
+
+      for( int i = 0; i < _MinSize; i ++ )
+      {
+         try
+         {
+            threads[i].join();
+         }
+         catch( InterruptedException e )
+         {
+            Thread.currentThread().interrupt();
+         }
+
+         if( errors[i] != null )
+         {
+            Logger.logException( errors[i] );
+            error = error == null ? errors[i] : error;
+         }
+      }
+
+      // only fail if no connection at all could be opened
+      if( error != null && _Size.get() == 0 )
+      {
+         close();
+         throw error;
+      }
+   }
+
+   /**
+    * Body of the eviction thread, closes connections that exceeded the maximum
+    * idle time and refills the pool to its minimum size.
+    */
+   private void evict()
+   {
+      long interval = Math.max( 1000, _MaxIdle / 2 );
+
+      while( ! _Shutdown )
+      {
+         try
+         {
+            Thread.sleep( interval );
+         }
+         catch( InterruptedException e )
+         {
+            return;
+         }
+
+         long now = System.currentTimeMillis();
+         Iterator<Entry> it = _Entries.iterator();
+
+         while( it.hasNext() && _Size.get() > _MinSize )
+         {
+            Entry entry = it.next();
+
+            if( now - entry._LastUsed > _MaxIdle && entry._State.compareAndSet( IDLE, IN_USE ) )
+            {
+               destroy( entry );
+            }
+         }
+
+         try
+         {
+            while( ! _Shutdown && _Size.get() < _MinSize && grow( IDLE ) != null );
+         }
+         catch( SQLException e )
+         {
+            Logger.logException( e );
+         }
+      }
+   }
+
+   /**
+    * Returns a connection to the pool after its logical connection has been
+    * closed.
+    */
+   private void release( Entry entry )
+   {
+      if( entry._State.get() != IN_USE )
+      {
+         return;
+      }
+
+      if( _Shutdown || ! entry.reset() )
+      {
+         destroy( entry );
+         return;
+      }
+
+      entry._LastUsed = System.currentTimeMillis();
+      entry._State.set( IDLE );
+
+      offer( entry );
+      signal();
+   }
+
+   /**
+    * Adds a connection to the idle queue unless it is already queued.
+    */
+   private void offer( Entry entry )
+   {
+      if( entry._Queued.compareAndSet( false, true ) )
+      {
+         _Idle.offer( entry );
+      }
+   }
+
+   /**
+    * Closes a connection and removes it from the pool.
+    */
+   private void destroy( Entry entry )
+   {
+      if( entry._State.getAndSet( REMOVED ) == REMOVED )
+      {
+         return;
+      }
+
+      _Entries.remove( entry );
+      _Size.decrementAndGet();
+      _Closed.incrementAndGet();
+
+      PooledConnection pooled = entry._Pooled;
+      pooled.removeConnectionEventListener( entry );
+
+      try
+      {
+         if( pooled.connection != null )
+         {
+            pooled.close();
+         }
+      }
+      catch( SQLException e )
+      {
+         Logger.logException( e );
+      }
+
+      signal();
+   }
+
+   /**
+    * Wakes up the first thread waiting for a connection.
+    */
+   private void signal()
+   {
+      Thread waiter = _Waiters.peek();
+
+      if( waiter != null )
+      {
+         LockSupport.unpark( waiter );
+      }
+   }
+
+   int getSize()
+   {
+      return _Size.get();
+   }
+
+   int count( boolean inUse )
+   {
+      int count = 0;
+      int state = inUse ? IN_USE : IDLE;
+      Iterator<Entry> it = _Entries.iterator();
+
+      while( it.hasNext() )
+      {
+         if( it.next()._State.get() == state )
+         {
+            count ++;
+         }
+      }
+
+      return count;
+   }
+
+   int getMaxSize()
+   {
+      return _MaxSize;
+   }
+
+   long getBorrowCount()
+   {
+      return _Borrowed.get();
+   }
+
+   long getWaitTime()
+   {
+      return _WaitTime.get();
+   }
+
+   long getMaxWaitTime()
+   {
+      return _MaxWaitTime.get();
+   }
+
+   long getTimeoutCount()
+   {
+      return _Timeouts.get();
+   }
+
+   long getCreatedCount()
+   {
+      return _Created.get();
+   }
+
+   long getClosedCount()
+   {
+      return _Closed.get();
+   }
+
+   /**
+    * A physical connection owned by the pool.
+    */
+   private final class Entry implements ConnectionEventListener
+   {
+
+      final PooledConnection _Pooled;
+
+      final AtomicInteger    _State  = new AtomicInteger();
+
+      /**
+       * whether this entry is currently contained in the idle queue
+       */
+      final AtomicBoolean    _Queued = new AtomicBoolean();
+
+      /**
+       * auto-commit mode of the connection when it has been opened
+       */
+      final boolean          _AutoCommit;
+
+      volatile long          _LastUsed;
+
+      Entry( PooledConnection pooled, int state )
+         throws SQLException
+      {
+         _Pooled     = pooled;
+         _AutoCommit = pooled.connection.getAutoCommit();
+         _LastUsed   = System.currentTimeMillis();
+         _State.set( state );
+
+         pooled.addConnectionEventListener( this );
+      }
+
+      /**
+       * Checks whether the physical connection is still valid. This does not
+       * cost a round trip if the connection has been used recently.
+       */
+      boolean isUsable()
+      {
+         Connection connection = _Pooled.connection;
+
+         try
+         {
+            return connection != null && connection.isValid( VALIDATION_TIMEOUT );
+         }
+         catch( SQLException e )
+         {
+            return false;
+         }
+      }
+
+      /**
+       * Resets the session and restores the initial auto-commit mode before
+       * the connection is reused. If the server does not support session
+       * resets, any pending transaction is rolled back instead.
+       *
+       * @return
+       *    <code>false</code> if the connection cannot be reused
+       */
+      boolean reset()
+      {
+         JtdsConnection connection = (JtdsConnection) _Pooled.connection;
+
+         try
+         {
+            if( connection == null || connection.isClosed() )
+            {
+               return false;
+            }
+
+            if( ! connection.resetSession() && ! connection.getAutoCommit() )
+            {
+               connection.rollback();
+            }
+
+            if( connection.getAutoCommit() != _AutoCommit )
+            {
+               connection.setAutoCommit( _AutoCommit );
+            }
+
+            connection.clearWarnings();
+            return true;
+         }
+         catch( SQLException e )
+         {
+            Logger.logException( e );
+            return false;
+         }
+      }
+
+      public void connectionClosed( ConnectionEvent event )
+      {
+         release( this );
+      }
+
+      public void connectionErrorOccurred( ConnectionEvent event )
+      {
+         destroy( this );
+      }
+
+   }
+
+}
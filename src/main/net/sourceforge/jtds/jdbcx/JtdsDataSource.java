@@ -34,7 +34,9 @@ import javax.sql.XADataSource;
 
 import net.sourceforge.jtds.jdbc.DefaultProperties;
 import net.sourceforge.jtds.jdbc.Driver;
+import net.sourceforge.jtds.jdbc.LoginCache;
 import net.sourceforge.jtds.jdbc.Messages;
+import net.sourceforge.jtds.jdbc.MetaDataCache;
 import net.sourceforge.jtds.jdbc.Support;
 import net.sourceforge.jtds.util.Logger;
 
@@ -65,6 +67,17 @@ public class JtdsDataSource implements DataSource, ConnectionPoolDataSource, XAD
     */
    private static final Driver _Driver          = new Driver();
 
+   /**
+    * Login results shared by the connections of this DataSource.
+    */
+   private transient volatile LoginCache _LoginCache;
+
+   /**
+    * Metadata results shared by the connections of this DataSource, only used
+    * if the metadata cache is enabled.
+    */
+   private transient volatile MetaDataCache _MetaDataCache;
+
    /**
     * Constructs a configured DataSource.
     */
@@ -183,7 +196,109 @@ public class JtdsDataSource implements DataSource, ConnectionPoolDataSource, XAD
 
       // Connect with the URL stub and set properties. The defaults will be
       // filled in by connect().
-      return _Driver.connect( url, props );
+      return _Driver.connect( url, props, getLoginCache(), getMetaDataCache() );
+   }
+
+   /**
+    * Clears the login and metadata results cached by this DataSource,
+    * including the password hashes computed for NTLM authentication.
+    * Connections opened afterwards start with empty caches.
+    */
+   public void close()
+   {
+      LoginCache cache = _LoginCache;
+      _LoginCache = null;
+
+      if( cache != null )
+      {
+         cache.clear();
+      }
+
+      MetaDataCache metaData = _MetaDataCache;
+      _MetaDataCache = null;
+
+      if( metaData != null )
+      {
+         metaData.clear();
+      }
+   }
+
+   /**
+    * Removes cached metadata results describing the given objects, to be
+    * called after changing their definition. A <code>null</code> argument
+    * matches any value, calling <code>invalidateMetaData( null, null, null )
+    * </code> clears the cache. Does nothing if the metadata cache is not
+    * enabled.
+    *
+    * @param catalog
+    *    the catalog name or <code>null</code>
+    *
+    * @param schema
+    *    the schema name or <code>null</code>
+    *
+    * @param object
+    *    the table, view or procedure name or <code>null</code>
+    */
+   public void invalidateMetaData( String catalog, String schema, String object )
+   {
+      MetaDataCache cache = _MetaDataCache;
+
+      if( cache != null )
+      {
+         cache.invalidate( catalog, schema, object );
+      }
+   }
+
+   /**
+    * Returns the metadata cache shared by the connections of this DataSource.
+    *
+    * @return
+    *    the cache or <code>null</code> if metadata is not cached
+    */
+   public MetaDataCache getMetaDataCache()
+   {
+      if( getMetadataCacheTTL() <= 0 )
+      {
+         return null;
+      }
+
+      MetaDataCache cache = _MetaDataCache;
+
+      if( cache == null )
+      {
+         synchronized( this )
+         {
+            cache = _MetaDataCache;
+
+            if( cache == null )
+            {
+               int size = getMetadataCacheSize();
+               _MetaDataCache = cache = new MetaDataCache( getMetadataCacheTTL() * 1000L, size > 0 ? size : Integer.parseInt( DefaultProperties.METADATA_CACHE_SIZE ) );
+            }
+         }
+      }
+
+      return cache;
+   }
+
+   private LoginCache getLoginCache()
+   {
+      LoginCache cache = _LoginCache;
+
+      if( cache == null )
+      {
+         synchronized( this )
+         {
+            cache = _LoginCache;
+
+            if( cache == null )
+            {
+               _LoginCache = cache = new LoginCache();
+            }
+         }
+      }
+
+      return cache;
    }
 
    public Reference getReference()
@@ -384,6 +499,16 @@ public class JtdsDataSource implements DataSource, ConnectionPoolDataSource, XAD
       return getIntProperty( Driver.SERVERTYPE );
    }
 
+   public void setDiscardLimit( int discardLimit )
+   {
+      _Config.put( Driver.DISCARDLIMIT, String.valueOf( discardLimit ) );
+   }
+
+   public int getDiscardLimit()
+   {
+      return getIntProperty( Driver.DISCARDLIMIT );
+   }
+
    public void setDomain( String domain )
    {
       _Config.put( Driver.DOMAIN, domain );
@@ -414,6 +539,86 @@ public class JtdsDataSource implements DataSource, ConnectionPoolDataSource, XAD
       return Boolean.valueOf( (String) _Config.get( Driver.USEKERBEROS ) ).booleanValue();
    }
 
+   public void setUseOutputInserted( boolean useOutputInserted )
+   {
+      _Config.put( Driver.USEOUTPUTINSERTED, String.valueOf( useOutputInserted ) );
+   }
+
+   public boolean getUseOutputInserted()
+   {
+      return Boolean.valueOf( (String) _Config.get( Driver.USEOUTPUTINSERTED ) ).booleanValue();
+   }
+
+   public void setDescribeParameters( boolean describeParameters )
+   {
+      _Config.put( Driver.DESCRIBEPARAMS, String.valueOf( describeParameters ) );
+   }
+
+   public boolean getDescribeParameters()
+   {
+      return Boolean.valueOf( (String) _Config.get( Driver.DESCRIBEPARAMS ) ).booleanValue();
+   }
+
+   public void setMetadataCacheSize( int metadataCacheSize )
+   {
+      _Config.put( Driver.METADATACACHESIZE, String.valueOf( metadataCacheSize ) );
+   }
+
+   public int getMetadataCacheSize()
+   {
+      return getIntProperty( Driver.METADATACACHESIZE );
+   }
+
+   public void setMetadataCacheTTL( int metadataCacheTTL )
+   {
+      _Config.put( Driver.METADATACACHETTL, String.valueOf( metadataCacheTTL ) );
+   }
+
+   public int getMetadataCacheTTL()
+   {
+      return getIntProperty( Driver.METADATACACHETTL );
+   }
+
+   public void setLoadBalance( String loadBalance )
+   {
+      _Config.put( Driver.LOADBALANCE, loadBalance );
+   }
+
+   public String getLoadBalance()
+   {
+      return (String) _Config.get( Driver.LOADBALANCE );
+   }
+
+   public void setReadOnly( boolean readOnlyIntent )
+   {
+      _Config.put( Driver.READONLY, String.valueOf( readOnlyIntent ) );
+   }
+
+   public boolean getReadOnly()
+   {
+      return Boolean.valueOf( (String) _Config.get( Driver.READONLY ) ).booleanValue();
+   }
+
+   public void setReplicas( String replicas )
+   {
+      _Config.put( Driver.REPLICAS, replicas );
+   }
+
+   public String getReplicas()
+   {
+      return (String) _Config.get( Driver.REPLICAS );
+   }
+
+   public void setValidationInterval( int validationInterval )
+   {
+      _Config.put( Driver.VALIDATIONINTERVAL, String.valueOf( validationInterval ) );
+   }
+
+   public int getValidationInterval()
+   {
+      return getIntProperty( Driver.VALIDATIONINTERVAL );
+   }
+
    public void setInstance( String instance )
    {
       _Config.put( Driver.INSTANCE, instance );
@@ -514,6 +719,46 @@ public class JtdsDataSource implements DataSource, ConnectionPoolDataSource, XAD
       return Boolean.valueOf( (String) _Config.get( Driver.TCPNODELAY ) ).booleanValue();
    }
 
+   public void setPackRows( boolean packRows )
+   {
+      _Config.put( Driver.PACKROWS, String.valueOf( packRows ) );
+   }
+
+   public boolean getPackRows()
+   {
+      return Boolean.valueOf( (String) _Config.get( Driver.PACKROWS ) ).booleanValue();
+   }
+
+   public void setParallelDecode( boolean parallelDecode )
+   {
+      _Config.put( Driver.PARALLELDECODE, String.valueOf( parallelDecode ) );
+   }
+
+   public boolean getParallelDecode()
+   {
+      return Boolean.valueOf( (String) _Config.get( Driver.PARALLELDECODE ) ).booleanValue();
+   }
+
+   public void setPrefetch( int prefetch )
+   {
+      _Config.put( Driver.PREFETCH, String.valueOf( prefetch ) );
+   }
+
+   public int getPrefetch()
+   {
+      return getIntProperty( Driver.PREFETCH );
+   }
+
+   public void setPrefetchBytes( int prefetchBytes )
+   {
+      _Config.put( Driver.PREFETCHBYTES, String.valueOf( prefetchBytes ) );
+   }
+
+   public int getPrefetchBytes()
+   {
+      return getIntProperty( Driver.PREFETCHBYTES );
+   }
+
    public void setPrepareSql( int prepareSql )
    {
       _Config.put( Driver.PREPARESQL, String.valueOf( prepareSql ) );
@@ -534,6 +779,16 @@ public class JtdsDataSource implements DataSource, ConnectionPoolDataSource, XAD
       return getLongProperty( Driver.LOBBUFFER );
    }
 
+   public void setLobPageSize( int lobPageSize )
+   {
+      _Config.put( Driver.LOBPAGESIZE, String.valueOf( lobPageSize ) );
+   }
+
+   public int getLobPageSize()
+   {
+      return getIntProperty( Driver.LOBPAGESIZE );
+   }
+
    public void setMaxStatements( int maxStatements )
    {
       _Config.put( Driver.MAXSTATEMENTS, String.valueOf( maxStatements ) );
@@ -564,6 +819,16 @@ public class JtdsDataSource implements DataSource, ConnectionPoolDataSource, XAD
       return (String) _Config.get( Driver.PROGNAME );
    }
 
+   public void setRowBuffer( long rowBuffer )
+   {
+      _Config.put( Driver.ROWBUFFER, String.valueOf( rowBuffer ) );
+   }
+
+   public long getRowBuffer()
+   {
+      return getLongProperty( Driver.ROWBUFFER );
+   }
+
    public void setWsid( String wsid )
    {
       _Config.put( Driver.WSID, wsid );
@@ -49,7 +49,7 @@ public class JtdsObjectFactory implements ObjectFactory
    {
       Reference ref = (Reference) refObj;
 
-      if( ref.getClassName().equals( JtdsDataSource.class.getName() ) )
+      if( ref.getClassName().equals( JtdsDataSource.class.getName() ) || ref.getClassName().equals( JtdsPoolingDataSource.class.getName() ) )
       {
          HashMap props = loadProps( ref, new String[]
          {
@@ -65,21 +65,28 @@ public class JtdsObjectFactory implements ObjectFactory
             Driver.CACHEMETA,
             Driver.CHARSET,
             Driver.DATABASENAME,
+            Driver.DISCARDLIMIT,
             Driver.DOMAIN,
             Driver.INSTANCE,
             Driver.LANGUAGE,
             Driver.LASTUPDATECOUNT,
             Driver.LOBBUFFER,
+            Driver.LOBPAGESIZE,
             Driver.LOGFILE,
             Driver.LOGINTIMEOUT,
             Driver.MACADDRESS,
             Driver.MAXSTATEMENTS,
             Driver.NAMEDPIPE,
             Driver.PACKETSIZE,
+            Driver.PACKROWS,
+            Driver.PARALLELDECODE,
             Driver.PASSWORD,
             Driver.PORTNUMBER,
+            Driver.PREFETCH,
+            Driver.PREFETCHBYTES,
             Driver.PREPARESQL,
             Driver.PROGNAME,
+            Driver.ROWBUFFER,
             Driver.SERVERNAME,
             Driver.SERVERTYPE,
             Driver.SOTIMEOUT,
@@ -92,6 +99,14 @@ public class JtdsObjectFactory implements ObjectFactory
             Driver.USEJCIFS,
             Driver.USENTLMV2,
             Driver.USEKERBEROS,
+            Driver.USEOUTPUTINSERTED,
+            Driver.DESCRIBEPARAMS,
+            Driver.METADATACACHESIZE,
+            Driver.METADATACACHETTL,
+            Driver.LOADBALANCE,
+            Driver.READONLY,
+            Driver.REPLICAS,
+            Driver.VALIDATIONINTERVAL,
             Driver.USELOBS,
             Driver.USER,
             Driver.SENDSTRINGPARAMETERSASUNICODE,
@@ -99,12 +114,34 @@ public class JtdsObjectFactory implements ObjectFactory
             Driver.XAEMULATION
          } );
 
-         return new JtdsDataSource( props );
+         if( ! ref.getClassName().equals( JtdsPoolingDataSource.class.getName() ) )
+         {
+            return new JtdsDataSource( props );
+         }
+
+         JtdsPoolingDataSource ds = new JtdsPoolingDataSource( props );
+
+         ds.setMinPoolSize( getInt( ref, JtdsPoolingDataSource.MINPOOLSIZE, ds.getMinPoolSize() ) );
+         ds.setMaxPoolSize( getInt( ref, JtdsPoolingDataSource.MAXPOOLSIZE, ds.getMaxPoolSize() ) );
+         ds.setMaxIdleTime( getInt( ref, JtdsPoolingDataSource.MAXIDLETIME, ds.getMaxIdleTime() ) );
+         ds.setMaxWait    ( getInt( ref, JtdsPoolingDataSource.MAXWAIT    , ds.getMaxWait()     ) );
+
+         return ds;
       }
 
       return null;
    }
 
+   /**
+    * Returns the integer value of the given reference address or the default
+    * value if the address is not present.
+    */
+   private static int getInt( Reference ref, String type, int value )
+   {
+      RefAddr ra = ref.get( type );
+      return ra == null ? value : Integer.parseInt( (String) ra.getContent() );
+   }
+
    private HashMap loadProps( Reference ref, String[] props )
    {
       HashMap config = new HashMap();
@@ -0,0 +1,378 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+//
+package net.sourceforge.jtds.jdbcx;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.HashMap;
+import javax.naming.Reference;
+import javax.naming.StringRefAddr;
+import javax.sql.XAConnection;
+
+/**
+ * A jTDS <code>DataSource</code> with a built-in connection pool.
+ *
+ * <p> Connections obtained via {@link #getConnection()} are taken from a pool
+ * of physical connections and returned to it when being closed. Before a
+ * connection is reused its session is reset, rolling back pending
+ * transactions and dropping temporary tables, and the initial auto-commit
+ * mode is restored. For SQL Server the reset is carried by the next request
+ * instead of costing a separate round trip.
+ *
+ * <p> The pool is started by the first call to <code>getConnection()</code>
+ * or by calling {@link #start()}, opening the minimum number of connections
+ * in parallel. Changes to the pool settings only take effect for pools
+ * started afterwards. Connections requested for a user other than the one
+ * configured for this data source are not pooled.
+ */
+public class JtdsPoolingDataSource extends JtdsDataSource
+{
+
+   /**
+    * serial version UID
+    */
+   static final long                 serialVersionUID = 01010001L;
+
+   static final String               MINPOOLSIZE      = "minpoolsize";
+
+   static final String               MAXPOOLSIZE      = "maxpoolsize";
+
+   static final String               MAXIDLETIME      = "maxidletime";
+
+   static final String               MAXWAIT          = "maxwait";
+
+   private int                       _MinPoolSize     = 0;
+
+   private int                       _MaxPoolSize     = 10;
+
+   private int                       _MaxIdleTime     = 600;
+
+   private int                       _MaxWait         = 30000;
+
+   private transient volatile ConnectionPool _Pool;
+
+   /**
+    * Constructs a configured pooling DataSource.
+    */
+   JtdsPoolingDataSource( HashMap config )
+   {
+      super( config );
+   }
+
+   /**
+    * Constructs a new pooling DataSource.
+    */
+   public JtdsPoolingDataSource()
+   {
+      super();
+   }
+
+   /**
+    * Returns a pooled database connection.
+    *
+    * @return
+    *    a pooled database connection
+    *
+    * @throws SQLException
+    *    if an error occurs
+    */
+   public Connection getConnection()
+      throws SQLException
+   {
+      return getPool().borrow();
+   }
+
+   /**
+    * Returns a database connection for the user and password specified. The
+    * connection is taken from the pool if the credentials match the ones of
+    * this data source, otherwise a new, unpooled connection is opened.
+    *
+    * @param user
+    *    the user name to connect with
+    *
+    * @param password
+    *    the password to connect with
+    *
+    * @return
+    *    a database connection
+    *
+    * @throws SQLException
+    *    if an error occurs
+    */
+   public Connection getConnection( String user, String password )
+      throws SQLException
+   {
+      if( equal( user, getUser() ) && equal( password, getPassword() ) )
+      {
+         return getPool().borrow();
+      }
+
+      return super.getConnection( user, password );
+   }
+
+   public XAConnection getXAConnection( String user, String password )
+      throws SQLException
+   {
+      return new JtdsXAConnection( this, super.getConnection( user, password ) );
+   }
+
+   public javax.sql.PooledConnection getPooledConnection( String user, String password )
+      throws SQLException
+   {
+      return new PooledConnection( super.getConnection( user, password ) );
+   }
+
+   /**
+    * Returns a reference to this DataSource, including the pool settings that
+    * are not part of the connection properties.
+    */
+   public Reference getReference()
+   {
+      Reference ref = super.getReference();
+
+      ref.add( new StringRefAddr( MINPOOLSIZE, String.valueOf( _MinPoolSize ) ) );
+      ref.add( new StringRefAddr( MAXPOOLSIZE, String.valueOf( _MaxPoolSize ) ) );
+      ref.add( new StringRefAddr( MAXIDLETIME, String.valueOf( _MaxIdleTime ) ) );
+      ref.add( new StringRefAddr( MAXWAIT    , String.valueOf( _MaxWait     ) ) );
+
+      return ref;
+   }
+
+   /**
+    * Starts the connection pool, opening the minimum number of connections in
+    * parallel. Does nothing if the pool is already running.
+    *
+    * @throws SQLException
+    *    if none of the initial connections could be opened
+    */
+   public void start()
+      throws SQLException
+   {
+      getPool();
+   }
+
+   /**
+    * Closes the connection pool and clears the login cache. Idle connections
+    * are closed immediately, connections currently in use are closed when
+    * being returned to the pool. A subsequent request for a connection starts
+    * a new pool.
+    */
+   public synchronized void close()
+   {
+      if( _Pool != null )
+      {
+         _Pool.close();
+         _Pool = null;
+      }
+
+      super.close();
+   }
+
+   /**
+    * Opens a new physical connection for the pool.
+    */
+   PooledConnection createPooledConnection()
+      throws SQLException
+   {
+      return new PooledConnection( super.getConnection( getUser(), getPassword() ) );
+   }
+
+   private ConnectionPool getPool()
+      throws SQLException
+   {
+      ConnectionPool pool = _Pool;
+
+      if( pool == null )
+      {
+         synchronized( this )
+         {
+            pool = _Pool;
+
+            if( pool == null )
+            {
+               _Pool = pool = new ConnectionPool( this, _MinPoolSize, _MaxPoolSize, _MaxIdleTime, _MaxWait );
+            }
+         }
+      }
+
+      return pool;
+   }
+
+   private static boolean equal( String a, String b )
+   {
+      return a == null ? b == null : a.equals( b );
+   }
+
+   //
+   // pool settings
+   //
+
+   /**
+    * Sets the number of connections opened when starting the pool and kept
+    * open by idle eviction, defaults to 0.
+    */
+   public void setMinPoolSize( int minPoolSize )
+   {
+      _MinPoolSize = minPoolSize;
+   }
+
+   public int getMinPoolSize()
+   {
+      return _MinPoolSize;
+   }
+
+   /**
+    * Sets the maximum number of physical connections, defaults to 10.
+    */
+   public void setMaxPoolSize( int maxPoolSize )
+   {
+      _MaxPoolSize = maxPoolSize;
+   }
+
+   public int getMaxPoolSize()
+   {
+      return _MaxPoolSize;
+   }
+
+   /**
+    * Sets the time in seconds after which idle connections exceeding the
+    * minimum pool size are closed, defaults to 600. A value of 0 disables
+    * idle eviction.
+    */
+   public void setMaxIdleTime( int maxIdleTime )
+   {
+      _MaxIdleTime = maxIdleTime;
+   }
+
+   public int getMaxIdleTime()
+   {
+      return _MaxIdleTime;
+   }
+
+   /**
+    * Sets the time in milliseconds to wait for a connection if the pool is
+    * exhausted, defaults to 30000. A value of 0 waits forever.
+    */
+   public void setMaxWait( int maxWait )
+   {
+      _MaxWait = maxWait;
+   }
+
+   public int getMaxWait()
+   {
+      return _MaxWait;
+   }
+
+   //
+   // pool metrics
+   //
+
+   /**
+    * Returns the number of connections currently handed out by the pool.
+    */
+   public int getActiveConnections()
+   {
+      ConnectionPool pool = _Pool;
+      return pool == null ? 0 : pool.count( true );
+   }
+
+   /**
+    * Returns the number of idle connections in the pool.
+    */
+   public int getIdleConnections()
+   {
+      ConnectionPool pool = _Pool;
+      return pool == null ? 0 : pool.count( false );
+   }
+
+   /**
+    * Returns the number of physical connections owned by the pool.
+    */
+   public int getTotalConnections()
+   {
+      ConnectionPool pool = _Pool;
+      return pool == null ? 0 : pool.getSize();
+   }
+
+   /**
+    * Returns the ratio of active connections to the maximum pool size, a
+    * value between 0 and 1.
+    */
+   public double getUtilization()
+   {
+      ConnectionPool pool = _Pool;
+      return pool == null ? 0 : (double) pool.count( true ) / pool.getMaxSize();
+   }
+
+   /**
+    * Returns the number of connections borrowed from the pool.
+    */
+   public long getBorrowCount()
+   {
+      ConnectionPool pool = _Pool;
+      return pool == null ? 0 : pool.getBorrowCount();
+   }
+
+   /**
+    * Returns the average time in milliseconds callers waited for a connection.
+    */
+   public double getAverageWaitTime()
+   {
+      ConnectionPool pool = _Pool;
+      long count = pool == null ? 0 : pool.getBorrowCount();
+      return count == 0 ? 0 : pool.getWaitTime() / 1000000.0 / count;
+   }
+
+   /**
+    * Returns the longest time in milliseconds a caller waited for a
+    * connection.
+    */
+   public double getMaxWaitTime()
+   {
+      ConnectionPool pool = _Pool;
+      return pool == null ? 0 : pool.getMaxWaitTime() / 1000000.0;
+   }
+
+   /**
+    * Returns the number of requests that timed out waiting for a connection.
+    */
+   public long getWaitTimeoutCount()
+   {
+      ConnectionPool pool = _Pool;
+      return pool == null ? 0 : pool.getTimeoutCount();
+   }
+
+   /**
+    * Returns the number of physical connections opened by the pool.
+    */
+   public long getCreatedConnectionCount()
+   {
+      ConnectionPool pool = _Pool;
+      return pool == null ? 0 : pool.getCreatedCount();
+   }
+
+   /**
+    * Returns the number of physical connections closed by the pool.
+    */
+   public long getClosedConnectionCount()
+   {
+      ConnectionPool pool = _Pool;
+      return pool == null ? 0 : pool.getClosedCount();
+   }
+
+}
@@ -33,6 +33,17 @@ import net.sourceforge.jtds.jdbcx.proxy.*;
 public class PooledConnection implements javax.sql.PooledConnection {
     private ArrayList listeners = new ArrayList();
 
+    private ArrayList statementListeners = new ArrayList();
+
+    /**
+     * Lists of logically closed statements by statement key, in least
+     * recently used order.
+     */
+    private final LinkedHashMap statementPool = new LinkedHashMap(16, 0.75f, true);
+
+    /** Number of statements in {@link #statementPool}. */
+    private int pooledStatements;
+
     protected Connection connection;
 
     public PooledConnection(Connection connection) {
@@ -61,6 +72,10 @@ public class PooledConnection implements javax.sql.PooledConnection {
      * @throws SQLException if an error occurs
      */
     public synchronized void close() throws SQLException {
+        // pooled statements are closed along with the connection
+        statementPool.clear();
+        pooledStatements = 0;
+
         connection.close();
         connection = null; // Garbage collect the connection
     }
@@ -133,20 +148,142 @@ public class PooledConnection implements javax.sql.PooledConnection {
 
     /////// JDBC4 demarcation, do NOT put any JDBC3 code below this line ///////
 
-    /* (non-Javadoc)
-     * @see javax.sql.PooledConnection#addStatementEventListener(javax.sql.StatementEventListener)
+    /**
+     * Adds the specified statement listener to the list.
+     *
+     * @see #fireStatementEvent
+     * @see #removeStatementEventListener
+     */
+    public synchronized void addStatementEventListener(StatementEventListener listener) {
+        // Clone the list of listeners to avoid concurrent modifications, see
+        // addConnectionEventListener
+        statementListeners = (ArrayList) statementListeners.clone();
+        statementListeners.add(listener);
+    }
+
+    /**
+     * Removes the specified statement listener from the list.
+     *
+     * @see #addStatementEventListener
+     * @see #fireStatementEvent
      */
-    public void addStatementEventListener(StatementEventListener listener) {
-        // TODO Auto-generated method stub
-        throw new AbstractMethodError();
+    public synchronized void removeStatementEventListener(StatementEventListener listener) {
+        statementListeners = (ArrayList) statementListeners.clone();
+        statementListeners.remove(listener);
     }
 
-    /* (non-Javadoc)
-     * @see javax.sql.PooledConnection#removeStatementEventListener(javax.sql.StatementEventListener)
+    /**
+     * Fires a new statement event on all statement listeners.
+     *
+     * @param statement the logical statement the event refers to
+     * @param sqlException <code>null</code> if the statement has been closed,
+     *        otherwise the SQLException rendering the statement unusable
+     */
+    public synchronized void fireStatementEvent(PreparedStatement statement,
+                                                SQLException sqlException) {
+        if (statementListeners.size() > 0) {
+            StatementEvent statementEvent = new StatementEvent(this, statement, sqlException);
+            Iterator iterator = statementListeners.iterator();
+
+            while (iterator.hasNext()) {
+                StatementEventListener listener = (StatementEventListener) iterator.next();
+
+                if (sqlException == null) {
+                    listener.statementClosed(statementEvent);
+                } else {
+                    listener.statementErrorOccurred(statementEvent);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of statements in the statement pool.
+     */
+    synchronized int getPooledStatementCount() {
+        return pooledStatements;
+    }
+
+    /**
+     * Removes a pooled statement from the statement pool.
+     *
+     * @param key the statement key, built from the SQL, the statement kind
+     *        and the result set type and concurrency
+     * @return the pooled statement or <code>null</code> if there is none
      */
-    public void removeStatementEventListener(StatementEventListener listener) {
-        // TODO Auto-generated method stub
-        throw new AbstractMethodError();
+    public synchronized JtdsPreparedStatement takeStatement(String key) {
+        LinkedList list = (LinkedList) statementPool.get(key);
+
+        if (list == null) {
+            return null;
+        }
+
+        JtdsPreparedStatement statement = (JtdsPreparedStatement) list.removeFirst();
+
+        if (list.isEmpty()) {
+            statementPool.remove(key);
+        }
+
+        pooledStatements--;
+
+        return statement;
+    }
+
+    /**
+     * Adds a logically closed statement to the statement pool. The statement
+     * is recycled first; if the pool grows beyond the maximum number of
+     * statements configured for the connection, the least recently used
+     * statements are closed.
+     *
+     * @param key the statement key
+     * @param statement the statement to pool
+     * @return <code>false</code> if statement pooling is disabled or the
+     *         statement is closed, the statement has not been pooled then
+     * @throws SQLException if the statement could not be recycled
+     */
+    public synchronized boolean returnStatement(String key, JtdsPreparedStatement statement)
+            throws SQLException {
+        if (connection == null || statement.isClosed()) {
+            return false;
+        }
+
+        int maxStatements = ((JtdsConnection) connection).getMaxStatements();
+
+        if (maxStatements <= 0) {
+            return false;
+        }
+
+        statement.recycle();
+
+        LinkedList list = (LinkedList) statementPool.get(key);
+
+        if (list == null) {
+            list = new LinkedList();
+            statementPool.put(key, list);
+        }
+
+        list.addFirst(statement);
+        pooledStatements++;
+
+        while (pooledStatements > maxStatements) {
+            Iterator iterator = statementPool.values().iterator();
+            LinkedList eldest = (LinkedList) iterator.next();
+            JtdsPreparedStatement evicted = (JtdsPreparedStatement) eldest.removeLast();
+
+            if (eldest.isEmpty()) {
+                iterator.remove();
+            }
+
+            pooledStatements--;
+
+            try {
+                evicted.close();
+            } catch (SQLException ex) {
+                // Ignore, the statement is not used anymore
+            }
+        }
+
+        return true;
     }
 
 }
\ No newline at end of file
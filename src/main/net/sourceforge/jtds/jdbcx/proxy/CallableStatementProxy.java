@@ -38,8 +38,8 @@ extends PreparedStatementProxy
 implements CallableStatement {
     private JtdsCallableStatement _callableStatement;
     
-    CallableStatementProxy(ConnectionProxy connection, JtdsCallableStatement callableStatement) {
-        super(connection, callableStatement);
+    CallableStatementProxy(ConnectionProxy connection, JtdsCallableStatement callableStatement, String key) {
+        super(connection, callableStatement, key);
         
         _callableStatement = callableStatement;
     }
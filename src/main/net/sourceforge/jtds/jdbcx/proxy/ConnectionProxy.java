@@ -18,6 +18,7 @@
 package net.sourceforge.jtds.jdbcx.proxy;
 
 import java.sql.*;
+import java.util.ArrayList;
 import java.util.Map;
 import java.util.Properties;
 
@@ -36,6 +37,8 @@ public class ConnectionProxy implements Connection {
     private PooledConnection _pooledConnection;
     private JtdsConnection _connection;
     private boolean _closed;
+    /** The statement proxies created through this proxy and still open. */
+    private final ArrayList _statements = new ArrayList();
 
     /**
      * Constructs a new connection proxy.
@@ -71,8 +74,26 @@ public class ConnectionProxy implements Connection {
             return;
         }
 
-        _pooledConnection.fireConnectionEvent(true, null);
+        // close all statements still open, prepared statements are returned
+        // to the statement pool of the physical connection
+        Object[] statements;
+
+        synchronized (_statements) {
+            statements = _statements.toArray();
+        }
+
+        for (int i = 0; i < statements.length; i++) {
+            try {
+                ((StatementProxy) statements[i]).close();
+            } catch (SQLException ex) {
+                // Ignore, the connection is being closed anyway
+            }
+        }
+
+        // mark the proxy closed first, a pool may hand out the physical
+        // connection to another thread as soon as the event has been fired
         _closed = true;
+        _pooledConnection.fireConnectionEvent(true, null);
     }
 
     /**
@@ -337,7 +358,14 @@ public class ConnectionProxy implements Connection {
         validateConnection();
 
         try {
-            return new CallableStatementProxy(this, (JtdsCallableStatement) _connection.prepareCall(sql));
+            String key = statementKey("C", sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            JtdsCallableStatement statement = (JtdsCallableStatement) _pooledConnection.takeStatement(key);
+
+            if (statement == null) {
+                statement = (JtdsCallableStatement) _connection.prepareCall(sql);
+            }
+
+            return new CallableStatementProxy(this, statement, key);
         } catch (SQLException sqlException) {
             processSQLException(sqlException);
         }
@@ -355,7 +383,14 @@ public class ConnectionProxy implements Connection {
         validateConnection();
 
         try {
-            return new CallableStatementProxy(this, (JtdsCallableStatement) _connection.prepareCall(sql, resultSetType, resultSetConcurrency));
+            String key = statementKey("C", sql, resultSetType, resultSetConcurrency);
+            JtdsCallableStatement statement = (JtdsCallableStatement) _pooledConnection.takeStatement(key);
+
+            if (statement == null) {
+                statement = (JtdsCallableStatement) _connection.prepareCall(sql, resultSetType, resultSetConcurrency);
+            }
+
+            return new CallableStatementProxy(this, statement, key);
         } catch (SQLException sqlException) {
             processSQLException(sqlException);
         }
@@ -373,7 +408,14 @@ public class ConnectionProxy implements Connection {
         validateConnection();
 
         try {
-            return new CallableStatementProxy(this, (JtdsCallableStatement) _connection.prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability));
+            String key = statementKey("C", sql, resultSetType, resultSetConcurrency);
+            JtdsCallableStatement statement = (JtdsCallableStatement) _pooledConnection.takeStatement(key);
+
+            if (statement == null) {
+                statement = (JtdsCallableStatement) _connection.prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+            }
+
+            return new CallableStatementProxy(this, statement, key);
         } catch (SQLException sqlException) {
             processSQLException(sqlException);
         }
@@ -391,7 +433,14 @@ public class ConnectionProxy implements Connection {
         validateConnection();
 
         try {
-            return new PreparedStatementProxy(this, (JtdsPreparedStatement) _connection.prepareStatement(sql));
+            String key = statementKey("P", sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            JtdsPreparedStatement statement = _pooledConnection.takeStatement(key);
+
+            if (statement == null) {
+                statement = (JtdsPreparedStatement) _connection.prepareStatement(sql);
+            }
+
+            return new PreparedStatementProxy(this, statement, key);
         } catch (SQLException sqlException) {
             processSQLException(sqlException);
         }
@@ -409,7 +458,15 @@ public class ConnectionProxy implements Connection {
         validateConnection();
 
         try {
-            return new PreparedStatementProxy(this, (JtdsPreparedStatement) _connection.prepareStatement(sql, autoGeneratedKeys));
+            String key = statementKey(autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS ? "K" : "P",
+                    sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            JtdsPreparedStatement statement = _pooledConnection.takeStatement(key);
+
+            if (statement == null) {
+                statement = (JtdsPreparedStatement) _connection.prepareStatement(sql, autoGeneratedKeys);
+            }
+
+            return new PreparedStatementProxy(this, statement, key);
         } catch (SQLException sqlException) {
             processSQLException(sqlException);
         }
@@ -427,7 +484,8 @@ public class ConnectionProxy implements Connection {
         validateConnection();
 
         try {
-            return new PreparedStatementProxy(this, (JtdsPreparedStatement) _connection.prepareStatement(sql, columnIndexes));
+            // statements returning specific key columns are not pooled
+            return new PreparedStatementProxy(this, (JtdsPreparedStatement) _connection.prepareStatement(sql, columnIndexes), null);
         } catch (SQLException sqlException) {
             processSQLException(sqlException);
         }
@@ -445,7 +503,8 @@ public class ConnectionProxy implements Connection {
         validateConnection();
 
         try {
-            return new PreparedStatementProxy(this, (JtdsPreparedStatement) _connection.prepareStatement(sql, columnNames));
+            // statements returning specific key columns are not pooled
+            return new PreparedStatementProxy(this, (JtdsPreparedStatement) _connection.prepareStatement(sql, columnNames), null);
         } catch (SQLException sqlException) {
             processSQLException(sqlException);
         }
@@ -463,7 +522,14 @@ public class ConnectionProxy implements Connection {
         validateConnection();
 
         try {
-            return new PreparedStatementProxy(this, (JtdsPreparedStatement) _connection.prepareStatement(sql, resultSetType, resultSetConcurrency));
+            String key = statementKey("P", sql, resultSetType, resultSetConcurrency);
+            JtdsPreparedStatement statement = _pooledConnection.takeStatement(key);
+
+            if (statement == null) {
+                statement = (JtdsPreparedStatement) _connection.prepareStatement(sql, resultSetType, resultSetConcurrency);
+            }
+
+            return new PreparedStatementProxy(this, statement, key);
         } catch (SQLException sqlException) {
             processSQLException(sqlException);
         }
@@ -481,7 +547,14 @@ public class ConnectionProxy implements Connection {
         validateConnection();
 
         try {
-            return new PreparedStatementProxy(this, (JtdsPreparedStatement) _connection.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability));
+            String key = statementKey("P", sql, resultSetType, resultSetConcurrency);
+            JtdsPreparedStatement statement = _pooledConnection.takeStatement(key);
+
+            if (statement == null) {
+                statement = (JtdsPreparedStatement) _connection.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+            }
+
+            return new PreparedStatementProxy(this, statement, key);
         } catch (SQLException sqlException) {
             processSQLException(sqlException);
         }
@@ -678,6 +751,61 @@ public class ConnectionProxy implements Connection {
         }
     }
 
+    /**
+     * Builds the key identifying equivalent prepared statements in the
+     * statement pool. The current catalog is part of the key, as unqualified
+     * names in the SQL resolve to different objects in another database.
+     *
+     * @param kind <code>"P"</code> for prepared statements, <code>"C"</code>
+     *        for callable statements and <code>"K"</code> for prepared
+     *        statements returning generated keys
+     * @throws SQLException if the current catalog cannot be determined
+     */
+    private String statementKey(String kind, String sql, int resultSetType, int resultSetConcurrency)
+            throws SQLException {
+        // database names cannot contain a NUL, so the catalog and the SQL
+        // cannot run into each other
+        return kind + resultSetType + ':' + resultSetConcurrency + ':'
+                + _connection.getCatalog() + '\0' + sql;
+    }
+
+    /**
+     * Registers a statement proxy to be closed along with this proxy.
+     */
+    void addStatement(StatementProxy statement) {
+        synchronized (_statements) {
+            _statements.add(statement);
+        }
+    }
+
+    /**
+     * Removes a closed statement proxy.
+     */
+    void removeStatement(StatementProxy statement) {
+        synchronized (_statements) {
+            _statements.remove(statement);
+        }
+    }
+
+    /**
+     * Returns a logically closed statement to the statement pool of the
+     * physical connection.
+     *
+     * @return <code>false</code> if the statement has not been pooled
+     * @throws SQLException if the statement could not be recycled
+     */
+    boolean returnStatement(String key, JtdsPreparedStatement statement) throws SQLException {
+        return _pooledConnection.returnStatement(key, statement);
+    }
+
+    /**
+     * Fires a statement event on the statement listeners of the pooled
+     * connection.
+     */
+    void fireStatementEvent(PreparedStatement statement, SQLException sqlException) {
+        _pooledConnection.fireStatementEvent(statement, sqlException);
+    }
+
     /**
      * Processes SQLExceptions.
      */
@@ -766,8 +894,11 @@ public class ConnectionProxy implements Connection {
      * @see java.sql.Connection#isValid(int)
      */
     public boolean isValid(int timeout) throws SQLException {
-        // TODO Auto-generated method stub
-        throw new AbstractMethodError();
+        if (_closed) {
+            return false;
+        }
+
+        return _connection.isValid(timeout);
     }
 
     /* (non-Javadoc)
@@ -36,12 +36,50 @@ import net.sourceforge.jtds.jdbc.*;
 public class PreparedStatementProxy
 extends StatementProxy
 implements PreparedStatement {
+    private ConnectionProxy _connection;
     private JtdsPreparedStatement _preparedStatement;
+    /** The statement pool key or <code>null</code> if not to be pooled. */
+    private String _key;
     
-    PreparedStatementProxy(ConnectionProxy connection, JtdsPreparedStatement preparedStatement) {
+    PreparedStatementProxy(ConnectionProxy connection, JtdsPreparedStatement preparedStatement, String key) {
         super(connection, preparedStatement);
         
+        _connection = connection;
         _preparedStatement = preparedStatement;
+        _key = key;
+    }
+
+    /**
+     * Returns the prepared statement to the statement pool if it is poolable,
+     * closes it otherwise. Statement listeners are notified in either case.
+     *
+     * @throws SQLException if an error occurs
+     */
+    protected void closeStatement() throws SQLException {
+        boolean pooled = false;
+
+        try {
+            pooled = _key != null && _preparedStatement.isPoolable()
+                    && _connection.returnStatement(_key, _preparedStatement);
+        } finally {
+            if (!pooled) {
+                _preparedStatement.close();
+            }
+        }
+
+        _connection.fireStatementEvent(this, null);
+    }
+
+    /**
+     * Processes SQLExceptions, notifying the statement listeners if the
+     * exception caused the statement to be closed.
+     */
+    protected void processSQLException(SQLException sqlException) throws SQLException {
+        if (_preparedStatement.isClosed()) {
+            _connection.fireStatementEvent(this, sqlException);
+        }
+
+        super.processSQLException(sqlException);
     }
 
     /**
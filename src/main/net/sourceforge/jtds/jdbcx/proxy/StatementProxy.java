@@ -32,10 +32,13 @@ import net.sourceforge.jtds.jdbc.*;
 public class StatementProxy implements Statement {
     private ConnectionProxy _connection;
     private JtdsStatement _statement;
+    private boolean _closed;
 
     StatementProxy(ConnectionProxy connection, JtdsStatement statement) {
         _connection = connection;
         _statement = statement;
+
+        connection.addStatement(this);
     }
     
     /**
@@ -81,15 +84,32 @@ public class StatementProxy implements Statement {
      * @throws SQLException if an error occurs
      */
     public void close() throws SQLException {
+        if (_closed) {
+            return;
+        }
+
         validateConnection();
 
+        _closed = true;
+        _connection.removeStatement(this);
+
         try {
-            _statement.close();
+            closeStatement();
         } catch (SQLException sqlException) {
             processSQLException(sqlException);
         }
     }
 
+    /**
+     * Releases the statement when the proxy is being closed. Subclasses may
+     * keep the statement for reuse instead of closing it.
+     *
+     * @throws SQLException if an error occurs
+     */
+    protected void closeStatement() throws SQLException {
+        _statement.close();
+    }
+
     /**
      * Delgates calls to the statement; SQLExceptions thrown from the statement
      * will cause an event to be fired on the connection pool listeners.
@@ -684,6 +704,10 @@ public class StatementProxy implements Statement {
      * Validates the connection state.
      */
     protected void validateConnection() throws SQLException {
+        if (_closed) {
+            throw new SQLException(Messages.get("error.generic.closed", "Statement"), "HY010");
+        }
+
         if (_connection.isClosed()) {
             throw new SQLException(Messages.get("error.conproxy.noconn"), "HY010");
         }
@@ -704,24 +728,35 @@ public class StatementProxy implements Statement {
      * @see java.sql.Statement#isClosed()
      */
     public boolean isClosed() throws SQLException {
-        // TODO Auto-generated method stub
-        throw new AbstractMethodError();
+        return _closed || _statement.isClosed();
     }
 
     /* (non-Javadoc)
      * @see java.sql.Statement#isPoolable()
      */
     public boolean isPoolable() throws SQLException {
-        // TODO Auto-generated method stub
-        throw new AbstractMethodError();
+        validateConnection();
+
+        try {
+            return _statement.isPoolable();
+        } catch (SQLException sqlException) {
+            processSQLException(sqlException);
+        }
+
+        return false;
     }
 
     /* (non-Javadoc)
      * @see java.sql.Statement#setPoolable(boolean)
      */
     public void setPoolable(boolean poolable) throws SQLException {
-        // TODO Auto-generated method stub
-        throw new AbstractMethodError();
+        validateConnection();
+
+        try {
+            _statement.setPoolable(poolable);
+        } catch (SQLException sqlException) {
+            processSQLException(sqlException);
+        }
     }
 
     /* (non-Javadoc)
@@ -18,7 +18,12 @@
 package net.sourceforge.jtds.util;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 
 import net.sourceforge.jtds.jdbc.Messages;
 
@@ -28,21 +33,25 @@ import net.sourceforge.jtds.jdbc.Messages;
  * <p/>
  * The data can be purely memory based until the size exceeds the value
  * dictated by the <code>lobBuffer</code> URL property after which it will be
- * written to disk. The disk array is accessed randomly one page (1024 bytes)
- * at a time.
+ * written to disk. The disk file is accessed randomly through a
+ * <code>FileChannel</code>, one page (dictated by the <code>lobPageSize</code>
+ * URL property) at a time.
+ * <p/>
+ * Temporary files are not deleted when the buffer is discarded but truncated
+ * and kept in a pool for the next buffer using the same directory, so that
+ * a file is not created for every LOB.
  * <p/>
  * This class is not synchronized and concurrent open input and output
  * streams can conflict.
  * <p/>
  * Tuning hints:
  * <ol>
- *   <li>The <code>PAGE_SIZE</code> governs how much data is buffered when
- *     reading or writing data a byte at a time. 1024 bytes seems to work well
- *     but if very large objects are being written a byte at a time 4096 may be
- *     better. <b>NB.</b> ensure that the <code>PAGE_MASK</code> and
- *     <code>BYTE_MASK</code> fields are also adjusted to match.
+ *   <li>The page size governs how much data is buffered when reading or
+ *     writing data a byte at a time. The default of 8192 bytes works well for
+ *     most LOBs but if very large objects are being accessed a byte at a time
+ *     a larger page size may be better.
  *   <li>Reading or writing byte arrays that are greater than or equal to the
- *     page size will go directly to or from the random access file cutting out
+ *     page size will go directly to or from the file channel cutting out
  *     an ArrayCopy operation.
  *   <li>If BLOBs are being buffered exclusively in memory you may wish to
  *     adjust the <code>MAX_BUF_INC</code> value. Every time the buffer is
@@ -65,15 +74,7 @@ public class BlobBuffer {
     /**
      * Default page size (must be power of 2).
      */
-    private static final int PAGE_SIZE = 1024;
-    /**
-     * Mask for page component of read/write pointer.
-     */
-    private static final int PAGE_MASK = 0xFFFFFC00;
-    /**
-     * Mask for page offset component of R/W pointer.
-     */
-    private static final int BYTE_MASK = 0x000003FF;
+    public static final int DEFAULT_PAGE_SIZE = 8192;
     /**
      * Maximum buffer increment.
      */
@@ -82,6 +83,18 @@ public class BlobBuffer {
      * Invalid page marker.
      */
     private static final int INVALID_PAGE = -1;
+    /**
+     * Maximum number of unused temporary files kept per directory.
+     */
+    private static final int MAX_POOLED_FILES = 16;
+    /**
+     * Unused temporary files, by directory.
+     */
+    private static final HashMap<File,ArrayList<File>> filePool = new HashMap<File,ArrayList<File>>();
+    /**
+     * True if a shutdown hook deleting the pooled files has been registered.
+     */
+    private static boolean poolHook;
 
     /**
      * The BLOB buffer or the current page buffer.
@@ -100,9 +113,9 @@ public class BlobBuffer {
      */
     private File blobFile;
     /**
-     * The RA file object reference or null if closed.
+     * The file channel or null if closed.
      */
-    private RandomAccessFile raFile;
+    private FileChannel channel;
     /**
      * Indicates page in memory must be saved.
      */
@@ -124,42 +137,70 @@ public class BlobBuffer {
      * The maximum size of an in memory buffer.
      */
     private final int maxMemSize;
+    /**
+     * The size of a page of the disk file.
+     */
+    private final int pageSize;
+    /**
+     * Mask for page component of read/write pointer.
+     */
+    private final int pageMask;
+    /**
+     * Mask for page offset component of R/W pointer.
+     */
+    private final int byteMask;
 
     /**
-     * Creates a blob buffer.
+     * Creates a blob buffer using the default page size.
      *
      * @param bufferDir
      * @param maxMemSize the maximum size of the in memory buffer
      */
     public BlobBuffer(File bufferDir, long maxMemSize) {
+        this(bufferDir, maxMemSize, DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * Creates a blob buffer.
+     *
+     * @param bufferDir
+     * @param maxMemSize the maximum size of the in memory buffer
+     * @param pageSize   the size of a page of the disk file (power of 2)
+     */
+    public BlobBuffer(File bufferDir, long maxMemSize, int pageSize) {
        if (maxMemSize > Integer.MAX_VALUE)
           throw new IllegalArgumentException("The maximum in-memory buffer size of a blob buffer cannot exceed 2GB");
+       if (pageSize <= 0 || (pageSize & (pageSize - 1)) != 0)
+          throw new IllegalArgumentException("The page size of a blob buffer must be a power of 2");
 
        this.bufferDir = bufferDir;
        this.maxMemSize = (int) maxMemSize;
+       this.pageSize = pageSize;
+       pageMask = ~(pageSize - 1);
+       byteMask = pageSize - 1;
        buffer = EMPTY_BUFFER;
     }
 
     /**
-     * Finalizes this object by deleting any work files.
+     * Finalizes this object by releasing any work files.
      */
     protected void finalize() throws Throwable {
         try {
-            if (raFile != null) {
-                raFile.close();
+            if (channel != null) {
+                channel.close();
             }
         } catch (IOException e) {
-            // Ignore we are going to delete anyway
+            // Ignore we are going to release anyway
         } finally {
             if (blobFile != null) {
-                blobFile.delete();
+                releaseFile(blobFile);
             }
         }
     }
 
     /**
      * Creates a random access disk file to use as backing storage for the LOB
-     * data.
+     * data. An unused file of the buffer directory is reused if available.
      * <p/>
      * This method may fail due to security exceptions or local disk problems,
      * in which case the blob storage will remain entirely in memory.
@@ -170,24 +211,26 @@ public class BlobBuffer {
     		return;
     	}
         try {
-            blobFile = File.createTempFile("jtds", ".tmp", bufferDir);
-            // blobFile.deleteOnExit(); memory leak, see http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=6664633
-            raFile = new RandomAccessFile(blobFile, "rw");
+            blobFile = acquireFile(bufferDir);
+            channel = new RandomAccessFile(blobFile, "rw").getChannel();
             if (length > 0) {
-                raFile.write(buffer, 0, length);
+                writeFully(0, buffer, 0, length);
             }
-            buffer = new byte[PAGE_SIZE];
+            buffer = new byte[pageSize];
             currentPage = INVALID_PAGE;
             openCount = 0;
         } catch (SecurityException e) {
             blobFile = null;
-            raFile = null;
+            channel = null;
             isMemOnly = true;
             Logger.println("SecurityException creating BLOB file:");
             Logger.logException(e);
         } catch (IOException ioe) {
+            if (blobFile != null) {
+                blobFile.delete();
+            }
             blobFile = null;
-            raFile = null;
+            channel = null;
             isMemOnly = true;
             Logger.println("IOException creating BLOB file:");
             Logger.logException(ioe);
@@ -204,15 +247,15 @@ public class BlobBuffer {
      * @throws IOException if an I/O error occurs
      */
     public void open() throws IOException {
-        if (raFile == null && blobFile != null) {
+        if (channel == null && blobFile != null) {
             // reopen file
-            raFile = new RandomAccessFile(blobFile, "rw");
+            channel = new RandomAccessFile(blobFile, "rw").getChannel();
             openCount = 1;
             currentPage = INVALID_PAGE;
-            buffer = new byte[PAGE_SIZE];
+            buffer = new byte[pageSize];
             return;
         }
-        if (raFile != null) {
+        if (channel != null) {
             openCount++;
         }
     }
@@ -222,7 +265,7 @@ public class BlobBuffer {
      * <p/>
      * The read pointer is partitioned into a page number and an offset within
      * the page. This routine will read new pages as required. The page size
-     * must be a power of 2 and is currently set to 1024 bytes.
+     * must be a power of 2.
      *
      * @param readPtr the offset in the buffer of the required byte
      * @return the byte value as an <code>int</code> or -1 if at EOF
@@ -233,15 +276,15 @@ public class BlobBuffer {
             // At end of file.
             return -1;
         }
-        if (raFile != null) {
+        if (channel != null) {
             // Paged storage as a file exists
-            if (currentPage != (readPtr & PAGE_MASK)) {
+            if (currentPage != (readPtr & pageMask)) {
                 // Requested page not in memory so read it
                 readPage(readPtr);
             }
             // Use the byte offset to return the correct
             // byte from the page.
-            return buffer[readPtr & BYTE_MASK] & 0xFF;
+            return buffer[readPtr & byteMask] & 0xFF;
         } else {
             // In memory buffer just return byte.
             return buffer[readPtr] & 0xFF;
@@ -274,30 +317,31 @@ public class BlobBuffer {
             return -1;
         }
 
-        if (raFile != null) {
+        if (channel != null) {
             // Need to read from disk file
             len = Math.min(length - readPtr, len);
-            if (len >= PAGE_SIZE) {
-                // This is a big write so we optimize by reading directly
-                // from the RA File.
+            if (len >= pageSize) {
+                // This is a big read so we optimize by reading the whole
+                // region directly from the file channel.
                 if (bufferDirty) {
                     writePage(currentPage);
                 }
                 currentPage = INVALID_PAGE;
-                raFile.seek(readPtr);
-                raFile.readFully(bytes, offset, len);
+                if (readFully(readPtr, bytes, offset, len) < len) {
+                    throw new EOFException("Unexpected EOF on BLOB data file");
+                }
             } else {
                 //
                 // Partial read so buffer locally
                 //
                 int count = len;
                 while (count > 0) {
-                    if (currentPage != (readPtr & PAGE_MASK)) {
+                    if (currentPage != (readPtr & pageMask)) {
                         // Requested page not in memory so read it
                         readPage(readPtr);
                     }
-                    int inBuffer = Math.min(PAGE_SIZE - (readPtr & BYTE_MASK), count);
-                    System.arraycopy(buffer, readPtr & BYTE_MASK, bytes, offset, inBuffer);
+                    int inBuffer = Math.min(pageSize - (readPtr & byteMask), count);
+                    System.arraycopy(buffer, readPtr & byteMask, bytes, offset, inBuffer);
                     offset += inBuffer;
                     readPtr += inBuffer;
                     count -= inBuffer;
@@ -317,7 +361,7 @@ public class BlobBuffer {
      * <p/>
      * The write pointer is partitioned into a page number and an offset within
      * the page. This routine will write new pages as required. The page size
-     * must be a power of 2 and is currently set to 1024 bytes.
+     * must be a power of 2.
      *
      * @param writePtr the offset in the buffer of the required byte
      * @param b        the byte value to write
@@ -340,13 +384,13 @@ public class BlobBuffer {
             }
         }
 
-        if (raFile != null) {
+        if (channel != null) {
             // OK we have a disk based buffer
-            if (currentPage != (writePtr & PAGE_MASK)) {
+            if (currentPage != (writePtr & pageMask)) {
                 // The page we need is not in memory
                 readPage(writePtr);
             }
-            buffer[writePtr & BYTE_MASK] = (byte) b;
+            buffer[writePtr & byteMask] = (byte) b;
             // Ensure change will saved if buffer is replaced
             bufferDirty = true;
         } else {
@@ -387,18 +431,17 @@ public class BlobBuffer {
             throw new IOException("BLOB buffer has been truncated");
         }
 
-        if (raFile != null) {
+        if (channel != null) {
             // dealing with disk storage (normal case)
             //
-            if (len >= PAGE_SIZE) {
-                // This is a big write so we optimize by writing directly
-                // to the RA File.
+            if (len >= pageSize) {
+                // This is a big write so we optimize by writing the whole
+                // region directly to the file channel.
                 if (bufferDirty) {
                     writePage(currentPage);
                 }
                 currentPage = INVALID_PAGE;
-                raFile.seek(writePtr);
-                raFile.write(bytes, offset, len);
+                writeFully(writePtr, bytes, offset, len);
                 writePtr += len;
             } else {
                 // Small writes so use the page buffer for
@@ -406,14 +449,14 @@ public class BlobBuffer {
                 int count = len;
                 while (count > 0) {
                     // Paged storage as a file exists
-                    if (currentPage != (writePtr & PAGE_MASK)) {
+                    if (currentPage != (writePtr & pageMask)) {
                         // Requested page not in memory so read it
                         readPage(writePtr);
                     }
                     int inBuffer = Math.min(
-                            PAGE_SIZE - (writePtr & BYTE_MASK), count);
+                            pageSize - (writePtr & byteMask), count);
                     System.arraycopy(bytes, offset, buffer,
-                            writePtr & BYTE_MASK, inBuffer);
+                            writePtr & byteMask, inBuffer);
                     bufferDirty = true;
                     offset += inBuffer;
                     writePtr += inBuffer;
@@ -442,23 +485,17 @@ public class BlobBuffer {
      * @throws IOException if an I/O error occurs
      */
     public void readPage(int page) throws IOException {
-        page = page & PAGE_MASK;
+        page = page & pageMask;
         if (bufferDirty) {
             writePage(currentPage);
         }
-        if (page > raFile.length()) {
+        if (page > channel.size()) {
             throw new IOException("readPage: Invalid page number " + page);
         }
         currentPage = page;
         // Locate and read requested page
         // NB. Page may not be completely filled.
-        raFile.seek(currentPage);
-        // Repeat reading until buffer is filled or EOF is reached
-        int count = 0, res;
-        do {
-            res = raFile.read(buffer, count, buffer.length - count);
-            count += (res == -1) ? 0 : res;
-        } while (count < PAGE_SIZE && res != -1);
+        readFully(currentPage, buffer, 0, pageSize);
     }
 
     /**
@@ -468,18 +505,56 @@ public class BlobBuffer {
      * @throws IOException if an I/O error occurs
      */
     public void writePage(int page) throws IOException {
-        page = page & PAGE_MASK;
-        if (page > raFile.length()) {
+        page = page & pageMask;
+        if (page > channel.size()) {
             throw new IOException("writePage: Invalid page number " + page);
         }
-        if (buffer.length != PAGE_SIZE) {
+        if (buffer.length != pageSize) {
             throw new IllegalStateException("writePage: buffer size invalid");
         }
-        raFile.seek(page);
-        raFile.write(buffer);
+        writeFully(page, buffer, 0, pageSize);
         bufferDirty = false;
     }
 
+    /**
+     * Reads from the disk file until the given region has been filled or the
+     * end of the file has been reached.
+     *
+     * @param pos    the position in the file
+     * @param bytes  the byte array to fill
+     * @param offset the start position in the byte array
+     * @param len    the number of bytes to read
+     * @return the number of bytes read
+     * @throws IOException if an I/O error occurs
+     */
+    private int readFully(long pos, byte[] bytes, int offset, int len)
+            throws IOException {
+        ByteBuffer bb = ByteBuffer.wrap(bytes, offset, len);
+        while (bb.hasRemaining()) {
+            if (channel.read(bb, pos + bb.position() - offset) < 0) {
+                break;
+            }
+        }
+        return bb.position() - offset;
+    }
+
+    /**
+     * Writes the given region to the disk file.
+     *
+     * @param pos    the position in the file
+     * @param bytes  the byte array holding the data
+     * @param offset the start position in the byte array
+     * @param len    the number of bytes to write
+     * @throws IOException if an I/O error occurs
+     */
+    private void writeFully(long pos, byte[] bytes, int offset, int len)
+            throws IOException {
+        ByteBuffer bb = ByteBuffer.wrap(bytes, offset, len);
+        while (bb.hasRemaining()) {
+            channel.write(bb, pos + bb.position() - offset);
+        }
+    }
+
     /**
      * Logically closes the file or physically close it if the open count is
      * now zero.
@@ -491,12 +566,12 @@ public class BlobBuffer {
      */
     public void close() throws IOException {
         if (openCount > 0) {
-            if (--openCount == 0 && raFile != null) {
+            if (--openCount == 0 && channel != null) {
                 if (bufferDirty) {
                     writePage(currentPage);
                 }
-                raFile.close();
-                raFile = null;
+                channel.close();
+                channel = null;
                 // Allow buffer to be garbage collected
                 buffer = EMPTY_BUFFER;
                 currentPage = INVALID_PAGE;
@@ -513,7 +588,7 @@ public class BlobBuffer {
     public void growBuffer(int minSize) {
         if (buffer.length == 0) {
             // Assign initial buffer
-            buffer = new byte[Math.max(PAGE_SIZE, minSize)];
+            buffer = new byte[Math.max(pageSize, minSize)];
         } else {
             byte[] tmp;
             if (buffer.length * 2 > minSize && buffer.length <= MAX_BUF_INC) {
@@ -527,6 +602,81 @@ public class BlobBuffer {
         }
     }
 
+    /**
+     * Returns an unused temporary file of the given directory, taken from the
+     * pool or newly created.
+     *
+     * @param dir the buffer directory
+     * @return the empty file
+     * @throws IOException if the file cannot be created
+     */
+    private static File acquireFile(File dir) throws IOException {
+        synchronized (filePool) {
+            ArrayList<File> files = filePool.get(dir);
+            if (files != null && !files.isEmpty()) {
+                return files.remove(files.size() - 1);
+            }
+        }
+        // blobFile.deleteOnExit(); memory leak, see http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=6664633
+        return File.createTempFile("jtds", ".tmp", dir);
+    }
+
+    /**
+     * Truncates a temporary file no longer used and returns it to the pool,
+     * or deletes it if the pool is full.
+     *
+     * @param file the temporary file
+     */
+    private static void releaseFile(File file) {
+        File dir = file.getParentFile();
+        synchronized (filePool) {
+            ArrayList<File> files = filePool.get(dir);
+            if (files == null) {
+                files = new ArrayList<File>();
+                filePool.put(dir, files);
+            }
+            if (files.size() < MAX_POOLED_FILES) {
+                try {
+                    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+                    try {
+                        raf.setLength(0);
+                    } finally {
+                        raf.close();
+                    }
+                    files.add(file);
+                    registerPoolHook();
+                    return;
+                } catch (IOException e) {
+                    // Fall through and delete the file
+                } catch (SecurityException e) {
+                    // Fall through and delete the file
+                }
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * Registers a shutdown hook deleting the pooled files, once.
+     */
+    private static void registerPoolHook() {
+        if (!poolHook) {
+            poolHook = true;
+            Runtime.getRuntime().addShutdownHook(new Thread("jTDS BLOB file cleanup") {
+                public void run() {
+                    synchronized (filePool) {
+                        for (Iterator<ArrayList<File>> it = filePool.values().iterator(); it.hasNext(); ) {
+                            for (Iterator<File> files = it.next().iterator(); files.hasNext(); ) {
+                                files.next().delete();
+                            }
+                        }
+                        filePool.clear();
+                    }
+                }
+            });
+        }
+    }
+
     /**
      * Sets the initial buffer to an existing byte array.
      *
@@ -1189,10 +1339,10 @@ public class BlobBuffer {
                 // Any open input streams will get EOF
                 // open write streams will probably fail.
                 if (blobFile != null) {
-                    if (raFile != null) {
-                        raFile.close();
+                    if (channel != null) {
+                        channel.close();
                     }
-                    blobFile.delete();
+                    releaseFile(blobFile);
                 }
             } catch (IOException e) {
                 throw new SQLException(Messages.get("error.generic.ioerror",
@@ -1201,7 +1351,7 @@ public class BlobBuffer {
             } finally {
                 buffer = EMPTY_BUFFER;
                 blobFile = null;
-                raFile = null;
+                channel = null;
                 openCount = 0;
                 currentPage = INVALID_PAGE;
             }
@@ -19,12 +19,16 @@ package net.sourceforge.jtds.jdbc;
 
 import java.math.BigDecimal;
 import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.ParameterMetaData;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
 import java.sql.Types;
+import java.util.Arrays;
+import java.util.Properties;
 
 import junit.framework.Assert;
 import junit.framework.AssertionFailedError;
@@ -1338,6 +1342,64 @@ public class CallableStatementTest extends TestBase
     }
     */
 
+    /**
+     * Test that the parameter types declared by a procedure are used to send
+     * parameters and are returned as parameter meta data.
+     */
+    public void testDeclaredParameterTypes() throws Exception {
+        dropProcedure("jtds_declared");
+        Statement stmt = con.createStatement();
+        stmt.execute("create procedure jtds_declared @name varchar(20), @amount decimal(10,2), "
+                + "@total decimal(12,2) output as "
+                + "select @total = @amount * 2 "
+                + "select sql_variant_property(@name, 'BaseType')");
+        stmt.close();
+
+        Properties override = new Properties();
+        override.setProperty("metadataCacheTTL", "60");
+        Connection con = getConnection(override);
+
+        try {
+            for (int i = 0; i < 2; i++) {
+                CallableStatement cstmt = con.prepareCall("{call jtds_declared(?, ?, ?)}");
+                cstmt.setString("name", "abc");
+                cstmt.setInt("amount", 5);
+                cstmt.registerOutParameter("total", Types.DECIMAL, 2);
+
+                ParameterMetaData pmd = cstmt.getParameterMetaData();
+                assertEquals(3, pmd.getParameterCount());
+                assertEquals("varchar", pmd.getParameterTypeName(1));
+                assertEquals(Types.DECIMAL, pmd.getParameterType(2));
+                assertEquals(2, pmd.getScale(2));
+                assertEquals(ParameterMetaData.parameterModeInOut, pmd.getParameterMode(3));
+
+                ResultSet rs = cstmt.executeQuery();
+                assertTrue(rs.next());
+                assertEquals("varchar", rs.getString(1));
+                rs.close();
+                assertEquals(new BigDecimal("10.00"), cstmt.getBigDecimal(3));
+                cstmt.close();
+            }
+
+            // the second call used the cached procedure columns
+            assertEquals(1, ((JtdsConnection) con).getMetaDataCache().getHitCount());
+        } finally {
+            con.close();
+            dropProcedure("jtds_declared");
+        }
+    }
+
+    /**
+     * Test splitting qualified procedure names.
+     */
+    public void testSplitProcName() {
+        assertEquals("[null, null, proc]", Arrays.asList(JtdsCallableStatement.splitProcName("proc;1")).toString());
+        assertEquals("[null, dbo, proc]", Arrays.asList(JtdsCallableStatement.splitProcName("[dbo].proc")).toString());
+        assertEquals("[db, null, a.b]", Arrays.asList(JtdsCallableStatement.splitProcName("db..\"a.b\"")).toString());
+        assertNull(JtdsCallableStatement.splitProcName("#temp"));
+        assertNull(JtdsCallableStatement.splitProcName("srv.db.dbo.proc"));
+    }
+
     public static void main(String[] args) {
         junit.textui.TestRunner.run(CallableStatementTest.class);
     }
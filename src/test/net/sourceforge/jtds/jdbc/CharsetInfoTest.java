@@ -0,0 +1,97 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+//
+package net.sourceforge.jtds.jdbc;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for the single byte lookup tables of the <code>CharsetInfo</code>
+ * class, which must translate exactly like the JVM's own charsets.
+ */
+public class CharsetInfoTest extends TestCase {
+
+    /** Server charsets covering single byte and multi-byte charsets. */
+    private static final String[] SERVER_CHARSETS = {
+        "ISO_1", "CP1250", "CP1251", "CP1252", "CP1253", "CP1255", "CP850",
+        "CP437", "ISO88592", "KOI8", "CP932", "CP936", "UTF8"
+    };
+
+    public CharsetInfoTest(String name) {
+        super(name);
+    }
+
+    /**
+     * Test that all byte values decode to the same characters as with
+     * <code>new String(byte[], String)</code>.
+     */
+    public void testDecode() throws Exception {
+        byte[] bytes = new byte[256];
+
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) i;
+        }
+
+        for (int i = 0; i < SERVER_CHARSETS.length; i++) {
+            CharsetInfo info = CharsetInfo.getCharset(SERVER_CHARSETS[i]);
+            assertNotNull(SERVER_CHARSETS[i], info);
+            assertEquals(info.getCharset(), new String(bytes, info.getCharset()),
+                    info.decode(bytes, 0, bytes.length));
+        }
+    }
+
+    /**
+     * Test that strings, including unmappable characters and surrogate
+     * pairs, encode to the same bytes as with
+     * <code>String.getBytes(String)</code>.
+     */
+    public void testEncode() throws Exception {
+        Random random = new Random(1);
+        StringBuilder buf = new StringBuilder();
+
+        for (int i = 0; i < 2000; i++) {
+            buf.append((char) random.nextInt(0x3000));
+        }
+
+        String[] values = {buf.toString(), buf.append("\ud83d\ude00\u20ac").toString()};
+
+        for (int i = 0; i < SERVER_CHARSETS.length; i++) {
+            CharsetInfo info = CharsetInfo.getCharset(SERVER_CHARSETS[i]);
+
+            for (int j = 0; j < values.length; j++) {
+                assertTrue(info.getCharset(), Arrays.equals(
+                        values[j].getBytes(info.getCharset()), info.encode(values[j])));
+            }
+        }
+    }
+
+    /**
+     * Test that the lookup tables are only built for single byte charsets.
+     */
+    public void testTables() {
+        CharsetInfo cp1252 = CharsetInfo.getCharset("CP1252");
+        assertNotNull(cp1252.getDecodeTable());
+        assertNotNull(cp1252.getEncodeTable());
+
+        CharsetInfo cp936 = CharsetInfo.getCharset("CP936");
+        assertNull(cp936.getDecodeTable());
+        assertNull(cp936.getEncodeTable());
+    }
+}
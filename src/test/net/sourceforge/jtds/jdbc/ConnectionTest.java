@@ -84,6 +84,11 @@ public class ConnectionTest extends UnitTestBase
       assertSQLExceptionForBadWholeNumberProperty( Driver.PACKETSIZE   );
       assertSQLExceptionForBadWholeNumberProperty( Driver.LOGINTIMEOUT );
       assertSQLExceptionForBadWholeNumberProperty( Driver.LOBBUFFER    );
+      assertSQLExceptionForBadWholeNumberProperty( Driver.LOBPAGESIZE  );
+      assertSQLExceptionForBadWholeNumberProperty( Driver.PREFETCH     );
+      assertSQLExceptionForBadWholeNumberProperty( Driver.PREFETCHBYTES );
+      assertSQLExceptionForBadWholeNumberProperty( Driver.DISCARDLIMIT );
+      assertSQLExceptionForBadWholeNumberProperty( Driver.ROWBUFFER    );
    }
 
    /**
@@ -284,6 +289,122 @@ public class ConnectionTest extends UnitTestBase
       stmt.execute( "SELECT {fn curdate()}, {fn curdate()}, {fn curdate()}, {fn curdate()}, {fn curdate()}, {fn curdate()}, {fn curdate()}, {fn curdate()}, {fn curdate()}, {fn curdate()}, {fn curdate()}, {fn curdate()}, {fn curdate()}, {fn curdate()}, {fn curdate()}, {fn curdate()}" );
    }
 
+   /**
+    * Test <code>isValid()</code> with and without a server round trip.
+    */
+   public void testIsValid() throws Exception
+   {
+      Properties override = new Properties();
+      override.setProperty( Messages.get( Driver.VALIDATIONINTERVAL ), "0" );
+      Connection con = getConnectionOverrideProperties( override );
+
+      try
+      {
+         // always contacts the server
+         assertTrue( con.isValid( 5 ) );
+         assertTrue( ( (JtdsConnection) con ).getValidationLatency() > 0 );
+
+         try
+         {
+            con.isValid( -1 );
+            fail( "negative timeout accepted" );
+         }
+         catch( SQLException e )
+         {
+            assertEquals( "HY092", e.getSQLState() );
+         }
+      }
+      finally
+      {
+         con.close();
+      }
+
+      assertFalse( con.isValid( 0 ) );
+
+      // the default window skips the round trip after a recent response
+      con = getConnection();
+
+      try
+      {
+         Statement stmt = con.createStatement();
+         stmt.execute( "SELECT 1" );
+         stmt.close();
+         assertTrue( con.isValid( 5 ) );
+         assertEquals( 0, ( (JtdsConnection) con ).getValidationLatency() );
+      }
+      finally
+      {
+         con.close();
+      }
+   }
+
+   /**
+    * Test that session state changes are applied by the next request, that
+    * restoring the current state is a no-op and that errors are reported.
+    */
+   public void testDeferredSessionState() throws Exception
+   {
+      Connection con = getConnection();
+
+      try
+      {
+         String catalog = con.getCatalog();
+         Statement stmt = con.createStatement();
+         stmt.execute( "CREATE TABLE #deferred (id int)" );
+
+         // the commit requested by setAutoCommit is executed right away, even
+         // though the auto commit mode is restored before the next request
+         con.setAutoCommit( false );
+         stmt.execute( "INSERT INTO #deferred VALUES (1)" );
+         con.setAutoCommit( true );
+         con.setAutoCommit( false );
+         con.rollback();
+         con.setAutoCommit( true );
+
+         ResultSet rs = stmt.executeQuery( "SELECT COUNT(*), @@TRANCOUNT FROM #deferred" );
+         assertTrue( rs.next() );
+         assertEquals( 1, rs.getInt( 1 ) );
+         assertEquals( 0, rs.getInt( 2 ) );
+         rs.close();
+
+         con.setTransactionIsolation( Connection.TRANSACTION_SERIALIZABLE );
+         con.setCatalog( "master" );
+         assertEquals( "master", con.getCatalog() );
+         assertEquals( Connection.TRANSACTION_SERIALIZABLE, con.getTransactionIsolation() );
+
+         rs = stmt.executeQuery( "SELECT DB_NAME(), transaction_isolation_level FROM sys.dm_exec_sessions WHERE session_id = @@SPID" );
+         assertTrue( rs.next() );
+         assertEquals( "master", rs.getString( 1 ) );
+         assertEquals( 4, rs.getInt( 2 ) );
+         rs.close();
+
+         con.setTransactionIsolation( Connection.TRANSACTION_READ_COMMITTED );
+         con.setCatalog( catalog );
+
+         // a failing database change is reported by setCatalog itself
+         try
+         {
+            con.setCatalog( "jtds_no_such_database" );
+            fail( "expecting an error" );
+         }
+         catch( SQLException e )
+         {
+            // expected
+         }
+
+         assertEquals( catalog, con.getCatalog() );
+         rs = stmt.executeQuery( "SELECT transaction_isolation_level FROM sys.dm_exec_sessions WHERE session_id = @@SPID" );
+         assertTrue( rs.next() );
+         assertEquals( 2, rs.getInt( 1 ) );
+         rs.close();
+         stmt.close();
+      }
+      finally
+      {
+         con.close();
+      }
+   }
+
    /**
     * Test that temporary procedures created within transactions with savepoints
     * which are released are still kept in the procedure cache.
@@ -828,6 +828,63 @@ public class DatabaseMetaDataTest extends MetaDataTestCase {
 
     }
 
+    /**
+     * Test that metadata results are cached if enabled and that invalidated
+     * results are queried again.
+     */
+    public void testMetaDataCache() throws Exception {
+        Properties props = new Properties();
+        props.setProperty("metadataCacheTTL", "60");
+        JtdsConnection con = (JtdsConnection) getConnection(props);
+        Statement stmt = con.createStatement();
+
+        try {
+            stmt.execute("create table jtdsMetaDataCache (id int primary key, name varchar(10))");
+            DatabaseMetaData meta = con.getMetaData();
+            MetaDataCache cache = con.getMetaDataCache();
+
+            ResultSet rs1 = meta.getColumns(null, null, "jtdsMetaDataCache", "%");
+            ResultSet rs2 = meta.getColumns(null, null, "jtdsMetaDataCache", "%");
+            assertEquals(1, cache.getMissCount());
+            assertEquals(1, cache.getHitCount());
+
+            // copies are independent of each other
+            assertTrue(rs1.next());
+            rs1.close();
+            assertTrue(rs2.next());
+            assertEquals("id", rs2.getString("COLUMN_NAME"));
+            assertTrue(rs2.next());
+            assertEquals("name", rs2.getString("COLUMN_NAME"));
+            assertFalse(rs2.next());
+            rs2.close();
+
+            // schema changes are not noticed until invalidated
+            stmt.execute("alter table jtdsMetaDataCache add other int null");
+            assertEquals(2, count(meta.getColumns(null, null, "jtdsMetaDataCache", "%")));
+            cache.invalidate(null, null, "jtdsMetaDataCache");
+            assertEquals(3, count(meta.getColumns(null, null, "jtdsMetaDataCache", "%")));
+
+            // other results are cached separately
+            assertEquals(1, count(meta.getPrimaryKeys(null, null, "jtdsMetaDataCache")));
+            assertEquals(1, count(meta.getPrimaryKeys(null, null, "jtdsMetaDataCache")));
+            assertEquals(3, cache.getHitCount());
+            assertEquals(2, cache.size());
+        } finally {
+            dropTable("jtdsMetaDataCache");
+            stmt.close();
+            con.close();
+        }
+    }
+
+    private static int count(ResultSet rs) throws SQLException {
+        int count = 0;
+        while (rs.next()) {
+            count++;
+        }
+        rs.close();
+        return count;
+    }
+
     /**
      * Test for bug [1825743], default value not returned for column with
      * default value.
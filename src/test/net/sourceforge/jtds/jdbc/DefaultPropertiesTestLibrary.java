@@ -144,6 +144,20 @@ public abstract class DefaultPropertiesTestLibrary extends TestCase {
     }
 
 
+    /**
+     * Test the <code>discardLimit</code> property.
+     */
+    public void test_discardLimit() {
+        String fieldName = "discardLimit";
+        String messageKey = Driver.DISCARDLIMIT;
+        String expectedValue = DefaultProperties.DISCARD_LIMIT;
+        assertDefaultPropertyByServerType(URL_SQLSERVER, messageKey, fieldName, expectedValue);
+        if (!isOnlySqlServerTests()) {
+            assertDefaultPropertyByServerType(URL_SYBASE, messageKey, fieldName, expectedValue);
+        }
+    }
+
+
     /**
      * Test the <code>appName</code> property.
      */
@@ -200,6 +214,20 @@ public abstract class DefaultPropertiesTestLibrary extends TestCase {
     }
 
 
+    /**
+     * Test the <code>lobPageSize</code> property.
+     */
+    public void test_lobPageSize() {
+        String fieldName = "lobPageSize";
+        String messageKey = Driver.LOBPAGESIZE;
+        String expectedValue = DefaultProperties.LOB_PAGE_SIZE;
+        assertDefaultPropertyByServerType(URL_SQLSERVER, messageKey, fieldName, expectedValue);
+        if (!isOnlySqlServerTests()) {
+            assertDefaultPropertyByServerType(URL_SYBASE, messageKey, fieldName, expectedValue);
+        }
+    }
+
+
     /**
      * Test the <code>loginTimeout</code> property.
      */
@@ -307,6 +335,76 @@ public abstract class DefaultPropertiesTestLibrary extends TestCase {
     }
 
 
+    /**
+     * Test the <code>packRows</code> property.
+     */
+    public void test_packRows() {
+        String fieldName = "packRows";
+        String messageKey = Driver.PACKROWS;
+        String expectedValue = DefaultProperties.PACK_ROWS;
+        assertDefaultPropertyByServerType(URL_SQLSERVER, messageKey, fieldName, expectedValue);
+        if (!isOnlySqlServerTests()) {
+            assertDefaultPropertyByServerType(URL_SYBASE, messageKey, fieldName, expectedValue);
+        }
+    }
+
+
+    /**
+     * Test the <code>parallelDecode</code> property.
+     */
+    public void test_parallelDecode() {
+        String fieldName = "parallelDecode";
+        String messageKey = Driver.PARALLELDECODE;
+        String expectedValue = DefaultProperties.PARALLEL_DECODE;
+        assertDefaultPropertyByServerType(URL_SQLSERVER, messageKey, fieldName, expectedValue);
+        if (!isOnlySqlServerTests()) {
+            assertDefaultPropertyByServerType(URL_SYBASE, messageKey, fieldName, expectedValue);
+        }
+    }
+
+
+    /**
+     * Test the <code>rowBuffer</code> property.
+     */
+    public void test_rowBuffer() {
+        String fieldName = "rowBuffer";
+        String messageKey = Driver.ROWBUFFER;
+        String expectedValue = DefaultProperties.ROW_BUFFER;
+        assertDefaultPropertyByServerType(URL_SQLSERVER, messageKey, fieldName, expectedValue);
+        if (!isOnlySqlServerTests()) {
+            assertDefaultPropertyByServerType(URL_SYBASE, messageKey, fieldName, expectedValue);
+        }
+    }
+
+
+    /**
+     * Test the <code>prefetch</code> property.
+     */
+    public void test_prefetch() {
+        String fieldName = "prefetch";
+        String messageKey = Driver.PREFETCH;
+        String expectedValue = DefaultProperties.PREFETCH;
+        assertDefaultPropertyByServerType(URL_SQLSERVER, messageKey, fieldName, expectedValue);
+        if (!isOnlySqlServerTests()) {
+            assertDefaultPropertyByServerType(URL_SYBASE, messageKey, fieldName, expectedValue);
+        }
+    }
+
+
+    /**
+     * Test the <code>prefetchBytes</code> property.
+     */
+    public void test_prefetchBytes() {
+        String fieldName = "prefetchBytes";
+        String messageKey = Driver.PREFETCHBYTES;
+        String expectedValue = DefaultProperties.PREFETCH_BYTES;
+        assertDefaultPropertyByServerType(URL_SQLSERVER, messageKey, fieldName, expectedValue);
+        if (!isOnlySqlServerTests()) {
+            assertDefaultPropertyByServerType(URL_SYBASE, messageKey, fieldName, expectedValue);
+        }
+    }
+
+
     /**
      * Test the <code>prepareSql</code> property.
      */
@@ -469,6 +567,110 @@ public abstract class DefaultPropertiesTestLibrary extends TestCase {
         }
     }
 
+    /**
+     * Test the <code>useOutputInserted</code> property.
+     */
+    public void test_useOutputInserted() {
+        String fieldName = "useOutputInserted";
+        String messageKey = Driver.USEOUTPUTINSERTED;
+        String expectedValue = DefaultProperties.USEOUTPUTINSERTED;
+        assertDefaultPropertyByServerType(URL_SQLSERVER, messageKey, fieldName, expectedValue);
+        if (!isOnlySqlServerTests()) {
+            assertDefaultPropertyByServerType(URL_SYBASE, messageKey, fieldName, expectedValue);
+        }
+    }
+
+    /**
+     * Test the <code>describeParameters</code> property.
+     */
+    public void test_describeParameters() {
+        String fieldName = "describeParameters";
+        String messageKey = Driver.DESCRIBEPARAMS;
+        String expectedValue = DefaultProperties.DESCRIBE_PARAMETERS;
+        assertDefaultPropertyByServerType(URL_SQLSERVER, messageKey, fieldName, expectedValue);
+        if (!isOnlySqlServerTests()) {
+            assertDefaultPropertyByServerType(URL_SYBASE, messageKey, fieldName, expectedValue);
+        }
+    }
+
+    /**
+     * Test the <code>metadataCacheSize</code> property.
+     */
+    public void test_metadataCacheSize() {
+        String fieldName = "metadataCacheSize";
+        String messageKey = Driver.METADATACACHESIZE;
+        String expectedValue = DefaultProperties.METADATA_CACHE_SIZE;
+        assertDefaultPropertyByServerType(URL_SQLSERVER, messageKey, fieldName, expectedValue);
+        if (!isOnlySqlServerTests()) {
+            assertDefaultPropertyByServerType(URL_SYBASE, messageKey, fieldName, expectedValue);
+        }
+    }
+
+    /**
+     * Test the <code>metadataCacheTTL</code> property.
+     */
+    public void test_metadataCacheTTL() {
+        String fieldName = "metadataCacheTTL";
+        String messageKey = Driver.METADATACACHETTL;
+        String expectedValue = DefaultProperties.METADATA_CACHE_TTL;
+        assertDefaultPropertyByServerType(URL_SQLSERVER, messageKey, fieldName, expectedValue);
+        if (!isOnlySqlServerTests()) {
+            assertDefaultPropertyByServerType(URL_SYBASE, messageKey, fieldName, expectedValue);
+        }
+    }
+
+    /**
+     * Test the <code>loadBalance</code> property.
+     */
+    public void test_loadBalance() {
+        String fieldName = "loadBalance";
+        String messageKey = Driver.LOADBALANCE;
+        String expectedValue = DefaultProperties.LOAD_BALANCE;
+        assertDefaultPropertyByServerType(URL_SQLSERVER, messageKey, fieldName, expectedValue);
+        if (!isOnlySqlServerTests()) {
+            assertDefaultPropertyByServerType(URL_SYBASE, messageKey, fieldName, expectedValue);
+        }
+    }
+
+    /**
+     * Test the <code>readOnlyIntent</code> property.
+     */
+    public void test_readOnlyIntent() {
+        String fieldName = "readOnlyIntent";
+        String messageKey = Driver.READONLY;
+        String expectedValue = DefaultProperties.READ_ONLY;
+        assertDefaultPropertyByServerType(URL_SQLSERVER, messageKey, fieldName, expectedValue);
+        if (!isOnlySqlServerTests()) {
+            assertDefaultPropertyByServerType(URL_SYBASE, messageKey, fieldName, expectedValue);
+        }
+    }
+
+    /**
+     * Test the <code>replicas</code> property.
+     */
+    public void test_replicas() {
+        String fieldName = "replicas";
+        String messageKey = Driver.REPLICAS;
+        String expectedValue = DefaultProperties.REPLICAS;
+        assertDefaultPropertyByServerType(URL_SQLSERVER, messageKey, fieldName, expectedValue);
+        if (!isOnlySqlServerTests()) {
+            assertDefaultPropertyByServerType(URL_SYBASE, messageKey, fieldName, expectedValue);
+        }
+    }
+
+    /**
+     * Test the <code>validationInterval</code> property.
+     */
+    public void test_validationInterval() {
+        String fieldName = "validationInterval";
+        String messageKey = Driver.VALIDATIONINTERVAL;
+        String expectedValue = DefaultProperties.VALIDATION_INTERVAL;
+        assertDefaultPropertyByServerType(URL_SQLSERVER, messageKey, fieldName, expectedValue);
+        if (!isOnlySqlServerTests()) {
+            assertDefaultPropertyByServerType(URL_SYBASE, messageKey, fieldName, expectedValue);
+        }
+    }
+
     /**
      * Test the <code>wsid</code> property.
      */
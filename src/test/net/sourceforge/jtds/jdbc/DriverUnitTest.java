@@ -191,6 +191,7 @@ public class DriverUnitTest extends UnitTestBase {
             DefaultProperties.TDS_VERSION_50,
             DefaultProperties.TDS_VERSION_70,
             DefaultProperties.TDS_VERSION_80,
+            DefaultProperties.TDS_VERSION_90,
         };
 
         Map expectedChoicesMap = new HashMap();
@@ -203,6 +204,9 @@ public class DriverUnitTest extends UnitTestBase {
         expectedChoicesMap.put(Messages.get(Driver.CACHEMETA), expectedBooleanChoices);
         expectedChoicesMap.put(Messages.get(Driver.USECURSORS), expectedBooleanChoices);
         expectedChoicesMap.put(Messages.get(Driver.USELOBS), expectedBooleanChoices);
+        expectedChoicesMap.put(Messages.get(Driver.USEOUTPUTINSERTED), expectedBooleanChoices);
+        expectedChoicesMap.put(Messages.get(Driver.DESCRIBEPARAMS), expectedBooleanChoices);
+        expectedChoicesMap.put(Messages.get(Driver.READONLY), expectedBooleanChoices);
 
         final Map infoMap = new HashMap();
         loadDriverPropertyInfoMap(infoMap);
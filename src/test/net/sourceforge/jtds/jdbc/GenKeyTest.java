@@ -18,6 +18,7 @@
 package net.sourceforge.jtds.jdbc;
 
 import java.sql.*;
+import java.util.Properties;
 
 /**
  * Test case to illustrate JDBC 3 GetGeneratedKeys() function.
@@ -187,6 +188,72 @@ public class GenKeyTest extends TestBase {
         pstmt.close();
     }
 
+    /**
+     * Test that all generated keys of a batch are returned when keys are
+     * retrieved via an <code>OUTPUT INSERTED</code> clause.
+     */
+    public void testOutputInsertedBatch() throws Exception {
+        if (con.getMetaData().getDatabaseMajorVersion() < 10) {
+            // OUTPUT clause requires SQL Server 2005 or later, the multi row
+            // VALUES clause used below SQL Server 2008 or later
+            return;
+        }
+
+        Properties override = new Properties();
+        override.setProperty(Messages.get(Driver.USEOUTPUTINSERTED), "true");
+        Connection ocon = getConnection(override);
+
+        try {
+            Statement stmt = ocon.createStatement();
+            stmt.execute("CREATE TABLE #gkbatch (id INT IDENTITY PRIMARY KEY, data VARCHAR(50))");
+
+            // multi row insert via plain statement returns all keys
+            assertEquals(2, stmt.executeUpdate("INSERT INTO #gkbatch (data) VALUES ('a'), ('b')",
+                                               Statement.RETURN_GENERATED_KEYS));
+            ResultSet rs = stmt.getGeneratedKeys();
+            assertEquals("ID", rs.getMetaData().getColumnName(1));
+            assertTrue(rs.next());
+            assertEquals(1, rs.getInt(1));
+            assertTrue(rs.next());
+            assertEquals(2, rs.getInt(1));
+            assertFalse(rs.next());
+            rs.close();
+            stmt.close();
+
+            PreparedStatement pstmt = ocon.prepareStatement(
+                    "INSERT INTO #gkbatch (data) VALUES (?)", Statement.RETURN_GENERATED_KEYS);
+
+            for (int i = 0; i < 10; i++) {
+                pstmt.setString(1, "row" + i);
+                pstmt.addBatch();
+            }
+
+            int[] counts = pstmt.executeBatch();
+            assertEquals(10, counts.length);
+
+            rs = pstmt.getGeneratedKeys();
+            for (int i = 0; i < 10; i++) {
+                assertEquals(1, counts[i]);
+                assertTrue("missing key " + i, rs.next());
+                assertEquals(i + 3, rs.getInt(1));
+            }
+            assertFalse(rs.next());
+            rs.close();
+
+            // single execution still returns the key
+            pstmt.setString(1, "single");
+            assertEquals(1, pstmt.executeUpdate());
+            rs = pstmt.getGeneratedKeys();
+            assertTrue(rs.next());
+            assertEquals(13, rs.getInt(1));
+            assertFalse(rs.next());
+            rs.close();
+            pstmt.close();
+        } finally {
+            ocon.close();
+        }
+    }
+
     public static void main(String[] args) {
         junit.textui.TestRunner.run(GenKeyTest.class);
     }
@@ -0,0 +1,173 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+//
+package net.sourceforge.jtds.jdbc;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for the <code>InstancePortCache</code> class, using a local fake
+ * SQL Server Browser service.
+ */
+public class InstancePortCacheTest extends TestCase {
+
+    /** The fake SQL Server Browser service. */
+    private FakeBrowser browser;
+
+    public InstancePortCacheTest(String name) {
+        super(name);
+    }
+
+    protected void setUp() throws Exception {
+        browser = new FakeBrowser();
+        browser.start();
+    }
+
+    protected void tearDown() throws Exception {
+        browser.close();
+    }
+
+    /**
+     * Test that resolved ports are cached and that invalidated ports are
+     * resolved again.
+     */
+    public void testCacheAndInvalidate() throws Exception {
+        InstancePortCache cache = new InstancePortCache(InstancePortCache.DEFAULT_TTL);
+
+        assertEquals(1450, cache.getPort("localhost", browser.getPort(), "inst1"));
+        assertEquals(1, browser.getRequests());
+
+        // instance names are not case sensitive
+        assertEquals(1450, cache.getPort("LOCALHOST", browser.getPort(), "INST1"));
+        assertEquals(1, browser.getRequests());
+
+        browser.setPort(1451);
+        cache.invalidate("localhost", browser.getPort(), "inst1");
+        assertEquals(1451, cache.getPort("localhost", browser.getPort(), "inst1"));
+        assertEquals(2, browser.getRequests());
+    }
+
+    /**
+     * Test that unknown instances are not cached.
+     */
+    public void testUnknownInstance() throws Exception {
+        InstancePortCache cache = new InstancePortCache(InstancePortCache.DEFAULT_TTL);
+
+        assertEquals(-1, cache.getPort("localhost", browser.getPort(), "other"));
+        assertEquals(-1, cache.getPort("localhost", browser.getPort(), "other"));
+        assertEquals(2, browser.getRequests());
+    }
+
+    /**
+     * Test that an entry is refreshed in the background after half of its
+     * time to live and resolved synchronously after it has expired.
+     */
+    public void testRefresh() throws Exception {
+        InstancePortCache cache = new InstancePortCache(2000);
+
+        assertEquals(1450, cache.getPort("localhost", browser.getPort(), "inst1"));
+        browser.setPort(1451);
+        Thread.sleep(1100);
+
+        // still the cached port, the refresh runs in the background
+        assertEquals(1450, cache.getPort("localhost", browser.getPort(), "inst1"));
+
+        for (int i = 0; i < 50 && browser.getRequests() < 2; i++) {
+            Thread.sleep(20);
+        }
+
+        assertEquals(2, browser.getRequests());
+
+        for (int i = 0; i < 50 && cache.getPort("localhost", browser.getPort(), "inst1") != 1451; i++) {
+            Thread.sleep(20);
+        }
+
+        assertEquals(1451, cache.getPort("localhost", browser.getPort(), "inst1"));
+        assertEquals(2, browser.getRequests());
+
+        Thread.sleep(2100);
+        browser.setPort(1452);
+        assertEquals(1452, cache.getPort("localhost", browser.getPort(), "inst1"));
+        assertEquals(3, browser.getRequests());
+    }
+
+    /**
+     * A minimal SQL Server Browser answering each request with the instance
+     * list of a server running instance <code>INST1</code>.
+     */
+    private static class FakeBrowser extends Thread {
+
+        private final DatagramSocket socket;
+
+        private volatile int port = 1450;
+
+        private volatile int requests;
+
+        FakeBrowser() throws IOException {
+            super("FakeBrowser");
+            socket = new DatagramSocket(0, InetAddress.getByName("localhost"));
+            setDaemon(true);
+        }
+
+        int getPort() {
+            return socket.getLocalPort();
+        }
+
+        int getRequests() {
+            return requests;
+        }
+
+        void setPort(int port) {
+            this.port = port;
+        }
+
+        void close() {
+            socket.close();
+        }
+
+        public void run() {
+            byte[] buf = new byte[16];
+
+            try {
+                while (true) {
+                    DatagramPacket request = new DatagramPacket(buf, buf.length);
+                    socket.receive(request);
+                    requests++;
+
+                    String info = "ServerName;TEST;InstanceName;INST1;IsClustered;No;"
+                            + "Version;10.0.1600.22;tcp;" + port + ";;";
+                    byte[] data = info.getBytes("ASCII");
+                    byte[] response = new byte[data.length + 3];
+                    response[0] = 0x05;
+                    response[1] = (byte) data.length;
+                    response[2] = (byte) (data.length >> 8);
+                    System.arraycopy(data, 0, response, 3, data.length);
+
+                    socket.send(new DatagramPacket(response, response.length,
+                            request.getAddress(), request.getPort()));
+                }
+            } catch (Exception e) {
+                // socket closed
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+//
+package net.sourceforge.jtds.jdbc;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for <code>JtdsResultSet</code> returning rows cached in a
+ * <code>RowStore</code>, without a server connection.
+ */
+public class JtdsResultSetTest extends TestCase {
+
+    private JtdsStatement statement;
+
+    public JtdsResultSetTest(String name) {
+        super(name);
+    }
+
+    protected void setUp() throws SQLException {
+        JtdsConnection connection = (JtdsConnection) UnitTestBase.invokeConstructor(
+                JtdsConnection.class, new Class[] {}, new Object[] {});
+        UnitTestBase.invokeSetInstanceField(connection, "socket",
+                new SharedSocket(null, Driver.TDS90, Driver.SQLSERVER) {});
+        UnitTestBase.invokeSetInstanceField(connection, "serverType", new Integer(Driver.SQLSERVER));
+        UnitTestBase.invokeSetInstanceField(connection, "tdsVersion", new Integer(Driver.TDS90));
+        statement = new JtdsStatement(connection,
+                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+    }
+
+    private static ColInfo column(String name, int jdbcType) {
+        ColInfo ci = new ColInfo();
+        ci.name = name;
+        ci.realName = name;
+        ci.jdbcType = jdbcType;
+        return ci;
+    }
+
+    /**
+     * Test that walking the cached rows of a forward only result set decodes
+     * only the columns read, and that the rows stay in the store.
+     */
+    public void testForwardOnlyLazyDecode() throws SQLException {
+        ColInfo[] columns = {
+            column("id", Types.INTEGER), column("name", Types.VARCHAR),
+            column("amount", Types.DOUBLE)
+        };
+        RowStore store = new RowStore(Long.MAX_VALUE, null);
+
+        for (int i = 0; i < 10; i++) {
+            store.add(new Object[] {new Integer(i), "row " + i, new Double(i / 4d)});
+        }
+
+        JtdsResultSet rs = new JtdsResultSet(statement,
+                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY, columns);
+        rs.rowData = store;
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(rs.next());
+
+            Object[] row = rs.currentRow;
+            assertNull(row[0]);
+            assertNull(row[1]);
+            assertNull(row[2]);
+
+            assertEquals("row " + i, rs.getString(2));
+            assertNotNull(row[1]);
+            assertNull(row[0]);
+            assertNull(row[2]);
+
+            if (i % 2 == 0) {
+                assertEquals(i, rs.getInt(1));
+                assertNull(row[2]);
+            }
+        }
+
+        assertFalse(rs.next());
+        assertEquals(10, store.size());
+        assertNotNull(store.get(5)[0]);
+
+        rs.close();
+        assertEquals(0, store.size());
+    }
+}
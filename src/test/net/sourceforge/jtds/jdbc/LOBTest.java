@@ -3075,6 +3075,72 @@ public class LOBTest extends TestBase {
       stmt.close();
    }
 
+    /**
+     * Test that large values of forward only result sets are streamed from
+     * the server response and stored only if a later column is accessed.
+     */
+    public void testStreamedLobs() throws Exception {
+        byte[] data = new byte[100000];
+        new Random(1).nextBytes(data);
+        char[] text = new char[100000];
+        Arrays.fill(text, 'x');
+
+        Statement stmt = con.createStatement();
+        stmt.execute("create table #test (id int primary key, b image, t text, i int)");
+        PreparedStatement pstmt = con.prepareStatement("insert into #test values(?,?,?,?)");
+
+        for (int i = 1; i <= 3; i++) {
+            pstmt.setInt(1, i);
+            pstmt.setBytes(2, data);
+            pstmt.setCharacterStream(3, new CharArrayReader(text), text.length);
+            pstmt.setInt(4, i * 10);
+            assertEquals(1, pstmt.executeUpdate());
+        }
+        pstmt.close();
+
+        ResultSet rs = stmt.executeQuery("select * from #test order by id");
+
+        // read the values as streams
+        assertTrue(rs.next());
+        InputStream is = rs.getBinaryStream(2);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buf = new byte[1024];
+        for (int n; (n = is.read(buf)) >= 0; ) {
+            bytes.write(buf, 0, n);
+        }
+        assertTrue(compare(data, bytes.toByteArray()));
+        Reader rdr = rs.getCharacterStream(3);
+        StringBuffer chars = new StringBuffer();
+        for (int c; (c = rdr.read()) >= 0; ) {
+            chars.append((char) c);
+        }
+        assertTrue(compare(new String(text), chars.toString()));
+        assertEquals(10, rs.getInt(4));
+
+        try {
+            rs.getBytes(2);
+            fail("Expecting an exception, the value has been streamed");
+        } catch (SQLException e) {
+            assertEquals("24000", e.getSQLState());
+        }
+
+        // access a later column first, values are kept
+        assertTrue(rs.next());
+        assertEquals(20, rs.getInt(4));
+        assertTrue(compare(data, rs.getBytes(2)));
+        assertTrue(compare(new String(text), rs.getString(3)));
+
+        // a partially read stream is discarded with the row
+        assertTrue(rs.next());
+        is = rs.getBinaryStream(2);
+        assertEquals(1024, is.read(buf));
+        assertFalse(rs.next());
+        assertEquals(-1, is.read());
+
+        rs.close();
+        stmt.close();
+    }
+
     /**
      * Test for incorrect handling of zero length streams (bug [1096086] Zero
      * length streams generate null values).
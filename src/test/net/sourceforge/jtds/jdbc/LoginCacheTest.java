@@ -0,0 +1,63 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+//
+package net.sourceforge.jtds.jdbc;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for the <code>LoginCache</code> class.
+ */
+public class LoginCacheTest extends TestCase {
+
+    public LoginCacheTest(String name) {
+        super(name);
+    }
+
+    /**
+     * Test that the cached hashes produce the same challenge responses as
+     * hashing the password for every login.
+     */
+    public void testNtlmHashes() throws Exception {
+        LoginCache cache = new LoginCache();
+        byte[] nonce = NtlmAuthTest.hexToBytes("0123456789abcdef");
+        byte[] clientNonce = NtlmAuthTest.hexToBytes("ffffff0011223344");
+
+        byte[] hash = cache.getNtHash("DOMAIN", "user", "bark");
+        assertTrue(Arrays.equals(NtlmAuth.answerNtChallenge("bark", nonce),
+                NtlmAuth.answerNtChallenge(hash, nonce)));
+
+        hash = cache.getNtlmv2Hash("DOMAIN", "user", "SecREt01");
+        assertTrue(Arrays.equals(
+                NtlmAuthTest.hexToBytes("d6e6152ea25d03b7c6ba6629c2d6aaf0ffffff0011223344"),
+                NtlmAuth.answerLmv2Challenge(hash, nonce, clientNonce)));
+
+        // callers get copies they may overwrite
+        Arrays.fill(hash, (byte) 0);
+        assertTrue(Arrays.equals(NtlmAuth.ntv2Hash("DOMAIN", "user", "SecREt01"),
+                cache.getNtlmv2Hash("DOMAIN", "user", "SecREt01")));
+
+        // a changed password replaces the cached hashes
+        assertTrue(Arrays.equals(NtlmAuth.ntv2Hash("DOMAIN", "user", "other"),
+                cache.getNtlmv2Hash("DOMAIN", "user", "other")));
+
+        cache.clear();
+        assertTrue(Arrays.equals(NtlmAuth.ntHash("bark"),
+                cache.getNtHash("DOMAIN", "user", "bark")));
+    }}
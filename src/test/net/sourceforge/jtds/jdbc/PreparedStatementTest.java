@@ -1309,6 +1309,59 @@ public class PreparedStatementTest extends TestBase {
         }
     }
 
+    /**
+     * Test that parameters are typed as inferred by the server if the
+     * <code>describeParameters</code> property is set.
+     */
+    public void testDescribeParameters() throws Exception {
+        if (con.getMetaData().getDatabaseMajorVersion() < 11) {
+            // sp_describe_undeclared_parameters requires SQL Server 2012
+            return;
+        }
+
+        Properties override = new Properties();
+        override.setProperty("describeParameters", "true");
+        Connection con = getConnection(override);
+
+        try {
+            Statement stmt = con.createStatement();
+            stmt.execute("create table #describe (code varchar(20) primary key, amount decimal(10,2))");
+            stmt.execute("insert into #describe values ('abc', 1.5)");
+            stmt.close();
+
+            for (int i = 0; i < 2; i++) {
+                JtdsPreparedStatement pstmt = (JtdsPreparedStatement) con.prepareStatement(
+                        "select amount from #describe where code = ? and amount > ?");
+                pstmt.setString(1, "abc");
+                pstmt.setInt(2, 1);
+
+                ParamInfo pi = pstmt.getParameter(1);
+                assertFalse(pi.isUnicode);
+                assertEquals(20, pi.declaredLength);
+                pi = pstmt.getParameter(2);
+                assertEquals(Types.DECIMAL, pi.jdbcType);
+                assertEquals(2, pi.scale);
+
+                ResultSet rs = pstmt.executeQuery();
+                assertTrue(rs.next());
+                assertEquals(new BigDecimal("1.50"), rs.getBigDecimal(1));
+                assertFalse(rs.next());
+                rs.close();
+                assertEquals("varchar(20)", pstmt.getParameter(1).sqlType);
+
+                // values longer than the declared length are not truncated
+                pstmt.setString(1, "abcdefghijklmnopqrstuvwxyz");
+                rs = pstmt.executeQuery();
+                assertFalse(rs.next());
+                rs.close();
+                assertEquals("varchar(8000)", pstmt.getParameter(1).sqlType);
+                pstmt.close();
+            }
+        } finally {
+            con.close();
+        }
+    }
+
     public static void main(String[] args) {
         junit.textui.TestRunner.run(PreparedStatementTest.class);
     }
@@ -0,0 +1,228 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+//
+package net.sourceforge.jtds.jdbc;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for the <code>ReplicaBalancer</code> class, using local stand-in
+ * endpoints for the servers.
+ */
+public class ReplicaBalancerTest extends TestCase {
+
+    public ReplicaBalancerTest(String name) {
+        super(name);
+    }
+
+    /**
+     * Test parsing of the replica list.
+     */
+    public void testParse() throws Exception {
+        List replicas = ReplicaBalancer.parse("r1, r2:1444 ,r3*3, [::1]:1445*2", 1433);
+        assertEquals(4, replicas.size());
+        assertReplica((ReplicaBalancer.Replica) replicas.get(0), "r1", 1433, 1);
+        assertReplica((ReplicaBalancer.Replica) replicas.get(1), "r2", 1444, 1);
+        assertReplica((ReplicaBalancer.Replica) replicas.get(2), "r3", 1433, 3);
+        assertReplica((ReplicaBalancer.Replica) replicas.get(3), "::1", 1445, 2);
+
+        try {
+            ReplicaBalancer.parse("r1:port", 1433);
+            fail("Expecting an SQLException");
+        } catch (SQLException e) {
+            assertEquals("08001", e.getSQLState());
+        }
+    }
+
+    /**
+     * Test that the replica with the fewest outstanding requests per weight
+     * is tried first and that failed replicas are tried last.
+     */
+    public void testLeastOutstanding() throws Exception {
+        List replicas = ReplicaBalancer.parse("lo1:2001,lo2:2002*2,lo3:2003", 1433);
+        ReplicaBalancer.Replica lo1 = (ReplicaBalancer.Replica) replicas.get(0);
+        ReplicaBalancer.Replica lo2 = (ReplicaBalancer.Replica) replicas.get(1);
+        ReplicaBalancer.Replica lo3 = (ReplicaBalancer.Replica) replicas.get(2);
+
+        lo1.requestStarted();
+        lo2.requestStarted();
+        lo2.requestStarted();
+        lo3.requestStarted();
+        lo3.requestStarted();
+
+        List ordered = ReplicaBalancer.order(replicas, false, new Random());
+        assertSame(lo1, ordered.get(0));
+        assertSame(lo2, ordered.get(1));
+        assertSame(lo3, ordered.get(2));
+
+        lo1.failed();
+        ordered = ReplicaBalancer.order(replicas, false, new Random());
+        assertSame(lo2, ordered.get(0));
+        assertSame(lo1, ordered.get(2));
+
+        // responses update the latency average
+        lo2.requestCompleted(5000000);
+        lo2.requestCompleted(5000000);
+        assertEquals(0, lo2.getOutstandingRequests());
+        assertEquals(5000000, lo2.getLatency());
+    }
+
+    /**
+     * Test that weighted selection prefers replicas according to their
+     * weight and latency.
+     */
+    public void testWeighted() throws Exception {
+        List replicas = ReplicaBalancer.parse("w1:3001*3,w2:3002", 1433);
+        ReplicaBalancer.Replica w1 = (ReplicaBalancer.Replica) replicas.get(0);
+        Random random = new Random(42);
+        int first = 0;
+
+        for (int i = 0; i < 1000; i++) {
+            List ordered = ReplicaBalancer.order(replicas, true, random);
+            assertEquals(2, ordered.size());
+            if (ordered.get(0) == w1) {
+                first++;
+            }
+        }
+
+        // expected 750
+        assertTrue(first > 650 && first < 850);
+
+        // a slow replica is picked less often
+        w1.connected(99000000);
+        first = 0;
+
+        for (int i = 0; i < 1000; i++) {
+            if (ReplicaBalancer.order(replicas, true, random).get(0) == w1) {
+                first++;
+            }
+        }
+
+        assertTrue(first < 200);
+        w1.disconnected();
+    }
+
+    /**
+     * Test that a read-only connection tries all replicas and then the
+     * primary if the replicas are not reachable, while other connections
+     * only use the primary.
+     */
+    public void testFailover() throws Exception {
+        StandIn primary = new StandIn();
+        StandIn replica1 = new StandIn();
+        StandIn replica2 = new StandIn();
+
+        String url = "jdbc:jtds:sqlserver://127.0.0.1:" + primary.getPort() + "/test";
+        Properties props = new Properties();
+        props.setProperty("replicas", "127.0.0.1:" + replica1.getPort() + ",127.0.0.1:" + replica2.getPort());
+        props.setProperty("loginTimeout", "5");
+
+        try {
+            try {
+                new Driver().connect(url, props);
+                fail("Expecting an SQLException");
+            } catch (SQLException e) {
+                assertTrue(e.getSQLState().startsWith("08"));
+            }
+
+            assertEquals(1, primary.waitForAccepted(1));
+            assertEquals(0, replica1.getAccepted());
+            assertEquals(0, replica2.getAccepted());
+
+            props.setProperty("readOnly", "true");
+
+            try {
+                new Driver().connect(url, props);
+                fail("Expecting an SQLException");
+            } catch (SQLException e) {
+                assertTrue(e.getSQLState().startsWith("08"));
+            }
+
+            assertEquals(2, primary.waitForAccepted(2));
+            assertEquals(1, replica1.waitForAccepted(1));
+            assertEquals(1, replica2.waitForAccepted(1));
+        } finally {
+            primary.close();
+            replica1.close();
+            replica2.close();
+        }
+    }
+
+    private static void assertReplica(ReplicaBalancer.Replica replica, String host, int port, int weight) {
+        assertEquals(host, replica._Host);
+        assertEquals(port, replica._Port);
+        assertEquals(weight, replica._Weight);
+    }
+
+    /**
+     * A stand-in server endpoint accepting connections and closing them
+     * immediately, counting the connections accepted.
+     */
+    private static class StandIn extends Thread {
+
+        private final ServerSocket server;
+
+        private volatile int accepted;
+
+        StandIn() throws Exception {
+            super("StandIn");
+            server = new ServerSocket(0, 10, InetAddress.getByName("127.0.0.1"));
+            setDaemon(true);
+            start();
+        }
+
+        int getPort() {
+            return server.getLocalPort();
+        }
+
+        int getAccepted() {
+            return accepted;
+        }
+
+        int waitForAccepted(int count) throws InterruptedException {
+            for (int i = 0; i < 100 && accepted < count; i++) {
+                Thread.sleep(10);
+            }
+
+            return accepted;
+        }
+
+        void close() throws Exception {
+            server.close();
+        }
+
+        public void run() {
+            try {
+                while (true) {
+                    Socket socket = server.accept();
+                    accepted++;
+                    socket.close();
+                }
+            } catch (Exception e) {
+                // server socket closed
+            }
+        }
+    }
+}
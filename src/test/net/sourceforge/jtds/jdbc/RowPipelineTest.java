@@ -0,0 +1,453 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+//
+package net.sourceforge.jtds.jdbc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for the <code>RowPipeline</code> class, which must return the same
+ * rows as decoding the response sequentially, and for
+ * <code>TdsData.getScanSize</code>, which the pipeline relies on.
+ */
+public class RowPipelineTest extends TestCase {
+
+    private static final CharsetInfo CHARSET = CharsetInfo.getCharset("iso_1");
+
+    private static final int ROWS = 3000;
+
+    /**
+     * A socket returning a prepared response in packets.
+     */
+    private static class ResponseSocket extends SharedSocket {
+        final LinkedList packets = new LinkedList();
+
+        ResponseSocket(int tdsVersion, int serverType) {
+            super(null, tdsVersion, serverType);
+            setCharsetInfo(CHARSET);
+        }
+
+        void setResponse(byte[] data, int len) {
+            for (int off = 0; off < len; off += 4088) {
+                int n = Math.min(4088, len - off);
+                byte[] packet = new byte[n + TdsCore.PKT_HDR_LEN];
+                packet[0] = TdsCore.REPLY_PKT;
+                packet[1] = (byte) (off + n == len ? 1 : 0);
+                packet[2] = (byte) (packet.length >> 8);
+                packet[3] = (byte) packet.length;
+                System.arraycopy(data, off, packet, TdsCore.PKT_HDR_LEN, n);
+                packets.add(packet);
+            }
+        }
+
+        byte[] getNetPacket(VirtualSocket vsock, byte[] buffer) throws IOException {
+            if (packets.isEmpty()) {
+                throw new EOFException("end of response");
+            }
+
+            return (byte[]) packets.removeFirst();
+        }
+    }
+
+    private ResponseSocket socket;
+
+    public RowPipelineTest(String name) {
+        super(name);
+    }
+
+    protected void setUp() {
+        socket = new ResponseSocket(Driver.TDS90, Driver.SQLSERVER);
+    }
+
+    private static void write(ByteArrayOutputStream out, long value, int bytes) {
+        for (int i = 0; i < bytes; i++) {
+            out.write((int) (value >> 8 * i));
+        }
+    }
+
+    private static ColInfo column(int tdsType, int bufferSize) {
+        ColInfo ci = new ColInfo();
+        ci.tdsType = tdsType;
+        ci.bufferSize = bufferSize;
+        ci.charsetInfo = CHARSET;
+        ci.scale = 2;
+        return ci;
+    }
+
+    /**
+     * Columns int, intn, nvarchar, varchar, float, numeric, bitn,
+     * datetimn and varbinary.
+     */
+    private static ColInfo[] columns() {
+        return new ColInfo[] {
+            column(56, 4), column(38, 4), column(231, 100), column(167, 100),
+            column(62, 8), column(108, 17), column(104, 1), column(111, 8),
+            column(165, 50)
+        };
+    }
+
+    /**
+     * Creates row tokens for {@link #columns()}, followed by a DONE token.
+     *
+     * @param bad the index of a row with an invalid datetime value or -1
+     */
+    private static byte[] rows(int count, int bad) throws IOException {
+        Random random = new Random(7);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        for (int row = 0; row < count; row++) {
+            out.write(0xD1);
+            write(out, row, 4);
+
+            if (random.nextInt(5) == 0) {
+                out.write(0);
+            } else {
+                out.write(4);
+                write(out, random.nextInt(), 4);
+            }
+
+            if (random.nextInt(5) == 0) {
+                write(out, 0xFFFF, 2);
+            } else {
+                String s = "n\u20ac" + random.nextInt(100000);
+                write(out, s.length() * 2, 2);
+                for (int i = 0; i < s.length(); i++) {
+                    write(out, s.charAt(i), 2);
+                }
+            }
+
+            if (random.nextInt(5) == 0) {
+                write(out, 0xFFFF, 2);
+            } else {
+                byte[] b = ("v\u00e4" + random.nextInt()).getBytes("ISO-8859-1");
+                write(out, b.length, 2);
+                out.write(b);
+            }
+
+            write(out, Double.doubleToLongBits(random.nextDouble()), 8);
+
+            if (random.nextInt(5) == 0) {
+                out.write(0);
+            } else {
+                out.write(5);
+                out.write(random.nextInt(2));
+                write(out, random.nextInt(1 << 30), 4);
+            }
+
+            if (random.nextInt(5) == 0) {
+                out.write(0);
+            } else {
+                out.write(1);
+                out.write(random.nextInt(2));
+            }
+
+            if (row == bad) {
+                out.write(5);
+                write(out, 0, 5);
+            } else if (random.nextInt(5) == 0) {
+                out.write(0);
+            } else {
+                out.write(8);
+                write(out, random.nextInt(80000), 4);
+                write(out, random.nextInt(25920000), 4);
+            }
+
+            if (random.nextInt(5) == 0) {
+                write(out, 0xFFFF, 2);
+            } else {
+                byte[] b = new byte[random.nextInt(50)];
+                random.nextBytes(b);
+                write(out, b.length, 2);
+                out.write(b);
+            }
+        }
+
+        out.write(0xFD);
+        write(out, 0, 12);
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes the rows sequentially.
+     */
+    private List decode(byte[] data, ColInfo[] columns) throws Exception {
+        ResponseStream in = new ResponseStream(socket, data, data.length);
+        List rows = new ArrayList();
+
+        while (in.peek() == 0xD1) {
+            in.read();
+            Object[] row = new Object[columns.length];
+
+            for (int i = 0; i < row.length; i++) {
+                row[i] = TdsData.readData(null, in, columns[i]);
+            }
+
+            rows.add(row);
+        }
+
+        return rows;
+    }
+
+    private static void assertRow(String message, Object[] expected, Object[] actual) {
+        assertNotNull(message, actual);
+        assertEquals(message, expected.length, actual.length);
+
+        for (int i = 0; i < expected.length; i++) {
+            if (expected[i] instanceof byte[]) {
+                assertTrue(message, Arrays.equals((byte[]) expected[i], (byte[]) actual[i]));
+            } else if (expected[i] instanceof DateTime) {
+                assertEquals(message, ((DateTime) expected[i]).toTimestamp(), ((DateTime) actual[i]).toTimestamp());
+            } else {
+                assertEquals(message, expected[i], actual[i]);
+            }
+        }
+    }
+
+    private ResponseStream respond(byte[] data, int len) {
+        socket.setResponse(data, len);
+        return new ResponseStream(socket, socket.getRequestStream(512, 38).getVirtualSocket(), 4096);
+    }
+
+    /**
+     * Test that the rows are returned in server order, with the values
+     * decoded sequentially, and that the response is left at the token
+     * following the rows.
+     */
+    public void testRowOrder() throws Exception {
+        ColInfo[] columns = columns();
+        assertTrue(RowPipeline.isScannable(columns, Driver.TDS90));
+
+        byte[] data = rows(ROWS, -1);
+        List expected = decode(data, columns);
+        assertEquals(ROWS, expected.size());
+
+        ResponseStream in = respond(data, data.length);
+        RowPipeline pipeline = new RowPipeline(null, socket, in, columns);
+
+        for (int i = 0; i < ROWS; i++) {
+            assertRow("row " + i, (Object[]) expected.get(i), pipeline.next());
+        }
+
+        assertNull(pipeline.next());
+        assertFalse(pipeline.hasBufferedRows());
+        assertEquals(0xFD, in.peek());
+    }
+
+    /**
+     * Test that an invalid value decoded on a pool thread is thrown to the
+     * reader as is, after the rows of the blocks preceding it.
+     */
+    public void testDecodeError() throws Exception {
+        ColInfo[] columns = columns();
+        List expected = decode(rows(ROWS, -1), columns);
+        byte[] data = rows(ROWS, ROWS / 2);
+        RowPipeline pipeline = new RowPipeline(null, socket, respond(data, data.length), columns);
+
+        int i = 0;
+
+        try {
+            // the rows decoded along with the invalid one are lost
+            for (; i <= ROWS / 2; i++) {
+                assertRow("row " + i, (Object[]) expected.get(i), pipeline.next());
+            }
+            fail("expected ProtocolException");
+        } catch (ProtocolException e) {
+            assertTrue(e.getMessage().indexOf("DATETIME") >= 0);
+        }
+
+        assertTrue(i > 0 && i <= ROWS / 2);
+    }
+
+    /**
+     * Test that an I/O error reading the response is thrown to the reader.
+     */
+    public void testReadError() throws Exception {
+        byte[] data = rows(ROWS, -1);
+        // the response ends in the middle of a row
+        RowPipeline pipeline = new RowPipeline(null, socket, respond(data, data.length / 2), columns());
+
+        try {
+            while (pipeline.next() != null) {
+                // read all rows
+            }
+            fail("expected IOException");
+        } catch (IOException e) {
+            assertTrue(e instanceof EOFException);
+        }
+    }
+
+    /**
+     * Test that cancelling discards the buffered rows and leaves the response
+     * at the start of the first row not scanned.
+     */
+    public void testCancel() throws Exception {
+        ColInfo[] columns = columns();
+        byte[] data = rows(ROWS, -1);
+        ResponseStream in = respond(data, data.length);
+        RowPipeline pipeline = new RowPipeline(null, socket, in, columns);
+
+        Object[] first = pipeline.next();
+        assertEquals(new Integer(0), first[0]);
+        assertTrue(pipeline.hasBufferedRows());
+
+        pipeline.cancel();
+        assertFalse(pipeline.hasBufferedRows());
+
+        int skipped = 0;
+
+        while (in.peek() == 0xD1) {
+            in.read();
+            for (int i = 0; i < columns.length; i++) {
+                TdsData.skipData(null, in, columns[i]);
+            }
+            skipped++;
+        }
+
+        assertEquals(0xFD, in.peek());
+        assertTrue(skipped > 0 && skipped < ROWS);
+    }
+
+    /**
+     * Returns samples of a value of the given type, each followed by a byte
+     * 0x7F.
+     *
+     * @param size the scan size of the type
+     */
+    private static List samples(int tdsType, int size) throws IOException {
+        List samples = new ArrayList();
+        int[] lengths;
+
+        if (size > 0) {
+            lengths = new int[] {size};
+        } else if (size == -1) {
+            switch (tdsType) {
+                case 38:  // SYBINTN
+                case 68:  // SYBUINTN
+                    lengths = new int[] {0, 1, 2, 4, 8};
+                    break;
+                case 109: // SYBFLTN
+                case 110: // SYBMONEYN
+                case 111: // SYBDATETIMN
+                    lengths = new int[] {0, 4, 8};
+                    break;
+                case 104: // SYBBITN
+                    lengths = new int[] {0, 1};
+                    break;
+                case 123: // SYBDATEN
+                case 147: // SYBTIMEN
+                    lengths = new int[] {0, 4};
+                    break;
+                case 36:  // SYBUNIQUE
+                    lengths = new int[] {0, 16};
+                    break;
+                case 106: // SYBDECIMAL
+                case 108: // SYBNUMERIC
+                    lengths = new int[] {0, 2, 17};
+                    break;
+                default:  // strings and binaries, even for Unicode
+                    lengths = new int[] {0, 2, 6, 254};
+            }
+        } else if (size == -2) {
+            lengths = new int[] {-1, 0, 6};
+        } else {
+            // no null length, a value of length 0 is null
+            lengths = new int[] {0, 6};
+        }
+
+        for (int i = 0; i < lengths.length; i++) {
+            int len = lengths[i];
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+            if (size > 0) {
+                write(out, 0, len);
+            } else if (tdsType == 98) {
+                // SYBVARIANT containing an int
+                write(out, len, 4);
+                if (len > 0) {
+                    out.write(56);
+                    out.write(0);
+                    write(out, 42, 4);
+                }
+            } else {
+                write(out, len, -size);
+                for (int j = 0; j < len; j++) {
+                    out.write('a');
+                }
+            }
+
+            out.write(0x7F);
+            samples.add(out.toByteArray());
+        }
+
+        return samples;
+    }
+
+    /**
+     * Test that for each type <code>TdsData.getScanSize</code> claims to
+     * scan, <code>TdsData.readData</code> reads the value exactly as far as
+     * the scan size says.
+     */
+    public void testScanSize() throws Exception {
+        int[][] versions = {
+            {Driver.TDS50, Driver.SYBASE}, {Driver.TDS70, Driver.SQLSERVER},
+            {Driver.TDS80, Driver.SQLSERVER}, {Driver.TDS90, Driver.SQLSERVER}
+        };
+        int scanned = 0;
+
+        for (int v = 0; v < versions.length; v++) {
+            ResponseSocket socket = new ResponseSocket(versions[v][0], versions[v][1]);
+
+            for (int type = 0; type < 256; type++) {
+                ColInfo ci = column(type, 8);
+                int size = TdsData.getScanSize(ci, versions[v][0]);
+
+                if (size == 0) {
+                    continue;
+                }
+
+                assertTrue(size > 0 || size == -1 || size == -2 || size == -4);
+                List samples = samples(type, size);
+                scanned++;
+
+                for (int i = 0; i < samples.size(); i++) {
+                    byte[] sample = (byte[]) samples.get(i);
+                    ResponseStream in = new ResponseStream(socket, sample, sample.length);
+                    String value = "type 0x" + Integer.toHexString(type) + ", TDS " + versions[v][0]
+                            + ", sample " + i;
+
+                    TdsData.readData(null, in, ci);
+                    assertEquals(value, 0x7F, in.read());
+
+                    in = new ResponseStream(socket, sample, sample.length);
+                    TdsData.skipData(null, in, ci);
+                    assertEquals(value, 0x7F, in.read());
+                }
+            }
+        }
+
+        assertTrue(scanned > 4 * 30);
+    }
+}
@@ -0,0 +1,362 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+//
+package net.sourceforge.jtds.jdbc;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Date;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for the <code>RowStore</code> class, which must return the rows
+ * exactly as added, whether kept in memory or written to disk.
+ */
+public class RowStoreTest extends TestCase {
+
+    public RowStoreTest(String name) {
+        super(name);
+    }
+
+    /**
+     * Create a row containing values of all encoded types.
+     */
+    private static Object[] row(int i) {
+        Timestamp ts = new Timestamp(1234567890123L + i);
+        ts.setNanos(123456789);
+
+        return new Object[] {
+            null,
+            new Integer(-i),
+            new Long(Long.MIN_VALUE + i),
+            new Float(i / 3f),
+            new Double(-i / 7d),
+            Boolean.valueOf(i % 2 == 0),
+            "row " + i,
+            "\u20ac " + i,
+            new byte[] {(byte) i, 0, (byte) 0xFF},
+            new BigDecimal("-12345678901234567890.123").add(BigDecimal.valueOf(i)),
+            new DateTime(40000 + i, 300 * i),
+            ts,
+            new Date(86400000L * i),
+            new Time(1000L * i),
+            new UniqueIdentifier(new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, (byte) i}),
+            new StringBuffer("object " + i)
+        };
+    }
+
+    private static void assertRow(Object[] expected, Object[] actual) {
+        assertEquals(expected.length, actual.length);
+
+        for (int i = 0; i < expected.length; i++) {
+            if (expected[i] instanceof byte[]) {
+                assertTrue(Arrays.equals((byte[]) expected[i], (byte[]) actual[i]));
+            } else if (expected[i] instanceof DateTime) {
+                assertEquals(((DateTime) expected[i]).toTimestamp(), ((DateTime) actual[i]).toTimestamp());
+            } else if (expected[i] instanceof UniqueIdentifier
+                    || expected[i] instanceof StringBuffer) {
+                assertEquals(expected[i].toString(), actual[i].toString());
+            } else {
+                assertEquals(expected[i], actual[i]);
+            }
+        }
+    }
+
+    /**
+     * Test that rows kept in memory are returned as added.
+     */
+    public void testMemory() {
+        Object[][] rows = new Object[100][];
+        RowStore store = new RowStore(Long.MAX_VALUE, null);
+
+        for (int i = 0; i < rows.length; i++) {
+            store.add(rows[i] = row(i));
+        }
+
+        assertEquals(rows.length, store.size());
+        assertEquals(0, store.getFileLength());
+
+        for (int i = 0; i < rows.length; i++) {
+            assertRow(rows[i], store.get(i));
+        }
+    }
+
+    /**
+     * Test that rows written to disk are returned as added, including large
+     * rows, and that the file is deleted when the store is closed.
+     */
+    public void testDisk() {
+        File dir = new File(System.getProperty("java.io.tmpdir"), "jtds-rowstore-" + System.nanoTime());
+        assertTrue(dir.mkdir());
+        RowStore store = new RowStore(1000, dir);
+        Object[][] rows = new Object[200][];
+
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = row(i);
+
+            if (i % 50 == 1) {
+                // about 5 MB
+                rows[i][8] = new byte[5000000 + i];
+                Arrays.fill((byte[]) rows[i][8], (byte) i);
+            }
+
+            store.add(rows[i]);
+        }
+
+        assertTrue(store.getFileLength() > 16 << 20);
+
+        for (int i = rows.length - 1; i >= 0; i--) {
+            assertRow(rows[i], store.get(i));
+        }
+
+        assertEquals(1, dir.list().length);
+
+        store.close();
+        assertEquals(0, store.size());
+        assertEquals(0, store.getFileLength());
+        assertEquals(0, dir.list().length);
+        assertTrue(dir.delete());
+    }
+
+    /**
+     * Test replacing, inserting and removing rows and <code>null</code> rows.
+     */
+    public void testModify() {
+        RowStore store = new RowStore(200, new File(System.getProperty("java.io.tmpdir")));
+
+        for (int i = 0; i < 10; i++) {
+            store.add(row(i));
+        }
+
+        store.set(3, row(30));
+        store.set(4, null);
+        store.add(0, row(-1));
+        store.remove(6);
+        store.add(null);
+
+        assertEquals(11, store.size());
+        assertRow(row(-1), store.get(0));
+        assertRow(row(30), store.get(4));
+        assertNull(store.get(5));
+        assertRow(row(6), store.get(6));
+        assertRow(row(9), store.get(9));
+        assertNull(store.get(10));
+
+        try {
+            store.get(11);
+            fail("expected IndexOutOfBoundsException");
+        } catch (IndexOutOfBoundsException e) {
+            // expected
+        }
+
+        store.close();
+    }
+
+    /**
+     * Test that writing back rows repeatedly, as done when refreshing rows,
+     * does not grow the store, in memory or on disk.
+     */
+    public void testRewrite() {
+        RowStore store = new RowStore(1500, new File(System.getProperty("java.io.tmpdir")));
+
+        for (int i = 0; i < 20; i++) {
+            store.add(row(i));
+        }
+
+        long heap = store.getHeapLength();
+        long file = store.getFileLength();
+        assertTrue(file > 0);
+
+        for (int n = 0; n < 100; n++) {
+            for (int i = 0; i < 20; i++) {
+                Object[] row = store.getPending(i);
+                store.readPending(row);
+                store.set(i, row);
+            }
+        }
+
+        assertEquals(heap, store.getHeapLength());
+        assertEquals(file, store.getFileLength());
+
+        for (int i = 0; i < 20; i++) {
+            assertRow(row(i), store.get(i));
+        }
+
+        store.close();
+    }
+
+    /**
+     * Test that a <code>DateTime</code> value that has been read is written
+     * back unchanged.
+     */
+    public void testDateTimeWriteBack() {
+        RowStore store = new RowStore(Long.MAX_VALUE, null);
+        store.add(new Object[] {new DateTime(40000, 12345678)});
+
+        Object[] row = store.getPending(0);
+        store.readPending(row, 0);
+        Timestamp expected = ((DateTime) row[0]).toTimestamp();
+        store.set(0, row);
+
+        assertEquals(expected, ((DateTime) store.get(0)[0]).toTimestamp());
+        assertEquals(12345678, ((DateTime) store.get(0)[0]).getPackedTime());
+        store.close();
+    }
+
+    /**
+     * Test that the values of a pending row are decoded one by one, both for
+     * rows in memory and on disk, and that a pending row is completed before
+     * being written back.
+     */
+    public void testPending() {
+        RowStore store = new RowStore(2000, new File(System.getProperty("java.io.tmpdir")));
+
+        for (int i = 0; i < 50; i++) {
+            store.add(row(i));
+        }
+
+        assertTrue(store.getFileLength() > 0);
+
+        for (int i = 0; i < 50; i += 7) {
+            Object[] expected = row(i);
+            Object[] row = store.getPending(i);
+            assertEquals(expected.length, row.length);
+
+            for (int c = row.length - 1; c >= 0; c -= 2) {
+                assertNull(row[c]);
+                store.readPending(row, c);
+            }
+
+            assertEquals(expected[7], row[7]);
+            assertNull(row[6]);
+
+            // a full decode of another row must not affect the pending one
+            assertRow(row(49 - i), store.get(49 - i));
+
+            store.readPending(row);
+            assertRow(expected, row);
+        }
+
+        // write back a partially decoded row
+        Object[] row = store.getPending(40);
+        store.readPending(row, 2);
+        store.readPending(row, 3);
+        row[3] = new Float(1.5f);
+        store.set(40, row);
+
+        Object[] expected = row(40);
+        expected[3] = new Float(1.5f);
+        assertRow(expected, store.get(40));
+
+        // only the row last retrieved is pending
+        Object[] first = store.getPending(1);
+        store.getPending(2);
+        store.readPending(first, 1);
+        assertNull(first[1]);
+
+        store.close();
+    }
+
+    /**
+     * Compare the memory used by cached rows kept as objects and in a
+     * <code>RowStore</code>, for a typical mix of column types. The size of
+     * the objects is estimated from their layout rather than measured, so the
+     * result does not depend on the garbage collector.
+     */
+    public void testMemoryUsage() {
+        final int rows = 100000;
+        long objects = 0;
+        RowStore store = new RowStore(Long.MAX_VALUE, null);
+
+        for (int i = 0; i < rows; i++) {
+            Object[] row = typicalRow(i);
+            // the reference to the row, the row and its values
+            objects += 4 + align(16 + 4 * row.length);
+
+            for (int c = 0; c < row.length; c++) {
+                objects += objectSize(row[c]);
+            }
+
+            store.add(row);
+        }
+
+        assertEquals(rows, store.size());
+        assertEquals(0, store.getFileLength());
+
+        // the encoded rows plus offset and length of each row
+        long packed = store.getHeapLength() + 12L * rows;
+
+        assertTrue("packed rows should use at most half the memory ("
+                + packed + " of " + objects + " bytes)", packed * 2 < objects);
+
+        assertRow(typicalRow(rows / 2), store.get(rows / 2));
+        store.close();
+    }
+
+    /**
+     * Create a row of 10 columns with values as read from the server.
+     */
+    private static Object[] typicalRow(int i) {
+        return new Object[] {
+            new Integer(i),
+            new Integer(i % 100),
+            new Long(10000000000L + i),
+            "customer name " + i,
+            i % 3 == 0 ? null : "x" + i,
+            new BigDecimal(BigInteger.valueOf(123456L * i), 2),
+            new DateTime(40000 + i % 1000, 3000 * (i % 1000)),
+            new Double(i * 0.25),
+            Boolean.valueOf(i % 2 == 0),
+            new Integer(-i)
+        };
+    }
+
+    private static long align(long size) {
+        return size + 7 & ~7L;
+    }
+
+    /**
+     * Estimate the heap size of a value as read from the server, for a 64 bit
+     * VM with compressed references and compact strings.
+     */
+    private static long objectSize(Object value) {
+        if (value == null || value instanceof Boolean) {
+            // no object or a shared instance
+            return 0;
+        } else if (value instanceof Integer) {
+            return 16;
+        } else if (value instanceof Long || value instanceof Double) {
+            return 24;
+        } else if (value instanceof String) {
+            // the string and its byte array
+            return 24 + align(16 + ((String) value).length());
+        } else if (value instanceof BigDecimal) {
+            // a value small enough not to need a BigInteger
+            return 40;
+        } else if (value instanceof DateTime) {
+            return 56;
+        }
+
+        fail("no size estimate for " + value.getClass().getName());
+        return 0;
+    }
+}
@@ -0,0 +1,349 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+//
+package net.sourceforge.jtds.jdbc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for reading ahead the packets of a response with
+ * <code>SharedSocket</code>.
+ */
+public class SharedSocketTest extends TestCase {
+
+    /**
+     * The server side of the connection, writing response packets into a
+     * pipe read by the socket and recording the threads reading them.
+     */
+    private static class Server extends InputStream {
+        final PipedOutputStream out = new PipedOutputStream();
+        final PipedInputStream in;
+        Thread reader;
+        int bytesRead;
+        IOException error;
+        int errorAfter = -1;
+
+        Server() throws IOException {
+            in = new PipedInputStream(out, 65536);
+        }
+
+        void send(int count, boolean last) throws IOException {
+            send(0, count, last);
+        }
+
+        /**
+         * Sends packets numbered from <code>first</code> on.
+         */
+        void send(int first, int count, boolean last) throws IOException {
+            for (int i = first; i < first + count; i++) {
+                byte[] packet = new byte[TdsCore.PKT_HDR_LEN + 100];
+                packet[0] = TdsCore.REPLY_PKT;
+                packet[1] = (byte) (last && i == first + count - 1 ? 1 : 0);
+                packet[3] = (byte) packet.length;
+                packet[TdsCore.PKT_HDR_LEN] = (byte) i;
+                out.write(packet);
+            }
+
+            out.flush();
+        }
+
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            synchronized (this) {
+                if (errorAfter == 0) {
+                    throw error;
+                }
+                if (errorAfter > 0) {
+                    errorAfter -= Math.min(errorAfter, len);
+                }
+                reader = Thread.currentThread();
+            }
+
+            int n = in.read(b, off, len);
+
+            synchronized (this) {
+                bytesRead += Math.max(n, 0);
+            }
+
+            return n;
+        }
+    }
+
+    private Server server;
+    private SharedSocket socket;
+    private SharedSocket.VirtualSocket vsock;
+
+    public SharedSocketTest(String name) {
+        super(name);
+    }
+
+    protected void setUp() throws IOException {
+        server = new Server();
+        socket = new SharedSocket(null, Driver.TDS80, Driver.SQLSERVER) {};
+        socket.setIn(new DataInputStream(server));
+        socket.setOut(new DataOutputStream(new ByteArrayOutputStream()));
+        socket.setPrefetch(4);
+        vsock = socket.getRequestStream(512, 38).getVirtualSocket();
+    }
+
+    /**
+     * Sends a request, making <code>vsock</code> the owner of the response.
+     */
+    private void request() throws IOException {
+        request(vsock);
+    }
+
+    private void request(SharedSocket.VirtualSocket vsock) throws IOException {
+        byte[] packet = new byte[TdsCore.PKT_HDR_LEN];
+        packet[0] = TdsCore.QUERY_PKT;
+        packet[1] = 1;
+        packet[3] = (byte) packet.length;
+        socket.sendNetPacket(vsock, packet);
+    }
+
+    /**
+     * Reads the given number of packets of a response on its own thread. The
+     * result is the index of the last packet read or the error.
+     */
+    private static class Reader extends Thread {
+        final SharedSocket socket;
+        final SharedSocket.VirtualSocket vsock;
+        final int count;
+        volatile Object result;
+
+        Reader(SharedSocket socket, SharedSocket.VirtualSocket vsock, int count) {
+            this.socket = socket;
+            this.vsock = vsock;
+            this.count = count;
+            setDaemon(true);
+            start();
+        }
+
+        public void run() {
+            try {
+                byte[] buffer = null;
+
+                for (int i = 0; i < count; i++) {
+                    buffer = socket.getNetPacket(vsock, buffer);
+
+                    if (buffer[TdsCore.PKT_HDR_LEN] != i) {
+                        throw new IOException("packet " + buffer[TdsCore.PKT_HDR_LEN] + " instead of " + i);
+                    }
+                }
+
+                result = new Integer(count - 1);
+            } catch (Throwable e) {
+                result = e;
+            }
+        }
+    }
+
+    /**
+     * Test that the packets read ahead are returned in order and that the
+     * reading thread is reused for the next response.
+     */
+    public void testPacketOrder() throws IOException {
+        Thread[] readers = new Thread[2];
+
+        for (int n = 0; n < readers.length; n++) {
+            request();
+            server.send(20, true);
+
+            byte[] buffer = null;
+
+            for (int i = 0; i < 20; i++) {
+                buffer = socket.getNetPacket(vsock, buffer);
+                assertEquals(i, buffer[TdsCore.PKT_HDR_LEN]);
+                assertEquals(i == 19 ? 1 : 0, buffer[1]);
+
+                if (i == 1) {
+                    // the remaining packets are read by the prefetch thread
+                    readers[n] = server.reader;
+                }
+            }
+
+            assertNotSame(Thread.currentThread(), readers[n]);
+
+            try {
+                socket.getNetPacket(vsock, buffer);
+                fail("expected IOException reading past the response");
+            } catch (IOException e) {
+                // expected
+            }
+        }
+
+        assertSame(readers[0], readers[1]);
+    }
+
+    /**
+     * Test that closing the socket while packets are read ahead stops the
+     * prefetch instead of blocking the reader.
+     */
+    public void testCloseDuringReadAhead() throws Exception {
+        request();
+        // the response is incomplete, the prefetch thread blocks reading
+        server.send(3, false);
+
+        byte[] buffer = socket.getNetPacket(vsock, null);
+        assertEquals(0, buffer[TdsCore.PKT_HDR_LEN]);
+        buffer = socket.getNetPacket(vsock, buffer);
+        assertEquals(1, buffer[TdsCore.PKT_HDR_LEN]);
+
+        socket.close();
+        // the physical connection is closed along with the socket
+        server.out.close();
+
+        long start = System.currentTimeMillis();
+
+        try {
+            for (int i = 0; i < 10; i++) {
+                buffer = socket.getNetPacket(vsock, buffer);
+            }
+            fail("expected IOException after close");
+        } catch (IOException e) {
+            // expected
+        }
+
+        assertTrue(System.currentTimeMillis() - start < 5000);
+    }
+
+    /**
+     * Test that a stream waiting for a packet being read ahead does not block
+     * the other streams of the connection.
+     */
+    public void testWaitReleasesLock() throws Exception {
+        request();
+        // the third packet is not sent yet, the reader waits for it
+        server.send(2, false);
+
+        Reader reader = new Reader(socket, vsock, 3);
+        reader.join(200);
+        assertTrue(reader.isAlive());
+
+        final SharedSocket.VirtualSocket other = socket.getRequestStream(512, 38).getVirtualSocket();
+        Thread closer = new Thread() {
+            public void run() {
+                socket.closeStream(other);
+            }
+        };
+        closer.start();
+        closer.join(2000);
+        assertFalse("blocked by the waiting reader", closer.isAlive());
+
+        server.send(2, 1, true);
+        reader.join(2000);
+        assertEquals(new Integer(2), reader.result);
+    }
+
+    /**
+     * Test that the packets read ahead are handed to their stream if another
+     * stream sends a request while the first one waits for a packet.
+     */
+    public void testHandOver() throws Exception {
+        request();
+        server.send(2, false);
+
+        Reader reader = new Reader(socket, vsock, 6);
+        reader.join(200);
+        assertTrue(reader.isAlive());
+
+        // the other request waits for the rest of the response to be read
+        final SharedSocket.VirtualSocket other = socket.getRequestStream(512, 38).getVirtualSocket();
+        final Object[] sent = new Object[1];
+        Thread sender = new Thread() {
+            public void run() {
+                try {
+                    request(other);
+                    sent[0] = Boolean.TRUE;
+                } catch (IOException e) {
+                    sent[0] = e;
+                }
+            }
+        };
+        sender.start();
+
+        server.send(2, 4, true);
+
+        sender.join(2000);
+        assertEquals(Boolean.TRUE, sent[0]);
+        reader.join(2000);
+        assertEquals(new Integer(5), reader.result);
+    }
+
+    /**
+     * Test that reading ahead stops once the byte limit is reached.
+     */
+    public void testByteLimit() throws Exception {
+        int len = TdsCore.PKT_HDR_LEN + 100;
+        socket.setPrefetch(0);
+        socket.setPrefetchBytes(2 * len + 1);
+
+        request();
+        server.send(20, true);
+
+        byte[] buffer = socket.getNetPacket(vsock, null);
+        Thread.sleep(200);
+        // the packet read directly and 3 packets to exceed the limit
+        assertEquals(4 * len, server.bytesRead);
+
+        for (int i = 1; i < 20; i++) {
+            buffer = socket.getNetPacket(vsock, buffer);
+            assertEquals(i, buffer[TdsCore.PKT_HDR_LEN]);
+        }
+
+        assertEquals(20 * len, server.bytesRead);
+    }
+
+    /**
+     * Test that an I/O error reading ahead is thrown to the reader once the
+     * packets read before the error have been consumed.
+     */
+    public void testReadError() throws IOException {
+        server.error = new IOException("connection reset");
+        // fail after the first 5 packets (header and body read separately)
+        server.errorAfter = 5 * (TdsCore.PKT_HDR_LEN + 100);
+
+        request();
+        server.send(20, true);
+
+        byte[] buffer = null;
+
+        for (int i = 0; i < 5; i++) {
+            buffer = socket.getNetPacket(vsock, buffer);
+            assertEquals(i, buffer[TdsCore.PKT_HDR_LEN]);
+        }
+
+        try {
+            socket.getNetPacket(vsock, buffer);
+            fail("expected IOException");
+        } catch (IOException e) {
+            assertSame(server.error, e);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+//
+package net.sourceforge.jtds.jdbc;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for the <code>SocketConnector</code> class, using local listeners.
+ */
+public class SocketConnectorTest extends TestCase {
+
+    private InetAddress listening;
+    private InetAddress closed;
+    private ServerSocket server;
+
+    public SocketConnectorTest(String name) {
+        super(name);
+    }
+
+    protected void setUp() throws Exception {
+        listening = InetAddress.getByName("127.0.0.1");
+        closed = InetAddress.getByName("127.0.0.2");
+        server = new ServerSocket(0, 10, listening);
+
+        SocketConnector.record(listening, true);
+        SocketConnector.record(closed, true);
+    }
+
+    protected void tearDown() throws Exception {
+        server.close();
+    }
+
+    /**
+     * Test that the reachable address wins and that the failed address is
+     * tried last afterwards.
+     */
+    public void testFailover() throws Exception {
+        InetAddress[] addresses = new InetAddress[] {closed, listening};
+
+        Socket socket = SocketConnector.connect(addresses, server.getLocalPort(), null, 5000);
+
+        try {
+            assertEquals(listening, socket.getInetAddress());
+        } finally {
+            socket.close();
+        }
+
+        // the failure is recorded by the attempt's thread
+        for (int i = 0; i < 50 && SocketConnector.order(addresses)[0] != listening; i++) {
+            Thread.sleep(20);
+        }
+
+        InetAddress[] ordered = SocketConnector.order(addresses);
+        assertEquals(listening, ordered[0]);
+        assertEquals(closed, ordered[1]);
+        assertEquals(closed, addresses[0]);
+    }
+
+    /**
+     * Test that the resolver order is kept for addresses without failures
+     * and restored after a successful connect.
+     */
+    public void testOrder() {
+        InetAddress[] addresses = new InetAddress[] {closed, listening};
+
+        SocketConnector.record(closed, false);
+        assertEquals(listening, SocketConnector.order(addresses)[0]);
+
+        SocketConnector.record(closed, true);
+        assertEquals(closed, SocketConnector.order(addresses)[0]);
+    }
+
+    /**
+     * Test that an exception is thrown if no address can be connected to.
+     */
+    public void testAllFailed() throws Exception {
+        int port = server.getLocalPort();
+        server.close();
+
+        try {
+            SocketConnector.connect(new InetAddress[] {closed, listening}, port, null, 5000).close();
+            fail("Expecting an IOException");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
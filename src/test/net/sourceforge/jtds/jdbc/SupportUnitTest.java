@@ -17,6 +17,8 @@
 //
 package net.sourceforge.jtds.jdbc;
 
+import java.math.BigDecimal;
+
 import net.sourceforge.jtds.jdbc.Support;
 
 
@@ -84,4 +86,25 @@ public class SupportUnitTest extends UnitTestBase {
         assertTrue(Support.isWindowsOS());
     }
 
+
+    public void testBucketScale() {
+        assertEquals(0, Support.bucketScale(new BigDecimal("123"), 38));
+        assertEquals(2, Support.bucketScale(new BigDecimal("1.5"), 38));
+        assertEquals(2, Support.bucketScale(new BigDecimal("1.25"), 38));
+        assertEquals(4, Support.bucketScale(new BigDecimal("0.001"), 38));
+        assertEquals(10, Support.bucketScale(new BigDecimal("1.1234567"), 38));
+        assertEquals(12, Support.bucketScale(new BigDecimal("1.123456789012"), 38));
+        // the integer digits must still fit
+        assertEquals(1, Support.bucketScale(new BigDecimal("1234567890123456789012345678.5"), 28));
+        assertEquals(2, Support.bucketScale(new BigDecimal("12345678901234567890123456.5"), 28));
+    }
+
+
+    public void testBucketLength() {
+        assertEquals(512, Support.bucketLength(256, 16384));
+        assertEquals(1024, Support.bucketLength(513, 16384));
+        assertEquals(16384, Support.bucketLength(9000, 16384));
+        assertEquals(8192, Support.bucketLength(8192, 8192));
+    }
+
 }
@@ -21,6 +21,8 @@ package net.sourceforge.jtds.jdbc;
 import junit.framework.Test;
 import junit.framework.TestSuite;
 
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
 import java.io.UnsupportedEncodingException;
 import java.sql.CallableStatement;
 import java.sql.Connection;
@@ -30,6 +32,7 @@ import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Types;
+import java.util.Arrays;
 
 /**
  * Test case to illustrate use of TDS 9 support
@@ -517,6 +520,48 @@ public class Tds9Test extends TestBase
       }
    }
 
+   /**
+    * Test sending streams of unknown length, sent in chunks as (max) values.
+    */
+   public void testWriteStreamsOfUnknownLength() throws Exception
+   {
+      if( supportsTDS9() )
+      {
+         Statement stmt = con.createStatement();
+         stmt.execute( "CREATE TABLE #TEST (id int primary key, b varbinary(max), s nvarchar(max))" );
+         byte[] data = new byte[100000];
+         for( int i = 0; i < data.length; i++ )
+         {
+            data[i] = (byte) i;
+         }
+         StringBuffer buf = new StringBuffer( 50000 );
+         for( int i = 0; i < 50000; i++ )
+         {
+            buf.append( (char) ( 'A' + i % 26 ) );
+         }
+         PreparedStatement pstmt = con.prepareStatement( "INSERT INTO #TEST VALUES (?,?,?)" );
+         pstmt.setInt( 1, 1 );
+         pstmt.setBinaryStream( 2, new ByteArrayInputStream( data ) );
+         pstmt.setCharacterStream( 3, new StringReader( buf.toString() ) );
+         assertEquals( 1, pstmt.executeUpdate() );
+         pstmt.setInt( 1, 2 );
+         pstmt.setBinaryStream( 2, new ByteArrayInputStream( new byte[0] ) );
+         pstmt.setCharacterStream( 3, new StringReader( "" ) );
+         assertEquals( 1, pstmt.executeUpdate() );
+         pstmt.close();
+         ResultSet rs = stmt.executeQuery( "SELECT * FROM #TEST ORDER BY id ASC" );
+         assertTrue( rs.next() );
+         assertTrue( Arrays.equals( data, rs.getBytes( 2 ) ) );
+         assertEquals( buf.toString(), rs.getString( 3 ) );
+         assertTrue( rs.next() );
+         assertEquals( 0, rs.getBytes( 2 ).length );
+         assertEquals( "", rs.getString( 3 ) );
+         assertFalse( rs.next() );
+         rs.close();
+         stmt.close();
+      }
+   }
+
    public void testWriteXML() throws Exception
    {
       if( supportsTDS9() )
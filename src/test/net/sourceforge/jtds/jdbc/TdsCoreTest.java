@@ -0,0 +1,312 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+//
+package net.sourceforge.jtds.jdbc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.LinkedList;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for <code>TdsCore</code> processing a TDS 7.2 response read from a
+ * fake socket, in particular for skipping unread rows.
+ */
+public class TdsCoreTest extends TestCase {
+
+    private static final byte[] COLLATION = {9, 4, 0, 0x10, 0x34};
+
+    private static final int DONE_MORE   = 0x01;
+    private static final int DONE_COUNT  = 0x10;
+    private static final int DONE_CANCEL = 0x20;
+
+    /**
+     * A socket returning a prepared response and recording cancel requests.
+     */
+    private static class ResponseSocket extends SharedSocket {
+        final LinkedList packets = new LinkedList();
+        int cancels;
+
+        ResponseSocket() {
+            super(null, Driver.TDS90, Driver.SQLSERVER);
+        }
+
+        void setResponse(byte[] data) {
+            packets.clear();
+
+            for (int off = 0; off < data.length; off += 500) {
+                int len = Math.min(500, data.length - off);
+                byte[] packet = new byte[len + TdsCore.PKT_HDR_LEN];
+                packet[0] = TdsCore.REPLY_PKT;
+                packet[1] = (byte) (off + len == data.length ? 1 : 0);
+                packet[2] = (byte) (packet.length >> 8);
+                packet[3] = (byte) packet.length;
+                System.arraycopy(data, off, packet, TdsCore.PKT_HDR_LEN, len);
+                packets.add(packet);
+            }
+        }
+
+        byte[] getNetPacket(VirtualSocket vsock, byte[] buffer) throws IOException {
+            if (packets.isEmpty()) {
+                throw new EOFException("end of response");
+            }
+
+            return (byte[]) packets.removeFirst();
+        }
+
+        boolean cancel(VirtualSocket vsock) {
+            cancels++;
+            return true;
+        }
+    }
+
+    /**
+     * Builds a TDS 7.2 response.
+     */
+    private static class Response {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        Response write(long value, int bytes) {
+            for (int i = 0; i < bytes; i++) {
+                out.write((int) (value >> 8 * i));
+            }
+            return this;
+        }
+
+        Response write(byte[] b) {
+            out.write(b, 0, b.length);
+            return this;
+        }
+
+        Response name(String name) {
+            write(name.length(), 1);
+            for (int i = 0; i < name.length(); i++) {
+                write(name.charAt(i), 2);
+            }
+            return this;
+        }
+
+        /**
+         * Columns int, varchar(100), image and varbinary(max).
+         */
+        Response metaData() {
+            write(0x81, 1).write(4, 2);
+            write(0, 4).write(1, 2).write(0x38, 1).name("i");
+            write(0, 4).write(1, 2).write(0xA7, 1).write(100, 2).write(COLLATION).name("v");
+            write(0, 4).write(1, 2).write(0x22, 1).write(Integer.MAX_VALUE, 4)
+                    .write(1, 1).write(1, 2).write('t', 2).name("img");
+            write(0, 4).write(1, 2).write(0xA5, 1).write(0xFFFF, 2).name("max");
+            return this;
+        }
+
+        Response row(int i) {
+            write(0xD1, 1).write(i, 4);
+
+            if (i % 3 == 0) {
+                write(0xFFFF, 2);
+            } else {
+                write(3, 2).write(new byte[] {'a', 'b', 'c'});
+            }
+
+            if (i % 4 == 0) {
+                write(0, 1);
+            } else {
+                write(16, 1).write(new byte[16 + 8]).write(1000 * i, 4).write(new byte[1000 * i]);
+            }
+
+            if (i % 5 == 0) {
+                write(-1, 8);
+            } else {
+                // unknown length, sent in two chunks
+                write(-2, 8).write(3000, 4).write(new byte[3000]).write(i, 4).write(new byte[i]).write(0, 4);
+            }
+
+            return this;
+        }
+
+        Response done(int token, int status, int count) {
+            return write(token, 1).write(status, 2).write(0xC1, 2).write(count, 8);
+        }
+
+        byte[] toByteArray() {
+            return out.toByteArray();
+        }
+    }
+
+    private ResponseSocket socket;
+    private JtdsConnection connection;
+    private SQLDiagnostic messages;
+    private TdsCore tds;
+
+    public TdsCoreTest(String name) {
+        super(name);
+    }
+
+    protected void setUp() throws SQLException {
+        socket = new ResponseSocket();
+        connection = (JtdsConnection) UnitTestBase.invokeConstructor(
+                JtdsConnection.class, new Class[] {}, new Object[] {});
+        UnitTestBase.invokeSetInstanceField(connection, "socket", socket);
+        UnitTestBase.invokeSetInstanceField(connection, "serverType", new Integer(Driver.SQLSERVER));
+        UnitTestBase.invokeSetInstanceField(connection, "tdsVersion", new Integer(Driver.TDS90));
+        UnitTestBase.invokeSetInstanceField(connection, "collation", COLLATION);
+        UnitTestBase.invokeSetInstanceField(connection, "charsetInfo", CharsetInfo.getCharset(COLLATION));
+        UnitTestBase.invokeSetInstanceField(connection, "lobBuffer", new Long(32768));
+        UnitTestBase.invokeSetInstanceField(connection, "lobPageSize", new Integer(1024));
+        messages = new SQLDiagnostic(Driver.SQLSERVER);
+        tds = new TdsCore(connection, messages);
+    }
+
+    /**
+     * Starts processing the given response as if a request had been sent.
+     */
+    private void respond(Response response, ParamInfo[] parameters) {
+        ParamInfo returnParam = parameters != null && parameters[0].isRetVal ? parameters[0] : null;
+        socket.setResponse(response.toByteArray());
+        UnitTestBase.invokeSetInstanceField(tds, "parameters", parameters);
+        UnitTestBase.invokeSetInstanceField(tds, "returnParam", returnParam);
+        UnitTestBase.invokeSetInstanceField(tds, "nextParam", new Integer(returnParam != null ? 0 : -1));
+        UnitTestBase.invokeSetInstanceField(tds, "endOfResponse", Boolean.FALSE);
+        UnitTestBase.invokeSetInstanceField(tds, "endOfResults", Boolean.TRUE);
+    }
+
+    /**
+     * Test that skipping rows with variable length, text/image and PLP
+     * columns leaves the response positioned at the next token, so that the
+     * rows of a following result are read correctly.
+     */
+    public void testSkipRows() throws SQLException {
+        Response response = new Response().metaData();
+
+        for (int i = 0; i < 20; i++) {
+            response.row(i);
+        }
+
+        response.done(0xFD, DONE_MORE | DONE_COUNT, 20).metaData();
+
+        for (int i = 20; i < 24; i++) {
+            response.row(i);
+        }
+
+        respond(response.done(0xFD, DONE_COUNT, 4), null);
+
+        assertTrue(tds.getMoreResults());
+        assertTrue(tds.getNextRow());
+        tds.skipRows();
+
+        assertTrue(tds.getMoreResults());
+
+        for (int i = 20; i < 24; i++) {
+            assertTrue(tds.getNextRow());
+            assertEquals(new Integer(i), tds.getRowData()[0]);
+            assertEquals(i % 3 == 0 ? null : "abc", tds.getRowData()[1]);
+        }
+
+        assertFalse(tds.getNextRow());
+        assertFalse(tds.getMoreResults());
+        assertTrue(tds.isEndOfResponse());
+        assertEquals(0, socket.packets.size());
+        messages.checkErrors();
+    }
+
+    /**
+     * Test that output parameters and the return status following skipped
+     * rows are processed.
+     */
+    public void testSkipKeepsOutputParams() throws SQLException {
+        Response response = new Response().metaData();
+
+        for (int i = 0; i < 10; i++) {
+            response.row(i);
+        }
+
+        response.done(0xFF, DONE_MORE | DONE_COUNT, 10);
+        // return status 7
+        response.write(0x79, 1).write(7, 4);
+        // output parameter @p of type int with value 42
+        response.write(0xAC, 1).write(0, 2).name("@p").write(1, 1).write(0, 6)
+                .write(0x26, 1).write(4, 1).write(4, 1).write(42, 4);
+        response.done(0xFE, 0, 0);
+
+        ParamInfo out = new ParamInfo(Types.INTEGER, null, ParamInfo.OUTPUT);
+        ParamInfo ret = new ParamInfo(Types.INTEGER, null, ParamInfo.RETVAL);
+        respond(response, new ParamInfo[] {ret, out});
+
+        tds.clearResponseQueue(true);
+
+        assertTrue(tds.isEndOfResponse());
+        assertEquals(0, socket.packets.size());
+        assertEquals(0, socket.cancels);
+        assertEquals(new Integer(7), tds.getReturnStatus());
+        assertEquals(new Integer(7), ret.getOutValue());
+        assertEquals(new Integer(42), out.getOutValue());
+        messages.checkErrors();
+    }
+
+    /**
+     * Test that a cancel is sent once <code>discardLimit</code> rows have
+     * been skipped and that it is not reported as an error.
+     */
+    public void testDiscardLimitCancel() throws SQLException {
+        UnitTestBase.invokeSetInstanceField(connection, "discardLimit", new Integer(5));
+        Response response = new Response().metaData();
+
+        for (int i = 0; i < 8; i++) {
+            response.row(i);
+        }
+
+        // the server acknowledges the cancel
+        respond(response.done(0xFD, DONE_CANCEL, 0), null);
+
+        tds.clearResponseQueue(true);
+
+        assertEquals(1, socket.cancels);
+        assertTrue(tds.isEndOfResponse());
+        assertEquals(0, socket.packets.size());
+        messages.checkErrors();
+        assertNull(messages.getWarnings());
+    }
+
+    /**
+     * Test that the response is only skipped, not cancelled, if the results
+     * are still of interest or no limit is set.
+     */
+    public void testDiscardWithoutCancel() throws SQLException {
+        UnitTestBase.invokeSetInstanceField(connection, "discardLimit", new Integer(5));
+        Response response = new Response().metaData();
+
+        for (int i = 0; i < 8; i++) {
+            response.row(i);
+        }
+
+        respond(response.done(0xFD, DONE_COUNT, 8), null);
+        tds.clearResponseQueue(false);
+        assertEquals(0, socket.cancels);
+        assertTrue(tds.isEndOfResponse());
+
+        UnitTestBase.invokeSetInstanceField(connection, "discardLimit", new Integer(0));
+        respond(response, null);
+        tds.clearResponseQueue(true);
+        assertEquals(0, socket.cancels);
+        assertTrue(tds.isEndOfResponse());
+        messages.checkErrors();
+    }
+}
@@ -0,0 +1,301 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+//
+package net.sourceforge.jtds.jdbc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.Types;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for <code>TdsData.writeParam</code>, which must write the same
+ * parameter bytes whether the TYPE_INFO is serialized for the first time or
+ * reused from the parameter descriptor.
+ */
+public class TdsDataTest extends TestCase {
+
+    private static final int SYBINTN       = 38;
+    private static final int SYBBITN       = 104;
+    private static final int SYBDECIMAL    = 106;
+    private static final int SYBNUMERIC    = 108;
+    private static final int SYBFLTN       = 109;
+    private static final int SYBDATETIMN   = 111;
+    private static final int XSYBVARBINARY = 165;
+    private static final int XSYBVARCHAR   = 167;
+    private static final int XSYBNVARCHAR  = 231;
+
+    private static final byte[] COLLATION = {9, 4, 0, 0x10, 0x34};
+
+    private static final CharsetInfo CHARSET = CharsetInfo.getCharset("iso_1");
+
+    /**
+     * A socket capturing the data of the packets sent.
+     */
+    private static class CaptureSocket extends SharedSocket {
+        final ByteArrayOutputStream sent = new ByteArrayOutputStream();
+
+        CaptureSocket(int tdsVersion) {
+            super(null, tdsVersion, Driver.SQLSERVER);
+        }
+
+        byte[] sendNetPacket(VirtualSocket vsock, byte[] buffer) {
+            int len = (buffer[2] & 0xFF) << 8 | buffer[3] & 0xFF;
+            sent.write(buffer, TdsCore.PKT_HDR_LEN, len - TdsCore.PKT_HDR_LEN);
+            return buffer;
+        }
+    }
+
+    /**
+     * Writes the expected bytes of a parameter.
+     */
+    private interface Writer {
+        void write(RequestStream out) throws IOException;
+    }
+
+    public TdsDataTest(String name) {
+        super(name);
+    }
+
+    private static ParamInfo param(int tdsType, String sqlType, int jdbcType, Object value) {
+        ParamInfo pi = new ParamInfo(jdbcType, value, 0);
+        pi.tdsType = tdsType;
+        pi.sqlType = sqlType;
+        pi.scale = -1;
+        return pi;
+    }
+
+    private static byte[] write(int tdsVersion, Writer writer) throws IOException {
+        CaptureSocket socket = new CaptureSocket(tdsVersion);
+        RequestStream out = new RequestStream(socket, null, 512, 38);
+        out.setPacketType(TdsCore.RPC_PKT);
+        writer.write(out);
+        out.flush();
+        return socket.sent.toByteArray();
+    }
+
+    private static byte[] writeParam(int tdsVersion, final ParamInfo pi) throws IOException {
+        return write(tdsVersion, new Writer() {
+            public void write(RequestStream out) throws IOException {
+                TdsData.writeParam(out, CHARSET, COLLATION, pi);
+            }
+        });
+    }
+
+    /**
+     * Writes the parameter field by field, the way the TYPE_INFO was written
+     * before it was cached.
+     */
+    private static byte[] writeExpected(final int tdsVersion, final ParamInfo pi) throws IOException {
+        return write(tdsVersion, new Writer() {
+            public void write(RequestStream out) throws IOException {
+                boolean isTds8 = tdsVersion >= Driver.TDS80;
+                out.write((byte) pi.tdsType);
+
+                switch (pi.tdsType) {
+                    case XSYBVARCHAR:
+                    case XSYBNVARCHAR:
+                    case XSYBVARBINARY:
+                        out.write((short) 8000);
+
+                        if (isTds8 && pi.tdsType != XSYBVARBINARY) {
+                            out.write(COLLATION);
+                        }
+
+                        if (pi.value == null) {
+                            out.write((short) 0xFFFF);
+                        } else if (pi.tdsType == XSYBNVARCHAR) {
+                            out.write((short) (((String) pi.value).length() * 2));
+                            out.write((String) pi.value);
+                        } else {
+                            byte[] buf = pi.value instanceof byte[]
+                                    ? (byte[]) pi.value
+                                    : ((String) pi.value).getBytes("ISO-8859-1");
+                            out.write((short) buf.length);
+                            out.write(buf);
+                        }
+                        break;
+
+                    case SYBINTN:
+                        int size = "bigint".equals(pi.sqlType) ? 8 : 4;
+                        out.write((byte) size);
+
+                        if (pi.value == null) {
+                            out.write((byte) 0);
+                        } else if (size == 8) {
+                            out.write((byte) 8);
+                            out.write(((Number) pi.value).longValue());
+                        } else {
+                            out.write((byte) 4);
+                            out.write(((Number) pi.value).intValue());
+                        }
+                        break;
+
+                    case SYBFLTN:
+                        if (pi.value instanceof Float) {
+                            out.write((byte) 4);
+                            out.write((byte) 4);
+                            out.write(((Number) pi.value).floatValue());
+                        } else {
+                            out.write((byte) 8);
+
+                            if (pi.value == null) {
+                                out.write((byte) 0);
+                            } else {
+                                out.write((byte) 8);
+                                out.write(((Number) pi.value).doubleValue());
+                            }
+                        }
+                        break;
+
+                    case SYBDATETIMN:
+                        out.write((byte) 8);
+
+                        if (pi.value == null) {
+                            out.write((byte) 0);
+                        } else {
+                            out.write((byte) 8);
+                            out.write(((DateTime) pi.value).getDate());
+                            out.write(((DateTime) pi.value).getTime());
+                        }
+                        break;
+
+                    case SYBBITN:
+                        out.write((byte) 1);
+
+                        if (pi.value == null) {
+                            out.write((byte) 0);
+                        } else {
+                            out.write((byte) 1);
+                            out.write((byte) (((Boolean) pi.value).booleanValue() ? 1 : 0));
+                        }
+                        break;
+
+                    default: // SYBNUMERIC, SYBDECIMAL
+                        BigDecimal value = null;
+                        int scale;
+
+                        if (pi.value == null) {
+                            scale = pi.jdbcType == Types.BIGINT ? 0
+                                    : pi.scale >= 0 && pi.scale <= 38 ? pi.scale : TdsData.DEFAULT_SCALE;
+                        } else if (pi.value instanceof Long) {
+                            value = new BigDecimal(pi.value.toString());
+                            scale = 0;
+                        } else {
+                            value = (BigDecimal) pi.value;
+                            scale = value.scale();
+                        }
+
+                        out.write(out.getMaxDecimalBytes());
+                        out.write((byte) 38);
+                        out.write((byte) scale);
+                        out.write(value);
+                }
+            }
+        });
+    }
+
+    /**
+     * Asserts that a parameter is written as expected both with and without
+     * a cached TYPE_INFO.
+     */
+    private static void assertParam(String message, ParamInfo pi) throws IOException {
+        for (int tdsVersion = Driver.TDS70; tdsVersion <= Driver.TDS80; tdsVersion += Driver.TDS80 - Driver.TDS70) {
+            pi.typeInfo = null;
+            pi.collation = null;
+            byte[] expected = writeExpected(tdsVersion, pi);
+
+            assertTrue(message + ", not cached",
+                    Arrays.equals(expected, writeParam(tdsVersion, pi)));
+            assertNotNull(message, pi.typeInfo);
+            assertTrue(message + ", cached",
+                    Arrays.equals(expected, writeParam(tdsVersion, pi)));
+        }
+    }
+
+    /**
+     * Test that null and non-null values of every type with a cached
+     * TYPE_INFO are written byte for byte as before.
+     */
+    public void testCachedTypeInfo() throws IOException {
+        Object[][] cases = {
+            {new Integer(XSYBVARCHAR),   "varchar(8000)",  new Integer(Types.VARCHAR),   "abc \u00e4"},
+            {new Integer(XSYBVARCHAR),   "varchar(8000)",  new Integer(Types.VARCHAR),   ""},
+            {new Integer(XSYBNVARCHAR),  "nvarchar(4000)", new Integer(Types.VARCHAR),   "abc \u20ac"},
+            {new Integer(XSYBVARBINARY), "varbinary(8000)",new Integer(Types.VARBINARY), new byte[] {1, 2, (byte) 0xFF}},
+            {new Integer(SYBINTN),       "int",            new Integer(Types.INTEGER),   new Integer(-123456)},
+            {new Integer(SYBINTN),       "bigint",         new Integer(Types.BIGINT),    new Long(Long.MIN_VALUE + 1)},
+            {new Integer(SYBFLTN),       "real",           new Integer(Types.REAL),      new Float(1.5f)},
+            {new Integer(SYBFLTN),       "float",          new Integer(Types.DOUBLE),    new Double(-2.25)},
+            {new Integer(SYBDATETIMN),   "datetime",       new Integer(Types.TIMESTAMP), new DateTime(40000, 12345678)},
+            {new Integer(SYBBITN),       "bit",            new Integer(Types.BIT),       Boolean.TRUE},
+            {new Integer(SYBBITN),       "bit",            new Integer(Types.BIT),       Boolean.FALSE},
+            {new Integer(SYBDECIMAL),    "decimal(38,3)",  new Integer(Types.DECIMAL),   new BigDecimal("-12345678901234567890.123")},
+            {new Integer(SYBNUMERIC),    "numeric(38,0)",  new Integer(Types.BIGINT),    new Long(42)},
+        };
+
+        for (int i = 0; i < cases.length; i++) {
+            int tdsType = ((Integer) cases[i][0]).intValue();
+            String sqlType = (String) cases[i][1];
+            int jdbcType = ((Integer) cases[i][2]).intValue();
+
+            assertParam(sqlType + " value", param(tdsType, sqlType, jdbcType, cases[i][3]));
+            assertParam(sqlType + " null", param(tdsType, sqlType, jdbcType, null));
+        }
+
+        ParamInfo pi = param(SYBDECIMAL, "decimal(38,5)", Types.DECIMAL, null);
+        pi.scale = 5;
+        assertParam("decimal null with scale", pi);
+    }
+
+    /**
+     * Test that a cached TYPE_INFO is replaced if a new value of the same
+     * parameter needs a different one.
+     */
+    public void testChangedTypeInfo() throws IOException {
+        ParamInfo pi = param(SYBFLTN, "real", Types.REAL, new Float(1.5f));
+        assertParam("real", pi);
+
+        pi.value = new Double(1.5);
+        byte[] expected = writeExpected(Driver.TDS80, pi);
+        assertTrue(Arrays.equals(expected, writeParam(Driver.TDS80, pi)));
+
+        pi = param(SYBDECIMAL, "decimal(38,1)", Types.DECIMAL, new BigDecimal("1.5"));
+        writeParam(Driver.TDS80, pi);
+
+        pi.value = new BigDecimal("1.555");
+        expected = writeExpected(Driver.TDS80, pi);
+        assertTrue(Arrays.equals(expected, writeParam(Driver.TDS80, pi)));
+    }
+
+    /**
+     * Test that varchar values too long for a varchar parameter are still
+     * sent as text without caching a TYPE_INFO.
+     */
+    public void testLongVarchar() throws IOException {
+        char[] chars = new char[8001];
+        Arrays.fill(chars, 'x');
+        ParamInfo pi = param(XSYBVARCHAR, "varchar(8000)", Types.VARCHAR, new String(chars));
+
+        byte[] sent = writeParam(Driver.TDS80, pi);
+        assertNull(pi.typeInfo);
+        assertEquals(35, sent[0]); // SYBTEXT
+    }
+}
@@ -82,22 +82,29 @@ public class JtdsObjectFactoryTest extends UnitTestBase
       assertFalse ( ds.getCacheMetaData() );
       assertNull  ( ds.getCharset() );
       assertNull  ( ds.getDatabaseName() );
+      assertEquals( 0, ds.getDiscardLimit() );
       assertNull  ( ds.getDomain() );
       assertNull  ( ds.getInstance() );
       assertNull  ( ds.getLanguage() );
       assertEquals( false, ds.getLastUpdateCount() );
       assertEquals( 0, ds.getLobBuffer() );
+      assertEquals( 0, ds.getLobPageSize() );
       assertNull  ( ds.getLogFile() );
       assertEquals( 0, ds.getLoginTimeout() );
       assertNull  ( ds.getMacAddress() );
       assertEquals( 0, ds.getMaxStatements() );
       assertEquals( false, ds.getNamedPipe() );
       assertEquals( 0, ds.getPacketSize() );
+      assertFalse ( ds.getPackRows() );
+      assertFalse ( ds.getParallelDecode() );
       assertNull  ( ds.getPassword() );
       assertEquals( 0, ds.getPortNumber() );
+      assertEquals( 0, ds.getPrefetch() );
+      assertEquals( 0, ds.getPrefetchBytes() );
       assertEquals( 0, ds.getPrepareSql() );
       assertNull  ( ds.getProcessId() );
       assertNull  ( ds.getProgName() );
+      assertEquals( 0, ds.getRowBuffer() );
       assertEquals( false, ds.getSendStringParametersAsUnicode() );
       assertNull  ( ds.getServerName() );
       assertEquals( 0, ds.getServerType() );
@@ -110,11 +117,53 @@ public class JtdsObjectFactoryTest extends UnitTestBase
       assertFalse ( ds.getUseJCIFS() );
       assertFalse ( ds.getUseLOBs() );
       assertFalse ( ds.getUseNTLMV2() );
+      assertFalse ( ds.getUseOutputInserted() );
+      assertFalse ( ds.getDescribeParameters() );
+      assertEquals( 0, ds.getMetadataCacheSize() );
+      assertEquals( 0, ds.getMetadataCacheTTL() );
+      assertNull  ( ds.getLoadBalance() );
+      assertFalse ( ds.getReadOnly() );
+      assertNull  ( ds.getReplicas() );
+      assertEquals( 0, ds.getValidationInterval() );
       assertNull  ( ds.getUser() );
       assertNull  ( ds.getWsid() );
       assertFalse ( ds.getXaEmulation() );
    }
 
+   /**
+    * Tests that the pool settings of a {@link JtdsPoolingDataSource} survive
+    * the round trip through a <code>Reference</code>.
+    */
+   public void testPoolSettings() throws Exception
+   {
+      JtdsPoolingDataSource ds = new JtdsPoolingDataSource();
+      ds.setServerName( "server" );
+      ds.setMinPoolSize( 3 );
+      ds.setMaxPoolSize( 7 );
+      ds.setMaxIdleTime( 120 );
+      ds.setMaxWait( 500 );
+
+      Reference ref = ds.getReference();
+      assertEquals( "net.sourceforge.jtds.jdbcx.JtdsPoolingDataSource", ref.getClassName() );
+
+      ds = (JtdsPoolingDataSource) new JtdsObjectFactory().getObjectInstance( ref, null, null, null );
+
+      assertEquals( "server", ds.getServerName() );
+      assertEquals( 3, ds.getMinPoolSize() );
+      assertEquals( 7, ds.getMaxPoolSize() );
+      assertEquals( 120, ds.getMaxIdleTime() );
+      assertEquals( 500, ds.getMaxWait() );
+
+      // a reference without pool settings yields the defaults
+      ref = new Reference( JtdsPoolingDataSource.class.getName(), JtdsObjectFactory.class.getName(), null );
+      ds = (JtdsPoolingDataSource) new JtdsObjectFactory().getObjectInstance( ref, null, null, null );
+
+      assertEquals( 0, ds.getMinPoolSize() );
+      assertEquals( 10, ds.getMaxPoolSize() );
+      assertEquals( 600, ds.getMaxIdleTime() );
+      assertEquals( 30000, ds.getMaxWait() );
+   }
+
    public void testGetterSetter()
       throws Exception
    {
@@ -131,22 +180,29 @@ public class JtdsObjectFactoryTest extends UnitTestBase
       defaults.put( Driver.CACHEMETA                    , DefaultProperties.CACHEMETA             );
       defaults.put( Driver.CHARSET                      , DefaultProperties.CHARSET               );
       defaults.put( Driver.DATABASENAME                 , DefaultProperties.DATABASE_NAME         );
+      defaults.put( Driver.DISCARDLIMIT                 , DefaultProperties.DISCARD_LIMIT         );
       defaults.put( Driver.DOMAIN                       , DefaultProperties.DOMAIN                );
       defaults.put( Driver.INSTANCE                     , DefaultProperties.INSTANCE              );
       defaults.put( Driver.LANGUAGE                     , DefaultProperties.LANGUAGE              );
       defaults.put( Driver.LASTUPDATECOUNT              , DefaultProperties.LAST_UPDATE_COUNT     );
       defaults.put( Driver.LOBBUFFER                    , DefaultProperties.LOB_BUFFER_SIZE       );
+      defaults.put( Driver.LOBPAGESIZE                  , DefaultProperties.LOB_PAGE_SIZE         );
       defaults.put( Driver.LOGFILE                      , DefaultProperties.LOGFILE               );
       defaults.put( Driver.LOGINTIMEOUT                 , DefaultProperties.LOGIN_TIMEOUT         );
       defaults.put( Driver.MACADDRESS                   , DefaultProperties.MAC_ADDRESS           );
       defaults.put( Driver.MAXSTATEMENTS                , DefaultProperties.MAX_STATEMENTS        );
       defaults.put( Driver.NAMEDPIPE                    , DefaultProperties.NAMED_PIPE            );
       defaults.put( Driver.PACKETSIZE                   , DefaultProperties.PACKET_SIZE_42        );
+      defaults.put( Driver.PACKROWS                     , DefaultProperties.PACK_ROWS             );
+      defaults.put( Driver.PARALLELDECODE               , DefaultProperties.PARALLEL_DECODE       );
       defaults.put( Driver.PASSWORD                     , DefaultProperties.PASSWORD              );
       defaults.put( Driver.PORTNUMBER                   , DefaultProperties.PORT_NUMBER_SQLSERVER );
+      defaults.put( Driver.PREFETCH                     , DefaultProperties.PREFETCH              );
+      defaults.put( Driver.PREFETCHBYTES                , DefaultProperties.PREFETCH_BYTES        );
       defaults.put( Driver.PREPARESQL                   , DefaultProperties.PREPARE_SQLSERVER     );
       defaults.put( Driver.PROCESSID                    , DefaultProperties.PROCESS_ID            );
       defaults.put( Driver.PROGNAME                     , DefaultProperties.PROG_NAME             );
+      defaults.put( Driver.ROWBUFFER                    , DefaultProperties.ROW_BUFFER            );
       defaults.put( Driver.SENDSTRINGPARAMETERSASUNICODE, DefaultProperties.USE_UNICODE           );
       defaults.put( Driver.SERVERNAME                   , "SERVERNAME"                            );
       defaults.put( Driver.SERVERTYPE                   , String.valueOf( Driver.SQLSERVER )      );
@@ -160,6 +216,14 @@ public class JtdsObjectFactoryTest extends UnitTestBase
       defaults.put( Driver.USELOBS                      , DefaultProperties.USELOBS               );
       defaults.put( Driver.USENTLMV2                    , DefaultProperties.USENTLMV2             );
       defaults.put( Driver.USEKERBEROS                  , DefaultProperties.USEKERBEROS           );
+      defaults.put( Driver.USEOUTPUTINSERTED            , DefaultProperties.USEOUTPUTINSERTED     );
+      defaults.put( Driver.DESCRIBEPARAMS               , DefaultProperties.DESCRIBE_PARAMETERS   );
+      defaults.put( Driver.METADATACACHESIZE            , DefaultProperties.METADATA_CACHE_SIZE   );
+      defaults.put( Driver.METADATACACHETTL             , DefaultProperties.METADATA_CACHE_TTL    );
+      defaults.put( Driver.LOADBALANCE                  , DefaultProperties.LOAD_BALANCE          );
+      defaults.put( Driver.READONLY                     , DefaultProperties.READ_ONLY             );
+      defaults.put( Driver.REPLICAS                     , DefaultProperties.REPLICAS              );
+      defaults.put( Driver.VALIDATIONINTERVAL           , DefaultProperties.VALIDATION_INTERVAL   );
       defaults.put( Driver.USER                         , DefaultProperties.USER                  );
       defaults.put( Driver.WSID                         , DefaultProperties.WSID                  );
       defaults.put( Driver.XAEMULATION                  , DefaultProperties.XAEMULATION           );
@@ -184,22 +248,29 @@ public class JtdsObjectFactoryTest extends UnitTestBase
       ds.setCacheMetaData                ( true   ); assertEquals( true  , ds.getCacheMetaData()                 );
       ds.setCharset                      ( "1234" ); assertEquals( "1234", ds.getCharset()                       );
       ds.setDatabaseName                 ( "1234" ); assertEquals( "1234", ds.getDatabaseName()                  );
+      ds.setDiscardLimit                 ( 123456 ); assertEquals( 123456, ds.getDiscardLimit()                  );
       ds.setDomain                       ( "1234" ); assertEquals( "1234", ds.getDomain()                        );
       ds.setInstance                     ( "1234" ); assertEquals( "1234", ds.getInstance()                      );
       ds.setLanguage                     ( "1234" ); assertEquals( "1234", ds.getLanguage()                      );
       ds.setLastUpdateCount              ( false  ); assertEquals( false , ds.getLastUpdateCount()               );
       ds.setLobBuffer                    ( 123456 ); assertEquals( 123456, ds.getLobBuffer()                     );
+      ds.setLobPageSize                  ( 4096   ); assertEquals( 4096  , ds.getLobPageSize()                   );
       ds.setLogFile                      ( "1234" ); assertEquals( "1234", ds.getLogFile()                       );
       ds.setLoginTimeout                 ( 123456 ); assertEquals( 123456, ds.getLoginTimeout()                  );
       ds.setMacAddress                   ( "1234" ); assertEquals( "1234", ds.getMacAddress()                    );
       ds.setMaxStatements                ( 123456 ); assertEquals( 123456, ds.getMaxStatements()                 );
       ds.setNamedPipe                    ( true   ); assertEquals( true  , ds.getNamedPipe()                     );
       ds.setPacketSize                   ( 123456 ); assertEquals( 123456, ds.getPacketSize()                    );
+      ds.setPackRows                     ( true   ); assertEquals( true  , ds.getPackRows()                      );
+      ds.setParallelDecode               ( true   ); assertEquals( true  , ds.getParallelDecode()                );
       ds.setPassword                     ( "1234" ); assertEquals( "1234", ds.getPassword()                      );
       ds.setPortNumber                   ( 123456 ); assertEquals( 123456, ds.getPortNumber()                    );
+      ds.setPrefetch                     ( 123456 ); assertEquals( 123456, ds.getPrefetch()                      );
+      ds.setPrefetchBytes                ( 123456 ); assertEquals( 123456, ds.getPrefetchBytes()                 );
       ds.setPrepareSql                   ( 123456 ); assertEquals( 123456, ds.getPrepareSql()                    );
       ds.setProcessId                    ( "1234" ); assertEquals( "1234", ds.getProcessId()                     );
       ds.setProgName                     ( "1234" ); assertEquals( "1234", ds.getProgName()                      );
+      ds.setRowBuffer                    ( 123456 ); assertEquals( 123456, ds.getRowBuffer()                     );
       ds.setSendStringParametersAsUnicode( false  ); assertEquals( false , ds.getSendStringParametersAsUnicode() );
       ds.setServerName                   ( "1234" ); assertEquals( "1234", ds.getServerName()                    );
       ds.setServerType                   ( 123456 ); assertEquals( 123456, ds.getServerType()                    );
@@ -212,6 +283,14 @@ public class JtdsObjectFactoryTest extends UnitTestBase
       ds.setUseJCIFS                     ( true   ); assertEquals( true  , ds.getUseJCIFS()                      );
       ds.setUseLOBs                      ( false  ); assertEquals( false , ds.getUseLOBs()                       );
       ds.setUseNTLMV2                    ( true   ); assertEquals( true  , ds.getUseNTLMV2()                     );
+      ds.setUseOutputInserted            ( true   ); assertEquals( true  , ds.getUseOutputInserted()             );
+      ds.setDescribeParameters           ( true   ); assertEquals( true  , ds.getDescribeParameters()            );
+      ds.setMetadataCacheSize            ( 1234   ); assertEquals( 1234  , ds.getMetadataCacheSize()             );
+      ds.setMetadataCacheTTL             ( 1234   ); assertEquals( 1234  , ds.getMetadataCacheTTL()              );
+      ds.setLoadBalance                  ( "1234" ); assertEquals( "1234" , ds.getLoadBalance()                   );
+      ds.setReadOnly                     ( true   ); assertEquals( true  , ds.getReadOnly()                      );
+      ds.setReplicas                     ( "1234" ); assertEquals( "1234" , ds.getReplicas()                      );
+      ds.setValidationInterval           ( 1234   ); assertEquals( 1234  , ds.getValidationInterval()            );
       ds.setUser                         ( "1234" ); assertEquals( "1234", ds.getUser()                          );
       ds.setWsid                         ( "1234" ); assertEquals( "1234", ds.getWsid()                          );
       ds.setXaEmulation                  ( false  ); assertEquals( false , ds.getXaEmulation()                   );
@@ -229,22 +308,29 @@ public class JtdsObjectFactoryTest extends UnitTestBase
       assertEquals( DefaultProperties.CACHEMETA            , String.valueOf( ds.getCacheMetaData()                 ) );
       assertEquals( DefaultProperties.CHARSET              , String.valueOf( ds.getCharset()                       ) );
       assertEquals( DefaultProperties.DATABASE_NAME        , String.valueOf( ds.getDatabaseName()                  ) );
+      assertEquals( DefaultProperties.DISCARD_LIMIT        , String.valueOf( ds.getDiscardLimit()                  ) );
       assertEquals( DefaultProperties.DOMAIN               , String.valueOf( ds.getDomain()                        ) );
       assertEquals( DefaultProperties.INSTANCE             , String.valueOf( ds.getInstance()                      ) );
       assertEquals( DefaultProperties.LANGUAGE             , String.valueOf( ds.getLanguage()                      ) );
       assertEquals( DefaultProperties.LAST_UPDATE_COUNT    , String.valueOf( ds.getLastUpdateCount()               ) );
       assertEquals( DefaultProperties.LOB_BUFFER_SIZE      , String.valueOf( ds.getLobBuffer()                     ) );
+      assertEquals( DefaultProperties.LOB_PAGE_SIZE        , String.valueOf( ds.getLobPageSize()                   ) );
       assertEquals( DefaultProperties.LOGFILE              , String.valueOf( ds.getLogFile()                       ) );
       assertEquals( DefaultProperties.LOGIN_TIMEOUT        , String.valueOf( ds.getLoginTimeout()                  ) );
       assertEquals( DefaultProperties.MAC_ADDRESS          , String.valueOf( ds.getMacAddress()                    ) );
       assertEquals( DefaultProperties.MAX_STATEMENTS       , String.valueOf( ds.getMaxStatements()                 ) );
       assertEquals( DefaultProperties.NAMED_PIPE           , String.valueOf( ds.getNamedPipe()                     ) );
       assertEquals( DefaultProperties.PACKET_SIZE_42       , String.valueOf( ds.getPacketSize()                    ) );
+      assertEquals( DefaultProperties.PACK_ROWS            , String.valueOf( ds.getPackRows()                      ) );
+      assertEquals( DefaultProperties.PARALLEL_DECODE      , String.valueOf( ds.getParallelDecode()                ) );
       assertEquals( DefaultProperties.PASSWORD             , String.valueOf( ds.getPassword()                      ) );
       assertEquals( DefaultProperties.PORT_NUMBER_SQLSERVER, String.valueOf( ds.getPortNumber()                    ) );
+      assertEquals( DefaultProperties.PREFETCH             , String.valueOf( ds.getPrefetch()                      ) );
+      assertEquals( DefaultProperties.PREFETCH_BYTES       , String.valueOf( ds.getPrefetchBytes()                 ) );
       assertEquals( DefaultProperties.PREPARE_SQLSERVER    , String.valueOf( ds.getPrepareSql()                    ) );
       assertEquals( DefaultProperties.PROCESS_ID           , String.valueOf( ds.getProcessId()                     ) );
       assertEquals( DefaultProperties.PROG_NAME            , String.valueOf( ds.getProgName()                      ) );
+      assertEquals( DefaultProperties.ROW_BUFFER           , String.valueOf( ds.getRowBuffer()                     ) );
       assertEquals( DefaultProperties.USE_UNICODE          , String.valueOf( ds.getSendStringParametersAsUnicode() ) );
       assertEquals( "SERVERNAME"                           , String.valueOf( ds.getServerName()                    ) );
       assertEquals( String.valueOf( Driver.SQLSERVER )     , String.valueOf( ds.getServerType()                    ) );
@@ -257,6 +343,14 @@ public class JtdsObjectFactoryTest extends UnitTestBase
       assertEquals( DefaultProperties.USEJCIFS             , String.valueOf( ds.getUseJCIFS()                      ) );
       assertEquals( DefaultProperties.USELOBS              , String.valueOf( ds.getUseLOBs()                       ) );
       assertEquals( DefaultProperties.USENTLMV2            , String.valueOf( ds.getUseNTLMV2()                     ) );
+      assertEquals( DefaultProperties.USEOUTPUTINSERTED    , String.valueOf( ds.getUseOutputInserted()             ) );
+      assertEquals( DefaultProperties.DESCRIBE_PARAMETERS  , String.valueOf( ds.getDescribeParameters()            ) );
+      assertEquals( DefaultProperties.METADATA_CACHE_SIZE  , String.valueOf( ds.getMetadataCacheSize()             ) );
+      assertEquals( DefaultProperties.METADATA_CACHE_TTL   , String.valueOf( ds.getMetadataCacheTTL()              ) );
+      assertEquals( DefaultProperties.LOAD_BALANCE         , String.valueOf( ds.getLoadBalance()                   ) );
+      assertEquals( DefaultProperties.READ_ONLY            , String.valueOf( ds.getReadOnly()                      ) );
+      assertEquals( DefaultProperties.REPLICAS             , String.valueOf( ds.getReplicas()                      ) );
+      assertEquals( DefaultProperties.VALIDATION_INTERVAL  , String.valueOf( ds.getValidationInterval()            ) );
       assertEquals( DefaultProperties.USER                 , String.valueOf( ds.getUser()                          ) );
       assertEquals( DefaultProperties.WSID                 , String.valueOf( ds.getWsid()                          ) );
       assertEquals( DefaultProperties.XAEMULATION          , String.valueOf( ds.getXaEmulation()                   ) );
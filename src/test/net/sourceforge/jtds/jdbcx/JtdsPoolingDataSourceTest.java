@@ -0,0 +1,273 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+//
+package net.sourceforge.jtds.jdbcx;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+
+import javax.sql.StatementEvent;
+import javax.sql.StatementEventListener;
+
+import net.sourceforge.jtds.jdbc.DatabaseTestCase;
+import net.sourceforge.jtds.jdbc.Driver;
+import net.sourceforge.jtds.jdbc.Messages;
+
+/**
+ * Tests for the {@link JtdsPoolingDataSource} class.
+ */
+public class JtdsPoolingDataSourceTest extends DatabaseTestCase {
+
+    public JtdsPoolingDataSourceTest(String name) {
+        super(name);
+    }
+
+    /**
+     * Returns a pooling data source configured from the test properties.
+     */
+    private JtdsPoolingDataSource getDataSource() {
+        JtdsPoolingDataSource ds = new JtdsPoolingDataSource();
+        ds.setServerName(props.getProperty(Messages.get(Driver.SERVERNAME)));
+        ds.setUser(props.getProperty(Messages.get(Driver.USER)));
+        ds.setPassword(props.getProperty(Messages.get(Driver.PASSWORD)));
+        ds.setDatabaseName(props.getProperty(Messages.get(Driver.DATABASENAME)));
+        ds.setTds(props.getProperty(Messages.get(Driver.TDS)));
+        ds.setServerType("2".equals(props.getProperty(Messages.get(Driver.SERVERTYPE))) ? 2 : 1);
+        try {
+            ds.setPortNumber(Integer.parseInt(
+                    props.getProperty(Messages.get(Driver.PORTNUMBER))));
+        } catch (Exception ex) {
+            // Ignore
+        }
+        return ds;
+    }
+
+    /**
+     * Test that the minimum number of connections is opened on start and that
+     * a returned connection is reused by the same thread.
+     */
+    public void testReuse() throws Exception {
+        JtdsPoolingDataSource ds = getDataSource();
+        ds.setMinPoolSize(2);
+        ds.setMaxPoolSize(2);
+
+        try {
+            ds.start();
+            assertEquals(2, ds.getTotalConnections());
+            assertEquals(2, ds.getIdleConnections());
+
+            Connection con1 = ds.getConnection();
+            Statement stmt = con1.createStatement();
+            ResultSet rs = stmt.executeQuery("SELECT @@SPID");
+            assertTrue(rs.next());
+            int spid = rs.getInt(1);
+            rs.close();
+            stmt.close();
+            assertEquals(1, ds.getActiveConnections());
+            assertEquals(0.5, ds.getUtilization(), 0.0);
+            con1.close();
+
+            Connection con2 = ds.getConnection();
+            stmt = con2.createStatement();
+            rs = stmt.executeQuery("SELECT @@SPID");
+            assertTrue(rs.next());
+            assertEquals(spid, rs.getInt(1));
+            rs.close();
+            stmt.close();
+            con2.close();
+
+            assertEquals(2, ds.getBorrowCount());
+            assertEquals(2, ds.getCreatedConnectionCount());
+            assertEquals(0, ds.getActiveConnections());
+        } finally {
+            ds.close();
+        }
+    }
+
+    /**
+     * Test that a pending transaction is rolled back and auto-commit mode is
+     * restored when a connection is returned.
+     */
+    public void testReset() throws Exception {
+        JtdsPoolingDataSource ds = getDataSource();
+        ds.setMaxPoolSize(1);
+
+        try {
+            Connection con1 = ds.getConnection();
+            con1.setAutoCommit(false);
+            Statement stmt = con1.createStatement();
+            stmt.execute("CREATE TABLE #pool (id int)");
+            stmt.close();
+            con1.close();
+
+            Connection con2 = ds.getConnection();
+            assertTrue(con2.getAutoCommit());
+            stmt = con2.createStatement();
+            ResultSet rs = stmt.executeQuery("SELECT OBJECT_ID('tempdb..#pool')");
+            assertTrue(rs.next());
+            assertNull(rs.getObject(1));
+            rs.close();
+            stmt.close();
+            con2.close();
+        } finally {
+            ds.close();
+        }
+    }
+
+    /**
+     * Test that the session reset restores the initial database, isolation
+     * level and session settings and that the cached state is updated.
+     */
+    public void testResetSession() throws Exception {
+        JtdsPoolingDataSource ds = getDataSource();
+        ds.setMaxPoolSize(1);
+
+        try {
+            Connection con1 = ds.getConnection();
+            String catalog = con1.getCatalog();
+            con1.setCatalog("master");
+            con1.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+            Statement stmt = con1.createStatement();
+            stmt.execute("CREATE TABLE #pool (id int)");
+            stmt.execute("SET QUOTED_IDENTIFIER OFF");
+            stmt.close();
+            con1.close();
+
+            Connection con2 = ds.getConnection();
+            assertEquals(Connection.TRANSACTION_READ_COMMITTED, con2.getTransactionIsolation());
+            stmt = con2.createStatement();
+            ResultSet rs = stmt.executeQuery(
+                    "SELECT OBJECT_ID('tempdb..#pool'), DB_NAME(), SESSIONPROPERTY('QUOTED_IDENTIFIER')");
+            assertTrue(rs.next());
+            assertNull(rs.getObject(1));
+            assertEquals(catalog, rs.getString(2));
+            assertEquals(1, rs.getInt(3));
+            assertEquals(catalog, con2.getCatalog());
+            rs.close();
+            stmt.close();
+            con2.close();
+        } finally {
+            ds.close();
+        }
+    }
+
+    /**
+     * Test that logically closed prepared statements are pooled per physical
+     * connection and that statement listeners are notified.
+     */
+    public void testStatementPooling() throws Exception {
+        PooledConnection pc = (PooledConnection) getDataSource().getPooledConnection();
+        final ArrayList closed = new ArrayList();
+
+        pc.addStatementEventListener(new StatementEventListener() {
+            public void statementClosed(StatementEvent event) {
+                closed.add(event.getStatement());
+            }
+
+            public void statementErrorOccurred(StatementEvent event) {
+                fail("Unexpected statement error");
+            }
+        });
+
+        try {
+            Connection con = pc.getConnection();
+            PreparedStatement pstmt = con.prepareStatement("SELECT ?");
+            assertTrue(pstmt.isPoolable());
+            pstmt.setInt(1, 1);
+            pstmt.setMaxRows(5);
+            ResultSet rs = pstmt.executeQuery();
+            assertTrue(rs.next());
+            pstmt.close();
+            pstmt.close();
+            assertTrue(pstmt.isClosed());
+            assertTrue(rs.isClosed());
+            assertEquals(1, closed.size());
+            assertSame(pstmt, closed.get(0));
+            assertEquals(1, pc.getPooledStatementCount());
+
+            // the pooled statement is handed out again with its settings reset
+            pstmt = con.prepareStatement("SELECT ?");
+            assertEquals(0, pc.getPooledStatementCount());
+            assertEquals(0, pstmt.getMaxRows());
+            pstmt.setInt(1, 2);
+            rs = pstmt.executeQuery();
+            assertTrue(rs.next());
+            assertEquals(2, rs.getInt(1));
+            pstmt.setPoolable(false);
+            pstmt.close();
+            assertEquals(0, pc.getPooledStatementCount());
+
+            // statements left open are returned when the connection is closed
+            pstmt = con.prepareStatement("SELECT ?");
+            con.close();
+            assertTrue(pstmt.isClosed());
+            assertEquals(3, closed.size());
+            assertEquals(1, pc.getPooledStatementCount());
+
+            con = pc.getConnection();
+            pstmt = con.prepareStatement("SELECT ?");
+            assertEquals(0, pc.getPooledStatementCount());
+            pstmt.close();
+            assertEquals(1, pc.getPooledStatementCount());
+
+            // a statement pooled in another catalog is not handed out
+            String catalog = con.getCatalog();
+            con.setCatalog("master".equalsIgnoreCase(catalog) ? "tempdb" : "master");
+            pstmt = con.prepareStatement("SELECT ?");
+            assertEquals(1, pc.getPooledStatementCount());
+            pstmt.close();
+            assertEquals(2, pc.getPooledStatementCount());
+            con.setCatalog(catalog);
+            con.close();
+        } finally {
+            pc.close();
+        }
+    }
+
+    /**
+     * Test that borrowing from an exhausted pool times out with SQL state
+     * 08001.
+     */
+    public void testWaitTimeout() throws Exception {
+        JtdsPoolingDataSource ds = getDataSource();
+        ds.setMaxPoolSize(1);
+        ds.setMaxWait(200);
+
+        try {
+            Connection con1 = ds.getConnection();
+
+            try {
+                ds.getConnection();
+                fail("Expecting a timeout");
+            } catch (SQLException ex) {
+                assertEquals("08001", ex.getSQLState());
+            }
+
+            assertEquals(1, ds.getWaitTimeoutCount());
+            con1.close();
+
+            Connection con2 = ds.getConnection();
+            con2.close();
+        } finally {
+            ds.close();
+        }
+    }
+}